@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.did.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elastos.did.DIDBackend;
+import org.elastos.did.DIDDocument;
+import org.elastos.did.DIDStore;
+import org.elastos.did.Mnemonic;
+import org.elastos.did.RootIdentity;
+import org.elastos.did.backend.SimulatedIDChain;
+import org.elastos.did.crypto.HDKey;
+import org.elastos.did.exception.DIDException;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * The shared fixture for the benchmarks: a simulated ID chain, a temporary
+ * DIDStore and a root identity with a prepared DID document.
+ */
+public class BenchmarkData {
+	public static final String STOREPASS = "benchmark";
+
+	private SimulatedIDChain simChain;
+	private File storeRoot;
+	private DIDStore store;
+	private RootIdentity identity;
+
+	static {
+		Logger root = (Logger)LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+		root.setLevel(Level.WARN);
+	}
+
+	public BenchmarkData() throws DIDException, IOException {
+		simChain = new SimulatedIDChain();
+		simChain.start();
+		DIDBackend.initialize(simChain.getAdapter());
+
+		storeRoot = Files.createTempDirectory("DIDStoreBenchmark").toFile();
+		store = DIDStore.open(storeRoot);
+
+		String mnemonic = Mnemonic.getInstance().generate();
+		identity = RootIdentity.create(mnemonic, "", store, STOREPASS);
+	}
+
+	public DIDStore getStore() {
+		return store;
+	}
+
+	public File getStoreRoot() {
+		return storeRoot;
+	}
+
+	public RootIdentity getRootIdentity() {
+		return identity;
+	}
+
+	/**
+	 * Create a new DID document with some extra keys, services and
+	 * self-proclaimed credentials, close to a real world document.
+	 *
+	 * @return the sealed DIDDocument
+	 * @throws DIDException if an error occurred when creating the document
+	 */
+	public DIDDocument newDocument() throws DIDException {
+		DIDDocument doc = identity.newDid(STOREPASS);
+
+		DIDDocument.Builder db = doc.edit();
+		for (int i = 0; i < 4; i++) {
+			String key = new HDKey(
+					Mnemonic.getInstance().generate(), "").getPublicKeyBase58();
+			db.addAuthenticationKey("#key-" + i, key);
+		}
+
+		for (int i = 0; i < 4; i++)
+			db.addService("#service-" + i, "BenchmarkService",
+					"https://example.com/service/" + i);
+
+		for (int i = 0; i < 4; i++) {
+			Map<String, Object> subject = new HashMap<String, Object>();
+			subject.put("name", "John");
+			subject.put("email", "john@example.com");
+			subject.put("nation", "Singapore");
+			subject.put("index", i);
+			db.addCredential("#profile-" + i, subject, STOREPASS);
+		}
+
+		doc = db.seal(STOREPASS);
+		store.storeDid(doc);
+		return doc;
+	}
+
+	public void close() throws IOException {
+		if (store != null)
+			store.close();
+
+		if (simChain != null)
+			simChain.stop();
+
+		if (storeRoot != null && storeRoot.exists())
+			Files.walk(storeRoot.toPath())
+				.sorted(Comparator.reverseOrder())
+				.map(Path::toFile)
+				.forEach(File::delete);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2021 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.did.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elastos.did.Mnemonic;
+import org.elastos.did.crypto.Aes256cbc;
+import org.elastos.did.crypto.HDKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Milliseconds per operation of the Aes256cbc engines.
+ *
+ * <p>
+ * reEncryptKeys is the cipher work of DIDStore.changePassword() for a store
+ * with 256 private keys: decrypt with the old password and encrypt with the
+ * new one. loadKeys decrypts the same keys with the session key, and
+ * bulkData encrypts and decrypts a 1MB payload.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CipherBenchmark {
+	private static final int KEYS = 256;
+	private static final String[] PASSWORDS = { "benchmark", "benchmark2" };
+
+	@Param({"jce", "spongycastle"})
+	private String engine;
+
+	private byte[] key;
+	private byte[] iv;
+	private byte[][] encryptedKeys;
+	private byte[][] storedKeys;
+	private int round;
+	private byte[] payload;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		Aes256cbc.setEngine(engine.equals("jce") ?
+				Aes256cbc.JCE : Aes256cbc.SPONGYCASTLE);
+
+		key = new byte[Aes256cbc.KEY_BYTES];
+		iv = new byte[Aes256cbc.IV_BYTES];
+		Aes256cbc.generateKeyAndIv(PASSWORDS[0], key, iv);
+
+		HDKey root = new HDKey(Mnemonic.getInstance().generate(), "");
+		encryptedKeys = new byte[KEYS][];
+		storedKeys = new byte[KEYS][];
+		for (int i = 0; i < KEYS; i++) {
+			byte[] sk = root.derive(HDKey.DERIVE_PATH_PREFIX + i).serialize();
+			encryptedKeys[i] = Aes256cbc.encrypt(sk, 0, sk.length, key, iv);
+			storedKeys[i] = encryptedKeys[i];
+		}
+
+		payload = new byte[1024 * 1024];
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() {
+		Aes256cbc.setEngine(null);
+	}
+
+	@Benchmark
+	public byte[][] reEncryptKeys() throws Exception {
+		String oldPassword = PASSWORDS[round & 1];
+		String newPassword = PASSWORDS[++round & 1];
+
+		for (int i = 0; i < KEYS; i++) {
+			byte[] plain = Aes256cbc.decrypt(storedKeys[i], oldPassword);
+			storedKeys[i] = Aes256cbc.encrypt(plain, newPassword);
+		}
+
+		return storedKeys;
+	}
+
+	@Benchmark
+	public int loadKeys() throws Exception {
+		int n = 0;
+		for (byte[] sk : encryptedKeys)
+			n += Aes256cbc.decrypt(sk, 0, sk.length, key, iv).length;
+
+		return n;
+	}
+
+	@Benchmark
+	public byte[] bulkData() throws Exception {
+		byte[] secret = Aes256cbc.encrypt(payload, 0, payload.length, key, iv);
+		return Aes256cbc.decrypt(secret, 0, secret.length, key, iv);
+	}
+}
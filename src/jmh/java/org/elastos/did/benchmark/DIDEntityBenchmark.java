@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.did.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elastos.did.DIDDocument;
+import org.elastos.did.exception.DIDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the DID document JSON parsing and serialization.
+ *
+ * <p>
+ * The parallel variants run on 4 threads, to measure the contention of
+ * the shared Jackson objects and the datetime codec.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DIDEntityBenchmark {
+	private BenchmarkData data;
+	private DIDDocument doc;
+	private String json;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		data = new BenchmarkData();
+		doc = data.newDocument();
+		json = doc.serialize(true);
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws Exception {
+		data.close();
+	}
+
+	@Benchmark
+	public DIDDocument parse() throws DIDException {
+		return DIDDocument.parse(json);
+	}
+
+	@Benchmark
+	public String serializeNormalized() {
+		return doc.serialize(true);
+	}
+
+	@Benchmark
+	public String serializeCompact() {
+		return doc.serialize(false);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public DIDDocument parseParallel() throws DIDException {
+		return DIDDocument.parse(json);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String serializeParallel() {
+		return doc.serialize(true);
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.did.benchmark;
+
+import static org.bitcoinj.core.ECKey.CURVE;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.elastos.did.crypto.EcdsaSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongycastle.crypto.params.ECPrivateKeyParameters;
+import org.spongycastle.crypto.signers.ECDSASigner;
+import org.spongycastle.crypto.signers.RandomDSAKCalculator;
+import org.spongycastle.math.ec.ECMultiplier;
+import org.spongycastle.math.ec.WNafL2RMultiplier;
+
+/**
+ * Signatures per second per core.
+ *
+ * <p>
+ * sign is the current EcdsaSigner.sign, randomNonce is the previous
+ * implementation that used a random nonce, and genericMultiplier is the
+ * random nonce signer without the precomputed table of the generator.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class SigningBenchmark {
+	private byte[] privateKey;
+	private byte[] digest;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		privateKey = EcdsaSigner.sha256Digest("benchmark key".getBytes());
+		digest = EcdsaSigner.sha256Digest("benchmark".getBytes());
+	}
+
+	private BigInteger[] sign(ECDSASigner signer) {
+		signer.init(true, new ECPrivateKeyParameters(
+				new BigInteger(1, privateKey), CURVE));
+		return signer.generateSignature(digest);
+	}
+
+	@Benchmark
+	public byte[] sign() {
+		return EcdsaSigner.sign(privateKey, digest);
+	}
+
+	@Benchmark
+	public BigInteger[] randomNonce() {
+		return sign(new ECDSASigner(new RandomDSAKCalculator()));
+	}
+
+	@Benchmark
+	public BigInteger[] genericMultiplier() {
+		return sign(new ECDSASigner(new RandomDSAKCalculator()) {
+			@Override
+			protected ECMultiplier createBasePointMultiplier() {
+				return new WNafL2RMultiplier();
+			}
+		});
+	}
+}
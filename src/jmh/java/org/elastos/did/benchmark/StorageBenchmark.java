@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.elastos.did.DID;
+import org.elastos.did.DIDDocument;
+import org.elastos.did.DIDStore;
+import org.elastos.did.exception.DIDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microseconds per operation of the DIDStore storages with a large number
+ * of DIDs.
+ *
+ * <p>
+ * The setup writes the same document for all the DIDs in the default
+ * storage layout, and migrates it for the log-structured storage. open
+ * opens and closes the store, loadDid loads a random document with the
+ * object cache disabled, and listDids lists all the DIDs.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+	@Param({"10000", "100000", "1000000"})
+	private int dids;
+
+	@Param({"filesystem", "log"})
+	private String storage;
+
+	private File storeRoot;
+	private DIDStore store;
+
+	private static String getMethodSpecificId(int i) {
+		return String.format("iBenchmark%08d", i);
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		BenchmarkData data = new BenchmarkData();
+		byte[] json;
+		byte[] metadata;
+		try {
+			DIDDocument doc = data.newDocument();
+			json = doc.serialize(true).getBytes(StandardCharsets.UTF_8);
+			metadata = Files.readAllBytes(new File(data.getStoreRoot(),
+					"data" + File.separator + ".metadata").toPath());
+		} finally {
+			data.close();
+		}
+
+		storeRoot = Files.createTempDirectory("StorageBenchmark").toFile();
+		Path dataDir = storeRoot.toPath().resolve("data");
+		Files.createDirectories(dataDir);
+		Files.write(dataDir.resolve(".metadata"), metadata);
+
+		for (int i = 0; i < dids; i++) {
+			Path dir = dataDir.resolve("ids").resolve(getMethodSpecificId(i));
+			Files.createDirectories(dir);
+			Files.write(dir.resolve("document"), json);
+		}
+
+		if (storage.equals("log"))
+			DIDStore.openLogStructured(storeRoot).close();
+
+		store = DIDStore.open(storeRoot, 0, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() throws IOException {
+		if (store != null)
+			store.close();
+
+		if (storeRoot != null && storeRoot.exists())
+			Files.walk(storeRoot.toPath())
+				.sorted(Comparator.reverseOrder())
+				.map(Path::toFile)
+				.forEach(File::delete);
+	}
+
+	@Benchmark
+	public void open() throws DIDException {
+		DIDStore.open(storeRoot, 0, 0).close();
+	}
+
+	@Benchmark
+	public DIDDocument loadDid() throws DIDException {
+		int i = ThreadLocalRandom.current().nextInt(dids);
+		return store.loadDid(new DID("did:" + DID.METHOD + ":" + getMethodSpecificId(i)));
+	}
+
+	@Benchmark
+	public int listDids() throws DIDException {
+		return store.listDids().size();
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An extension of the DIDAdapter that can perform the resolve requests
+ * without blocking the calling thread.
+ *
+ * <p>
+ * The DIDBackend uses this method for all the asynchronous resolves if the
+ * adapter implements this interface, so the in-flight resolves don't hold
+ * any thread while waiting for the responses. Otherwise the blocking
+ * {@link DIDAdapter#resolve(String)} will be called on the DIDBackend's
+ * executor.
+ * </p>
+ */
+public interface AsyncDIDAdapter extends DIDAdapter {
+	/**
+	 * Perform the resolve request asynchronously.
+	 *
+	 * <p>
+	 * The implementation should complete the returned future exceptionally
+	 * with a DIDResolveException if error occurred when resolving.
+	 * </p>
+	 *
+	 * @param request a string representation of the resolve request
+	 * @return a new CompletableStage, the result is the resolve response
+	 */
+	public CompletableFuture<InputStream> resolveAsync(String request);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.InputStream;
+
+import org.elastos.did.exception.DIDResolveException;
+
+/**
+ * An extension of the DIDAdapter that can perform the JSON-RPC batch
+ * resolve requests.
+ *
+ * <p>
+ * The DIDBackend sends all the resolve requests of a bulk resolve in one
+ * batch if the adapter implements this interface, or resolves them one by
+ * one otherwise.
+ * </p>
+ */
+public interface BatchDIDAdapter extends DIDAdapter {
+	/**
+	 * Perform the batch resolve request.
+	 *
+	 * @param requests a string representation of the JSON array of the
+	 * 		  resolve requests
+	 * @return the JSON array of the resolve results, the results could be
+	 * 		   in any order
+	 * @throws DIDResolveException if error occurred when resolving
+	 */
+	public InputStream resolveBatch(String requests)
+			throws DIDResolveException;
+}
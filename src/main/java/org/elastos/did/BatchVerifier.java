@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package org.elastos.did;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elastos.did.crypto.EcdsaSigner;
+import org.elastos.did.crypto.EcdsaSigner.VerifyTask;
+import org.elastos.did.exception.DIDResolveException;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+
+/**
+ * The bulk isGenuineBatch() helper that runs the signature verifications of
+ * many objects as one EcdsaSigner.verifyAll() batch.
+ *
+ * <p>
+ * Each object is checked by its own isGenuine() on the calling thread with
+ * the signature verification deferred: DIDDocument.verifySignature()
+ * records the signature and assumes it's valid. An object is genuine only
+ * if its isGenuine() check passed and all its deferred signatures are
+ * valid, this is the same result as the sequential isGenuine(). The checks
+ * after a bad signature are not skipped as the sequential one does.
+ * </p>
+ *
+ * <p>
+ * Only the signatures of the checked objects are deferred. The DIDBackend
+ * suspends the batch when validating the resolved documents and
+ * credentials, their transaction signatures are verified immediately.
+ * </p>
+ */
+class BatchVerifier {
+	private static final ThreadLocal<BatchVerifier> current = new ThreadLocal<BatchVerifier>();
+
+	private List<VerifyTask> tasks;
+	// Same key, signature and digest object verified only once
+	private Map<Signature, Integer> signatures;
+	private List<Integer> deferred;
+
+	@FunctionalInterface
+	interface Check<T> {
+		boolean isGenuine(T object) throws DIDResolveException;
+	}
+
+	private static class Signature {
+		private ECPublicKeyParameters key;
+		private byte[] signature;
+		private byte[] digest;
+
+		public Signature(ECPublicKeyParameters key, byte[] signature, byte[] digest) {
+			this.key = key;
+			this.signature = signature;
+			this.digest = digest;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(key) ^ System.identityHashCode(signature)
+					^ System.identityHashCode(digest);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Signature))
+				return false;
+
+			Signature s = (Signature)obj;
+			return key == s.key && signature == s.signature && digest == s.digest;
+		}
+	}
+
+	private BatchVerifier() {
+		tasks = new ArrayList<VerifyTask>();
+		signatures = new HashMap<Signature, Integer>();
+	}
+
+	/**
+	 * Check all the objects, the signatures are verified as one batch.
+	 *
+	 * @param objects the objects to be checked
+	 * @param check the isGenuine() check of the object
+	 * @return the results in the same order of the objects
+	 * @throws DIDResolveException if error occurs when resolve the DIDs
+	 */
+	static <T> boolean[] isGenuine(List<T> objects, Check<T> check)
+			throws DIDResolveException {
+		BatchVerifier batch = new BatchVerifier();
+
+		boolean[] results = new boolean[objects.size()];
+		List<List<Integer>> deferred = new ArrayList<List<Integer>>(objects.size());
+
+		for (int i = 0; i < objects.size(); i++) {
+			batch.deferred = new ArrayList<Integer>();
+
+			current.set(batch);
+			try {
+				results[i] = check.isGenuine(objects.get(i));
+			} finally {
+				current.remove();
+			}
+
+			deferred.add(batch.deferred);
+		}
+
+		boolean[] verified = EcdsaSigner.verifyAll(batch.tasks);
+
+		for (int i = 0; i < results.length; i++) {
+			if (!results[i])
+				continue;
+
+			for (int index : deferred.get(i)) {
+				if (!verified[index]) {
+					results[i] = false;
+					break;
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Check whether there is an active batch on current thread, the
+	 * signature verifications are deferred and assumed valid.
+	 *
+	 * @return true if there is an active batch, false otherwise
+	 */
+	static boolean isActive() {
+		return current.get() != null;
+	}
+
+	/**
+	 * Suspend the active batch on current thread, the signatures are
+	 * verified immediately until the batch is resumed.
+	 *
+	 * @return the suspended batch, or null if there is no active batch
+	 */
+	static BatchVerifier suspend() {
+		BatchVerifier batch = current.get();
+		if (batch != null)
+			current.remove();
+
+		return batch;
+	}
+
+	/**
+	 * Resume the batch that suspended by {@link #suspend()}.
+	 *
+	 * @param batch the suspended batch, or null
+	 */
+	static void resume(BatchVerifier batch) {
+		if (batch != null)
+			current.set(batch);
+	}
+
+	/**
+	 * Defer the signature verification if there is an active batch on
+	 * current thread.
+	 *
+	 * @param key the public key
+	 * @param signature the signature bytes
+	 * @param digest the signed digest
+	 * @return true if the verification was deferred, false otherwise
+	 */
+	static boolean defer(ECPublicKeyParameters key, byte[] signature, byte[] digest) {
+		BatchVerifier batch = current.get();
+		if (batch == null)
+			return false;
+
+		Signature sig = new Signature(key, signature, digest);
+		Integer index = batch.signatures.get(sig);
+		if (index == null) {
+			index = batch.tasks.size();
+			batch.tasks.add(new VerifyTask(key, signature, digest));
+			batch.signatures.put(sig, index);
+		}
+
+		batch.deferred.add(index);
+		return true;
+	}
+}
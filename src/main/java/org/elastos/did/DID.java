@@ -27,10 +27,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 
 import org.elastos.did.backend.DIDBiography;
-import org.elastos.did.exception.DIDBackendException;
 import org.elastos.did.exception.DIDResolveException;
 import org.elastos.did.exception.MalformedDIDException;
 import org.elastos.did.parser.DIDURLBaseListener;
@@ -221,15 +219,12 @@ public class DID implements Comparable<DID> {
 	 * 			object if success; null otherwise
 	 */
 	public CompletableFuture<DIDDocument> resolveAsync(boolean force) {
-		CompletableFuture<DIDDocument> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolve(force);
-			} catch (DIDBackendException e) {
-				throw new CompletionException(e);
-			}
-		});
+		return DIDBackend.getInstance().resolveDidAsync(this, force).thenApply((doc) -> {
+			if (doc != null)
+				setMetadata(doc.getMetadata());
 
-		return future;
+			return doc;
+		});
 	}
 
 	/**
@@ -263,15 +258,7 @@ public class DID implements Comparable<DID> {
 	 * 			object if success; null otherwise
 	 */
 	public CompletableFuture<DIDBiography> resolveBiographyAsync() {
-		CompletableFuture<DIDBiography> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolveBiography();
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
-
-		return future;
+		return DIDBackend.getInstance().resolveDidBiographyAsync(this);
 	}
 
 	/**
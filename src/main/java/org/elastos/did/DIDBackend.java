@@ -26,10 +26,21 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import org.elastos.did.backend.CredentialBiography;
 import org.elastos.did.backend.CredentialList;
@@ -45,20 +56,24 @@ import org.elastos.did.backend.DIDResolveRequest;
 import org.elastos.did.backend.DIDResolveResponse;
 import org.elastos.did.backend.DIDTransaction;
 import org.elastos.did.backend.IDChainRequest;
+import org.elastos.did.backend.PersistentResolveCache;
 import org.elastos.did.backend.ResolveRequest;
 import org.elastos.did.backend.ResolveResponse;
 import org.elastos.did.backend.ResolveResult;
+import org.elastos.did.exception.DIDException;
 import org.elastos.did.exception.DIDResolveException;
 import org.elastos.did.exception.DIDStoreException;
 import org.elastos.did.exception.DIDSyntaxException;
 import org.elastos.did.exception.DIDTransactionException;
+import org.elastos.did.metrics.DIDMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 
 /**
  * The class is an abstraction for the ID chain.
@@ -76,17 +91,48 @@ public class DIDBackend {
 	 * The default cache TTL.
 	 */
 	public static final int DEFAULT_CACHE_TTL = 10 * 60 * 1000;
+	/**
+	 * The default maximum capacity for the NOT_FOUND results.
+	 */
+	public static final int DEFAULT_NEGATIVE_CACHE_CAPACITY = 32;
+	/**
+	 * The default TTL for the NOT_FOUND results.
+	 */
+	public static final int DEFAULT_NEGATIVE_CACHE_TTL = 60 * 1000;
+	/**
+	 * The default maximum capacity for the deactivated DIDs and the revoked
+	 * credentials.
+	 */
+	public static final int DEFAULT_TERMINAL_CACHE_CAPACITY = 64;
+	/**
+	 * The default TTL for the deactivated DIDs and the revoked credentials.
+	 */
+	public static final int DEFAULT_TERMINAL_CACHE_TTL = 24 * 60 * 60 * 1000;
+
+	// The JSON-RPC errors that mean the batch request is not supported
+	private static final int JSONRPC_INVALID_REQUEST = -32600;
+	private static final int JSONRPC_METHOD_NOT_FOUND = -32601;
 
 	private static Random random = new Random();
 
 	private DIDAdapter adapter;
 	private LocalResolveHandle resolveHandle;
-
-	private LoadingCache<ResolveRequest<?, ?>, ResolveResult<?>> cache;
+	private volatile boolean batchUnsupported;
+	private DIDExecutor executor;
+
+	private ResolveCache cache;
+	// The documents and credentials that already validated from the cached
+	// biographies. The weak keys compare by identity, so a refreshed or
+	// reloaded biography is always validated again.
+	private Cache<DIDBiography, DIDDocument> validatedDocs;
+	private Cache<CredentialBiography, Optional<VerifiableCredential>> validatedVcs;
+	// The asynchronous resolves in flight, the same requests share one result
+	private ConcurrentMap<ResolveRequest<?, ?>, CompletableFuture<ResolveResult<?>>> pendings;
 
 	private static final Logger log = LoggerFactory.getLogger(DIDBackend.class);
 
-	private static DIDBackend instance;
+	private static volatile DIDBackend instance;
+	private static volatile DIDMetrics metrics = DIDMetrics.NOOP;
 
 	/**
 	 * The interface is used to provide local resolve capability to the DID SDK.
@@ -103,70 +149,475 @@ public class DIDBackend {
 	}
 
 	/**
-	 * Construct a DIDBackend instance with the adapter and the cache
-	 * specification.
+	 * The outcome classes of the cached resolve results.
+	 */
+	public enum CacheOutcome {
+		/**
+		 * The valid DIDs and credentials, and the credential lists.
+		 */
+		VALID,
+		/**
+		 * The DIDs and credentials that not exist.
+		 */
+		NOT_FOUND,
+		/**
+		 * The deactivated DIDs and the revoked credentials, they never
+		 * change again.
+		 */
+		TERMINAL
+	}
+
+	/**
+	 * The policy of the DIDBackend resolve cache.
 	 *
-	 * @param adapter a DIDAdapter implementation
-	 * @param initialCacheCapacity the initial cache size
-	 * @param maxCacheCapacity the maximum cache capacity
-	 * @param cacheTtl the live time for the cached entries
+	 * <p>
+	 * By default the cached entries expire at the TTL, and the next
+	 * resolve blocks on the ID chain. With the stale-while-revalidate
+	 * policy, the entries older than the refresh age are still served
+	 * while they are reloaded in background, and only expire at the TTL.
+	 * With the refresh-ahead policy, the entries read often are reloaded
+	 * in background before they get stale.
+	 * </p>
+	 *
+	 * <p>
+	 * The NOT_FOUND results, the deactivated DIDs and the revoked
+	 * credentials are cached separately with their own capacity and TTL,
+	 * see {@link CacheOutcome}. The policies above only apply to the VALID
+	 * results.
+	 * </p>
+	 *
+	 * <p>
+	 * The reloaded results go through the same validation as the loaded
+	 * ones before they are returned by the resolve methods.
+	 * </p>
 	 */
-	private DIDBackend(DIDAdapter adapter, int initialCacheCapacity,
-			int maxCacheCapacity, int cacheTtl) {
-		if (initialCacheCapacity < 0)
-			initialCacheCapacity = 0;
+	public static class CachePolicy {
+		private int initialCapacity;
+		private int maxCapacity;
+		private long ttl;
+		private long refreshAfter;
+		private int refreshAheadHits;
+		private int negativeCapacity;
+		private long negativeTtl;
+		private int terminalCapacity;
+		private long terminalTtl;
+		private Ticker ticker;
 
-		if (maxCacheCapacity < 0)
-			maxCacheCapacity = 0;
+		/**
+		 * Create a CachePolicy object with the default capacity and TTL,
+		 * the stale-while-revalidate and refresh-ahead are disabled.
+		 */
+		public CachePolicy() {
+			initialCapacity = DEFAULT_CACHE_INITIAL_CAPACITY;
+			maxCapacity = DEFAULT_CACHE_MAX_CAPACITY;
+			ttl = DEFAULT_CACHE_TTL;
+			negativeCapacity = DEFAULT_NEGATIVE_CACHE_CAPACITY;
+			negativeTtl = DEFAULT_NEGATIVE_CACHE_TTL;
+			terminalCapacity = DEFAULT_TERMINAL_CACHE_CAPACITY;
+			terminalTtl = DEFAULT_TERMINAL_CACHE_TTL;
+			ticker = Ticker.systemTicker();
+		}
 
-		if (cacheTtl < 0)
-			cacheTtl = 0;
+		/**
+		 * Set the capacity of the cache.
+		 *
+		 * @param initialCapacity the initial cache size
+		 * @param maxCapacity the maximum cache capacity
+		 * @return the CachePolicy instance for method chaining
+		 */
+		public CachePolicy setCapacity(int initialCapacity, int maxCapacity) {
+			checkArgument(maxCapacity >= 0, "Invalid cache capacity");
+			checkArgument(initialCapacity >= 0 && initialCapacity <= maxCapacity,
+					"Invalid cache capacity");
+
+			this.initialCapacity = initialCapacity;
+			this.maxCapacity = maxCapacity;
+			return this;
+		}
 
-		this.adapter = adapter;
+		/**
+		 * Set the TTL of the cached entries, the entries expire at this
+		 * age whatever the other policies.
+		 *
+		 * @param ttl the live time for the cached entries in milliseconds
+		 * @return the CachePolicy instance for method chaining
+		 */
+		public CachePolicy setTtl(long ttl) {
+			checkArgument(ttl >= 0, "Invalid ttl");
 
-		CacheLoader<ResolveRequest<?, ?>, ResolveResult<?>> loader;
-		loader = new CacheLoader<ResolveRequest<?, ?>, ResolveResult<?>>() {
-			@Override
-			public ResolveResult<?> load(ResolveRequest<?, ?> key)
-					throws DIDResolveException {
-				log.trace("Cache loading {}...", key);
-				return resolve(key);
-			}
-		};
-
-		// The RemovalListener used for debug purpose.
-		/*
-		RemovalListener<ResolveRequest<?, ?>, ResolveResult<?>> listener;
-		listener = new RemovalListener<ResolveRequest<?, ?>, ResolveResult<?>>() {
-			@Override
-			public void onRemoval(
-					RemovalNotification<ResolveRequest<?, ?>, ResolveResult<?>> n) {
-				if (n.wasEvicted()) {
-					String cause = n.getCause().name();
-					log.trace("Cache removed {} cause {}", n.getKey(), cause);
-				}
+			this.ttl = ttl;
+			return this;
+		}
+
+		/**
+		 * Enable the stale-while-revalidate policy. The entries older than
+		 * the refresh age are served as is, and reloaded in background on
+		 * the first access.
+		 *
+		 * @param refreshAfter the soft TTL in milliseconds, less than the
+		 * 		  TTL, or 0 to disable
+		 * @return the CachePolicy instance for method chaining
+		 */
+		public CachePolicy setRefreshAfter(long refreshAfter) {
+			checkArgument(refreshAfter >= 0, "Invalid refresh age");
+
+			this.refreshAfter = refreshAfter;
+			return this;
+		}
+
+		/**
+		 * Enable the refresh-ahead policy. The entries that hit at least
+		 * the given times are reloaded in background at three quarters of
+		 * the refresh age, or the TTL if the stale-while-revalidate policy
+		 * is disabled.
+		 *
+		 * @param hits the minimal hits of the hot entries, or 0 to disable
+		 * @return the CachePolicy instance for method chaining
+		 */
+		public CachePolicy setRefreshAheadHits(int hits) {
+			checkArgument(hits >= 0, "Invalid hits");
+
+			this.refreshAheadHits = hits;
+			return this;
+		}
+
+		/**
+		 * Set the capacity and TTL for the NOT_FOUND results.
+		 *
+		 * @param capacity the maximum capacity, 0 to disable the negative
+		 * 		  caching
+		 * @param ttl the live time for the NOT_FOUND results in milliseconds
+		 * @return the CachePolicy instance for method chaining
+		 */
+		public CachePolicy setNegativeCache(int capacity, long ttl) {
+			checkArgument(capacity >= 0, "Invalid cache capacity");
+			checkArgument(ttl >= 0, "Invalid ttl");
+
+			this.negativeCapacity = capacity;
+			this.negativeTtl = ttl;
+			return this;
+		}
+
+		/**
+		 * Set the capacity and TTL for the deactivated DIDs and the
+		 * revoked credentials.
+		 *
+		 * @param capacity the maximum capacity
+		 * @param ttl the live time for the terminal results in milliseconds
+		 * @return the CachePolicy instance for method chaining
+		 */
+		public CachePolicy setTerminalCache(int capacity, long ttl) {
+			checkArgument(capacity >= 0, "Invalid cache capacity");
+			checkArgument(ttl >= 0, "Invalid ttl");
+
+			this.terminalCapacity = capacity;
+			this.terminalTtl = ttl;
+			return this;
+		}
+
+		/**
+		 * Get the initial capacity of the cache.
+		 *
+		 * @return the initial cache size
+		 */
+		public int getInitialCapacity() {
+			return initialCapacity;
+		}
+
+		/**
+		 * Get the maximum capacity of the cache.
+		 *
+		 * @return the maximum cache capacity
+		 */
+		public int getMaxCapacity() {
+			return maxCapacity;
+		}
+
+		/**
+		 * Get the TTL of the cached entries.
+		 *
+		 * @return the TTL in milliseconds
+		 */
+		public long getTtl() {
+			return ttl;
+		}
+
+		/**
+		 * Get the refresh age of the stale-while-revalidate policy.
+		 *
+		 * @return the refresh age in milliseconds, 0 if disabled
+		 */
+		public long getRefreshAfter() {
+			return refreshAfter;
+		}
+
+		/**
+		 * Get the minimal hits of the refresh-ahead policy.
+		 *
+		 * @return the minimal hits, 0 if disabled
+		 */
+		public int getRefreshAheadHits() {
+			return refreshAheadHits;
+		}
+
+		/**
+		 * Get the maximum capacity for the NOT_FOUND results.
+		 *
+		 * @return the maximum capacity
+		 */
+		public int getNegativeCapacity() {
+			return negativeCapacity;
+		}
+
+		/**
+		 * Get the TTL for the NOT_FOUND results.
+		 *
+		 * @return the TTL in milliseconds
+		 */
+		public long getNegativeTtl() {
+			return negativeTtl;
+		}
+
+		/**
+		 * Get the maximum capacity for the deactivated DIDs and the revoked
+		 * credentials.
+		 *
+		 * @return the maximum capacity
+		 */
+		public int getTerminalCapacity() {
+			return terminalCapacity;
+		}
+
+		/**
+		 * Get the TTL for the deactivated DIDs and the revoked credentials.
+		 *
+		 * @return the TTL in milliseconds
+		 */
+		public long getTerminalTtl() {
+			return terminalTtl;
+		}
+
+		// The time source of the cache expiry and refresh, for the tests
+		CachePolicy setTicker(Ticker ticker) {
+			checkArgument(ticker != null, "Invalid ticker");
+
+			this.ticker = ticker;
+			return this;
+		}
+
+		Ticker getTicker() {
+			return ticker;
+		}
+
+		private CachePolicy copy() {
+			CachePolicy policy = new CachePolicy();
+			policy.initialCapacity = initialCapacity;
+			policy.maxCapacity = maxCapacity;
+			policy.ttl = ttl;
+			policy.refreshAfter = refreshAfter;
+			policy.refreshAheadHits = refreshAheadHits;
+			policy.negativeCapacity = negativeCapacity;
+			policy.negativeTtl = negativeTtl;
+			policy.terminalCapacity = terminalCapacity;
+			policy.terminalTtl = terminalTtl;
+			policy.ticker = ticker;
+			return policy;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("init:%d, max:%d, ttl:%d, refreshAfter:%d, refreshAheadHits:%d, "
+					+ "negative(max:%d, ttl:%d), terminal(max:%d, ttl:%d)",
+					initialCapacity, maxCapacity, ttl / 1000, refreshAfter / 1000,
+					refreshAheadHits, negativeCapacity, negativeTtl / 1000,
+					terminalCapacity, terminalTtl / 1000);
+		}
+	}
+
+	/**
+	 * The statistics snapshot of the DIDBackend resolve cache, by the
+	 * outcome classes.
+	 *
+	 * <p>
+	 * A hit is a resolve served by the in-memory or the persistent cache,
+	 * a miss is a resolve loaded from the ID chain, counted by the outcome
+	 * of the loaded result.
+	 * </p>
+	 */
+	public static class CacheStats {
+		private Map<CacheOutcome, Long> hits;
+		private Map<CacheOutcome, Long> misses;
+		private Map<CacheOutcome, Long> sizes;
+
+		CacheStats(Map<CacheOutcome, Long> hits, Map<CacheOutcome, Long> misses,
+				Map<CacheOutcome, Long> sizes) {
+			this.hits = hits;
+			this.misses = misses;
+			this.sizes = sizes;
+		}
+
+		/**
+		 * Get the hit count of the given outcome class.
+		 *
+		 * @param outcome the outcome class
+		 * @return the hit count
+		 */
+		public long getHitCount(CacheOutcome outcome) {
+			return hits.get(outcome);
+		}
+
+		/**
+		 * Get the miss count of the given outcome class.
+		 *
+		 * @param outcome the outcome class
+		 * @return the miss count
+		 */
+		public long getMissCount(CacheOutcome outcome) {
+			return misses.get(outcome);
+		}
+
+		/**
+		 * Get the number of the cached entries of the given outcome class.
+		 *
+		 * @param outcome the outcome class
+		 * @return the approximate number of the entries
+		 */
+		public long getSize(CacheOutcome outcome) {
+			return sizes.get(outcome);
+		}
+
+		/**
+		 * Get the total hit count.
+		 *
+		 * @return the hit count
+		 */
+		public long getHitCount() {
+			return hits.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		/**
+		 * Get the total miss count.
+		 *
+		 * @return the miss count
+		 */
+		public long getMissCount() {
+			return misses.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		/**
+		 * Get the ratio of the hits to all the requests.
+		 *
+		 * @return the hit rate, 1.0 if no request
+		 */
+		public double getHitRate() {
+			long hit = getHitCount();
+			long total = hit + getMissCount();
+			return total == 0 ? 1.0 : (double)hit / total;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(128);
+			for (CacheOutcome outcome : CacheOutcome.values()) {
+				if (sb.length() > 0)
+					sb.append(", ");
+
+				sb.append(outcome).append("(hit:").append(getHitCount(outcome))
+					.append(", miss:").append(getMissCount(outcome))
+					.append(", size:").append(getSize(outcome)).append(")");
 			}
-		};
-		*/
 
-		cache = CacheBuilder.newBuilder()
-				.initialCapacity(initialCacheCapacity)
-				.maximumSize(maxCacheCapacity)
-				.expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS)
-				.softValues()
-				// .removalListener(listener)
-				// .recordStats()
-				.build(loader);
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * The blocking task to run on the DIDBackend's executor.
+	 *
+	 * @param <T> the type of the task result
+	 */
+	@FunctionalInterface
+	interface Task<T> {
+		/**
+		 * Run the task.
+		 *
+		 * @return the task result
+		 * @throws DIDException if an error occurred when running the task
+		 */
+		public T call() throws DIDException;
+	}
+
+	// The default bounded IO pool, created on the first use
+	private static class DefaultExecutor {
+		private static final DIDExecutor executor = DIDExecutor.newIOPool();
+	}
+
+	/**
+	 * Construct a DIDBackend instance with the adapter and the cache
+	 * policy.
+	 *
+	 * @param adapter a DIDAdapter implementation
+	 * @param policy the cache policy
+	 * @param executor the executor for the asynchronous operations
+	 */
+	private DIDBackend(DIDAdapter adapter, CachePolicy policy, DIDExecutor executor) {
+		this.adapter = adapter;
+		this.executor = executor;
+		this.pendings = new ConcurrentHashMap<ResolveRequest<?, ?>, CompletableFuture<ResolveResult<?>>>();
+		this.cache = new ResolveCache(policy, this::resolve, executor);
+		this.validatedDocs = CacheBuilder.newBuilder().weakKeys().build();
+		this.validatedVcs = CacheBuilder.newBuilder().weakKeys().build();
+
+		log.info("DID backend initialized, cache({}), executor: {}",
+				policy, executor.getName());
+	}
+
+	/**
+	 * Get the statistics snapshot of the resolve cache.
+	 *
+	 * @return the CacheStats object
+	 */
+	public CacheStats getCacheStats() {
+		return cache.getStats();
+	}
+
+	/**
+	 * Initialize the DIDBackend with the given adapter, the cache policy and
+	 * the executor.
+	 *
+	 * @param adapter a DIDAdapter implementation
+	 * @param policy the cache policy, null to use the default policy
+	 * @param executor the executor for all the asynchronous operations,
+	 * 		  null to use the default bounded IO pool. The executor will be
+	 * 		  wrapped by a DIDExecutor if it isn't.
+	 * @see CachePolicy
+	 * @see DIDExecutor
+	 */
+	public static synchronized void initialize(DIDAdapter adapter,
+			CachePolicy policy, Executor executor) {
+		checkArgument(adapter != null, "Invalid adapter");
+
+		policy = policy != null ? policy.copy() : new CachePolicy();
+		checkArgument(policy.getRefreshAfter() == 0 ||
+				policy.getRefreshAfter() < policy.getTtl(), "Invalid refresh age");
+
+		DIDExecutor de = executor != null ?
+				DIDExecutor.wrap(executor) : DefaultExecutor.executor;
 
-		log.info("DID backend initialized, cache(init:{}, max:{}, ttl:{})",
-				initialCacheCapacity, maxCacheCapacity, cacheTtl / 1000);
+		instance = new DIDBackend(adapter, policy, de);
 	}
 
-	/*
-	public String cacheStat() {
-		return cache.stats().toString();
+	/**
+	 * Initialize the DIDBackend with the given adapter and the cache
+	 * policy.
+	 *
+	 * @param adapter a DIDAdapter implementation
+	 * @param policy the cache policy, null to use the default policy
+	 * @see CachePolicy
+	 */
+	public static void initialize(DIDAdapter adapter, CachePolicy policy) {
+		initialize(adapter, policy, null);
 	}
-	*/
 
 	/**
 	 * Initialize the DIDBackend with the given adapter and the cache
@@ -176,17 +627,39 @@ public class DIDBackend {
 	 * @param initialCacheCapacity the initial cache size
 	 * @param maxCacheCapacity the maximum cache capacity
 	 * @param cacheTtl the live time for the cached entries
+	 * @param executor the executor for all the asynchronous operations,
+	 * 		  null to use the default bounded IO pool. The executor will be
+	 * 		  wrapped by a DIDExecutor if it isn't.
+	 * @see DIDExecutor
 	 */
-	public static synchronized void initialize(DIDAdapter adapter,
-			int initialCacheCapacity, int maxCacheCapacity, int cacheTtl) {
-		checkArgument(adapter != null, "Invalid adapter");
+	public static void initialize(DIDAdapter adapter,
+			int initialCacheCapacity, int maxCacheCapacity, int cacheTtl,
+			Executor executor) {
 		checkArgument(initialCacheCapacity <= maxCacheCapacity, "Invalid cache capacity");
 
-		initialCacheCapacity = initialCacheCapacity < maxCacheCapacity ?
-				initialCacheCapacity : maxCacheCapacity;
+		CachePolicy policy = new CachePolicy()
+				.setCapacity(Math.max(initialCacheCapacity, 0), Math.max(maxCacheCapacity, 0))
+				.setTtl(Math.max(cacheTtl, 0));
+
+		// No capacity or TTL disables the caching of all the outcomes
+		if (maxCacheCapacity <= 0 || cacheTtl <= 0)
+			policy.setNegativeCache(0, 0).setTerminalCache(0, 0);
+
+		initialize(adapter, policy, executor);
+	}
 
-		instance = new DIDBackend(adapter, initialCacheCapacity,
-				maxCacheCapacity, cacheTtl);
+	/**
+	 * Initialize the DIDBackend with the given adapter and the cache
+	 * specification.
+	 *
+	 * @param adapter a DIDAdapter implementation
+	 * @param initialCacheCapacity the initial cache size
+	 * @param maxCacheCapacity the maximum cache capacity
+	 * @param cacheTtl the live time for the cached entries
+	 */
+	public static void initialize(DIDAdapter adapter,
+			int initialCacheCapacity, int maxCacheCapacity, int cacheTtl) {
+		initialize(adapter, initialCacheCapacity, maxCacheCapacity, cacheTtl, null);
 	}
 
 	/**
@@ -224,6 +697,20 @@ public class DIDBackend {
 				DEFAULT_CACHE_MAX_CAPACITY, DEFAULT_CACHE_TTL);
 	}
 
+	/**
+	 * Initialize the DIDBackend with the given adapter, the executor and
+	 * the default cache specification.
+	 *
+	 * @param adapter a DIDAdapter implementation
+	 * @param executor the executor for all the asynchronous operations,
+	 * 		  null to use the default bounded IO pool
+	 * @see DIDExecutor
+	 */
+	public static void initialize(DIDAdapter adapter, Executor executor) {
+		initialize(adapter, DEFAULT_CACHE_INITIAL_CAPACITY,
+				DEFAULT_CACHE_MAX_CAPACITY, DEFAULT_CACHE_TTL, executor);
+	}
+
 	/**
 	 * Check if the DIDBackend already initialized.
 	 *
@@ -234,67 +721,421 @@ public class DIDBackend {
 	}
 
 	/**
-	 * Get the previous initialized DIDBackend instance.
-	 *
-	 * @return the DIDBackend instance
+	 * Get the previous initialized DIDBackend instance.
+	 *
+	 * @return the DIDBackend instance
+	 */
+	public static DIDBackend getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Install the metrics that the DIDBackend and the DIDStores publish
+	 * the cache and resolver events to. The metrics is global, it is kept
+	 * when the DIDBackend re-initialized.
+	 *
+	 * @param metrics the DIDMetrics object, null to disable the metrics
+	 * @see org.elastos.did.metrics.InMemoryMetrics
+	 */
+	public static void setMetrics(DIDMetrics metrics) {
+		DIDBackend.metrics = metrics != null ? metrics : DIDMetrics.NOOP;
+	}
+
+	/**
+	 * Get the installed metrics.
+	 *
+	 * @return the DIDMetrics object, the no-op metrics if not installed
+	 */
+	public static DIDMetrics getMetrics() {
+		return metrics;
+	}
+
+	private String generateRequestId() {
+		byte[] bin = new byte[16];
+		random.nextBytes(bin);
+		return Hex.toHexString(bin);
+	}
+
+	private DIDAdapter getAdapter() {
+		return adapter;
+	}
+
+	/**
+	 * Set a local resolve handle for DID local resolving.
+	 *
+	 * <p>
+	 * The DIDBackend instance will remove the previous installed handle if
+	 * the handle is NULL, replace the previous handle otherwise.
+	 * </p>
+	 *
+	 * @param handle a ResolveHandle instance
+	 */
+	public void setResolveHandle(LocalResolveHandle handle) {
+		resolveHandle = handle;
+	}
+
+	/**
+	 * Set a disk backed second level cache for the DID and credential
+	 * resolve results.
+	 *
+	 * <p>
+	 * The in-memory cache misses are looked up in this cache before
+	 * accessing the ID chain, so the resolve results survive the restarts.
+	 * The DIDBackend instance will remove the previous installed cache if
+	 * the cache is NULL, replace the previous cache otherwise. The previous
+	 * cache is not closed.
+	 * </p>
+	 *
+	 * @param cache a PersistentResolveCache instance
+	 */
+	public void setPersistentCache(PersistentResolveCache cache) {
+		this.cache.setPersistentCache(cache);
+	}
+
+	/**
+	 * Get the disk backed second level cache.
+	 *
+	 * @return the PersistentResolveCache instance, or null if not set
+	 */
+	public PersistentResolveCache getPersistentCache() {
+		return cache.getPersistentCache();
+	}
+
+	/**
+	 * Get the policy of the resolve cache.
+	 *
+	 * @return the CachePolicy object
+	 */
+	public CachePolicy getCachePolicy() {
+		return cache.getPolicy().copy();
+	}
+
+	/**
+	 * Run the blocking task on the DIDBackend's executor.
+	 *
+	 * @param <T> the type of the task result
+	 * @param task the task to run
+	 * @return a new CompletableStage, the result is the task result
+	 */
+	static <T> CompletableFuture<T> supplyAsync(Task<T> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return task.call();
+			} catch (DIDException e) {
+				throw new CompletionException(e);
+			}
+		}, executor());
+	}
+
+	/**
+	 * Get a new CompletableStage that completed exceptionally with the
+	 * given exception.
+	 *
+	 * @param <T> the type of the result
+	 * @param e the exception
+	 * @return a new CompletableStage
+	 */
+	static <T> CompletableFuture<T> failedFuture(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	/**
+	 * Get the executor that runs the asynchronous operations of this
+	 * DIDBackend. The statistics of the executor are available by
+	 * {@link DIDExecutor#getStats()}.
+	 *
+	 * @return the DIDExecutor object
+	 */
+	public DIDExecutor getExecutor() {
+		return executor;
+	}
+
+	// The executor of the current instance, the default pool before initialized
+	private static DIDExecutor executor() {
+		DIDBackend backend = instance;
+		return backend != null ? backend.executor : DefaultExecutor.executor;
+	}
+
+	private ResolveResult<?> resolve(ResolveRequest<?, ?> request)
+			throws DIDResolveException {
+		log.debug("Resolving request {}...", request);
+
+		getMetrics().resolveStarted(request.getMethod());
+		return resolve(request, System.nanoTime());
+	}
+
+	// Resolve the request that already started in the metrics
+	private ResolveResult<?> resolve(ResolveRequest<?, ?> request, long start)
+			throws DIDResolveException {
+		DIDMetrics metrics = getMetrics();
+		String method = request.getMethod();
+		String outcome = DIDMetrics.OUTCOME_ERROR;
+		try {
+			String requestJson = request.serialize(true);
+			InputStream is;
+			try {
+				is = getAdapter().resolve(requestJson);
+			} catch (DIDResolveException | RuntimeException e) {
+				metrics.adapterError(method, e);
+				throw e;
+			}
+
+			ResolveResult<?> result = getResult(request, is);
+			outcome = getOutcomeName(result);
+			return result;
+		} finally {
+			metrics.resolveCompleted(method, outcome, System.nanoTime() - start);
+		}
+	}
+
+	private static String getOutcomeName(ResolveResult<?> result) {
+		switch (ResolveCache.getOutcome(result)) {
+		case NOT_FOUND:
+			return DIDMetrics.OUTCOME_NOT_FOUND;
+
+		case TERMINAL:
+			return DIDMetrics.OUTCOME_TERMINAL;
+
+		default:
+			return DIDMetrics.OUTCOME_VALID;
+		}
+	}
+
+	private static ResolveResult<?> getResult(ResolveRequest<?, ?> request,
+			InputStream is) throws DIDResolveException {
+		if (is == null)
+			throw new DIDResolveException("Unknown error, got null result.");
+
+		ResolveResponse<?, ?> response = null;
+		try {
+			response = ResolveResponse.parse(is, getResponseClass(request));
+		} catch (DIDSyntaxException | IOException e) {
+			throw new DIDResolveException(e);
+		} finally {
+			try {
+				is.close();
+			} catch (IOException ignore) {
+			}
+		}
+
+		return getResult(request, response);
+	}
+
+	private static Class<? extends ResolveResponse<?, ?>> getResponseClass(
+			ResolveRequest<?, ?> request) throws DIDResolveException {
+		switch (request.getMethod()) {
+		case DIDResolveRequest.METHOD_NAME:
+			return DIDResolveResponse.class;
+
+		case CredentialResolveRequest.METHOD_NAME:
+			return CredentialResolveResponse.class;
+
+		case CredentialListRequest.METHOD_NAME:
+			return CredentialListResponse.class;
+
+		default:
+			log.error("INTERNAL - unknown resolve method '{}'", request.getMethod());
+			throw new DIDResolveException("Unknown resolve method: " + request.getMethod());
+		}
+	}
+
+	private static ResolveResult<?> getResult(ResolveRequest<?, ?> request,
+			ResolveResponse<?, ?> response) throws DIDResolveException {
+		if (response.getResponseId() == null ||
+				!response.getResponseId().equals(request.getRequestId()))
+			throw new DIDResolveException("Mismatched resolve result with request.");
+
+		if (response.getResult() != null)
+			return response.getResult();
+		else
+			throw new DIDResolveException("Server error(" + response.getErrorCode()
+					+ "): " + response.getErrorMessage());
+	}
+
+	private CompletableFuture<InputStream> resolveAsync(String requestJson) {
+		DIDAdapter adapter = getAdapter();
+		if (adapter instanceof AsyncDIDAdapter) {
+			try {
+				CompletableFuture<InputStream> future =
+						((AsyncDIDAdapter)adapter).resolveAsync(requestJson);
+				if (future == null)
+					throw new DIDResolveException("Unknown error, got null result.");
+
+				return future;
+			} catch (Exception e) {
+				return failedFuture(e);
+			}
+		} else {
+			return supplyAsync(() -> adapter.resolve(requestJson));
+		}
+	}
+
+	/**
+	 * Resolve the request asynchronously, bypass the cache. The response
+	 * parsing may resolve the controllers, so it runs on the executor
+	 * rather than the thread that completes the adapter's future.
+	 */
+	private CompletableFuture<ResolveResult<?>> resolveAsync(ResolveRequest<?, ?> request) {
+		log.debug("Resolving request {} asynchronously...", request);
+
+		DIDMetrics metrics = getMetrics();
+		String method = request.getMethod();
+		metrics.resolveStarted(method);
+		long start = System.nanoTime();
+
+		return resolveAsync(request.serialize(true)).whenComplete((is, e) -> {
+			if (e != null)
+				metrics.adapterError(method, e instanceof CompletionException &&
+						e.getCause() != null ? e.getCause() : e);
+		}).<ResolveResult<?>>thenApplyAsync((is) -> {
+			try {
+				return getResult(request, is);
+			} catch (DIDResolveException e) {
+				throw new CompletionException(e);
+			}
+		}, executor()).whenComplete((result, e) -> {
+			metrics.resolveCompleted(method, e == null ? getOutcomeName(result) :
+					DIDMetrics.OUTCOME_ERROR, System.nanoTime() - start);
+		});
+	}
+
+	/**
+	 * Get the result from the cache, or resolve it asynchronously. The same
+	 * requests in flight share one adapter call.
+	 */
+	private CompletableFuture<ResolveResult<?>> resolveCachedAsync(
+			ResolveRequest<?, ?> request, boolean force) {
+		if (force) {
+			cache.invalidate(request);
+		} else {
+			ResolveResult<?> result = cache.getIfPresent(request);
+			if (result != null)
+				return CompletableFuture.completedFuture(result);
+		}
+
+		CompletableFuture<ResolveResult<?>> future = new CompletableFuture<ResolveResult<?>>();
+		CompletableFuture<ResolveResult<?>> pending = pendings.putIfAbsent(request, future);
+		if (pending == null) {
+			pending = future;
+			resolveAsync(request).whenComplete((result, e) -> {
+				if (e == null)
+					cache.put(request, result);
+
+				pendings.remove(request, future);
+
+				if (e == null)
+					future.complete(result);
+				else
+					future.completeExceptionally(e instanceof CompletionException &&
+							e.getCause() != null ? e.getCause() : e);
+			});
+		}
+
+		// A dependent stage, the callers can not complete the shared future
+		return pending.thenApply((result) -> result);
+	}
+
+	/**
+	 * Resolve the requests in one JSON-RPC batch if the adapter supports,
+	 * or one by one otherwise.
 	 */
-	public static DIDBackend getInstance() {
-		return instance;
-	}
+	private Map<ResolveRequest<?, ?>, ResolveResult<?>> resolve(
+			List<ResolveRequest<?, ?>> requests) throws DIDResolveException {
+		Map<ResolveRequest<?, ?>, ResolveResult<?>> results =
+				new HashMap<ResolveRequest<?, ?>, ResolveResult<?>>();
+
+		if (requests.size() > 1 && !batchUnsupported &&
+				getAdapter() instanceof BatchDIDAdapter) {
+			log.debug("Resolving {} requests in batch...", requests.size());
+
+			Map<String, ResolveRequest<?, ?>> pending =
+					new HashMap<String, ResolveRequest<?, ?>>();
+			StringBuilder batch = new StringBuilder(requests.size() * 128);
+			batch.append('[');
+			for (ResolveRequest<?, ?> request : requests) {
+				if (batch.length() > 1)
+					batch.append(',');
+
+				batch.append(request.serialize(true));
+				pending.put(request.getRequestId(), request);
+			}
+			batch.append(']');
 
-	private String generateRequestId() {
-		byte[] bin = new byte[16];
-		random.nextBytes(bin);
-		return Hex.toHexString(bin);
-	}
+			// Each request in the batch completes with the batch latency
+			DIDMetrics metrics = getMetrics();
+			for (ResolveRequest<?, ?> request : requests)
+				metrics.resolveStarted(request.getMethod());
+			long start = System.nanoTime();
 
-	private DIDAdapter getAdapter() {
-		return adapter;
+			boolean batched = false;
+			try {
+				batched = resolveBatch(batch.toString(), pending, results) != null;
+			} catch (DIDResolveException | RuntimeException e) {
+				completeAll(requests.iterator(), results, start);
+				throw e;
+			}
+
+			if (batched) {
+				completeAll(requests.iterator(), results, start);
+				return results;
+			}
+
+			// Not supported, the started requests complete one by one
+			Iterator<ResolveRequest<?, ?>> it = requests.iterator();
+			try {
+				while (it.hasNext()) {
+					ResolveRequest<?, ?> request = it.next();
+					results.put(request, resolve(request, start));
+				}
+			} finally {
+				// The rest are never resolved after a failure
+				completeAll(it, results, start);
+			}
+
+			return results;
+		}
+
+		for (ResolveRequest<?, ?> request : requests)
+			results.put(request, resolve(request));
+
+		return results;
 	}
 
-	/**
-	 * Set a local resolve handle for DID local resolving.
-	 *
-	 * <p>
-	 * The DIDBackend instance will remove the previous installed handle if
-	 * the handle is NULL, replace the previous handle otherwise.
-	 * </p>
-	 *
-	 * @param handle a ResolveHandle instance
-	 */
-	public void setResolveHandle(LocalResolveHandle handle) {
-		resolveHandle = handle;
+	// Complete the started requests with the batch latency
+	private static void completeAll(Iterator<ResolveRequest<?, ?>> requests,
+			Map<ResolveRequest<?, ?>, ResolveResult<?>> results, long start) {
+		DIDMetrics metrics = getMetrics();
+		long elapsed = System.nanoTime() - start;
+		while (requests.hasNext()) {
+			ResolveRequest<?, ?> request = requests.next();
+			ResolveResult<?> result = results.get(request);
+			metrics.resolveCompleted(request.getMethod(), result != null ?
+					getOutcomeName(result) : DIDMetrics.OUTCOME_ERROR, elapsed);
+		}
 	}
 
-	private ResolveResult<?> resolve(ResolveRequest<?, ?> request)
+	// Returns null if the resolver not supports the batch request
+	private Map<ResolveRequest<?, ?>, ResolveResult<?>> resolveBatch(String batch,
+			Map<String, ResolveRequest<?, ?>> pending,
+			Map<ResolveRequest<?, ?>, ResolveResult<?>> results)
 			throws DIDResolveException {
-		log.debug("Resolving request {}...", request);
+		InputStream is;
+		try {
+			is = ((BatchDIDAdapter)getAdapter()).resolveBatch(batch);
+		} catch (DIDResolveException | RuntimeException e) {
+			getMetrics().adapterError(DIDMetrics.METHOD_BATCH, e);
+			throw e;
+		}
 
-		String requestJson = request.serialize(true);
-		InputStream is = getAdapter().resolve(requestJson);
 		if (is == null)
 			throw new DIDResolveException("Unknown error, got null result.");
 
-		ResolveResponse<?, ?> response = null;
+		JsonNode responses;
 		try {
-			switch (request.getMethod()) {
-			case DIDResolveRequest.METHOD_NAME:
-				response = DIDResolveResponse.parse(is, DIDResolveResponse.class);
-				break;
-
-			case CredentialResolveRequest.METHOD_NAME:
-				response = CredentialResolveResponse.parse(is, CredentialResolveResponse.class);
-				break;
-
-			case CredentialListRequest.METHOD_NAME:
-				response = CredentialListResponse.parse(is, CredentialListResponse.class);
-				break;
-
-			default:
-				log.error("INTERNAL - unknown resolve method '{}'", request.getMethod());
-				throw new DIDResolveException("Unknown resolve method: " + request.getMethod());
-			}
-		} catch (DIDSyntaxException | IOException e) {
+			responses = DIDEntity.getObjectMapper().readTree(is);
+		} catch (IOException e) {
 			throw new DIDResolveException(e);
 		} finally {
 			try {
@@ -303,15 +1144,78 @@ public class DIDBackend {
 			}
 		}
 
-		if (response.getResponseId() == null ||
-				!response.getResponseId().equals(request.getRequestId()))
-			throw new DIDResolveException("Mismatched resolve result with request.");
+		if (responses.isArray()) {
+			for (JsonNode node : responses) {
+				// "id" is the JSON-RPC response id
+				JsonNode id = node.get("id");
+				ResolveRequest<?, ?> request = id == null ?
+						null : pending.remove(id.asText());
+				if (request == null)
+					throw new DIDResolveException("Mismatched resolve result with request.");
+
+				ResolveResponse<?, ?> response;
+				try {
+					response = DIDEntity.parse(node, getResponseClass(request));
+				} catch (DIDSyntaxException e) {
+					throw new DIDResolveException(e);
+				}
 
-		if (response.getResult() != null)
-			return response.getResult();
-		else
-			throw new DIDResolveException("Server error(" + response.getErrorCode()
-					+ "): " + response.getErrorMessage());
+				results.put(request, getResult(request, response));
+			}
+
+			if (!pending.isEmpty())
+				throw new DIDResolveException("Missing resolve results in the batch response.");
+
+			return results;
+		}
+
+		// The resolver answers the batch with a single error object. Only the
+		// JSON-RPC invalid request or method not found means the batch is not
+		// supported, the other errors may be transient
+		int code = responses.path("error").path("code").asInt();
+		if (code == JSONRPC_INVALID_REQUEST || code == JSONRPC_METHOD_NOT_FOUND) {
+			log.warn("The resolver not support the batch request, fall back to resolve one by one.");
+			batchUnsupported = true;
+		} else {
+			log.warn("The batch request failed with {}, resolve one by one this time.",
+					responses);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Get the results from the cache, resolve all the cache misses at once.
+	 */
+	private Map<ResolveRequest<?, ?>, ResolveResult<?>> resolveCached(
+			List<ResolveRequest<?, ?>> requests, boolean force)
+			throws DIDResolveException {
+		Map<ResolveRequest<?, ?>, ResolveResult<?>> results =
+				new HashMap<ResolveRequest<?, ?>, ResolveResult<?>>();
+		List<ResolveRequest<?, ?>> misses = new ArrayList<ResolveRequest<?, ?>>();
+
+		for (ResolveRequest<?, ?> request : requests) {
+			if (force) {
+				cache.invalidate(request);
+			} else {
+				ResolveResult<?> result = cache.getIfPresent(request);
+				if (result != null) {
+					results.put(request, result);
+					continue;
+				}
+			}
+
+			misses.add(request);
+		}
+
+		if (!misses.isEmpty()) {
+			Map<ResolveRequest<?, ?>, ResolveResult<?>> resolved = resolve(misses);
+			cache.putAll(resolved);
+
+			results.putAll(resolved);
+		}
+
+		return results;
 	}
 
 	private DIDBiography resolveDidBiography(DID did, boolean all, boolean force)
@@ -324,11 +1228,7 @@ public class DIDBackend {
 		if (force)
 			cache.invalidate(request);
 
-		try {
-			return (DIDBiography)cache.get(request);
-		} catch (ExecutionException e) {
-			throw new DIDResolveException(e);
-		}
+		return (DIDBiography)cache.get(request);
 	}
 
 	/**
@@ -346,6 +1246,28 @@ public class DIDBackend {
 		return rr;
 	}
 
+	private CompletableFuture<DIDBiography> resolveDidBiographyAsync(DID did,
+			boolean all, boolean force) {
+		log.info("Resolving DID {} asynchronously, all={}...", did.toString(), all);
+
+		DIDResolveRequest request = new DIDResolveRequest(generateRequestId());
+		request.setParameters(did, all);
+
+		return resolveCachedAsync(request, force).thenApply((rr) -> (DIDBiography)rr);
+	}
+
+	/**
+	 * Resolve all transactions for a specific DID in asynchronous mode.
+	 *
+	 * @param did the DID object to be resolve
+	 * @return a new CompletableStage, the result is the DIDBiography object,
+	 * 		   or null if the DID not exists
+	 */
+	protected CompletableFuture<DIDBiography> resolveDidBiographyAsync(DID did) {
+		return resolveDidBiographyAsync(did, true, false).thenApply((rr) ->
+				rr.getStatus() == DIDBiography.Status.NOT_FOUND ? null : rr);
+	}
+
 	/**
 	 * Resolve the specific DID.
 	 *
@@ -365,8 +1287,38 @@ public class DIDBackend {
 				return doc;
 		}
 
-		DIDBiography bio = resolveDidBiography(did, false, force);
+		return getDocument(resolveDidBiography(did, false, force));
+	}
+
+	// Get the current DID document from the DID biography
+	private DIDDocument getDocument(DIDBiography bio) throws DIDResolveException {
+		if (bio.getStatus() == DIDBiography.Status.NOT_FOUND)
+			return null;
+
+		DIDDocument doc = validatedDocs.getIfPresent(bio);
+		if (doc == null) {
+			// Verify the transaction signatures immediately, even in a batch
+			BatchVerifier batch = BatchVerifier.suspend();
+			try {
+				doc = validateDocument(bio);
+			} finally {
+				BatchVerifier.resume(batch);
+			}
+
+			// Only cache the results validated outside of a batch
+			if (!BatchVerifier.isActive())
+				validatedDocs.put(bio, doc);
+		}
+
+		// NOTICE: Make a copy from DIDBackend cache.
+		// 		   Avoid share same DIDDocument instance between DIDBackend
+		//         cache and DIDStore cache. The clone shares the immutable
+		//         document content, only the metadata will be copied.
+		return doc.clone();
+	}
 
+	// Verify the DID biography and get the current DID document
+	private DIDDocument validateDocument(DIDBiography bio) throws DIDResolveException {
 		DIDTransaction tx = null;
 		switch (bio.getStatus()) {
 		case VALID:
@@ -411,9 +1363,6 @@ public class DIDBackend {
 		if (!tx.getRequest().isValid())
 			throw new DIDResolveException("Invalid ID transaction, signature mismatch.");
 
-		// NOTICE: Make a copy from DIDBackend cache.
-		// 		   Avoid share same DIDDocument instance between DIDBackend
-		//         cache and DIDStore cache.
 		DIDDocument doc = tx.getRequest().getDocument().clone();
 		DIDMetadata metadata = doc.getMetadata();
 		metadata.setTransactionId(tx.getTransactionId());
@@ -436,6 +1385,141 @@ public class DIDBackend {
 		return resolveDid(did, false);
 	}
 
+	/**
+	 * Resolve the specific DID in asynchronous mode.
+	 *
+	 * <p>
+	 * The adapter call does not hold any thread if the adapter is an
+	 * AsyncDIDAdapter, the blocking adapter runs on the DIDBackend's
+	 * executor otherwise.
+	 * </p>
+	 *
+	 * @param did the DID object to be resolve
+	 * @param force ignore the local cache and resolve from the ID chain if true;
+	 * 		  		try to use cache first if false.
+	 * @return a new CompletableStage, the result is the DIDDocument object
+	 */
+	protected CompletableFuture<DIDDocument> resolveDidAsync(DID did, boolean force) {
+		log.debug("Resolving DID {} asynchronously...", did.toString());
+
+		if (resolveHandle != null) {
+			DIDDocument doc = resolveHandle.resolve(did);
+			if (doc != null)
+				return CompletableFuture.completedFuture(doc);
+		}
+
+		return resolveDidBiographyAsync(did, false, force).thenApply((bio) -> {
+			try {
+				return getDocument(bio);
+			} catch (DIDResolveException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Resolve the specific DID in asynchronous mode.
+	 *
+	 * @param did the DID object to be resolve
+	 * @return a new CompletableStage, the result is the DIDDocument object
+	 */
+	protected CompletableFuture<DIDDocument> resolveDidAsync(DID did) {
+		return resolveDidAsync(did, false);
+	}
+
+	/**
+	 * Load the DIDs that not in the cache asynchronously, then the later
+	 * resolves of these DIDs will not access the network.
+	 *
+	 * @param dids the DIDs to be load
+	 * @return a new CompletableStage that completes when all the DIDs loaded
+	 */
+	CompletableFuture<Void> prefetchDids(Collection<DID> dids) {
+		List<CompletableFuture<DIDBiography>> futures =
+				new ArrayList<CompletableFuture<DIDBiography>>(dids.size());
+
+		for (DID did : dids) {
+			if (did == null)
+				continue;
+
+			if (resolveHandle != null && resolveHandle.resolve(did) != null)
+				continue;
+
+			futures.add(resolveDidBiographyAsync(did, false, false));
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * Resolve the specific DIDs.
+	 *
+	 * <p>
+	 * The DIDs not in the cache will be resolved at once, in one JSON-RPC
+	 * batch if the adapter is a BatchDIDAdapter.
+	 * </p>
+	 *
+	 * @param dids the DIDs to be resolve
+	 * @param force ignore the local cache and resolve from the ID chain if true;
+	 * 		  		try to use cache first if false.
+	 * @return a map from the DIDs to the resolved DIDDocument objects in the
+	 * 		   given order, the DIDs that not exist are mapped to null
+	 * @throws DIDResolveException if an error occurred when resolving DIDs
+	 */
+	public Map<DID, DIDDocument> resolveDids(Collection<DID> dids, boolean force)
+			throws DIDResolveException {
+		checkArgument(dids != null, "Invalid dids");
+
+		log.debug("Resolving {} DIDs...", dids.size());
+
+		Map<DID, DIDDocument> docs = new LinkedHashMap<DID, DIDDocument>();
+		Map<DID, DIDResolveRequest> requests = new LinkedHashMap<DID, DIDResolveRequest>();
+		for (DID did : dids) {
+			checkArgument(did != null, "Invalid did");
+
+			if (docs.containsKey(did))
+				continue;
+
+			docs.put(did, null);
+
+			if (resolveHandle != null) {
+				DIDDocument doc = resolveHandle.resolve(did);
+				if (doc != null) {
+					docs.put(did, doc);
+					continue;
+				}
+			}
+
+			DIDResolveRequest request = new DIDResolveRequest(generateRequestId());
+			request.setParameters(did, false);
+			requests.put(did, request);
+		}
+
+		Map<ResolveRequest<?, ?>, ResolveResult<?>> results =
+				resolveCached(new ArrayList<ResolveRequest<?, ?>>(requests.values()), force);
+
+		for (Map.Entry<DID, DIDResolveRequest> entry : requests.entrySet()) {
+			DIDBiography bio = (DIDBiography)results.get(entry.getValue());
+			docs.put(entry.getKey(), getDocument(bio));
+		}
+
+		return Collections.unmodifiableMap(docs);
+	}
+
+	/**
+	 * Resolve the specific DIDs.
+	 *
+	 * @param dids the DIDs to be resolve
+	 * @return a map from the DIDs to the resolved DIDDocument objects in the
+	 * 		   given order, the DIDs that not exist are mapped to null
+	 * @throws DIDResolveException if an error occurred when resolving DIDs
+	 * @see #resolveDids(Collection, boolean)
+	 */
+	public Map<DID, DIDDocument> resolveDids(Collection<DID> dids)
+			throws DIDResolveException {
+		return resolveDids(dids, false);
+	}
+
 	private CredentialBiography resolveCredentialBiography(DIDURL id, DID issuer, boolean force)
 			throws DIDResolveException {
 		log.info("Resolving credential {}, issuer={}...", id, issuer);
@@ -446,11 +1530,7 @@ public class DIDBackend {
 		if (force)
 			cache.invalidate(request);
 
-		try {
-			return (CredentialBiography)cache.get(request);
-		} catch (ExecutionException e) {
-			throw new DIDResolveException(e);
-		}
+		return (CredentialBiography)cache.get(request);
 	}
 
 	/**
@@ -515,8 +1595,36 @@ public class DIDBackend {
 			throws DIDResolveException {
 		log.debug("Resolving credential {}...", id);
 
-		CredentialBiography bio = resolveCredentialBiography(id, issuer, force);
+		return getCredential(resolveCredentialBiography(id, issuer, force));
+	}
+
+	// Get the credential from the credential biography
+	private VerifiableCredential getCredential(CredentialBiography bio)
+			throws DIDResolveException {
+		if (bio.getStatus() == CredentialBiography.Status.NOT_FOUND)
+			return null;
+
+		Optional<VerifiableCredential> vc = validatedVcs.getIfPresent(bio);
+		if (vc == null) {
+			// Verify the transaction signatures immediately, even in a batch
+			BatchVerifier batch = BatchVerifier.suspend();
+			try {
+				vc = Optional.ofNullable(validateCredential(bio));
+			} finally {
+				BatchVerifier.resume(batch);
+			}
+
+			// Only cache the results validated outside of a batch
+			if (!BatchVerifier.isActive())
+				validatedVcs.put(bio, vc);
+		}
+
+		return vc.orElse(null);
+	}
 
+	// Verify the credential biography and get the declared credential
+	private VerifiableCredential validateCredential(CredentialBiography bio)
+			throws DIDResolveException {
 		CredentialTransaction tx = null;
 		switch (bio.getStatus()) {
 		case VALID:
@@ -616,6 +1724,116 @@ public class DIDBackend {
 		return resolveCredential(id, null, false);
 	}
 
+	/**
+	 * Resolve the all the credential transactions in asynchronous mode.
+	 *
+	 * @param id the credential id
+	 * @param issuer an optional issuer'd DID
+	 * @return a new CompletableStage, the result is the CredentialBiography
+	 * 		   object
+	 * @see #resolveCredentialBiography(DIDURL, DID)
+	 */
+	protected CompletableFuture<CredentialBiography> resolveCredentialBiographyAsync(
+			DIDURL id, DID issuer) {
+		return resolveCredentialBiographyAsync(id, issuer, false);
+	}
+
+	private CompletableFuture<CredentialBiography> resolveCredentialBiographyAsync(
+			DIDURL id, DID issuer, boolean force) {
+		log.info("Resolving credential {} asynchronously, issuer={}...", id, issuer);
+
+		CredentialResolveRequest request = new CredentialResolveRequest(generateRequestId());
+		request.setParameters(id, issuer);
+
+		return resolveCachedAsync(request, force).thenApply((rr) -> (CredentialBiography)rr);
+	}
+
+	/**
+	 * Resolve the specific credential in asynchronous mode.
+	 *
+	 * @param id the credential id
+	 * @param issuer an optional issuer'd DID
+	 * @param force ignore the local cache and resolve from the ID chain if true;
+	 * 		  		try to use cache first if false.
+	 * @return a new CompletableStage, the result is the VerifiableCredential
+	 * 		   object
+	 */
+	protected CompletableFuture<VerifiableCredential> resolveCredentialAsync(
+			DIDURL id, DID issuer, boolean force) {
+		log.debug("Resolving credential {} asynchronously...", id);
+
+		return resolveCredentialBiographyAsync(id, issuer, force).thenApply((bio) -> {
+			try {
+				return getCredential(bio);
+			} catch (DIDResolveException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Resolve the specific credentials.
+	 *
+	 * <p>
+	 * The credentials not in the cache will be resolved at once, in one
+	 * JSON-RPC batch if the adapter is a BatchDIDAdapter.
+	 * </p>
+	 *
+	 * @param ids the credential ids
+	 * @param force ignore the local cache and resolve from the ID chain if true;
+	 * 		  		try to use cache first if false.
+	 * @return a map from the ids to the resolved VerifiableCredential objects
+	 * 		   in the given order, the credentials that not declared or
+	 * 		   revoked without declaration are mapped to null
+	 * @throws DIDResolveException if an error occurred when resolving the credentials
+	 */
+	public Map<DIDURL, VerifiableCredential> resolveCredentials(
+			Collection<DIDURL> ids, boolean force) throws DIDResolveException {
+		checkArgument(ids != null, "Invalid credential ids");
+
+		log.debug("Resolving {} credentials...", ids.size());
+
+		Map<DIDURL, CredentialResolveRequest> requests =
+				new LinkedHashMap<DIDURL, CredentialResolveRequest>();
+		for (DIDURL id : ids) {
+			checkArgument(id != null, "Invalid credential id");
+
+			if (requests.containsKey(id))
+				continue;
+
+			CredentialResolveRequest request = new CredentialResolveRequest(generateRequestId());
+			request.setParameters(id, null);
+			requests.put(id, request);
+		}
+
+		Map<ResolveRequest<?, ?>, ResolveResult<?>> results =
+				resolveCached(new ArrayList<ResolveRequest<?, ?>>(requests.values()), force);
+
+		Map<DIDURL, VerifiableCredential> vcs =
+				new LinkedHashMap<DIDURL, VerifiableCredential>();
+		for (Map.Entry<DIDURL, CredentialResolveRequest> entry : requests.entrySet()) {
+			CredentialBiography bio = (CredentialBiography)results.get(entry.getValue());
+			vcs.put(entry.getKey(), getCredential(bio));
+		}
+
+		return Collections.unmodifiableMap(vcs);
+	}
+
+	/**
+	 * Resolve the specific credentials.
+	 *
+	 * @param ids the credential ids
+	 * @return a map from the ids to the resolved VerifiableCredential objects
+	 * 		   in the given order, the credentials that not declared or
+	 * 		   revoked without declaration are mapped to null
+	 * @throws DIDResolveException if an error occurred when resolving the credentials
+	 * @see #resolveCredentials(Collection, boolean)
+	 */
+	public Map<DIDURL, VerifiableCredential> resolveCredentials(
+			Collection<DIDURL> ids) throws DIDResolveException {
+		return resolveCredentials(ids, false);
+	}
+
 	/**
 	 * List the declared credentials that owned by the specific DID from
 	 * the ID chain.
@@ -642,6 +1860,34 @@ public class DIDBackend {
 		return list.getCredentialIds();
 	}
 
+	/**
+	 * List the declared credentials that owned by the specific DID from
+	 * the ID chain in asynchronous mode.
+	 *
+	 * @param did the target DID
+	 * @param skip set to skip N credentials ahead in this request
+	 * 		  (useful for pagination).
+	 * @param limit set the limit of credentials returned in the request
+	 * 		  (useful for pagination).
+	 * @return a new CompletableStage, the result is an array of DIDURL
+	 * 		   denoting the credentials
+	 */
+	protected CompletableFuture<List<DIDURL>> listCredentialsAsync(DID did,
+			int skip, int limit) {
+		log.info("List credentials for {} asynchronously", did);
+
+		CredentialListRequest request = new CredentialListRequest(generateRequestId());
+		request.setParameters(did, skip, limit);
+
+		return resolveAsync(request).thenApply((rr) -> {
+			CredentialList list = (CredentialList)rr;
+			if (list == null || list.size() == 0)
+				return null;
+
+			return list.getCredentialIds();
+		});
+	}
+
 	private void createTransaction(IDChainRequest<?> request,
 			DIDTransactionAdapter adapter) throws DIDTransactionException {
 		log.info("Create ID transaction...");
@@ -682,6 +1928,8 @@ public class DIDBackend {
 	 */
 	public void clearCache() {
 		cache.invalidateAll();
+		validatedDocs.invalidateAll();
+		validatedVcs.invalidateAll();
 	}
 
 	/**
@@ -40,10 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 
 import org.elastos.did.crypto.Base58;
-import org.elastos.did.crypto.Base64;
 import org.elastos.did.crypto.EcdsaSigner;
 import org.elastos.did.crypto.HDKey;
 import org.elastos.did.exception.AlreadySealedException;
@@ -53,7 +51,6 @@ import org.elastos.did.exception.DIDAlreadyExistException;
 import org.elastos.did.exception.DIDBackendException;
 import org.elastos.did.exception.DIDControllersChangedException;
 import org.elastos.did.exception.DIDDeactivatedException;
-import org.elastos.did.exception.DIDException;
 import org.elastos.did.exception.DIDExpiredException;
 import org.elastos.did.exception.DIDNotFoundException;
 import org.elastos.did.exception.DIDNotGenuineException;
@@ -80,6 +77,7 @@ import org.elastos.did.jwt.KeyProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
@@ -124,6 +122,7 @@ import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 	DIDDocument.SERVICE,
 	DIDDocument.EXPIRES,
 	DIDDocument.PROOF })
+@JsonFilter("didDocumentFilter")
 public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	protected final static String ID = "id";
 	protected final static String PUBLICKEY = "publicKey";
@@ -328,6 +327,13 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		@JsonProperty(PUBLICKEY_BASE58)
 		private String keyBase58;
 
+		// Lazy decoded key material, the key is immutable. The documents are
+		// shared by the resolve caches, so publish them safely; a racing
+		// decode just computes the same value twice
+		private volatile byte[] keyBytes;
+		private volatile ECPublicKeyParameters keyParams;
+		private volatile java.security.PublicKey jceKey;
+
 		/**
 		 * Constructs a PublicKey instance with the given values.
 		 *
@@ -391,7 +397,42 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		 * @return a bytes array of binary public key
 		 */
 		public byte[] getPublicKeyBytes() {
-			return Base58.decode(keyBase58);
+			return getDecodedKey().clone();
+		}
+
+		private byte[] getDecodedKey() {
+			byte[] bytes = keyBytes;
+			if (bytes == null)
+				keyBytes = bytes = Base58.decode(keyBase58);
+
+			return bytes;
+		}
+
+		/**
+		 * Get the decoded EC public key parameters, used by the signature
+		 * verification.
+		 *
+		 * @return the EC public key parameters
+		 */
+		ECPublicKeyParameters getPublicKeyParameters() {
+			ECPublicKeyParameters params = keyParams;
+			if (params == null)
+				keyParams = params = EcdsaSigner.decodePublicKey(getDecodedKey());
+
+			return params;
+		}
+
+		/**
+		 * Get the JCE public key object.
+		 *
+		 * @return the JCE public key
+		 */
+		java.security.PublicKey getJCEPublicKey() {
+			java.security.PublicKey key = jceKey;
+			if (key == null)
+				jceKey = key = HDKey.toJCEPublicKey(getPublicKeyParameters());
+
+			return key;
 		}
 
 		/**
@@ -529,7 +570,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 			@Override
 			public void serialize(PublicKeyReference keyRef, JsonGenerator gen,
 					SerializerProvider provider) throws IOException {
-				gen.writeObject(keyRef.getId());
+				provider.defaultSerializeValue(keyRef.getId(), gen);
 			}
 		}
 
@@ -702,6 +743,8 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		private DIDURL creator;
 		@JsonProperty(SIGNATURE_VALUE)
 		private String signature;
+		// Lazy decoded signature, see getSignatureBytes()
+		private volatile byte[] signatureBytes;
 
 		/**
 		 * Constructs a Proof object with the given values.
@@ -768,6 +811,14 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 			return signature;
 		}
 
+		byte[] getSignatureBytes() {
+			byte[] bytes = signatureBytes;
+			if (bytes == null)
+				signatureBytes = bytes = decodeSignature(signature);
+
+			return bytes;
+		}
+
 		/**
 		 * Compares this Proof with the specified Proof object.
 		 *
@@ -813,37 +864,6 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		this.subject = subject;
 	}
 
-	/**
-	 * Copy constructor.
-	 *
-	 * @param doc the document be copied
-	 * @param withProof copy with the proof or not
-	 */
-	private DIDDocument(DIDDocument doc, boolean withProof) {
-		this.subject = doc.subject;
-		this.controllers = doc.controllers;
-		this.controllerDocs = doc.controllerDocs;
-		this.effectiveController = doc.effectiveController;
-		this.multisig = doc.multisig;
-		this.publicKeys = doc.publicKeys;
-		this.authenticationKeys = doc.authenticationKeys;
-		this.authorizationKeys = doc.authorizationKeys;
-		this._publickeys = doc._publickeys;
-		this._authentications = doc._authentications;
-		this._authorizations = doc._authorizations;
-		this.defaultPublicKey = doc.defaultPublicKey;
-		this.credentials = doc.credentials;
-		this._credentials = doc._credentials;
-		this.services = doc.services;
-		this._services = doc._services;
-		this.expires = doc.expires;
-		if (withProof) {
-			this.proofs = doc.proofs;
-			this._proofs = doc._proofs;
-		}
-		this.metadata = doc.metadata;
-	}
-
 	/**
 	 * Get subject of this DIDDocument.
 	 *
@@ -1201,10 +1221,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 				throw new InvalidKeyException(id.toString());
 		}
 
-		HDKey key = HDKey.deserialize(HDKey.paddingToExtendedPublicKey(
-				pk.getPublicKeyBytes()));
-
-		return key.getJCEKeyPair();
+		return new KeyPair(pk.getJCEPublicKey(), null);
 	}
 
 	/**
@@ -2099,6 +2116,10 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		Collections.sort(this._proofs);
 	}
 
+	static PropertyFilter getFilter() {
+		return new DIDPropertyFilter();
+	}
+
 	/**
 	 * Set the metadata object for this DIDDocument.
 	 *
@@ -2188,9 +2209,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 			return false;
 		}
 
-		DIDDocument doc = new DIDDocument(this, false);
-		String json = doc.serialize(true);
-		byte[] digest = EcdsaSigner.sha256Digest(json.getBytes());
+		byte[] digest = getDigest();
 
 		// Document should signed(only) by default public key.
 		if (!isCustomizedDid()) {
@@ -2217,7 +2236,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 				return false;
 			}
 
-			boolean result = verifyDigest(proof.getCreator(), proof.getSignature(), digest);
+			boolean result = verifySignature(proof.getCreator(), proof.getSignatureBytes(), digest);
 			if (listener != null) {
 				if (result) {
 					listener.succeeded(this, "%s: is genuine", getSubject());
@@ -2272,7 +2291,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 					return false;
 				}
 
-				if (!controllerDoc.verifyDigest(proof.getCreator(), proof.getSignature(), digest)) {
+				if (!controllerDoc.verifySignature(proof.getCreator(), proof.getSignatureBytes(), digest)) {
 					if (listener != null) {
 						listener.failed(this, "%s: proof '%s' is invalid, signature mismatch",
 								getSubject(), proof.getCreator());
@@ -2299,6 +2318,25 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		return isGenuine(null);
 	}
 
+	/**
+	 * Check whether the given DIDDocuments are genuine. The signatures of
+	 * all the documents are verified in one batch by
+	 * {@link EcdsaSigner#verifyAll(List)}.
+	 *
+	 * @param docs the DIDDocuments to be checked
+	 * @return the results in the same order of the documents
+	 */
+	public static boolean[] isGenuineBatch(List<DIDDocument> docs) {
+		checkArgument(docs != null, "Invalid documents");
+
+		try {
+			return BatchVerifier.isGenuine(docs, (doc) -> doc.isGenuine());
+		} catch (DIDResolveException ignore) {
+			// Should never happen
+			throw new UnknownInternalException(ignore);
+		}
+	}
+
 	/**
 	 * Check if this DIDDocument is deactivated.
 	 *
@@ -2415,6 +2453,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		doc.proofs = proofs;
 		doc._proofs = _proofs;
 		doc.metadata = getMetadata().clone();
+		doc.shareDigest(this);
 
 		return doc;
 	}
@@ -2542,6 +2581,10 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		checkArgument(digest != null && digest.length > 0, "Invalid digest");
 		checkAttachedStore();
 
+		return getMetadata().getStore().sign(getSignKey(id), storepass, digest);
+	}
+
+	private DIDURL getSignKey(DIDURL id) {
 		PublicKey pk = id != null ? getPublicKey(id) : getDefaultPublicKey();
 		if (pk == null) {
 			if (id != null)
@@ -2550,7 +2593,7 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 				throw new NoEffectiveControllerException(getSubject().toString());
 		}
 
-		return getMetadata().getStore().sign(pk.getId(), storepass, digest);
+		return pk.getId();
 	}
 
 	/**
@@ -2580,6 +2623,71 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		return signDigest((DIDURL)null, storepass, digest);
 	}
 
+	/**
+	 * Sign the data by the specified key, using the unlocked session of the
+	 * DIDStore instead of the password.
+	 *
+	 * @param id the key id to sign the data
+	 * @param session the unlocked session of the DIDStore
+	 * @param data the data be signed
+	 * @return the signature string
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public String sign(DIDURL id, DIDStore.Session session, byte[] ... data)
+			throws DIDStoreException {
+		checkArgument(data != null && data.length > 0, "Invalid input data");
+
+		byte[] digest = EcdsaSigner.sha256Digest(data);
+		return signDigest(id, session, digest);
+	}
+
+	/**
+	 * Sign the data using the default key, using the unlocked session of
+	 * the DIDStore instead of the password.
+	 *
+	 * @param session the unlocked session of the DIDStore
+	 * @param data the data be signed
+	 * @return the signature string
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public String sign(DIDStore.Session session, byte[] ... data)
+			throws DIDStoreException {
+		return sign((DIDURL)null, session, data);
+	}
+
+	/**
+	 * Sign the digest by the specified key, using the unlocked session of
+	 * the DIDStore instead of the password.
+	 *
+	 * @param id the key id to sign the data
+	 * @param session the unlocked session of the DIDStore
+	 * @param digest the raw digest to be signed
+	 * @return the signature string
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public String signDigest(DIDURL id, DIDStore.Session session, byte[] digest)
+			throws DIDStoreException {
+		checkArgument(session != null, "Invalid session");
+		checkArgument(digest != null && digest.length > 0, "Invalid digest");
+		checkAttachedStore();
+
+		return getMetadata().getStore().sign(getSignKey(id), session, digest);
+	}
+
+	/**
+	 * Sign the digest by the default key, using the unlocked session of the
+	 * DIDStore instead of the password.
+	 *
+	 * @param session the unlocked session of the DIDStore
+	 * @param digest the raw digest to be signed
+	 * @return the signature string
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public String signDigest(DIDStore.Session session, byte[] digest)
+			throws DIDStoreException {
+		return signDigest((DIDURL)null, session, digest);
+	}
+
 	/**
 	 * Verify the signature by the specific key and the data.
 	 *
@@ -2631,6 +2739,12 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		checkArgument(signature != null && !signature.isEmpty(), "Invalid signature");
 		checkArgument(digest != null && digest.length > 0, "Invalid digest");
 
+		return verifySignature(id, decodeSignature(signature), digest);
+	}
+
+	// Verify the already decoded signature, used by the proof verification
+	// that caches the decoded signature bytes.
+	boolean verifySignature(DIDURL id, byte[] signature, byte[] digest) {
 		PublicKey pk = id != null ? getPublicKey(id) : getDefaultPublicKey();
 		if (pk == null) {
 			if (id != null)
@@ -2639,11 +2753,11 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 				throw new InvalidKeyException("No explicit publicKey");
 		}
 
-		byte[] binkey = pk.getPublicKeyBytes();
-		byte[] sig = Base64.decode(signature,
-				Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+		ECPublicKeyParameters key = pk.getPublicKeyParameters();
+		if (BatchVerifier.defer(key, signature, digest))
+			return true;
 
-		return EcdsaSigner.verify(binkey, sig, digest);
+		return EcdsaSigner.verify(key, signature, digest);
 	}
 
 	/**
@@ -3142,12 +3256,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> publishAsync(TransferTicket ticket,
 			DIDURL signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				publish(ticket, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			publish(ticket, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -3481,12 +3592,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> publishAsync(DIDURL signKey, boolean force,
 			String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				publish(signKey, force, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			publish(signKey, force, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -3519,12 +3627,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> publishAsync(String signKey, boolean force,
 			String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				publish(signKey, force, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			publish(signKey, force, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -3750,12 +3855,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> deactivateAsync(DIDURL signKey, String storepass,
 			DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				deactivate(signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			deactivate(signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -3783,12 +3885,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> deactivateAsync(String signKey, String storepass,
 			DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				deactivate(signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			deactivate(signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -4002,12 +4101,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> deactivateAsync(DID target,
 			DIDURL signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				deactivate(target, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			deactivate(target, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -4040,12 +4136,9 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 	 */
 	public CompletableFuture<Void> deactivateAsync(String target,
 			String signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				deactivate(target, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			deactivate(target, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -4307,6 +4400,8 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 		private void invalidateProof() {
 			if (document.proofs != null && !document.proofs.isEmpty())
 				document.proofs.clear();
+
+			document.invalidateDigest();
 		}
 
 		private void checkNotSealed() throws AlreadySealedException {
@@ -5587,6 +5682,29 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 			checkNotSealed();
 			checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
 
+			return seal(storepass, null);
+		}
+
+		/**
+		 * Seal the document object using the unlocked session of the
+		 * DIDStore, attach the generated proof to the document.
+		 *
+		 * @param session the unlocked session of the DIDStore
+		 * @return the new DIDDocument object
+		 * @throws InvalidKeyException if no valid sign key to seal the document
+		 * @throws MalformedDocumentException if the DIDDocument is malformed
+		 * @throws DIDStoreException if an error occurs when accessing the store
+		 */
+		public DIDDocument seal(DIDStore.Session session)
+				throws MalformedDocumentException, DIDStoreException {
+			checkNotSealed();
+			checkArgument(session != null, "Invalid session");
+
+			return seal(null, session);
+		}
+
+		private DIDDocument seal(String storepass, DIDStore.Session session)
+				throws MalformedDocumentException, DIDStoreException {
 			sanitize();
 
 			DIDDocument	signerDoc = document.isCustomizedDid() ? controllerDoc : document;
@@ -5595,8 +5713,11 @@ public class DIDDocument extends DIDEntity<DIDDocument> implements Cloneable {
 			if (document.proofs.containsKey(signerDoc.getSubject()))
 				throw new AlreadySignedException(signerDoc.getSubject().toString());
 
-			String json = document.serialize(true);
-			String sig = document.sign(signKey, storepass, json.getBytes());
+			// sanitize() may have normalized the content
+			document.invalidateDigest();
+			String sig = session != null ?
+					document.signDigest(signKey, session, document.getDigest()) :
+					document.signDigest(signKey, storepass, document.getDigest());
 			Proof proof = new Proof(signKey, sig);
 			document.proofs.put(proof.getCreator().getDid(), proof);
 			document._proofs = new ArrayList<Proof>(document.proofs.values());
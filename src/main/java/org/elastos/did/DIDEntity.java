@@ -31,11 +31,15 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.elastos.did.crypto.Base64;
 import org.elastos.did.exception.DIDSyntaxException;
 import org.elastos.did.exception.UnknownInternalException;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.io.DigestOutputStream;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerationException;
@@ -50,14 +54,18 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.jsonFormatVisitors.JsonObjectFormatVisitor;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
 import com.fasterxml.jackson.databind.ser.PropertyFilter;
 import com.fasterxml.jackson.databind.ser.PropertyWriter;
 import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
 /**
  * The abstract super class for all DID entities.
@@ -73,27 +81,15 @@ import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 public abstract class DIDEntity<T> {
 	private final static boolean NORMALIZED_DEFAULT = true;
 
-	/**
-	 * The default data format.
-	 */
-	protected final static SimpleDateFormat dateFormat =
-			new SimpleDateFormat(Constants.DATE_FORMAT);
-
-	/**
-	 * The ISO8601 compatible data format.
-	 */
-	protected final static SimpleDateFormat isoDateFormat =
-			new SimpleDateFormat(Constants.DATE_FORMAT_ISO_8601);
-
 	/**
 	 * DID serialization context key name.
 	 */
 	protected final static String CONTEXT_KEY = "org.elastos.did.context";
 
-	static {
-		dateFormat.setTimeZone(Constants.UTC);
-		isoDateFormat.setTimeZone(Constants.UTC);
-	}
+	private final static String PROOF = "proof";
+
+	// Memoized result of computeDigest(), reset by invalidateDigest()
+	private volatile byte[] digest;
 
 	/**
 	 * The DID serialization context class.
@@ -101,6 +97,7 @@ public abstract class DIDEntity<T> {
 	protected static class SerializeContext {
 		private boolean normalized;
 		private DID did;
+		private Object proofOmitted;
 
 		private SerializeContext() {
 			this(false, null);
@@ -150,6 +147,29 @@ public abstract class DIDEntity<T> {
 			this.did = did;
 			return this;
 		}
+
+		/**
+		 * Check whether the proof of the given object should be omitted.
+		 *
+		 * @param pojo the object being serialized
+		 * @return true if the proof should be omitted, false otherwise
+		 */
+		public boolean isProofOmitted(Object pojo) {
+			return proofOmitted != null && proofOmitted == pojo;
+		}
+
+		/**
+		 * Set the object that will be serialized without its proof. Only the
+		 * proof of the given object will be omitted, the proofs of the
+		 * embedded objects remain.
+		 *
+		 * @param pojo the object to serialize without proof
+		 * @return the SerializeContext instance for method chaining
+		 */
+		public SerializeContext setProofOmitted(Object pojo) {
+			this.proofOmitted = pojo;
+			return this;
+		}
 	}
 
 	/**
@@ -184,7 +204,10 @@ public abstract class DIDEntity<T> {
 			SerializeContext context = (SerializeContext)provider.getConfig()
 					.getAttributes().getAttribute(DIDEntity.CONTEXT_KEY);
 
-			if (include(writer, pojo, context)) {
+			if (writer.getName().equals(PROOF) && context.isProofOmitted(pojo)) {
+				if (!gen.canOmitFields())
+					writer.serializeAsOmittedField(pojo, gen, provider);
+			} else if (include(writer, pojo, context)) {
 				writer.serializeAsField(pojo, gen, provider);
 			} else if (!gen.canOmitFields()) { // since 2.3
 				writer.serializeAsOmittedField(pojo, gen, provider);
@@ -239,15 +262,8 @@ public abstract class DIDEntity<T> {
 				throw ctxt.weirdStringException(p.getText(),
 						Date.class, "Invalid datetime string");
 
-			String dateStr = p.getValueAsString();
 			try {
-				return dateFormat.parse(dateStr);
-			} catch (ParseException ignore) {
-			}
-
-			// Fail-back to ISO 8601 format.
-			try {
-				return isoDateFormat.parse(dateStr);
+				return DateCodec.parse(p.getValueAsString());
 			} catch (ParseException e) {
 				throw ctxt.weirdStringException(p.getText(),
 						Date.class, "Invalid datetime string");
@@ -255,6 +271,106 @@ public abstract class DIDEntity<T> {
 		}
 	}
 
+	static class DateSerializer extends StdSerializer<Date> {
+		private static final long serialVersionUID = 4775310318263404424L;
+
+		public DateSerializer() {
+			this(null);
+		}
+
+		public DateSerializer(Class<Date> t) {
+			super(t);
+		}
+
+		@Override
+		public void serialize(Date date, JsonGenerator gen,
+				SerializerProvider provider) throws IOException {
+			DateCodec.write(date, gen);
+		}
+	}
+
+	/**
+	 * The process-wide registry of the pre-configured Jackson objects.
+	 *
+	 * <p>
+	 * ObjectMapper, ObjectReader and ObjectWriter are thread-safe once
+	 * configured, and they keep the serializer and deserializer caches,
+	 * so all the DID entities share the same instances instead of creating
+	 * new ones for each parse or serialize call.
+	 * </p>
+	 */
+	private static class MapperRegistry {
+		private static final ObjectMapper mapper = createObjectMapper();
+		private static final FilterProvider filters = createFilterProvider();
+
+		private static final ConcurrentMap<Class<?>, ObjectReader> readers =
+				new ConcurrentHashMap<Class<?>, ObjectReader>();
+		private static final ConcurrentMap<Class<?>, ObjectWriter> writers =
+				new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+		private static ObjectMapper createObjectMapper() {
+			JsonFactory jsonFactory = new JsonFactory();
+			jsonFactory.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+			jsonFactory.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+
+			ObjectMapper mapper = new ObjectMapper(jsonFactory);
+
+			mapper.disable(MapperFeature.AUTO_DETECT_CREATORS,
+					MapperFeature.AUTO_DETECT_FIELDS,
+					MapperFeature.AUTO_DETECT_GETTERS,
+					MapperFeature.AUTO_DETECT_SETTERS,
+					MapperFeature.AUTO_DETECT_IS_GETTERS);
+
+			// Make the ObjectMapper handle the datetime string correctly
+			SimpleModule didModule = new SimpleModule();
+			didModule.addSerializer(Date.class, new DateSerializer());
+			didModule.addDeserializer(Date.class, new DateDeserializer());
+			mapper.registerModule(didModule);
+
+			mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+			return mapper;
+		}
+
+		private static FilterProvider createFilterProvider() {
+			// The filters are stateless, the serialize context will be
+			// passed to them as the writer's attribute.
+			SimpleFilterProvider filters = new SimpleFilterProvider();
+			filters.addFilter("didDocumentFilter", DIDDocument.getFilter());
+			filters.addFilter("publicKeyFilter", DIDDocument.PublicKey.getFilter());
+			filters.addFilter("didDocumentProofFilter", DIDDocument.Proof.getFilter());
+			filters.addFilter("credentialFilter", VerifiableCredential.getFilter());
+			filters.addFilter("credentialProofFilter", VerifiableCredential.Proof.getFilter());
+			filters.addFilter("presentationFilter", VerifiablePresentation.getFilter());
+			filters.addFilter("transferTicketFilter", TransferTicket.getFilter());
+			return filters;
+		}
+
+		static ObjectReader getReader(Class<?> clazz) {
+			ObjectReader reader = readers.get(clazz);
+			if (reader == null) {
+				reader = mapper.readerFor(clazz);
+				ObjectReader prev = readers.putIfAbsent(clazz, reader);
+				if (prev != null)
+					reader = prev;
+			}
+
+			return reader;
+		}
+
+		static ObjectWriter getWriter(Class<?> clazz) {
+			ObjectWriter writer = writers.get(clazz);
+			if (writer == null) {
+				writer = mapper.writerFor(clazz).with(filters);
+				ObjectWriter prev = writers.putIfAbsent(clazz, writer);
+				if (prev != null)
+					writer = prev;
+			}
+
+			return writer;
+		}
+	}
+
 	/**
 	 * Get current object's DID context.
 	 *
@@ -273,54 +389,38 @@ public abstract class DIDEntity<T> {
 	}
 
 	/**
-	 * Get the ObjectMapper for serialization or deserialization.
+	 * Get the shared ObjectMapper for serialization or deserialization.
+	 *
+	 * <p>
+	 * The returned mapper is process-wide and already configured, callers
+	 * should use it as is and never reconfigure it.
+	 * </p>
 	 *
-	 * @return a ObjectMapper instance
+	 * @return the shared ObjectMapper instance
 	 */
 	protected static ObjectMapper getObjectMapper() {
-		JsonFactory jsonFactory = new JsonFactory();
-		jsonFactory.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
-		jsonFactory.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
-
-		ObjectMapper mapper = new ObjectMapper(jsonFactory);
-
-		mapper.disable(MapperFeature.AUTO_DETECT_CREATORS,
-				MapperFeature.AUTO_DETECT_FIELDS,
-				MapperFeature.AUTO_DETECT_GETTERS,
-				MapperFeature.AUTO_DETECT_SETTERS,
-				MapperFeature.AUTO_DETECT_IS_GETTERS);
-
-		// Make the ObjectMapper handle the datetime string correctly
-		mapper.setDateFormat(dateFormat);
-		SimpleModule didModule = new SimpleModule();
-		didModule.addDeserializer(Date.class, new DateDeserializer());
-		mapper.registerModule(didModule);
-
-		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
-		return mapper;
+		return MapperRegistry.mapper;
 	}
 
 	/**
-	 * Get the ObjectMapper for serialization with normalized option.
+	 * Get the ObjectWriter for serialization with normalized option.
 	 *
 	 * @param normalized true for normalized output, false otherwise
-	 * @return a ObjectMapper instance
+	 * @return a ObjectWriter instance bound to this object's serialize context
 	 */
-	private ObjectMapper getObjectMapper(boolean normalized) {
-		ObjectMapper mapper = getObjectMapper();
-
-		mapper.setConfig(mapper.getSerializationConfig().withAttribute(CONTEXT_KEY,
-				new SerializeContext(normalized, getSerializeContextDid())));
-
-		SimpleFilterProvider filters = new SimpleFilterProvider();
-		filters.addFilter("publicKeyFilter", DIDDocument.PublicKey.getFilter());
-		filters.addFilter("didDocumentProofFilter", DIDDocument.Proof.getFilter());
-		filters.addFilter("credentialFilter", VerifiableCredential.getFilter());
-		filters.addFilter("credentialProofFilter", VerifiableCredential.Proof.getFilter());
-		mapper.setFilterProvider(filters);
+	private ObjectWriter getObjectWriter(boolean normalized) {
+		return MapperRegistry.getWriter(getClass()).withAttribute(CONTEXT_KEY,
+				new SerializeContext(normalized, getSerializeContextDid()));
+	}
 
-		return mapper;
+	/**
+	 * Get the ObjectReader for deserialization of the given entity type.
+	 *
+	 * @param clazz the class object for the target DID entity
+	 * @return the shared ObjectReader instance
+	 */
+	private static ObjectReader getObjectReader(Class<?> clazz) {
+		return MapperRegistry.getReader(clazz);
 	}
 
 	/**
@@ -334,10 +434,8 @@ public abstract class DIDEntity<T> {
 	 */
 	protected static<T extends DIDEntity<?>> T parse(JsonNode content, Class<T> clazz)
 			throws DIDSyntaxException {
-		ObjectMapper mapper = getObjectMapper();
-
 		try {
-			T o = mapper.treeToValue(content, clazz);
+			T o = getObjectReader(clazz).treeToValue(content, clazz);
 			o.sanitize();
 			return o;
 		} catch (JsonProcessingException e) {
@@ -360,10 +458,8 @@ public abstract class DIDEntity<T> {
 		checkArgument(content != null && !content.isEmpty(), "Invalid JSON content");
 		checkArgument(clazz != null, "Invalid result class object");
 
-		ObjectMapper mapper = getObjectMapper();
-
 		try {
-			T o = mapper.readValue(content, clazz);
+			T o = getObjectReader(clazz).readValue(content);
 			o.sanitize();
 			return o;
 		} catch (JsonProcessingException e) {
@@ -386,10 +482,8 @@ public abstract class DIDEntity<T> {
 		checkArgument(src != null, "Invalid src reader");
 		checkArgument(clazz != null, "Invalid result class object");
 
-		ObjectMapper mapper = getObjectMapper();
-
 		try {
-			T o = mapper.readValue(src, clazz);
+			T o = getObjectReader(clazz).readValue(src);
 			o.sanitize();
 			return o;
 		} catch (JsonParseException | JsonMappingException e) {
@@ -412,10 +506,8 @@ public abstract class DIDEntity<T> {
 		checkArgument(src != null, "Invalid src input stream");
 		checkArgument(clazz != null, "Invalid result class object");
 
-		ObjectMapper mapper = getObjectMapper();
-
 		try {
-			T o = mapper.readValue(src, clazz);
+			T o = getObjectReader(clazz).readValue(src);
 			o.sanitize();
 			return o;
 		} catch (JsonParseException | JsonMappingException e) {
@@ -438,10 +530,8 @@ public abstract class DIDEntity<T> {
 		checkArgument(src != null, "Invalid src file");
 		checkArgument(clazz != null, "Invalid result class object");
 
-		ObjectMapper mapper = getObjectMapper();
-
 		try {
-			T o = mapper.readValue(src, clazz);
+			T o = getObjectReader(clazz).readValue(src);
 			o.sanitize();
 			return o;
 		} catch (JsonParseException | JsonMappingException e) {
@@ -457,12 +547,108 @@ public abstract class DIDEntity<T> {
 	 */
 	public String serialize(boolean normalized) {
 		try {
-			return getObjectMapper(normalized).writeValueAsString(this);
+			return getObjectWriter(normalized).writeValueAsString(this);
 		} catch (JsonProcessingException e) {
 			throw new UnknownInternalException(e);
 		}
 	}
 
+	/**
+	 * Calculate the SHA-256 digest of the normalized JSON representation
+	 * of this object without its proof, followed by the optional extra data.
+	 *
+	 * <p>
+	 * This is the digest that the proof signature signed. The JSON is
+	 * written into the digest directly, no proof-less copy of the object
+	 * or intermediate JSON string will be created.
+	 * </p>
+	 *
+	 * @param data the extra data to be digested after the JSON
+	 * @return the digest bytes
+	 */
+	protected byte[] digestWithoutProof(byte[] ... data) {
+		SerializeContext context = new SerializeContext(true,
+				getSerializeContextDid()).setProofOmitted(this);
+
+		SHA256Digest sha256 = new SHA256Digest();
+		DigestOutputStream out = new DigestOutputStream(sha256);
+		try {
+			MapperRegistry.getWriter(getClass())
+					.withAttribute(CONTEXT_KEY, context).writeValue(out, this);
+		} catch (IOException e) {
+			throw new UnknownInternalException(e);
+		}
+
+		for (byte[] input : data)
+			sha256.update(input, 0, input.length);
+
+		byte[] digest = new byte[sha256.getDigestSize()];
+		sha256.doFinal(digest, 0);
+		return digest;
+	}
+
+	/**
+	 * Decode the URL safe base64 encoded signature of the proof.
+	 *
+	 * @param signature the signature string
+	 * @return the signature bytes
+	 */
+	protected static byte[] decodeSignature(String signature) {
+		return Base64.decode(signature,
+				Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+	}
+
+	/**
+	 * Calculate the digest that the proof of this object signed.
+	 *
+	 * <p>
+	 * The default implementation is the digest of the proof-less
+	 * normalized JSON, sub classes that sign extra data should override
+	 * this method.
+	 * </p>
+	 *
+	 * @return the digest bytes
+	 */
+	protected byte[] computeDigest() {
+		return digestWithoutProof();
+	}
+
+	/**
+	 * Get the digest that the proof of this object signed.
+	 *
+	 * <p>
+	 * The digest is calculated on first use and cached on this object,
+	 * the caller should not modify the returned array. Any change to the
+	 * signed content must be followed by invalidateDigest().
+	 * </p>
+	 *
+	 * @return the digest bytes
+	 */
+	protected byte[] getDigest() {
+		byte[] d = digest;
+		if (d == null)
+			digest = d = computeDigest();
+
+		return d;
+	}
+
+	/**
+	 * Discard the cached digest, the next getDigest() will recalculate it.
+	 */
+	protected void invalidateDigest() {
+		digest = null;
+	}
+
+	/**
+	 * Share the cached digest of the given object with this object.
+	 * Only for the copies that have the same signed content.
+	 *
+	 * @param entity the object that this object copied from
+	 */
+	protected void shareDigest(DIDEntity<?> entity) {
+		digest = entity.digest;
+	}
+
 	/**
 	 * Serialize this DID entity to a JSON string in default normalized mode.
 	 *
@@ -483,7 +669,7 @@ public abstract class DIDEntity<T> {
 		checkArgument(out != null, "Invalid out writer");
 
 		try {
-			getObjectMapper(normalized).writeValue(out, this);
+			getObjectWriter(normalized).writeValue(out, this);
 		} catch (JsonGenerationException | JsonMappingException e) {
 			throw new UnknownInternalException(e);
 		}
@@ -510,7 +696,7 @@ public abstract class DIDEntity<T> {
 		checkArgument(out != null, "Invalid out stream");
 
 		try {
-			getObjectMapper(normalized).writeValue(out, this);
+			getObjectWriter(normalized).writeValue(out, this);
 		} catch (JsonGenerationException | JsonMappingException e) {
 			throw new UnknownInternalException(e);
 		}
@@ -537,7 +723,7 @@ public abstract class DIDEntity<T> {
 		checkArgument(out != null, "Invalid out file");
 
 		try {
-			getObjectMapper(normalized).writeValue(out, this);
+			getObjectWriter(normalized).writeValue(out, this);
 		} catch (JsonGenerationException | JsonMappingException e) {
 			throw new UnknownInternalException(e);
 		}
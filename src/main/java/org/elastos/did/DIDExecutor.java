@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The executor that runs all the asynchronous operations of the DID SDK,
+ * such as the blocking adapter calls, publish, declare, revoke and
+ * synchronize.
+ *
+ * <p>
+ * The DIDExecutor wraps an underlying executor and records the queue depth
+ * and the latency of the tasks. The SDK uses a bounded IO pool by default,
+ * install another one by {@link DIDBackend#initialize(DIDAdapter, Executor)}.
+ * </p>
+ */
+public final class DIDExecutor implements Executor {
+	/**
+	 * The default thread number of the bounded IO pool.
+	 */
+	public static final int DEFAULT_IO_THREADS = Math.max(8,
+			Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final Method newVirtualThreadPerTaskExecutor = lookupVirtualThreadFactory();
+
+	private String name;
+	private Executor executor;
+
+	private AtomicInteger queued;
+	private AtomicInteger active;
+	private LongAdder completed;
+	private LongAdder totalQueueTime;
+	private LongAdder totalExecutionTime;
+	private AtomicLong maxQueueTime;
+
+	/**
+	 * The statistics snapshot of a DIDExecutor.
+	 */
+	public static final class Stats {
+		private String name;
+		private int queueDepth;
+		private int activeCount;
+		private long completedCount;
+		private long totalQueueTime;
+		private long totalExecutionTime;
+		private long maxQueueTime;
+
+		private Stats(DIDExecutor executor) {
+			name = executor.name;
+			queueDepth = executor.queued.get();
+			activeCount = executor.active.get();
+			completedCount = executor.completed.sum();
+			totalQueueTime = executor.totalQueueTime.sum();
+			totalExecutionTime = executor.totalExecutionTime.sum();
+			maxQueueTime = executor.maxQueueTime.get();
+		}
+
+		/**
+		 * Get the name of the executor.
+		 *
+		 * @return the executor name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the number of the tasks that submitted but not started.
+		 *
+		 * @return the queue depth
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * Get the number of the running tasks.
+		 *
+		 * @return the active task count
+		 */
+		public int getActiveCount() {
+			return activeCount;
+		}
+
+		/**
+		 * Get the number of the finished tasks.
+		 *
+		 * @return the completed task count
+		 */
+		public long getCompletedCount() {
+			return completedCount;
+		}
+
+		/**
+		 * Get the average time that the tasks waited in the queue.
+		 *
+		 * @return the average queue time in microseconds
+		 */
+		public long getAverageQueueTime() {
+			return completedCount == 0 ? 0 :
+				TimeUnit.NANOSECONDS.toMicros(totalQueueTime / completedCount);
+		}
+
+		/**
+		 * Get the maximum time that a task waited in the queue.
+		 *
+		 * @return the maximum queue time in microseconds
+		 */
+		public long getMaxQueueTime() {
+			return TimeUnit.NANOSECONDS.toMicros(maxQueueTime);
+		}
+
+		/**
+		 * Get the average running time of the tasks.
+		 *
+		 * @return the average execution time in microseconds
+		 */
+		public long getAverageExecutionTime() {
+			return completedCount == 0 ? 0 :
+				TimeUnit.NANOSECONDS.toMicros(totalExecutionTime / completedCount);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s(queued:%d, active:%d, completed:%d, "
+					+ "avgQueue:%dus, maxQueue:%dus, avgExec:%dus)",
+					name, queueDepth, activeCount, completedCount,
+					getAverageQueueTime(), getMaxQueueTime(), getAverageExecutionTime());
+		}
+	}
+
+	private DIDExecutor(String name, Executor executor) {
+		this.name = name;
+		this.executor = executor;
+
+		queued = new AtomicInteger();
+		active = new AtomicInteger();
+		completed = new LongAdder();
+		totalQueueTime = new LongAdder();
+		totalExecutionTime = new LongAdder();
+		maxQueueTime = new AtomicLong();
+	}
+
+	private static Method lookupVirtualThreadFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Create a DIDExecutor that runs the tasks on a bounded pool of daemon
+	 * threads. The idle threads exit after one minute.
+	 *
+	 * @param threads the maximum number of the threads
+	 * @return the DIDExecutor object
+	 */
+	public static DIDExecutor newIOPool(int threads) {
+		return newIOPool("DIDBackend", threads);
+	}
+
+	// The IO pool with the threads named after the owner
+	static DIDExecutor newIOPool(String owner, int threads) {
+		checkArgument(threads > 0, "Invalid threads");
+
+		AtomicInteger threadNumber = new AtomicInteger(1);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), (r) -> {
+			Thread t = new Thread(r, owner + "-io-" + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		});
+		executor.allowCoreThreadTimeOut(true);
+
+		return new DIDExecutor("io", executor);
+	}
+
+	/**
+	 * Create a DIDExecutor that runs the tasks on a bounded pool of daemon
+	 * threads, with the default thread number.
+	 *
+	 * @return the DIDExecutor object
+	 */
+	public static DIDExecutor newIOPool() {
+		return newIOPool(DEFAULT_IO_THREADS);
+	}
+
+	/**
+	 * Check whether the JVM supports the virtual threads, that is, running
+	 * on Java 21 or later.
+	 *
+	 * @return true if the virtual threads supported, false otherwise
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return newVirtualThreadPerTaskExecutor != null;
+	}
+
+	/**
+	 * Create a DIDExecutor that starts a new virtual thread for each task.
+	 * The blocking tasks do not hold any platform thread in this way.
+	 *
+	 * @return the DIDExecutor object
+	 * @throws UnsupportedOperationException if the JVM does not support the
+	 * 		   virtual threads
+	 */
+	public static DIDExecutor newVirtualThreadPerTask() {
+		if (newVirtualThreadPerTaskExecutor == null)
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+
+		try {
+			ExecutorService executor = (ExecutorService)newVirtualThreadPerTaskExecutor.invoke(null);
+			return new DIDExecutor("virtual", executor);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Can not create the virtual thread executor", e);
+		}
+	}
+
+	/**
+	 * Wrap the caller supplied executor. The DIDExecutor does not manage the
+	 * lifecycle of the underlying executor.
+	 *
+	 * @param name the name of the executor, used in the statistics
+	 * @param executor the executor object
+	 * @return the DIDExecutor object
+	 */
+	public static DIDExecutor wrap(String name, Executor executor) {
+		checkArgument(executor != null, "Invalid executor");
+
+		if (executor instanceof DIDExecutor)
+			return (DIDExecutor)executor;
+
+		return new DIDExecutor(name != null ? name : "custom", executor);
+	}
+
+	/**
+	 * Wrap the caller supplied executor.
+	 *
+	 * @param executor the executor object
+	 * @return the DIDExecutor object
+	 */
+	public static DIDExecutor wrap(Executor executor) {
+		return wrap(null, executor);
+	}
+
+	/**
+	 * Get the name of the executor.
+	 *
+	 * @return the executor name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the statistics snapshot of this executor.
+	 *
+	 * @return the Stats object
+	 */
+	public Stats getStats() {
+		return new Stats(this);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		long submitted = System.nanoTime();
+		queued.incrementAndGet();
+
+		try {
+			executor.execute(() -> {
+				long started = System.nanoTime();
+				queued.decrementAndGet();
+				active.incrementAndGet();
+
+				long wait = started - submitted;
+				totalQueueTime.add(wait);
+				maxQueueTime.accumulateAndGet(wait, Math::max);
+
+				try {
+					command.run();
+				} finally {
+					active.decrementAndGet();
+					totalExecutionTime.add(System.nanoTime() - started);
+					completed.increment();
+				}
+			});
+		} catch (RuntimeException e) {
+			queued.decrementAndGet();
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getStats().toString();
+	}
+}
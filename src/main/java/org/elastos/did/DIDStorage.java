@@ -53,6 +53,20 @@ public interface DIDStorage {
 		public String reEncrypt(String data) throws DIDStoreException;
 	};
 
+	/**
+	 * The write operations of a batch, applied by {@link DIDStorage#writeBatch}.
+	 */
+	@FunctionalInterface
+	public interface BatchWriter {
+		/**
+		 * Apply the write operations to the storage.
+		 *
+		 * @param storage the storage to write
+		 * @throws DIDStorageException if an error occurred when writing
+		 */
+		public void write(DIDStorage storage) throws DIDStorageException;
+	}
+
 	/**
 	 * Get the implement related storage location.
 	 *
@@ -348,4 +362,21 @@ public interface DIDStorage {
 	 */
 	public void changePassword(ReEncryptor reEncryptor)
 			throws DIDStorageException;
+
+	/**
+	 * Apply all the writes of the writer as one atomic and durable operation,
+	 * either all of them take effect or none of them.
+	 *
+	 * <p>
+	 * The writer must only call the write methods of the given storage. The
+	 * default implementation applies the writes one by one, without the
+	 * atomicity guarantee, the storage implementations should override it.
+	 * </p>
+	 *
+	 * @param writer the batch writer
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	public default void writeBatch(BatchWriter writer) throws DIDStorageException {
+		writer.write(this);
+	}
 }
@@ -23,7 +23,9 @@
 package org.elastos.did;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -37,11 +39,19 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -51,13 +61,18 @@ import org.elastos.did.crypto.Aes256cbc;
 import org.elastos.did.crypto.Base64;
 import org.elastos.did.crypto.EcdsaSigner;
 import org.elastos.did.crypto.HDKey;
+import org.elastos.did.exception.DIDException;
 import org.elastos.did.exception.DIDResolveException;
 import org.elastos.did.exception.DIDStorageException;
 import org.elastos.did.exception.DIDStoreCryptoException;
 import org.elastos.did.exception.DIDStoreException;
+import org.elastos.did.exception.DIDStoreLockedException;
 import org.elastos.did.exception.DIDSyntaxException;
 import org.elastos.did.exception.MalformedExportDataException;
+import org.elastos.did.exception.UncheckedDIDStoreException;
+import org.elastos.did.exception.UnknownInternalException;
 import org.elastos.did.exception.WrongPasswordException;
+import org.elastos.did.metrics.DIDMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.crypto.CryptoException;
@@ -72,6 +87,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
 
 /**
  * This class represents a storage facility for DID objects and private keys.
@@ -101,9 +117,19 @@ public final class DIDStore {
 	private static final String DID_LAZY_PRIVATEKEY = "lazy-private-key";
 
 	private Cache<Key, Object> cache;
+	private Cache<DIDURL, SigningKey> keyCache;
+	private ScheduledFuture<?> keyCacheCleaner;
 
 	private DIDStorage storage;
 	private Metadata metadata;
+	private Set<Session> sessions;
+	private ThreadLocal<Batch> currentBatch;
+
+	private volatile boolean writeBehind;
+	private ConcurrentHashMap<Key, AbstractMetadata> pendingMetadata;
+	private ScheduledFuture<?> metadataFlusher;
+	// Serializes the write of a pending metadata with the delete of its owner
+	private Object flushLock;
 
 	/**
 	 * the default conflict handle implementation.
@@ -131,6 +157,14 @@ public final class DIDStore {
 			this.id = id;
 		}
 
+		// The DID that owns the object, null for the root identities
+		private DID getOwner() {
+			if (id instanceof DIDURL)
+				return ((DIDURL)id).getDid();
+			else
+				return id instanceof DID ? (DID)id : null;
+		}
+
 		@Override
 		public int hashCode() {
 			return type + id.hashCode();
@@ -227,7 +261,7 @@ public final class DIDStore {
 		protected void save() {
 			if (attachedStore()) {
 				try {
-					getStore().storage.storeMetadata(this);
+					getStore().getStorage().storeMetadata(this);
 				} catch (DIDStoreException ignore) {
 					log.error("INTERNAL - error store metadata for DIDStore");
 				}
@@ -235,6 +269,325 @@ public final class DIDStore {
 		}
 	}
 
+	/**
+	 * An unlocked session of the DIDStore.
+	 *
+	 * <p>
+	 * The session verifies the store password once, and keeps the AES key
+	 * and IV that derived from the password in memory, the store operations
+	 * with the session don't need to derive the key again. The key and IV
+	 * will be wiped when the session is closed or expired, or the store is
+	 * closed or changed the password.
+	 * </p>
+	 */
+	public static final class Session implements AutoCloseable {
+		private DIDStore store;
+		private String fingerprint;
+		private byte[] key;
+		private byte[] iv;
+		private long expires;
+		private ScheduledFuture<?> timeout;
+
+		private Session(DIDStore store, String storepass) throws DIDStoreException {
+			byte[] key = new byte[Aes256cbc.KEY_BYTES];
+			byte[] iv = new byte[Aes256cbc.IV_BYTES];
+			Aes256cbc.generateKeyAndIv(storepass, key, iv);
+
+			String fingerprint = calcFingerprint(storepass, key, iv);
+			String current = store.metadata.getFingerprint();
+			if (current != null && !current.isEmpty() && !current.equals(fingerprint)) {
+				Arrays.fill(key, (byte)0);
+				Arrays.fill(iv, (byte)0);
+				throw new WrongPasswordException("Password mismatched with previous password.");
+			}
+
+			this.store = store;
+			this.fingerprint = fingerprint;
+			this.key = key;
+			this.iv = iv;
+		}
+
+		/**
+		 * Get the DIDStore that this session unlocked.
+		 *
+		 * @return the DIDStore object
+		 */
+		public DIDStore getStore() {
+			return store;
+		}
+
+		/**
+		 * Check whether this session is still unlocked, not closed and not
+		 * expired.
+		 *
+		 * @return true if the session is unlocked, false otherwise
+		 */
+		public synchronized boolean isUnlocked() {
+			return key != null && (expires == 0 || System.currentTimeMillis() < expires);
+		}
+
+		private void checkUnlocked() throws DIDStoreLockedException {
+			if (!isUnlocked()) {
+				close();
+				throw new DIDStoreLockedException("Store session closed or expired.");
+			}
+		}
+
+		private synchronized String encrypt(byte[] input) throws DIDStoreException {
+			checkUnlocked();
+
+			try {
+				byte[] cipher = Aes256cbc.encrypt(input, 0, input.length, key, iv);
+
+				return Base64.encodeToString(cipher,
+						Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+			} catch (CryptoException e) {
+				throw new DIDStoreCryptoException("Encrypt data error.", e);
+			}
+		}
+
+		private synchronized byte[] decrypt(String input) throws DIDStoreException {
+			checkUnlocked();
+
+			try {
+				byte[] cipher = Base64.decode(input,
+						Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+
+				return Aes256cbc.decrypt(cipher, 0, cipher.length, key, iv);
+			} catch (CryptoException e) {
+				throw new WrongPasswordException("Decrypt private key error.", e);
+			}
+		}
+
+		/**
+		 * Lock the session and wipe the key material.
+		 */
+		@Override
+		public synchronized void close() {
+			if (key == null)
+				return;
+
+			Arrays.fill(key, (byte)0);
+			Arrays.fill(iv, (byte)0);
+			key = null;
+			iv = null;
+
+			if (timeout != null) {
+				timeout.cancel(false);
+				timeout = null;
+			}
+
+			Set<Session> sessions = store.sessions;
+			if (sessions != null)
+				sessions.remove(this);
+		}
+	}
+
+	/**
+	 * A batch of the store writes that are committed atomically.
+	 *
+	 * <p>
+	 * The writes of the thread that started the batch are staged, and only
+	 * visible to this thread until the batch is committed. The batch is
+	 * committed to the storage as one atomic and durable write. Closing a
+	 * batch that not committed aborts it.
+	 * </p>
+	 *
+	 * <p>
+	 * The batch caches the objects in its own overlay of the store objects
+	 * cache, the other threads only see the committed objects.
+	 * </p>
+	 */
+	public final class Batch implements AutoCloseable {
+		private Thread owner;
+		private StagingStorage staging;
+
+		// The objects cached by this batch, and the keys it wrote or deleted
+		private HashMap<Key, Object> objects;
+		private HashSet<Key> touched;
+		private HashSet<DID> deletedDids;
+		// The in-memory changes to be undone if the batch aborted
+		private List<Runnable> rollbacks;
+
+		private Batch() {
+			this.owner = Thread.currentThread();
+			this.staging = new StagingStorage(storage);
+			this.objects = new HashMap<Key, Object>();
+			this.touched = new HashSet<Key>();
+			this.deletedDids = new HashSet<DID>();
+			this.rollbacks = new ArrayList<Runnable>();
+		}
+
+		/**
+		 * Get the number of the staged writes.
+		 *
+		 * @return the number of the staged writes, 0 if the batch finished
+		 */
+		public int size() {
+			StagingStorage s = staging;
+			return s == null ? 0 : s.size();
+		}
+
+		private StagingStorage finish() {
+			checkState(Thread.currentThread() == owner,
+					"Batch not started by the current thread");
+			checkState(staging != null, "Batch already committed or aborted");
+
+			StagingStorage s = staging;
+			staging = null;
+			currentBatch.remove();
+			return s;
+		}
+
+		/**
+		 * Commit all the staged writes to the store.
+		 *
+		 * @throws DIDStoreException if an error occurred when writing, the
+		 * 		   batch is aborted
+		 */
+		public void commit() throws DIDStoreException {
+			StagingStorage s = finish();
+
+			try {
+				s.commit();
+			} catch (DIDStorageException e) {
+				reset();
+				throw e;
+			}
+
+			// The other threads may cached the old objects before committed
+			for (DID did : deletedDids) {
+				invalidateDid(did);
+				invalidateKeyCache(did);
+			}
+
+			cache.invalidateAll(touched);
+
+			// And signed with the deleted or replaced private keys
+			for (Key key : touched) {
+				if (key.type == Key.TYPE_DID_PRIVATEKEY)
+					invalidateKeyCache((DIDURL)key.id);
+			}
+		}
+
+		/**
+		 * Discard all the staged writes. Do nothing if the batch already
+		 * committed or aborted.
+		 */
+		public void abort() {
+			if (staging == null)
+				return;
+
+			finish();
+			reset();
+		}
+
+		// Drop the uncommitted keys and the store metadata, the uncommitted
+		// objects only cached in the dropped overlay
+		private void reset() {
+			for (int i = rollbacks.size() - 1; i >= 0; i--)
+				rollbacks.get(i).run();
+
+			invalidateKeyCache();
+
+			try {
+				Metadata m = storage.loadMetadata();
+				m.attachStore(DIDStore.this);
+				metadata = m;
+			} catch (DIDStorageException e) {
+				log.error("Reload the store metadata error", e);
+			}
+		}
+
+		/**
+		 * Abort the batch if it's not committed.
+		 */
+		@Override
+		public void close() {
+			abort();
+		}
+	}
+
+	/**
+	 * The body of a store transaction.
+	 *
+	 * @param <T> the result type of the transaction
+	 */
+	@FunctionalInterface
+	public interface Transaction<T> {
+		/**
+		 * Run the store operations of the transaction.
+		 *
+		 * @return the result of the transaction
+		 * @throws DIDException if an error occurred, the transaction is
+		 * 		   aborted
+		 */
+		public T run() throws DIDException;
+	}
+
+	// The decrypted private key held by the key cache, wiped on eviction
+	private static final class SigningKey {
+		private byte[] key;
+		// The signers share the key, only the wipe is exclusive
+		private final ReadWriteLock lock;
+
+		private SigningKey(byte[] key) {
+			this.key = key;
+			this.lock = new ReentrantReadWriteLock();
+		}
+
+		// Returns null if the key already wiped by a concurrent eviction
+		private byte[] sign(byte[] digest) {
+			lock.readLock().lock();
+			try {
+				return key == null ? null : EcdsaSigner.sign(key, digest);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private void wipe() {
+			lock.writeLock().lock();
+			try {
+				if (key != null) {
+					Arrays.fill(key, (byte)0);
+					key = null;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	// Wipes the expired sessions and the expired keys in the key caches,
+	// and flushes the write-behind metadata, created on first use
+	private static class SessionTimer {
+		private static final ScheduledThreadPoolExecutor timer;
+
+		static {
+			timer = new ScheduledThreadPoolExecutor(1, (r) -> {
+				Thread t = new Thread(r, "DIDStore-session-timer");
+				t.setDaemon(true);
+				return t;
+			});
+			timer.setRemoveOnCancelPolicy(true);
+		}
+	}
+
+	// The metadata flush does the storage I/O, kept off the session timer
+	private static class MetadataFlusher {
+		private static final ScheduledThreadPoolExecutor executor;
+
+		static {
+			executor = new ScheduledThreadPoolExecutor(1, (r) -> {
+				Thread t = new Thread(r, "DIDStore-metadata-flusher");
+				t.setDaemon(true);
+				return t;
+			});
+			executor.setRemoveOnCancelPolicy(true);
+		}
+	}
+
 	/**
 	 * ConflictHandle is a interface for solving the conflict,
 	 * if the local document is different with the one resolved from chain.
@@ -292,6 +645,7 @@ public final class DIDStore {
 	}
 
 	private DIDStore(int initialCacheCapacity, int maxCacheCapacity,
+			int maxKeyCacheCapacity, long keyCacheTTL,
 			DIDStorage storage) throws DIDStoreException {
 		if (initialCacheCapacity < 0)
 			initialCacheCapacity = 0;
@@ -299,35 +653,49 @@ public final class DIDStore {
 		if (maxCacheCapacity < 0)
 			maxCacheCapacity = 0;
 
-		// The RemovalListener used for debug purpose.
-		// TODO: comment the RemovalListener
-		/*
-		RemovalListener<Object, Object> listener;
-		listener = new RemovalListener<Object, Object>() {
-			@Override
-			public void onRemoval(RemovalNotification<Object, Object> n) {
-				if (n.wasEvicted()) {
-					String cause = n.getCause().name();
-					log.trace("Cache removed {} cause {}", n.getKey(), cause);
-				}
-			}
-		};
-		*/
-
 		cache = CacheBuilder.newBuilder()
 				.initialCapacity(initialCacheCapacity)
 				.maximumSize(maxCacheCapacity)
 				.softValues()
-				// .removalListener(listener)
-				// .recordStats()
+				.removalListener((RemovalNotification<Key, Object> n) -> {
+					if (n.wasEvicted()) {
+						log.trace("Cache removed {} cause {}", n.getKey(), n.getCause());
+						DIDBackend.getMetrics().cacheEviction(DIDMetrics.CACHE_STORE);
+					}
+				})
 				.build();
 
+		if (maxKeyCacheCapacity > 0) {
+			keyCache = CacheBuilder.newBuilder()
+					.maximumSize(maxKeyCacheCapacity)
+					.expireAfterWrite(keyCacheTTL, TimeUnit.MILLISECONDS)
+					.removalListener((RemovalNotification<DIDURL, SigningKey> n) -> {
+						if (n.wasEvicted())
+							DIDBackend.getMetrics().cacheEviction(DIDMetrics.CACHE_STORE_KEYS);
+
+						n.getValue().wipe();
+					})
+					.recordStats()
+					.build();
+
+			// The cache only evicts the expired keys when accessing, so clean
+			// it periodically to make sure the expired keys get wiped in time
+			Cache<DIDURL, SigningKey> c = keyCache;
+			keyCacheCleaner = SessionTimer.timer.scheduleWithFixedDelay(
+					() -> c.cleanUp(), keyCacheTTL, keyCacheTTL, TimeUnit.MILLISECONDS);
+		}
+
 		this.storage = storage;
 		this.metadata = storage.loadMetadata();
 		this.metadata.attachStore(this);
+		this.sessions = ConcurrentHashMap.newKeySet();
+		this.currentBatch = new ThreadLocal<Batch>();
+		this.pendingMetadata = new ConcurrentHashMap<Key, AbstractMetadata>();
+		this.flushLock = new Object();
 
-		log.info("DID store opened: {}, cache(init:{}, max:{})",
-				storage.getLocation(), initialCacheCapacity, maxCacheCapacity);
+		log.info("DID store opened: {}, cache(init:{}, max:{}), key cache(max:{}, ttl:{})",
+				storage.getLocation(), initialCacheCapacity, maxCacheCapacity,
+				maxKeyCacheCapacity, keyCacheTTL);
 	}
 
 	/**
@@ -341,8 +709,37 @@ public final class DIDStore {
 	 */
 	public static DIDStore open(File location,
 			int initialCacheCapacity, int maxCacheCapacity) throws DIDStoreException {
+		return open(location, initialCacheCapacity, maxCacheCapacity, 0, 0);
+	}
+
+	/**
+	 * Open a DIDStore instance with given storage location, and enable the
+	 * decrypted private key cache.
+	 *
+	 * <p>
+	 * The key cache keeps the decrypted signing keys in memory, the store
+	 * doesn't need to decrypt and deserialize the key for every signature.
+	 * The caller still needs the correct store password or an unlocked
+	 * session to use the cached keys. The cached keys will be wiped when
+	 * evicted, expired, or the store is closed or changed the password.
+	 * </p>
+	 *
+	 * @param location the storage location for the DIDStore
+	 * @param initialCacheCapacity the initial cache capacity
+	 * @param maxCacheCapacity the maximum cache capacity
+	 * @param maxKeyCacheCapacity the maximum number of the cached keys,
+	 * 			0 to disable the key cache
+	 * @param keyCacheTTL how long the key will be cached, in milliseconds
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore open(File location,
+			int initialCacheCapacity, int maxCacheCapacity,
+			int maxKeyCacheCapacity, long keyCacheTTL) throws DIDStoreException {
 		checkArgument(location != null, "Invalid store location");
 		checkArgument(maxCacheCapacity >= initialCacheCapacity, "Invalid cache capacity spec");
+		checkArgument(maxKeyCacheCapacity >= 0, "Invalid key cache capacity");
+		checkArgument(maxKeyCacheCapacity == 0 || keyCacheTTL > 0, "Invalid key cache TTL");
 
 		try {
 			location = location.getCanonicalFile();
@@ -350,8 +747,162 @@ public final class DIDStore {
 			throw new IllegalArgumentException("Invalid store location", e);
 		}
 
-		DIDStorage storage = new FileSystemStorage(location);
-		return new DIDStore(initialCacheCapacity, maxCacheCapacity, storage);
+		DIDStorage storage = LogStructuredStorage.exists(location) ?
+				new LogStructuredStorage(location) : new FileSystemStorage(location);
+		return new DIDStore(initialCacheCapacity, maxCacheCapacity,
+				maxKeyCacheCapacity, keyCacheTTL, storage);
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in one
+	 * append-only log file, and enable the decrypted private key cache.
+	 *
+	 * <p>
+	 * The log-structured store avoids the per object files of the default
+	 * storage, that suits the stores with a large number of DIDs. A store
+	 * with the default layout at the location will be migrated, after that
+	 * {@link #open(File)} also opens it as a log-structured store.
+	 * </p>
+	 *
+	 * @param location the storage location for the DIDStore
+	 * @param initialCacheCapacity the initial cache capacity
+	 * @param maxCacheCapacity the maximum cache capacity
+	 * @param maxKeyCacheCapacity the maximum number of the cached keys,
+	 * 			0 to disable the key cache
+	 * @param keyCacheTTL how long the key will be cached, in milliseconds
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore openLogStructured(File location,
+			int initialCacheCapacity, int maxCacheCapacity,
+			int maxKeyCacheCapacity, long keyCacheTTL) throws DIDStoreException {
+		checkArgument(location != null, "Invalid store location");
+		checkArgument(maxCacheCapacity >= initialCacheCapacity, "Invalid cache capacity spec");
+		checkArgument(maxKeyCacheCapacity >= 0, "Invalid key cache capacity");
+		checkArgument(maxKeyCacheCapacity == 0 || keyCacheTTL > 0, "Invalid key cache TTL");
+
+		try {
+			location = location.getCanonicalFile();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid store location", e);
+		}
+
+		DIDStorage storage = new LogStructuredStorage(location);
+		return new DIDStore(initialCacheCapacity, maxCacheCapacity,
+				maxKeyCacheCapacity, keyCacheTTL, storage);
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in one
+	 * append-only log file.
+	 *
+	 * @param location the storage location for the DIDStore
+	 * @param initialCacheCapacity the initial cache capacity
+	 * @param maxCacheCapacity the maximum cache capacity
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore openLogStructured(File location,
+			int initialCacheCapacity, int maxCacheCapacity) throws DIDStoreException {
+		return openLogStructured(location, initialCacheCapacity, maxCacheCapacity, 0, 0);
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in one
+	 * append-only log file.
+	 *
+	 * @param location the storage location for the DIDStore
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore openLogStructured(File location) throws DIDStoreException {
+		return openLogStructured(location, CACHE_INITIAL_CAPACITY, CACHE_MAX_CAPACITY);
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in one
+	 * append-only log file.
+	 *
+	 * @param location the storage location for the DIDStore
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore openLogStructured(String location) throws DIDStoreException {
+		checkArgument(location != null && !location.isEmpty(), "Invalid store location");
+
+		return openLogStructured(new File(location));
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in memory, and
+	 * enable the decrypted private key cache.
+	 *
+	 * <p>
+	 * The in-memory store suits the short-lived stores, for example the
+	 * workers that only create, sign and publish the documents. All the
+	 * objects are lost when the store closed, unless saved by
+	 * {@link #writeSnapshot(OutputStream)}.
+	 * </p>
+	 *
+	 * @param initialCacheCapacity the initial cache capacity
+	 * @param maxCacheCapacity the maximum cache capacity
+	 * @param maxKeyCacheCapacity the maximum number of the cached keys,
+	 * 			0 to disable the key cache
+	 * @param keyCacheTTL how long the key will be cached, in milliseconds
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore openInMemory(int initialCacheCapacity, int maxCacheCapacity,
+			int maxKeyCacheCapacity, long keyCacheTTL) throws DIDStoreException {
+		checkArgument(maxCacheCapacity >= initialCacheCapacity, "Invalid cache capacity spec");
+		checkArgument(maxKeyCacheCapacity >= 0, "Invalid key cache capacity");
+		checkArgument(maxKeyCacheCapacity == 0 || keyCacheTTL > 0, "Invalid key cache TTL");
+
+		return new DIDStore(initialCacheCapacity, maxCacheCapacity,
+				maxKeyCacheCapacity, keyCacheTTL, new InMemoryStorage());
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in memory.
+	 *
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore openInMemory() throws DIDStoreException {
+		return openInMemory(CACHE_INITIAL_CAPACITY, CACHE_MAX_CAPACITY, 0, 0);
+	}
+
+	/**
+	 * Open a DIDStore instance that keeps all the objects in memory, with
+	 * the content restored from a snapshot.
+	 *
+	 * @param snapshot the input stream of the snapshot that written by
+	 * 			{@link #writeSnapshot(OutputStream)}
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if the snapshot is invalid
+	 */
+	public static DIDStore openInMemory(InputStream snapshot) throws DIDStoreException {
+		checkArgument(snapshot != null, "Invalid snapshot");
+
+		return new DIDStore(CACHE_INITIAL_CAPACITY, CACHE_MAX_CAPACITY, 0, 0,
+				new InMemoryStorage(snapshot));
+	}
+
+	/**
+	 * Write all the objects of an in-memory store to the output stream. The
+	 * private keys and the mnemonics are saved encrypted, as they are
+	 * stored.
+	 *
+	 * @param out the output stream of the snapshot
+	 * @throws DIDStoreException if an error occurred when writing
+	 * @throws IllegalStateException if the store is not opened by
+	 * 			openInMemory
+	 */
+	public void writeSnapshot(OutputStream out) throws DIDStoreException {
+		checkArgument(out != null, "Invalid output stream");
+		checkState(storage instanceof InMemoryStorage, "Not an in-memory store");
+
+		((InMemoryStorage)storage).writeSnapshot(out);
 	}
 
 	/**
@@ -370,6 +921,28 @@ public final class DIDStore {
 		return open(new File(location), initialCacheCapacity, maxCacheCapacity);
 	}
 
+	/**
+	 * Open a DIDStore instance with given storage location, and enable the
+	 * decrypted private key cache.
+	 *
+	 * @param location the storage location for the DIDStore
+	 * @param initialCacheCapacity the initial cache capacity
+	 * @param maxCacheCapacity the maximum cache capacity
+	 * @param maxKeyCacheCapacity the maximum number of the cached keys,
+	 * 			0 to disable the key cache
+	 * @param keyCacheTTL how long the key will be cached, in milliseconds
+	 * @return the DIDStore object
+	 * @throws DIDStoreException if an error occurred when opening the store
+	 */
+	public static DIDStore open(String location,
+			int initialCacheCapacity, int maxCacheCapacity,
+			int maxKeyCacheCapacity, long keyCacheTTL) throws DIDStoreException {
+		checkArgument(location != null && !location.isEmpty(), "Invalid store location");
+
+		return open(new File(location), initialCacheCapacity, maxCacheCapacity,
+				maxKeyCacheCapacity, keyCacheTTL);
+	}
+
 	/**
 	 * Open a DIDStore instance with given storage location.
 	 *
@@ -394,16 +967,63 @@ public final class DIDStore {
 
 	/**
 	 * Close this DIDStore object.
+	 *
+	 * <p>
+	 * The pending metadata updates are flushed first. If the flush failed,
+	 * the store is kept open with the updates still pending, the caller can
+	 * retry {@link #flush()} or close.
+	 * </p>
+	 *
+	 * @throws UncheckedDIDStoreException if an error occurred when flushing
+	 * 			the pending metadata
 	 */
 	public void close() {
-		// log.verbose("Cache statistics: {}", cache.stats().toString());
+		disableWriteBehind();
+		try {
+			flush();
+		} catch (DIDStoreException e) {
+			throw new UncheckedDIDStoreException("Flush the pending metadata error", e);
+		}
+
+		closeSessions();
+		invalidateKeyCache();
+		if (keyCacheCleaner != null) {
+			keyCacheCleaner.cancel(false);
+			keyCacheCleaner = null;
+		}
+		keyCache = null;
 		cache.invalidateAll();
 		cache = null;
 		metadata = null;
-		storage = null;
+		// Wait for the write of the flusher that still running
+		synchronized (flushLock) {
+			if (storage instanceof Closeable) {
+				try {
+					((Closeable)storage).close();
+				} catch (IOException e) {
+					log.error("Close the storage error", e);
+				}
+			}
+			storage = null;
+		}
 	}
 
 	private static String calcFingerprint(String password) throws DIDStoreException {
+		byte[] key = new byte[Aes256cbc.KEY_BYTES];
+		byte[] iv = new byte[Aes256cbc.IV_BYTES];
+		Aes256cbc.generateKeyAndIv(password, key, iv);
+
+		try {
+			return calcFingerprint(password, key, iv);
+		} finally {
+			Arrays.fill(key, (byte)0);
+			Arrays.fill(iv, (byte)0);
+		}
+	}
+
+	// The key and iv should be generated from the password
+	private static String calcFingerprint(String password, byte[] key, byte[] iv)
+			throws DIDStoreException {
 		// Here should use Argon2, better to avoid the password attack.
 		// But spongycastle library not include the Argon2 implementation,
 		// so here we use one-time AES encryption to secure the password hash.
@@ -415,7 +1035,7 @@ public final class DIDStore {
 		md5.reset();
 
 		try {
-			byte[] cipher = Aes256cbc.encrypt(digest, password);
+			byte[] cipher = Aes256cbc.encrypt(digest, 0, digest.length, key, iv);
 			md5.update(cipher, 0, cipher.length);
 			md5.doFinal(digest, 0);
 
@@ -457,33 +1077,388 @@ public final class DIDStore {
 		return newSecret;
 	}
 
-	private String encrypt(byte[] input, String passwd) throws DIDStoreException {
-		String fingerprint = metadata.getFingerprint();
-		String currentFingerprint = calcFingerprint(passwd);
+	/**
+	 * Unlock this store with the password, the returned session can be used
+	 * instead of the password for the following store operations.
+	 *
+	 * <p>
+	 * The session keeps the derived key in memory until it's closed or
+	 * expired, the caller should close the session as soon as possible.
+	 * </p>
+	 *
+	 * @param storepass the password for this store
+	 * @param ttl the live time of the session in milliseconds, 0 for never
+	 * 		  expire until it's closed
+	 * @return the unlocked session
+	 * @throws WrongPasswordException if the password is wrong
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public Session unlock(String storepass, long ttl) throws DIDStoreException {
+		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+		checkArgument(ttl >= 0, "Invalid ttl");
 
-		if (fingerprint != null && !currentFingerprint.equals(fingerprint))
-			throw new WrongPasswordException("Password mismatched with previous password.");
+		Session session = new Session(this, storepass);
+		sessions.add(session);
 
-		String result = encryptToBase64(input, passwd);
+		if (ttl > 0) {
+			session.expires = System.currentTimeMillis() + ttl;
+			session.timeout = SessionTimer.timer.schedule(session::close,
+					ttl, TimeUnit.MILLISECONDS);
+		}
 
-		if (fingerprint == null || fingerprint.isEmpty())
-			metadata.setFingerprint(currentFingerprint);
+		return session;
+	}
 
-		return result;
+	/**
+	 * Start a batch of the store writes on the current thread.
+	 *
+	 * <p>
+	 * The following writes of the current thread are staged in the batch,
+	 * and committed atomically by {@link Batch#commit()}. The batch should
+	 * be closed in a finally block or try-with-resources statement.
+	 * </p>
+	 *
+	 * @return the new batch
+	 * @throws IllegalStateException if the current thread already in a batch
+	 */
+	public Batch batch() {
+		checkState(currentBatch.get() == null, "Already in a batch");
+
+		Batch batch = new Batch();
+		currentBatch.set(batch);
+		return batch;
 	}
 
-	private byte[] decrypt(String input, String passwd) throws DIDStoreException {
+	// Whether the current thread in a batch
+	boolean inBatch() {
+		return currentBatch.get() != null;
+	}
+
+	// Undo the in-memory change if the batch of the current thread aborted
+	void onAbort(Runnable rollback) {
+		Batch batch = currentBatch.get();
+		checkState(batch != null, "Not in a batch");
+		batch.rollbacks.add(rollback);
+	}
+
+	/**
+	 * Run the store operations in a batch, commit the batch if the body
+	 * succeeded, or abort it otherwise.
+	 *
+	 * @param <T> the result type of the transaction
+	 * @param body the store operations
+	 * @return the result of the body
+	 * @throws DIDException if an error occurred in the body or committing
+	 */
+	public <T> T transaction(Transaction<T> body) throws DIDException {
+		checkArgument(body != null, "Invalid transaction");
+
+		try (Batch batch = batch()) {
+			T result = body.run();
+			batch.commit();
+			return result;
+		}
+	}
+
+	/**
+	 * Enable the write-behind mode of the DID and credential metadata.
+	 *
+	 * <p>
+	 * In write-behind mode the metadata updates are coalesced in memory,
+	 * and written to the storage by {@link #flush()}, {@link #close()},
+	 * the end of {@link #synchronize()}, or the background flusher.
+	 * The pending updates will be lost if the process exits without
+	 * flushing them.
+	 * </p>
+	 *
+	 * @param flushInterval the interval in milliseconds of the background
+	 * 			flusher, or 0 to flush explicitly only
+	 */
+	public synchronized void enableMetadataWriteBehind(long flushInterval) {
+		checkArgument(flushInterval >= 0, "Invalid flush interval");
+		checkState(storage != null, "Store closed");
+
+		if (metadataFlusher != null) {
+			metadataFlusher.cancel(false);
+			metadataFlusher = null;
+		}
+
+		if (flushInterval > 0) {
+			metadataFlusher = MetadataFlusher.executor.scheduleWithFixedDelay(() -> {
+				try {
+					flush();
+				} catch (DIDStoreException e) {
+					log.error("Flush the pending metadata error", e);
+				}
+			}, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+
+		writeBehind = true;
+		log.info("Metadata write-behind enabled, flush interval: {}", flushInterval);
+	}
+
+	/**
+	 * Disable the write-behind mode of the metadata, and flush the pending
+	 * metadata updates.
+	 *
+	 * @throws DIDStoreException if an error occurred when flushing the metadata
+	 */
+	public void disableMetadataWriteBehind() throws DIDStoreException {
+		disableWriteBehind();
+		flush();
+	}
+
+	private synchronized void disableWriteBehind() {
+		writeBehind = false;
+		if (metadataFlusher != null) {
+			metadataFlusher.cancel(false);
+			metadataFlusher = null;
+		}
+	}
+
+	/**
+	 * Check if the metadata write-behind mode is enabled.
+	 *
+	 * @return true if enabled, otherwise false
+	 */
+	public boolean isMetadataWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * Write the pending metadata updates to the storage.
+	 *
+	 * <p>
+	 * The pending updates are written to the storage directly, even if the
+	 * current thread in a batch.
+	 * </p>
+	 *
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public void flush() throws DIDStoreException {
+		if (pendingMetadata.isEmpty())
+			return;
+
+		int count = 0;
+		for (Key key : pendingMetadata.keySet()) {
+			// A delete drops the pending metadata, not written after it
+			synchronized (flushLock) {
+				// Updated again after removed will be pending again
+				AbstractMetadata metadata = pendingMetadata.remove(key);
+				if (metadata == null)
+					continue;
+
+				try {
+					if (key.type == Key.TYPE_DID_METADATA)
+						storage.storeDidMetadata((DID)key.id, (DIDMetadata)metadata);
+					else
+						storage.storeCredentialMetadata((DIDURL)key.id,
+								(CredentialMetadata)metadata);
+				} catch (DIDStorageException e) {
+					pendingMetadata.putIfAbsent(key, metadata);
+					throw e;
+				}
+			}
+
+			count++;
+		}
+
+		log.debug("Flushed {} pending metadata", count);
+	}
+
+	// Defer the metadata write if write-behind, the batch already coalesces.
+	// The pending one is a snapshot, the flush never sees the live object
+	// that the application is updating
+	private boolean deferMetadata(Key key, AbstractMetadata metadata) {
+		if (currentBatch.get() != null) {
+			// The staged copy supersedes the pending one
+			pendingMetadata.remove(key);
+			return false;
+		}
+
+		if (!writeBehind)
+			return false;
+
+		pendingMetadata.put(key, copyMetadata(metadata));
+		return true;
+	}
+
+	// A copy of the pending metadata snapshot, or null if not pending
+	private AbstractMetadata getPendingMetadata(Key key) {
+		AbstractMetadata metadata = pendingMetadata.get(key);
+		return metadata == null ? null : copyMetadata(metadata);
+	}
+
+	private static AbstractMetadata copyMetadata(AbstractMetadata metadata) {
+		try {
+			return (AbstractMetadata)metadata.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new UnknownInternalException(e);
+		}
+	}
+
+	// The staging storage if the current thread in a batch
+	private DIDStorage getStorage() {
+		Batch batch = currentBatch.get();
+		return batch != null ? batch.staging : storage;
+	}
+
+	private void checkSession(Session session) {
+		checkArgument(session != null, "Invalid session");
+		checkArgument(session.getStore() == this, "Session not belongs to this store");
+	}
+
+	// Load the object through the cache, and report the cache events
+	private Object getCached(Key key, Callable<Object> loader)
+			throws ExecutionException {
+		// Bypass the shared cache, the batch loads from its staging storage
+		Batch batch = currentBatch.get();
+		if (batch != null) {
+			Object value = batch.objects.get(key);
+			if (value == null) {
+				try {
+					value = loader.call();
+				} catch (Exception e) {
+					throw new ExecutionException(e);
+				}
+
+				batch.objects.put(key, value);
+			}
+
+			return value;
+		}
+
+		DIDMetrics metrics = DIDBackend.getMetrics();
+
+		Object value = cache.getIfPresent(key);
+		if (value != null) {
+			metrics.cacheHit(DIDMetrics.CACHE_STORE);
+			return value;
+		}
+
+		metrics.cacheMiss(DIDMetrics.CACHE_STORE);
+		long start = System.nanoTime();
+		boolean success = false;
+		try {
+			value = cache.get(key, loader);
+			success = true;
+			return value;
+		} finally {
+			metrics.cacheLoad(DIDMetrics.CACHE_STORE,
+					System.nanoTime() - start, success);
+		}
+	}
+
+	// The batch caches its writes in the overlay until committed
+	private void putCache(Key key, Object value) {
+		Batch batch = currentBatch.get();
+		if (batch != null) {
+			batch.objects.put(key, value);
+			batch.touched.add(key);
+		} else {
+			cache.put(key, value);
+		}
+	}
+
+	private void invalidateCache(Key key) {
+		Batch batch = currentBatch.get();
+		if (batch != null) {
+			batch.objects.remove(key);
+			batch.touched.add(key);
+		} else {
+			cache.invalidate(key);
+		}
+	}
+
+	// Invalidate every thing belongs to the DID
+	private void invalidateDid(DID did) {
+		cache.invalidate(Key.forDidDocument(did));
+		cache.invalidate(Key.forDidMetadata(did));
+
+		for (Key key : cache.asMap().keySet()) {
+			if (key.id instanceof DIDURL) {
+				DIDURL id = (DIDURL)key.id;
+				if (id.getDid().equals(did))
+					cache.invalidate(key);
+			}
+		}
+	}
+
+	private void invalidateKeyCache() {
+		if (keyCache != null)
+			keyCache.invalidateAll();
+	}
+
+	private void invalidateKeyCache(DIDURL id) {
+		if (keyCache != null)
+			keyCache.invalidate(id);
+	}
+
+	private void invalidateKeyCache(DID did) {
+		if (keyCache != null) {
+			for (DIDURL id : keyCache.asMap().keySet()) {
+				if (id.getDid().equals(did))
+					keyCache.invalidate(id);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of the signatures that used the cached keys.
+	 *
+	 * @return the key cache hit count, 0 if the key cache not enabled
+	 */
+	public long getKeyCacheHitCount() {
+		return keyCache != null ? keyCache.stats().hitCount() : 0;
+	}
+
+	/**
+	 * Get the number of the signatures that needed to decrypt the keys.
+	 *
+	 * @return the key cache miss count, 0 if the key cache not enabled
+	 */
+	public long getKeyCacheMissCount() {
+		return keyCache != null ? keyCache.stats().missCount() : 0;
+	}
+
+	private void closeSessions() {
+		for (Session session : sessions.toArray(new Session[0]))
+			session.close();
+	}
+
+	private String encrypt(byte[] input, Session session) throws DIDStoreException {
+		String result = session.encrypt(input);
+
 		String fingerprint = metadata.getFingerprint();
-		String currentFingerprint = calcFingerprint(passwd);
+		if (fingerprint == null || fingerprint.isEmpty())
+			metadata.setFingerprint(session.fingerprint);
 
-		byte[] result = decryptFromBase64(input, passwd);
+		return result;
+	}
 
+	private byte[] decrypt(String input, Session session) throws DIDStoreException {
+		byte[] result = session.decrypt(input);
+
+		String fingerprint = metadata.getFingerprint();
 		if (fingerprint == null || fingerprint.isEmpty())
-			metadata.setFingerprint(currentFingerprint);
+			metadata.setFingerprint(session.fingerprint);
 
 		return result;
 	}
 
+	// One-shot session for the operations with password
+	private String encrypt(byte[] input, String passwd) throws DIDStoreException {
+		try (Session session = new Session(this, passwd)) {
+			return encrypt(input, session);
+		}
+	}
+
+	private byte[] decrypt(String input, String passwd) throws DIDStoreException {
+		try (Session session = new Session(this, passwd)) {
+			return decrypt(input, session);
+		}
+	}
+
 	/**
 	 * Save the RootIdentity object with private keys to this DID store.
 	 *
@@ -497,21 +1472,24 @@ public final class DIDStore {
 		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
 
 		String encryptedMnemonic = null;
-		if (identity.getMnemonic() != null)
-			encryptedMnemonic = encrypt(identity.getMnemonic().getBytes(), storepass);
+		String encryptedPrivateKey;
+		try (Session session = new Session(this, storepass)) {
+			if (identity.getMnemonic() != null)
+				encryptedMnemonic = encrypt(identity.getMnemonic().getBytes(), session);
 
-		String encryptedPrivateKey = encrypt(identity.getRootPrivateKey().serialize(), storepass);
+			encryptedPrivateKey = encrypt(identity.getRootPrivateKey().serialize(), session);
+		}
 
 		String publicKey = identity.getPreDerivedPublicKey().serializePublicKeyBase58();
 
-		storage.storeRootIdentity(identity.getId(), encryptedMnemonic,
+		getStorage().storeRootIdentity(identity.getId(), encryptedMnemonic,
 				encryptedPrivateKey, publicKey, identity.getIndex());
 
 		if (metadata.getDefaultRootIdentity() == null)
 			metadata.setDefaultRootIdentity(identity.getId());
 
-		cache.invalidate(Key.forRootIdentity(identity.getId()));
-		cache.invalidate(Key.forRootIdentityPrivateKey(identity.getId()));
+		invalidateCache(Key.forRootIdentity(identity.getId()));
+		invalidateCache(Key.forRootIdentityPrivateKey(identity.getId()));
 	}
 
 	/**
@@ -525,7 +1503,8 @@ public final class DIDStore {
 	protected void storeRootIdentity(RootIdentity identity)
 			throws DIDStoreException {
 		checkArgument(identity != null, "Invalid identity");
-		storage.updateRootIdentityIndex(identity.getId(), identity.getIndex());
+		getStorage().updateRootIdentityIndex(identity.getId(), identity.getIndex());
+		invalidateCache(Key.forRootIdentity(identity.getId()));
 	}
 
 	/**
@@ -554,10 +1533,10 @@ public final class DIDStore {
 		checkArgument(id != null && !id.isEmpty(), "Invalid id");
 
 		try {
-			Object value = cache.get(Key.forRootIdentity(id), new Callable<Object>() {
+			Object value = getCached(Key.forRootIdentity(id), new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStoreException {
-					RootIdentity identity = storage.loadRootIdentity(id);
+					RootIdentity identity = getStorage().loadRootIdentity(id);
 					if (identity != null) {
 						identity.setMetadata(loadRootIdentityMetadata(id));
 						return identity;
@@ -582,7 +1561,7 @@ public final class DIDStore {
 	public RootIdentity loadRootIdentity() throws DIDStoreException {
 		String id = metadata.getDefaultRootIdentity();
 		if (id == null || id.isEmpty()) {
-			List<RootIdentity> ids = storage.listRootIdentities();
+			List<RootIdentity> ids = getStorage().listRootIdentities();
 			if (ids.size() != 1) {
 				return null;
 			} else {
@@ -604,7 +1583,7 @@ public final class DIDStore {
 	 * @throws DIDStoreException if an error occurred when accessing the store
 	 */
 	public boolean containsRootIdentity(String id) throws DIDStoreException {
-		return storage.loadRootIdentity(id) != null;
+		return getStorage().loadRootIdentity(id) != null;
 	}
 
 	/**
@@ -621,7 +1600,7 @@ public final class DIDStore {
 		checkArgument(id != null && !id.isEmpty(), "Invalid id");
 		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
 
-		String encryptedMnemonic = storage.loadRootIdentityMnemonic(id);
+		String encryptedMnemonic = getStorage().loadRootIdentityMnemonic(id);
 		if (encryptedMnemonic != null)
 			return new String(decrypt(encryptedMnemonic, storepass));
 		else
@@ -638,22 +1617,22 @@ public final class DIDStore {
 	protected boolean containsRootIdentityMnemonic(String id) throws DIDStoreException {
 		checkArgument(id != null && !id.isEmpty(), "Invalid id");
 
-		String encryptedMnemonic = storage.loadRootIdentityMnemonic(id);
+		String encryptedMnemonic = getStorage().loadRootIdentityMnemonic(id);
 		return encryptedMnemonic != null;
 	}
 
-	private HDKey loadRootIdentityPrivateKey(String id, String storepass)
+	private HDKey loadRootIdentityPrivateKey(String id, Session session)
 			throws DIDStoreException {
 		try {
-			Object value = cache.get(Key.forRootIdentityPrivateKey(id), new Callable<Object>() {
+			Object value = getCached(Key.forRootIdentityPrivateKey(id), new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStorageException {
-					String encryptedKey = storage.loadRootIdentityPrivateKey(id);
+					String encryptedKey = getStorage().loadRootIdentityPrivateKey(id);
 					return encryptedKey != null ? encryptedKey : NULL;			    }
 			});
 
 			if (value != NULL) {
-				byte[] keyData = decrypt((String)value, storepass);
+				byte[] keyData = decrypt((String)value, session);
 				return HDKey.deserialize(keyData);
 			} else {
 				return null;
@@ -663,19 +1642,28 @@ public final class DIDStore {
 		}
 	}
 
-	HDKey derive(String id, String path, String storepass)
+	HDKey derive(String id, String path, Session session)
 			throws DIDStoreException {
 		checkArgument(id != null && !id.isEmpty(), "Invalid identity");
 		checkArgument(path != null && !path.isEmpty(), "Invalid path");
-		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+		checkSession(session);
 
-		HDKey rootPrivateKey = loadRootIdentityPrivateKey(id, storepass);
+		HDKey rootPrivateKey = loadRootIdentityPrivateKey(id, session);
 		HDKey key = rootPrivateKey.derive(path);
 		rootPrivateKey.wipe();
 
 		return key;
 	}
 
+	HDKey derive(String id, String path, String storepass)
+			throws DIDStoreException {
+		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+
+		try (Session session = new Session(this, storepass)) {
+			return derive(id, path, session);
+		}
+	}
+
 	/**
 	 * Delete the specific RootIdentity object from this store.
 	 *
@@ -686,14 +1674,14 @@ public final class DIDStore {
 	public boolean deleteRootIdentity(String id) throws DIDStoreException {
 		checkArgument(id != null && !id.isEmpty(), "Invalid id");
 
-		boolean success = storage.deleteRootIdentity(id);
+		boolean success = getStorage().deleteRootIdentity(id);
 		if (success) {
 			if (metadata.getDefaultRootIdentity() != null &&
 					metadata.getDefaultRootIdentity().equals(id))
 			metadata.setDefaultRootIdentity(null);
 
-			cache.invalidate(Key.forRootIdentity(id));
-			cache.invalidate(Key.forRootIdentityPrivateKey(id));
+			invalidateCache(Key.forRootIdentity(id));
+			invalidateCache(Key.forRootIdentityPrivateKey(id));
 		}
 
 		return success;
@@ -706,9 +1694,9 @@ public final class DIDStore {
 	 * @throws DIDStoreException if an error occurred when accessing the store
 	 */
 	public List<RootIdentity> listRootIdentities() throws DIDStoreException {
-		List<RootIdentity> ids = storage.listRootIdentities();
+		List<RootIdentity> ids = getStorage().listRootIdentities();
 		for (RootIdentity id : ids) {
-			RootIdentity.Metadata metadata = storage.loadRootIdentityMetadata(id.getId());
+			RootIdentity.Metadata metadata = getStorage().loadRootIdentityMetadata(id.getId());
 			if (metadata == null)
 				metadata = new RootIdentity.Metadata();
 			metadata.setId(id.getId());
@@ -726,7 +1714,7 @@ public final class DIDStore {
 	 * @throws DIDStoreException if an error occurred when accessing the store
 	 */
 	public boolean containsRootIdentities() throws DIDStoreException {
-		return storage.containsRootIdenities();
+		return getStorage().containsRootIdenities();
 	}
 
 	/**
@@ -741,7 +1729,7 @@ public final class DIDStore {
 		checkArgument(id != null && !id.isEmpty(), "Invalid id");
 		checkArgument(metadata != null, "Invalid metadata");
 
-		storage.storeRootIdentityMetadata(id, metadata);
+		getStorage().storeRootIdentityMetadata(id, metadata);
 	}
 
 	/**
@@ -754,7 +1742,7 @@ public final class DIDStore {
 			throws DIDStoreException {
 		checkArgument(id != null && !id.isEmpty(), "Invalid id");
 
-		RootIdentity.Metadata metadata = storage.loadRootIdentityMetadata(id);
+		RootIdentity.Metadata metadata = getStorage().loadRootIdentityMetadata(id);
 		if (metadata != null) {
 			metadata.setId(id);
 			metadata.attachStore(this);
@@ -774,7 +1762,7 @@ public final class DIDStore {
 	public void storeDid(DIDDocument doc) throws DIDStoreException {
 		checkArgument(doc != null, "Invalid doc");
 
-		storage.storeDid(doc);
+		getStorage().storeDid(doc);
 		if (doc.getStore() != this) {
 			DIDMetadata metadata = loadDidMetadata(doc.getSubject());
 			doc.getMetadata().merge(metadata);
@@ -785,7 +1773,7 @@ public final class DIDStore {
 		for (VerifiableCredential vc : doc.getCredentials())
 			storeCredential(vc);
 
-		cache.put(Key.forDidDocument(doc.getSubject()), doc);
+		putCache(Key.forDidDocument(doc.getSubject()), doc);
 	}
 
 	/**
@@ -799,10 +1787,10 @@ public final class DIDStore {
 		checkArgument(did != null, "Invalid did");
 
 		try {
-			Object value = cache.get(Key.forDidDocument(did), new Callable<Object>() {
+			Object value = getCached(Key.forDidDocument(did), new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStoreException {
-					DIDDocument doc = storage.loadDid(did);
+					DIDDocument doc = getStorage().loadDid(did);
 					if (doc != null) {
 						doc.setMetadata(loadDidMetadata(did));
 						return doc;
@@ -864,10 +1852,11 @@ public final class DIDStore {
 		checkArgument(did != null, "Invalid did");
 		checkArgument(metadata != null, "Invalid metadata");
 
-		storage.storeDidMetadata(did, metadata);
+		if (!deferMetadata(Key.forDidMetadata(did), metadata))
+			getStorage().storeDidMetadata(did, metadata);
 		metadata.attachStore(this);
 
-		cache.put(Key.forDidMetadata(did), metadata);
+		putCache(Key.forDidMetadata(did), metadata);
 	}
 
 	/**
@@ -881,10 +1870,13 @@ public final class DIDStore {
 		checkArgument(did != null, "Invalid did");
 
 		try {
-			Object value = cache.get(Key.forDidMetadata(did) , new Callable<Object>() {
+			Object value = getCached(Key.forDidMetadata(did) , new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStorageException {
-					DIDMetadata metadata = storage.loadDidMetadata(did);
+					DIDMetadata metadata = (DIDMetadata)getPendingMetadata(
+							Key.forDidMetadata(did));
+					if (metadata == null)
+						metadata = getStorage().loadDidMetadata(did);
 					if (metadata != null) {
 						metadata.setDid(did);
 						metadata.attachStore(DIDStore.this);
@@ -917,20 +1909,27 @@ public final class DIDStore {
 	public boolean deleteDid(DID did) throws DIDStoreException {
 		checkArgument(did != null, "Invalid did");
 
-		boolean success = storage.deleteDid(did);
+		boolean success;
+		synchronized (flushLock) {
+			// Drop the pending metadata of the DID and its credentials
+			for (Key key : pendingMetadata.keySet()) {
+				if (did.equals(key.getOwner()))
+					pendingMetadata.remove(key);
+			}
+
+			success = getStorage().deleteDid(did);
+		}
 
 		if (success) {
-			cache.invalidate(Key.forDidDocument(did));
-			cache.invalidate(Key.forDidMetadata(did));
-
-			// invalidate every thing belongs to this did
-			for (Key key : cache.asMap().keySet()) {
-				if (key.id instanceof DIDURL) {
-					DIDURL id = (DIDURL)key.id;
-					if (id.getDid().equals(did))
-						cache.invalidate(key);
-				}
+			Batch batch = currentBatch.get();
+			if (batch != null) {
+				batch.objects.keySet().removeIf((key) -> did.equals(key.getOwner()));
+				batch.deletedDids.add(did);
+			} else {
+				invalidateDid(did);
 			}
+
+			invalidateKeyCache(did);
 		}
 
 		return success;
@@ -959,9 +1958,12 @@ public final class DIDStore {
 	 * @throws DIDStoreException if an error occurred when accessing the store
 	 */
 	public List<DID> listDids() throws DIDStoreException {
-		List<DID> dids = storage.listDids();
+		List<DID> dids = getStorage().listDids();
 		for (DID did : dids) {
-			DIDMetadata metadata = storage.loadDidMetadata(did);
+			DIDMetadata metadata = (DIDMetadata)getPendingMetadata(
+					Key.forDidMetadata(did));
+			if (metadata == null)
+				metadata = getStorage().loadDidMetadata(did);
 			if (metadata == null)
 				metadata = new DIDMetadata();
 			metadata.setDid(did);
@@ -1006,7 +2008,7 @@ public final class DIDStore {
 			throws DIDStoreException {
 		checkArgument(credential != null, "Invalid credential");
 
-		storage.storeCredential(credential);
+		getStorage().storeCredential(credential);
 		if (credential.getMetadata().getStore() != this) {
 			CredentialMetadata metadata = loadCredentialMetadata(credential.getId());
 			credential.getMetadata().merge(metadata);
@@ -1014,7 +2016,7 @@ public final class DIDStore {
 		}
 		storeCredentialMetadata(credential.getId(), credential.getMetadata());
 
-		cache.put(Key.forCredential(credential.getId()), credential);
+		putCache(Key.forCredential(credential.getId()), credential);
 	}
 
 	/**
@@ -1029,10 +2031,10 @@ public final class DIDStore {
 		checkArgument(id != null, "Invalid credential id");
 
 		try {
-			Object value = cache.get(Key.forCredential(id), new Callable<Object>() {
+			Object value = getCached(Key.forCredential(id), new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStoreException {
-					VerifiableCredential vc = storage.loadCredential(id);
+					VerifiableCredential vc = getStorage().loadCredential(id);
 					if (vc != null) {
 						vc.setMetadata(loadCredentialMetadata(id));
 						return vc;
@@ -1095,7 +2097,7 @@ public final class DIDStore {
 	 */
 	public boolean containsCredentials(DID did) throws DIDStoreException {
 		checkArgument(did != null, "Invalid did");
-		return storage.containsCredentials(did);
+		return getStorage().containsCredentials(did);
 	}
 
 	/**
@@ -1122,10 +2124,11 @@ public final class DIDStore {
 		checkArgument(id != null, "Invalid credential id");
 		checkArgument(metadata != null, "Invalid credential metadata");
 
-		storage.storeCredentialMetadata(id, metadata);
+		if (!deferMetadata(Key.forCredentialMetadata(id), metadata))
+			getStorage().storeCredentialMetadata(id, metadata);
 		metadata.attachStore(this);
 
-		cache.put(Key.forCredentialMetadata(id), metadata);
+		putCache(Key.forCredentialMetadata(id), metadata);
 	}
 
 	/**
@@ -1140,10 +2143,13 @@ public final class DIDStore {
 		checkArgument(id != null, "Invalid credential id");
 
 		try {
-			Object value = cache.get(Key.forCredentialMetadata(id), new Callable<Object>() {
+			Object value = getCached(Key.forCredentialMetadata(id), new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStorageException {
-					CredentialMetadata metadata = storage.loadCredentialMetadata(id);
+					CredentialMetadata metadata = (CredentialMetadata)getPendingMetadata(
+							Key.forCredentialMetadata(id));
+					if (metadata == null)
+						metadata = getStorage().loadCredentialMetadata(id);
 					if (metadata != null) {
 						metadata.setId(id);
 						metadata.attachStore(DIDStore.this);
@@ -1171,10 +2177,14 @@ public final class DIDStore {
 	public boolean deleteCredential(DIDURL id) throws DIDStoreException {
 		checkArgument(id != null, "Invalid credential id");
 
-		boolean success = storage.deleteCredential(id);
+		boolean success;
+		synchronized (flushLock) {
+			pendingMetadata.remove(Key.forCredentialMetadata(id));
+			success = getStorage().deleteCredential(id);
+		}
 		if (success) {
-			cache.invalidate(Key.forCredential(id));
-			cache.invalidate(Key.forCredentialMetadata(id));
+			invalidateCache(Key.forCredential(id));
+			invalidateCache(Key.forCredentialMetadata(id));
 		}
 
 		return success;
@@ -1201,9 +2211,12 @@ public final class DIDStore {
 	public List<DIDURL> listCredentials(DID did) throws DIDStoreException {
 		checkArgument(did != null, "Invalid did");
 
-		List<DIDURL> ids = storage.listCredentials(did);
+		List<DIDURL> ids = getStorage().listCredentials(did);
 		for (DIDURL id : ids) {
-			CredentialMetadata metadata = storage.loadCredentialMetadata(id);
+			CredentialMetadata metadata = (CredentialMetadata)getPendingMetadata(
+					Key.forCredentialMetadata(id));
+			if (metadata == null)
+				metadata = getStorage().loadCredentialMetadata(id);
 			if (metadata == null)
 				metadata = new CredentialMetadata();
 			metadata.setId(id);
@@ -1277,8 +2290,9 @@ public final class DIDStore {
 	protected void storeLazyPrivateKey(DIDURL id) throws DIDStoreException {
 		checkArgument(id != null, "Invalid private key id");
 
-		storage.storePrivateKey(id, DID_LAZY_PRIVATEKEY);
-		cache.put(Key.forDidPrivateKey(id), DID_LAZY_PRIVATEKEY);
+		getStorage().storePrivateKey(id, DID_LAZY_PRIVATEKEY);
+		putCache(Key.forDidPrivateKey(id), DID_LAZY_PRIVATEKEY);
+		invalidateKeyCache(id);
 	}
 
 	/**
@@ -1292,14 +2306,33 @@ public final class DIDStore {
 	 */
 	public void storePrivateKey(DIDURL id, byte[] privateKey,
 			String storepass) throws DIDStoreException {
+		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+
+		try (Session session = new Session(this, storepass)) {
+			storePrivateKey(id, privateKey, session);
+		}
+	}
+
+	/**
+	 * Save the DID's private key to the store, the private key will be encrypt
+	 * using the unlocked session.
+	 *
+	 * @param id the private key id
+	 * @param privateKey the binary extended private key
+	 * @param session the unlocked session of this store
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	public void storePrivateKey(DIDURL id, byte[] privateKey,
+			Session session) throws DIDStoreException {
 		checkArgument(id != null, "Invalid private key id");
 		checkArgument(privateKey != null && privateKey.length != 0, "Invalid private key");
-		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+		checkSession(session);
 
-		String encryptedKey = encrypt(privateKey, storepass);
-		storage.storePrivateKey(id, encryptedKey);
+		String encryptedKey = encrypt(privateKey, session);
+		getStorage().storePrivateKey(id, encryptedKey);
 
-		cache.put(Key.forDidPrivateKey(id), encryptedKey);
+		putCache(Key.forDidPrivateKey(id), encryptedKey);
+		invalidateKeyCache(id);
 	}
 
 	/**
@@ -1318,10 +2351,10 @@ public final class DIDStore {
 
 	private String loadPrivateKey(DIDURL id) throws DIDStoreException {
 		try {
-			Object value = cache.get(Key.forDidPrivateKey(id), new Callable<Object>() {
+			Object value = getCached(Key.forDidPrivateKey(id), new Callable<Object>() {
 				@Override
 				public Object call() throws DIDStoreException {
-					String encryptedKey = storage.loadPrivateKey(id);
+					String encryptedKey = getStorage().loadPrivateKey(id);
 					return encryptedKey != null ? encryptedKey : NULL;
 				}
 			});
@@ -1332,19 +2365,28 @@ public final class DIDStore {
 		}
 	}
 
-	byte[] loadPrivateKey(DIDURL id, String storepass)
+	byte[] loadPrivateKey(DIDURL id, Session session)
 			throws DIDStoreException {
 		checkArgument(id != null, "Invalid private key id");
-		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+		checkSession(session);
 
 		String encryptedKey = loadPrivateKey(id);
 		if (encryptedKey == null || encryptedKey.isEmpty()) {
 			return null;
 		} else if (encryptedKey.equals(DID_LAZY_PRIVATEKEY)) {
 			// fail-back to lazy private key generation
-			return RootIdentity.lazyCreateDidPrivateKey(id, this, storepass);
+			return RootIdentity.lazyCreateDidPrivateKey(id, this, session);
 		} else {
-			return decrypt(encryptedKey, storepass);
+			return decrypt(encryptedKey, session);
+		}
+	}
+
+	byte[] loadPrivateKey(DIDURL id, String storepass)
+			throws DIDStoreException {
+		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+
+		try (Session session = new Session(this, storepass)) {
+			return loadPrivateKey(id, session);
 		}
 	}
 
@@ -1384,7 +2426,7 @@ public final class DIDStore {
 	 */
 	public boolean containsPrivateKeys(DID did) throws DIDStoreException {
 		checkArgument(did != null, "Invalid did");
-		return storage.containsPrivateKeys(did);
+		return getStorage().containsPrivateKeys(did);
 	}
 
 	/**
@@ -1410,9 +2452,11 @@ public final class DIDStore {
 	public boolean deletePrivateKey(DIDURL id) throws DIDStoreException {
 		checkArgument(id != null, "Invalid private key id");
 
-		boolean success = storage.deletePrivateKey(id);
-		if (success)
-			cache.invalidate(Key.forDidPrivateKey(id));
+		boolean success = getStorage().deletePrivateKey(id);
+		if (success) {
+			invalidateCache(Key.forDidPrivateKey(id));
+			invalidateKeyCache(id);
+		}
 
 		return success;
 	}
@@ -1439,13 +2483,55 @@ public final class DIDStore {
 	 */
 	protected String sign(DIDURL id, String storepass, byte[] digest)
 			throws DIDStoreException {
-		checkArgument(id != null, "Invalid private key id");
 		checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
+
+		try (Session session = new Session(this, storepass)) {
+			return sign(id, session, digest);
+		}
+	}
+
+	/**
+	 * Sign the digest using the specified key.
+	 *
+	 * @param id the key id
+	 * @param session the unlocked session of this store
+	 * @param digest the binary digest in bytes array
+	 * @return the base64(URL safe) encoded signature string
+	 * @throws DIDStoreException if an error occurred when accessing the store
+	 */
+	protected String sign(DIDURL id, Session session, byte[] digest)
+			throws DIDStoreException {
+		checkArgument(id != null, "Invalid private key id");
+		checkSession(session);
 		checkArgument(digest != null && digest.length > 0, "Invalid digest");
 
-		HDKey key = HDKey.deserialize(loadPrivateKey(id, storepass));
-		byte[] sig = EcdsaSigner.sign(key.getPrivateKeyBytes(), digest);
-		key.wipe();
+		byte[] sig = null;
+		if (keyCache != null) {
+			// The session still needs to be unlocked to use the cached key
+			session.checkUnlocked();
+
+			SigningKey cached = keyCache.getIfPresent(id);
+			if (cached != null)
+				sig = cached.sign(digest);
+
+			if (sig != null)
+				DIDBackend.getMetrics().cacheHit(DIDMetrics.CACHE_STORE_KEYS);
+			else
+				DIDBackend.getMetrics().cacheMiss(DIDMetrics.CACHE_STORE_KEYS);
+		}
+
+		if (sig == null) {
+			HDKey key = HDKey.deserialize(loadPrivateKey(id, session));
+			byte[] privateKey = key.getPrivateKeyBytes();
+			sig = EcdsaSigner.sign(privateKey, digest);
+			key.wipe();
+
+			// The key staged by a batch is not shared before committed
+			if (keyCache != null && currentBatch.get() == null)
+				keyCache.put(id, new SigningKey(privateKey));
+			else
+				Arrays.fill(privateKey, (byte)0);
+		}
 
 		return Base64.encodeToString(sig,
 				Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
@@ -1463,11 +2549,13 @@ public final class DIDStore {
 		checkArgument(oldPassword != null && !oldPassword.isEmpty(), "Invalid old password");
 		checkArgument(newPassword != null && !newPassword.isEmpty(), "Invalid new password");
 
-		storage.changePassword((data) -> {
+		getStorage().changePassword((data) -> {
 			return DIDStore.reEncrypt(data, oldPassword, newPassword);
 		});
 
 		metadata.setFingerprint(calcFingerprint(newPassword));
+		closeSessions();
+		invalidateKeyCache();
 		cache.invalidateAll();
 	}
 
@@ -1499,14 +2587,17 @@ public final class DIDStore {
 		if (handle == null)
 			handle = defaultConflictHandle;
 
+		// Merge with the latest local metadata
+		flush();
+
 		List<RootIdentity> identities = listRootIdentities();
 		for (RootIdentity identity : identities) {
 			identity.synchronize(handle);
 		}
 
-		List<DID> dids = storage.listDids();
+		List<DID> dids = getStorage().listDids();
 		for (DID did : dids) {
-			DIDDocument localDoc = storage.loadDid(did);
+			DIDDocument localDoc = getStorage().loadDid(did);
 			if (localDoc.isCustomizedDid()) {
 				DIDDocument resolvedDoc = did.resolve();
 				if (resolvedDoc == null)
@@ -1549,18 +2640,20 @@ public final class DIDStore {
 				storeDid(finalDoc);
 			}
 
-			List<DIDURL> vcIds = storage.listCredentials(did);
+			List<DIDURL> vcIds = getStorage().listCredentials(did);
 			for (DIDURL vcId : vcIds) {
-				VerifiableCredential localVc = storage.loadCredential(vcId);
+				VerifiableCredential localVc = getStorage().loadCredential(vcId);
 
 				VerifiableCredential resolvedVc = VerifiableCredential.resolve(vcId, localVc.getIssuer());
 				if (resolvedVc == null)
 					continue;
 
 				resolvedVc.getMetadata().merge(localVc.getMetadata());
-				storage.storeCredential(resolvedVc);
+				getStorage().storeCredential(resolvedVc);
 			}
 		}
+
+		flush();
 	}
 
 	/**
@@ -1589,12 +2682,9 @@ public final class DIDStore {
 	 * @return a new CompletableStage
 	 */
 	public CompletableFuture<Void> synchronizeAsync(ConflictHandle handle) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				synchronize(handle);
-			} catch (DIDResolveException | DIDStoreException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			synchronize(handle);
+			return null;
 		});
 
 		return future;
@@ -1787,7 +2877,7 @@ public final class DIDStore {
 				}
 			}
 
-			bytes = dateFormat.format(created).getBytes();
+			bytes = DateCodec.format(created).getBytes();
 			sha256.update(bytes, 0, bytes.length);
 
 			byte digest[] = new byte[32];
@@ -1857,35 +2947,36 @@ public final class DIDStore {
 			throws DIDStoreException, IOException {
 		// All objects should load directly from storage,
 		// avoid affects the cached objects.
+		flush();
 
-		DIDDocument doc = storage.loadDid(did);
+		DIDDocument doc = getStorage().loadDid(did);
 		if (doc == null)
 			throw new DIDStoreException("Export DID " + did + " failed, not exist.");
 
-		doc.setMetadata(storage.loadDidMetadata(did));
+		doc.setMetadata(getStorage().loadDidMetadata(did));
 
 		log.debug("Exporting {}...", did.toString());
 
 		DIDExport de = new DIDExport(DID_EXPORT, did);
 		de.setDocument(doc);
 
-		if (storage.containsCredentials(did)) {
+		if (getStorage().containsCredentials(did)) {
 			List<DIDURL> ids = new ArrayList<DIDURL>(listCredentials(did));
 			Collections.sort(ids);
 			for (DIDURL id : ids) {
 				log.debug("Exporting credential {}...", id.toString());
 
-				VerifiableCredential vc = storage.loadCredential(id);
-				vc.setMetadata(storage.loadCredentialMetadata(id));
+				VerifiableCredential vc = getStorage().loadCredential(id);
+				vc.setMetadata(getStorage().loadCredentialMetadata(id));
 				de.addCredential(vc);
 			}
 		}
 
-		if (storage.containsPrivateKeys(did)) {
+		if (getStorage().containsPrivateKeys(did)) {
 			List<PublicKey> pks = doc.getPublicKeys();
 			for (PublicKey pk : pks) {
 				DIDURL id = pk.getId();
-				String key = storage.loadPrivateKey(id);
+				String key = getStorage().loadPrivateKey(id);
 				if (key != null) {
 					log.debug("Exporting private key {}...", id.toString());
 					de.addPrivatekey(id, key, storepass, password);
@@ -2051,20 +3142,21 @@ public final class DIDStore {
 		// Save
 		log.debug("Importing document...");
 		DIDDocument doc = de.document.content;
-		storage.storeDid(doc);
-		storage.storeDidMetadata(doc.getSubject(), doc.getMetadata());
+		getStorage().storeDid(doc);
+		getStorage().storeDidMetadata(doc.getSubject(), doc.getMetadata());
 
 		List<VerifiableCredential> vcs =  de.getCredentials();
 		for (VerifiableCredential vc : vcs) {
 			log.debug("Importing credential {}...", vc.getId().toString());
-			storage.storeCredential(vc);
-			storage.storeCredentialMetadata(vc.getId(), vc.getMetadata());
+			getStorage().storeCredential(vc);
+			getStorage().storeCredentialMetadata(vc.getId(), vc.getMetadata());
 		}
 
 		List<DIDExport.PrivateKey> sks = de.getPrivateKeys();
 		for (DIDExport.PrivateKey sk : sks) {
 			log.debug("Importing private key {}...", sk.getId().toString());
-			storage.storePrivateKey(sk.getId(), sk.getKey(password, storepass));
+			getStorage().storePrivateKey(sk.getId(), sk.getKey(password, storepass));
+			invalidateKeyCache(sk.getId());
 		}
 	}
 
@@ -2265,7 +3357,7 @@ public final class DIDStore {
 			bytes = Boolean.toString(isDefault()).getBytes();
 			sha256.update(bytes, 0, bytes.length);
 
-			bytes = dateFormat.format(created).getBytes();
+			bytes = DateCodec.format(created).getBytes();
 			sha256.update(bytes, 0, bytes.length);
 
 			byte digest[] = new byte[32];
@@ -2314,13 +3406,13 @@ public final class DIDStore {
 		RootIdentityExport rie = new RootIdentityExport(DID_EXPORT);
 
 		// TODO: support multiple named root identities
-		String mnemonic = storage.loadRootIdentityMnemonic(id);
+		String mnemonic = getStorage().loadRootIdentityMnemonic(id);
 		if (mnemonic != null)
 			rie.setMnemonic(mnemonic, storepass, password);
 
-		rie.setPrivateKey(storage.loadRootIdentityPrivateKey(id), storepass, password);
+		rie.setPrivateKey(getStorage().loadRootIdentityPrivateKey(id), storepass, password);
 
-		RootIdentity identity = storage.loadRootIdentity(id);
+		RootIdentity identity = getStorage().loadRootIdentity(id);
 		rie.setPubkey(identity.getPreDerivedPublicKey().serializePublicKeyBase58());
 		rie.setIndex(identity.getIndex());
 
@@ -2429,7 +3521,7 @@ public final class DIDStore {
 		HDKey pk = HDKey.deserializeBase58(publicKey);
 		String id = RootIdentity.getId(pk.serializePublicKey());
 
-		storage.storeRootIdentity(id, encryptedMnemonic, encryptedPrivateKey,
+		getStorage().storeRootIdentity(id, encryptedMnemonic, encryptedPrivateKey,
 				publicKey, rie.getIndex());
 
 		if (rie.isDefault() && metadata.getDefaultRootIdentity() == null)
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The thread-safe codec for the DID datetime strings.
+ *
+ * <p>
+ * The DID objects use the UTC datetime format yyyy-MM-dd'T'HH:mm:ss'Z',
+ * and accept the ISO 8601 format with milliseconds when parsing. The
+ * codec is stateless, it converts between the epoch time and the fields
+ * arithmetically, without the Calendar objects and the locks. The values
+ * out of the year range 0000-9999 or in the non-standard form fall back
+ * to SimpleDateFormat, so the results are always same as before.
+ * </p>
+ */
+final class DateCodec {
+	private static final int DATE_LENGTH = 20;
+	private static final int ISO_DATE_LENGTH = 24;
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	private DateCodec() {}
+
+	/**
+	 * Format the date to the default DID datetime format.
+	 *
+	 * @param date the date to be format
+	 * @return the datetime string
+	 */
+	static String format(Date date) {
+		char[] buf = new char[DATE_LENGTH];
+		if (!format(date.getTime(), buf))
+			return legacyFormat(Constants.DATE_FORMAT).format(date);
+
+		return new String(buf);
+	}
+
+	/**
+	 * Write the date as a datetime string to the JSON generator.
+	 *
+	 * @param date the date to be written
+	 * @param gen the JSON generator
+	 * @throws IOException if an IO error occurred when writing
+	 */
+	static void write(Date date, JsonGenerator gen) throws IOException {
+		char[] buf = new char[DATE_LENGTH];
+		if (format(date.getTime(), buf))
+			gen.writeString(buf, 0, DATE_LENGTH);
+		else
+			gen.writeString(legacyFormat(Constants.DATE_FORMAT).format(date));
+	}
+
+	/**
+	 * Parse the datetime string in the default DID datetime format or the
+	 * ISO 8601 format with milliseconds.
+	 *
+	 * @param str the datetime string
+	 * @return the Date object
+	 * @throws ParseException if the string is not a valid datetime string
+	 */
+	static Date parse(String str) throws ParseException {
+		long time = parse0(str);
+		if (time != Long.MIN_VALUE)
+			return new Date(time);
+
+		try {
+			return legacyFormat(Constants.DATE_FORMAT).parse(str);
+		} catch (ParseException ignore) {
+		}
+
+		// Fail-back to ISO 8601 format.
+		return legacyFormat(Constants.DATE_FORMAT_ISO_8601).parse(str);
+	}
+
+	private static SimpleDateFormat legacyFormat(String pattern) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(Constants.UTC);
+		return format;
+	}
+
+	private static boolean format(long time, char[] buf) {
+		long days = Math.floorDiv(time, MILLIS_PER_DAY);
+		int secs = (int)(Math.floorMod(time, MILLIS_PER_DAY) / 1000);
+
+		// Civil date from the days since epoch, in the proleptic Gregorian
+		// calendar, from H. Hinnant's chrono-compatible algorithms
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		int doe = (int)(z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		// SimpleDateFormat uses the Julian calendar before 1582-10-15
+		if (year < 1583 || year > 9999)
+			return false;
+
+		put4(buf, 0, (int)year);
+		buf[4] = '-';
+		put2(buf, 5, month);
+		buf[7] = '-';
+		put2(buf, 8, day);
+		buf[10] = 'T';
+		put2(buf, 11, secs / 3600);
+		buf[13] = ':';
+		put2(buf, 14, secs / 60 % 60);
+		buf[16] = ':';
+		put2(buf, 17, secs % 60);
+		buf[19] = 'Z';
+		return true;
+	}
+
+	private static void put2(char[] buf, int pos, int value) {
+		buf[pos] = (char)('0' + value / 10);
+		buf[pos + 1] = (char)('0' + value % 10);
+	}
+
+	private static void put4(char[] buf, int pos, int value) {
+		put2(buf, pos, value / 100);
+		put2(buf, pos + 2, value % 100);
+	}
+
+	// Returns Long.MIN_VALUE if not in the strict form
+	private static long parse0(String str) {
+		int len = str.length();
+		if (len != DATE_LENGTH && len != ISO_DATE_LENGTH)
+			return Long.MIN_VALUE;
+
+		if (str.charAt(4) != '-' || str.charAt(7) != '-' ||
+				str.charAt(10) != 'T' || str.charAt(13) != ':' ||
+				str.charAt(16) != ':' || str.charAt(len - 1) != 'Z')
+			return Long.MIN_VALUE;
+
+		int year = digits(str, 0, 4);
+		int month = digits(str, 5, 2);
+		int day = digits(str, 8, 2);
+		int hour = digits(str, 11, 2);
+		int minute = digits(str, 14, 2);
+		int second = digits(str, 17, 2);
+		int millis = 0;
+		if (len == ISO_DATE_LENGTH) {
+			if (str.charAt(19) != '.')
+				return Long.MIN_VALUE;
+
+			millis = digits(str, 20, 3);
+		}
+
+		if (year < 1583 || month < 1 || month > 12 || day < 1 ||
+				day > daysOfMonth(year, month) || hour < 0 || hour > 23 ||
+				minute < 0 || minute > 59 || second < 0 || second > 59 ||
+				millis < 0)
+			return Long.MIN_VALUE;
+
+		// Days since epoch from the civil date
+		int y = month <= 2 ? year - 1 : year;
+		int era = y / 400;
+		int yoe = y - era * 400;
+		int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		long days = era * 146097L + doe - 719468;
+
+		return days * MILLIS_PER_DAY +
+				((hour * 60 + minute) * 60 + second) * 1000L + millis;
+	}
+
+	// Returns -1 if contains any non-digit char
+	private static int digits(String str, int pos, int count) {
+		int value = 0;
+		for (int i = pos; i < pos + count; i++) {
+			char ch = str.charAt(i);
+			if (ch < '0' || ch > '9')
+				return -1;
+
+			value = value * 10 + (ch - '0');
+		}
+
+		return value;
+	}
+
+	private static int daysOfMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leap ? 29 : 28;
+
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+
+		default:
+			return 31;
+		}
+	}
+}
@@ -26,8 +26,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -46,20 +44,58 @@ import org.slf4j.LoggerFactory;
  * createIdTransaction method to support publish capability.
  * </p>
  */
-public class DefaultDIDAdapter implements DIDAdapter {
+public class DefaultDIDAdapter implements BatchDIDAdapter {
 	private static final String MAINNET_RESOLVER = "https://api.elastos.io/eid";
 	private static final String TESTNET_RESOLVER = "https://api-testnet.elastos.io/eid";
 
 	private URL resolver;
+	private HttpTransport transport;
 
 	private static final Logger log = LoggerFactory.getLogger(DefaultDIDAdapter.class);
 
+	/**
+	 * Create a DefaultDIDAdapter instance with given resolver endpoint and
+	 * the HTTP transport.
+	 *
+	 * @param resolver the resolver url string
+	 * @param transport the HTTP transport, null for a DefaultHttpTransport
+	 */
+	public DefaultDIDAdapter(String resolver, HttpTransport transport) {
+		this(toURL(resolver), transport);
+	}
+
 	/**
 	 * Create a DefaultDIDAdapter instance with given resolver endpoint.
 	 *
 	 * @param resolver the resolver url string
 	 */
 	public DefaultDIDAdapter(String resolver) {
+		this(resolver, null);
+	}
+
+	/**
+	 * Create a DefaultDIDAdapter instance with given resolver endpoint and
+	 * the HTTP transport.
+	 *
+	 * @param resolver the resolver URL object
+	 * @param transport the HTTP transport, null for a DefaultHttpTransport
+	 */
+	public DefaultDIDAdapter(URL resolver, HttpTransport transport) {
+		checkArgument(resolver != null, "Invalid resolver URL");
+		this.resolver = resolver;
+		this.transport = transport != null ? transport : new DefaultHttpTransport();
+	}
+
+	/**
+	 * Create a DefaultDIDAdapter instance with given resolver endpoint.
+	 *
+	 * @param resolver the resolver URL object
+	 */
+	public DefaultDIDAdapter(URL resolver) {
+		this(resolver, null);
+	}
+
+	private static URL toURL(String resolver) {
 		checkArgument(resolver != null && !resolver.isEmpty(), "Invalid resolver URL");
 
 		switch (resolver.toLowerCase()) {
@@ -73,20 +109,19 @@ public class DefaultDIDAdapter implements DIDAdapter {
 		}
 
 		try {
-			this.resolver = new URL(resolver);
+			return new URL(resolver);
 		} catch (MalformedURLException e) {
 			throw new IllegalArgumentException("Invalid resolver URL", e);
 		}
 	}
 
 	/**
-	 * Create a DefaultDIDAdapter instance with given resolver endpoint.
+	 * Get the HTTP transport of this adapter.
 	 *
-	 * @param resolver the resolver URL object
+	 * @return the HttpTransport object
 	 */
-	public DefaultDIDAdapter(URL resolver) {
-		checkArgument(resolver != null, "Invalid resolver URL");
-		this.resolver = resolver;
+	public HttpTransport getTransport() {
+		return transport;
 	}
 
 	/**
@@ -98,27 +133,8 @@ public class DefaultDIDAdapter implements DIDAdapter {
 	 * @throws IOException if an error occurred when processing the request
 	 */
 	protected InputStream performRequest(URL url, String body) throws IOException {
-		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
-		connection.setRequestMethod("POST");
-		connection.setRequestProperty("User-Agent",
-				"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11");
-		connection.setRequestProperty("Content-Type", "application/json");
-		connection.setRequestProperty("Accept", "application/json");
-		connection.setDoOutput(true);
-		connection.connect();
-
-		OutputStream os = connection.getOutputStream();
-		os.write(body.getBytes());
-		os.close();
-
-		int code = connection.getResponseCode();
-		if (code < 200 || code > 299) {
-			log.error("HTTP request error, status: {}, message: {}",
-					code, connection.getResponseMessage());
-			throw new IOException("HTTP error with status: " + code);
-		}
-
-		return connection.getInputStream();
+		log.trace("HTTP request to {}", url);
+		return transport.post(url, body);
 	}
 
 	/**
@@ -135,6 +151,20 @@ public class DefaultDIDAdapter implements DIDAdapter {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream resolveBatch(String requests) throws DIDResolveException {
+		checkArgument(requests != null && !requests.isEmpty(), "Invalid requests");
+
+		try {
+			return performRequest(resolver, requests);
+		} catch (IOException e) {
+			throw new NetworkException("Network error.", e);
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
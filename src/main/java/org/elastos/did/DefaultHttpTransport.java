@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default HttpTransport implementation, based on the JDK's
+ * HttpURLConnection.
+ *
+ * <p>
+ * The transport keeps the HTTP/1.1 connections alive and reuses them from
+ * the JDK's connection pool, the pool size per destination is controlled
+ * by the <code>http.maxConnections</code> system property. The response
+ * bodies are requested in gzip, and decoded in streaming mode. The request
+ * bodies can be compressed optionally, only enable it if the resolver
+ * accepts the gzip encoded requests.
+ * </p>
+ */
+public class DefaultHttpTransport implements HttpTransport {
+	/**
+	 * The default connect timeout in milliseconds.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	/**
+	 * The default read timeout in milliseconds.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+	/**
+	 * The default minimal size of the request body to be compressed.
+	 */
+	public static final int DEFAULT_COMPRESS_THRESHOLD = 8192;
+
+	private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.95 Safari/537.11";
+
+	// The unread bytes up to this size will be skipped when closing the
+	// response, then the connection can go back to the pool
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+	private int connectTimeout;
+	private int readTimeout;
+	private boolean compressRequest;
+	private int compressThreshold;
+
+	private static final Logger log = LoggerFactory.getLogger(DefaultHttpTransport.class);
+
+	// Drains the rest of the response when closing
+	private static class ResponseStream extends FilterInputStream {
+		public ResponseStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				drain(in);
+			} finally {
+				super.close();
+			}
+		}
+	}
+
+	/**
+	 * Create a DefaultHttpTransport with the default settings.
+	 */
+	public DefaultHttpTransport() {
+		connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+		readTimeout = DEFAULT_READ_TIMEOUT;
+		compressRequest = false;
+		compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+	}
+
+	/**
+	 * Set the connect timeout.
+	 *
+	 * @param timeout the timeout in milliseconds, 0 means infinite
+	 * @return this transport object
+	 */
+	public DefaultHttpTransport setConnectTimeout(int timeout) {
+		checkArgument(timeout >= 0, "Invalid timeout");
+
+		this.connectTimeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Get the connect timeout.
+	 *
+	 * @return the timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Set the read timeout.
+	 *
+	 * @param timeout the timeout in milliseconds, 0 means infinite
+	 * @return this transport object
+	 */
+	public DefaultHttpTransport setReadTimeout(int timeout) {
+		checkArgument(timeout >= 0, "Invalid timeout");
+
+		this.readTimeout = timeout;
+		return this;
+	}
+
+	/**
+	 * Get the read timeout.
+	 *
+	 * @return the timeout in milliseconds
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Enable or disable the gzip compression of the request bodies.
+	 *
+	 * @param enabled enable the compression or not
+	 * @param threshold the minimal size of the request body to be compressed
+	 * @return this transport object
+	 */
+	public DefaultHttpTransport setRequestCompression(boolean enabled, int threshold) {
+		checkArgument(threshold >= 0, "Invalid threshold");
+
+		this.compressRequest = enabled;
+		this.compressThreshold = threshold;
+		return this;
+	}
+
+	/**
+	 * Check whether the request bodies compression is enabled.
+	 *
+	 * @return true if enabled, false otherwise
+	 */
+	public boolean isRequestCompression() {
+		return compressRequest;
+	}
+
+	/**
+	 * Get the minimal size of the request body to be compressed.
+	 *
+	 * @return the threshold in bytes
+	 */
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+			gos.write(data);
+		}
+
+		return bos.toByteArray();
+	}
+
+	private static void drain(InputStream is) throws IOException {
+		if (is == null)
+			return;
+
+		byte[] buffer = new byte[4096];
+		int total = 0;
+		int n;
+		while (total < MAX_DRAIN_BYTES && (n = is.read(buffer)) >= 0)
+			total += n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream post(URL url, String body) throws IOException {
+		byte[] data = body.getBytes(StandardCharsets.UTF_8);
+		boolean compress = compressRequest && data.length >= compressThreshold;
+		if (compress)
+			data = gzip(data);
+
+		HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+		connection.setConnectTimeout(connectTimeout);
+		connection.setReadTimeout(readTimeout);
+		connection.setUseCaches(false);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("User-Agent", USER_AGENT);
+		connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+		connection.setRequestProperty("Accept", "application/json");
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		connection.setRequestProperty("Connection", "keep-alive");
+		if (compress)
+			connection.setRequestProperty("Content-Encoding", "gzip");
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(data.length);
+
+		try (OutputStream os = connection.getOutputStream()) {
+			os.write(data);
+		}
+
+		int code = connection.getResponseCode();
+		if (code < 200 || code > 299) {
+			log.error("HTTP request error, status: {}, message: {}",
+					code, connection.getResponseMessage());
+
+			// Consume the error body, keep the connection reusable
+			try (InputStream es = connection.getErrorStream()) {
+				drain(es);
+			} catch (IOException ignore) {
+			}
+
+			throw new IOException("HTTP error with status: " + code);
+		}
+
+		InputStream is = new ResponseStream(connection.getInputStream());
+		if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+			try {
+				is = new GZIPInputStream(is, 8192);
+			} catch (IOException e) {
+				is.close();
+				throw e;
+			}
+		}
+
+		return is;
+	}
+}
@@ -23,6 +23,10 @@
 package org.elastos.did;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -30,11 +34,21 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import org.elastos.did.crypto.HDKey;
 import org.elastos.did.exception.DIDStorageException;
@@ -49,8 +63,11 @@ import org.slf4j.LoggerFactory;
  * FileSystem DID Store: storage layout
  *
  *  + DIDStore root
+ *    - batch.journal					[Redo journal of the committing batch, temporary]
+ *    + batch.tmp						[Files of the committing batch, temporary]
  *    + data 						    [Current data root folder]
  *      - .metadata						[DIDStore metadata]
+ *      - .index						[Directory index, see StorageIndex]
  *      + roots							[Root identities folder]
  *        + xxxxxxx0					[Root identity folder named by id]
  *          - .metadata					[RootIdentity metadata]
@@ -88,31 +105,77 @@ class FileSystemStorage implements DIDStorage {
 	private static final String ROOT_IDENTITY_PUBLICKEY_FILE = "public";
 	private static final String ROOT_IDENTITY_INDEX_FILE = "index";
 
-	private static final String DID_DIR = "ids";
+	static final String DID_DIR = "ids";
 	private static final String DOCUMENT_FILE = "document";
 
-	private static final String CREDENTIALS_DIR = "credentials";
+	static final String CREDENTIALS_DIR = "credentials";
 	private static final String CREDENTIAL_FILE = "credential";
 
-	private static final String PRIVATEKEYS_DIR = "privatekeys";
+	static final String PRIVATEKEYS_DIR = "privatekeys";
 
-	private static final String METADATA = ".metadata";
+	static final String METADATA = ".metadata";
 
 	private static final String JOURNAL_SUFFIX = ".journal";
 
+	private static final String BATCH_JOURNAL = "batch" + JOURNAL_SUFFIX;
+	private static final String BATCH_TMP_DIR = "batch.tmp";
+
+	private static final int BATCH_MAGIC = 0x42544348; // "BTCH"
+
+	private static final byte OP_WRITE = 1;
+	private static final byte OP_DELETE = 2;
+	private static final byte OP_DELETE_IF_EMPTY = 3;
+
 	private File storeRoot;
 	private String currentDataDir;
+	private StorageIndex index;
+
+	// The batch that collects the file operations of the current thread
+	private ThreadLocal<FileBatch> currentBatch;
+	// The batches waiting for the next group commit
+	private List<FileBatch> pendingBatches;
+	private Object commitLock;
 
 	private static final Logger log = LoggerFactory.getLogger(FileSystemStorage.class);
 
+	/**
+	 * The file operations of one writeBatch call.
+	 */
+	private static class FileBatch {
+		private List<Byte> types = new ArrayList<Byte>();
+		private List<String> paths = new ArrayList<String>();
+		private List<byte[]> contents = new ArrayList<byte[]>();
+		private List<Consumer<StorageIndex>> indexUpdates =
+				new ArrayList<Consumer<StorageIndex>>();
+
+		private boolean done;
+		private DIDStorageException error;
+
+		public void add(byte type, String path, byte[] content) {
+			types.add(type);
+			paths.add(path);
+			contents.add(content);
+		}
+
+		public boolean isEmpty() {
+			return types.isEmpty();
+		}
+	}
+
 	protected FileSystemStorage(File dir) throws DIDStorageException {
 		storeRoot = dir;
 		currentDataDir = DATA_DIR;
 
+		currentBatch = new ThreadLocal<FileBatch>();
+		pendingBatches = new ArrayList<FileBatch>();
+		commitLock = new Object();
+
 		if (storeRoot.exists())
 			checkStore();
 		else
 			initializeStore();
+
+		index = new StorageIndex(getDir(DATA_DIR));
 	}
 
 	private void initializeStore() throws DIDStorageException {
@@ -248,7 +311,8 @@ class FileSystemStorage implements DIDStorage {
 			relPath.append(File.separator);
 			relPath.append(path[i]);
 
-			if (create) {
+			// The batch creates the directories when applying
+			if (create && currentBatch.get() == null) {
 				boolean isDir = (i < lastIndex);
 
 				file = new File(relPath.toString());
@@ -258,7 +322,7 @@ class FileSystemStorage implements DIDStorage {
 		}
 
 		file = new File(relPath.toString());
-		if (create)
+		if (create && currentBatch.get() == null)
 			file.getParentFile().mkdirs();
 
 		return file;
@@ -287,6 +351,74 @@ class FileSystemStorage implements DIDStorage {
 		}
 	}
 
+	private String getRelativePath(File file) {
+		return storeRoot.getAbsoluteFile().toPath().relativize(
+				file.getAbsoluteFile().toPath()).toString();
+	}
+
+	// The writes below are collected by the batch of the current thread
+	private void write(File file, String text) throws IOException {
+		FileBatch batch = currentBatch.get();
+		if (batch != null)
+			batch.add(OP_WRITE, getRelativePath(file), text.getBytes());
+		else
+			writeText(file, text);
+	}
+
+	private void write(File file, DIDEntity<?> entity) throws IOException {
+		FileBatch batch = currentBatch.get();
+		if (batch != null)
+			batch.add(OP_WRITE, getRelativePath(file),
+					entity.serialize().getBytes(StandardCharsets.UTF_8));
+		else
+			entity.serialize(file);
+	}
+
+	private void write(File file, DIDEntity<?> entity, boolean normalized)
+			throws IOException {
+		FileBatch batch = currentBatch.get();
+		if (batch != null)
+			batch.add(OP_WRITE, getRelativePath(file),
+					entity.serialize(normalized).getBytes(StandardCharsets.UTF_8));
+		else
+			entity.serialize(file, normalized);
+	}
+
+	private void remove(File file) {
+		FileBatch batch = currentBatch.get();
+		if (batch != null)
+			batch.add(OP_DELETE, getRelativePath(file), null);
+		else
+			deleteFile(file);
+	}
+
+	private void removeIfEmpty(File dir) {
+		FileBatch batch = currentBatch.get();
+		if (batch != null) {
+			batch.add(OP_DELETE_IF_EMPTY, getRelativePath(dir), null);
+		} else {
+			String[] children = dir.list();
+			if (children != null && children.length == 0)
+				dir.delete();
+		}
+	}
+
+	private void updateIndex(Consumer<StorageIndex> update) {
+		FileBatch batch = currentBatch.get();
+		if (batch != null)
+			batch.indexUpdates.add(update);
+		else if (index != null)
+			update.accept(index);
+	}
+
+	private StorageIndex getIndex() {
+		return index != null && index.refresh() ? index : null;
+	}
+
+	private StorageIndex getIndex(DID did) {
+		return index != null && index.refresh(did.getMethodSpecificId()) ? index : null;
+	}
+
 	private static String readText(File file) throws IOException {
 		BufferedReader reader = null;
 		try {
@@ -309,9 +441,9 @@ class FileSystemStorage implements DIDStorage {
 			File file = getFile(true, currentDataDir, METADATA);
 
 			if (metadata == null || metadata.isEmpty())
-				file.delete();
+				remove(file);
 			else
-				metadata.serialize(file);
+				write(file, metadata);
 		} catch (IOException e) {
 			throw new DIDStorageException("Store DIDStore metadata error", e);
 		}
@@ -346,9 +478,9 @@ class FileSystemStorage implements DIDStorage {
 			File file = getRootIdentityFile(id, METADATA, true);
 
 			if (metadata == null || metadata.isEmpty())
-				file.delete();
+				remove(file);
 			else
-				metadata.serialize(file);
+				write(file, metadata);
 		} catch (IOException e) {
 			throw new DIDStorageException("Store root identity metadata error: " + id, e);
 		}
@@ -376,21 +508,21 @@ class FileSystemStorage implements DIDStorage {
 
 			if (mnemonic != null) {
 				file = getRootIdentityFile(id, ROOT_IDENTITY_MNEMONIC_FILE, true);
-				writeText(file, mnemonic);
+				write(file, mnemonic);
 			}
 
 			if (privateKey != null) {
 				file = getRootIdentityFile(id, ROOT_IDENTITY_PRIVATEKEY_FILE, true);
-				writeText(file, privateKey);
+				write(file, privateKey);
 			}
 
 			if (publicKey != null) {
 				file = getRootIdentityFile(id, ROOT_IDENTITY_PUBLICKEY_FILE, true);
-				writeText(file, publicKey);
+				write(file, publicKey);
 			}
 
 			file = getRootIdentityFile(id, ROOT_IDENTITY_INDEX_FILE, true);
-			writeText(file, Integer.toString(index));
+			write(file, Integer.toString(index));
 		} catch (IOException e) {
 			throw new DIDStorageException("Store root identity error: " + id, e);
 		}
@@ -418,7 +550,7 @@ class FileSystemStorage implements DIDStorage {
 			throws DIDStorageException {
 		try {
 			File file = getRootIdentityFile(id, ROOT_IDENTITY_INDEX_FILE, false);
-			writeText(file, Integer.toString(index));
+			write(file, Integer.toString(index));
 		} catch (IOException e) {
 			throw new DIDStorageException("Update index for indentiy error: " + id, e);
 		}
@@ -442,7 +574,7 @@ class FileSystemStorage implements DIDStorage {
 	public boolean deleteRootIdentity(String id) {
 		File dir = getRootIdentityDir(id);
 		if (dir.exists()) {
-			deleteFile(dir);
+			remove(dir);
 			return true;
 		} else {
 			return false;
@@ -513,9 +645,12 @@ class FileSystemStorage implements DIDStorage {
 			File file = getDidMetadataFile(did, true);
 
 			if (metadata == null || metadata.isEmpty())
-				file.delete();
+				remove(file);
 			else
-				metadata.serialize(file);
+				write(file, metadata);
+
+			String json = metadata == null || metadata.isEmpty() ? null : metadata.serialize();
+			updateIndex((i) -> i.metadataStored(did.getMethodSpecificId(), json));
 		} catch (IOException e) {
 			throw new DIDStorageException("Store DID metadata error: " + did, e);
 		}
@@ -524,6 +659,13 @@ class FileSystemStorage implements DIDStorage {
 	@Override
 	public DIDMetadata loadDidMetadata(DID did) throws DIDStorageException {
 		try {
+			StorageIndex index = getIndex(did);
+			if (index != null && index.containsDid(did.getMethodSpecificId())) {
+				String metadata = index.getMetadata(did.getMethodSpecificId());
+				return metadata == null ? null :
+					DIDMetadata.parse(metadata, DIDMetadata.class);
+			}
+
 			File file = getDidMetadataFile(did, false);
 			DIDMetadata metadata = null;
 			if (file.exists())
@@ -539,7 +681,9 @@ class FileSystemStorage implements DIDStorage {
 	public void storeDid(DIDDocument doc) throws DIDStorageException {
 		try {
 			File file = getDidFile(doc.getSubject(), true);
-			doc.serialize(file, true);
+			write(file, doc, true);
+
+			updateIndex((i) -> i.didStored(doc.getSubject().getMethodSpecificId()));
 		} catch (IOException e) {
 			throw new DIDStorageException("Store DID document error: " +
 					doc.getSubject(), e);
@@ -563,7 +707,10 @@ class FileSystemStorage implements DIDStorage {
 	public boolean deleteDid(DID did) {
 		File dir = getDidDir(did);
 		if (dir.exists()) {
-			deleteFile(dir);
+			remove(dir);
+
+			updateIndex((i) -> i.didDeleted(did.getMethodSpecificId()));
+
 			return true;
 		} else {
 			return false;
@@ -572,6 +719,16 @@ class FileSystemStorage implements DIDStorage {
 
 	@Override
 	public List<DID> listDids() {
+		StorageIndex index = getIndex();
+		if (index != null) {
+			List<String> ids = index.listDids();
+			ArrayList<DID> dids = new ArrayList<DID>(ids.size());
+			for (String id : ids)
+				dids.add(new DID(DID.METHOD, id));
+
+			return dids;
+		}
+
 		File dir = getDir(currentDataDir, DID_DIR);
 		if (!dir.exists())
 			return Collections.emptyList();
@@ -618,9 +775,11 @@ class FileSystemStorage implements DIDStorage {
 			File file = getCredentialMetadataFile(id, true);
 
 			if (metadata == null || metadata.isEmpty())
-				file.delete();
+				remove(file);
 			else
-				metadata.serialize(file);
+				write(file, metadata);
+
+			updateIndex((i) -> i.didStored(id.getDid().getMethodSpecificId()));
 		} catch (IOException e) {
 			throw new DIDStorageException("Store credential metadata error: " + id, e);
 		}
@@ -645,7 +804,11 @@ class FileSystemStorage implements DIDStorage {
 			throws DIDStorageException {
 		try {
 			File file = getCredentialFile(credential.getId(), true);
-			credential.serialize(file, true);
+			write(file, credential, true);
+
+			updateIndex((i) -> i.credentialStored(
+					credential.getId().getDid().getMethodSpecificId(),
+					toPath(credential.getId())));
 		} catch (IOException e) {
 			throw new DIDStorageException("Store credential error: " +
 					credential.getId(), e);
@@ -668,6 +831,10 @@ class FileSystemStorage implements DIDStorage {
 
 	@Override
 	public boolean containsCredentials(DID did) {
+		StorageIndex index = getIndex(did);
+		if (index != null)
+			return index.containsCredentials(did.getMethodSpecificId());
+
 		File dir = getCredentialsDir(did);
 		if (!dir.exists())
 			return false;
@@ -683,12 +850,13 @@ class FileSystemStorage implements DIDStorage {
 	public boolean deleteCredential(DIDURL id) {
 		File dir = getCredentialDir(id);
 		if (dir.exists()) {
-			deleteFile(dir);
+			remove(dir);
 
 			// Remove the credentials directory is no credential exists.
-			dir = getCredentialsDir(id.getDid());
-			if (dir.list().length == 0)
-				dir.delete();
+			removeIfEmpty(getCredentialsDir(id.getDid()));
+
+			updateIndex((i) -> i.credentialDeleted(
+					id.getDid().getMethodSpecificId(), toPath(id)));
 
 			return true;
 		} else {
@@ -698,6 +866,16 @@ class FileSystemStorage implements DIDStorage {
 
 	@Override
 	public List<DIDURL> listCredentials(DID did) {
+		StorageIndex index = getIndex(did);
+		if (index != null) {
+			List<String> paths = index.listCredentials(did.getMethodSpecificId());
+			ArrayList<DIDURL> credentials = new ArrayList<DIDURL>(paths.size());
+			for (String path : paths)
+				credentials.add(toDIDURL(did, path));
+
+			return credentials;
+		}
+
 		File dir = getCredentialsDir(did);
 		if (!dir.exists())
 			return Collections.emptyList();
@@ -730,7 +908,10 @@ class FileSystemStorage implements DIDStorage {
 			throws DIDStorageException {
 		try {
 			File file = getPrivateKeyFile(id, true);
-			writeText(file, privateKey);
+			write(file, privateKey);
+
+			updateIndex((i) -> i.privateKeyStored(
+					id.getDid().getMethodSpecificId(), toPath(id)));
 		} catch (IOException e) {
 			throw new DIDStorageException("Store private key error: " + id, e);
 		}
@@ -751,6 +932,10 @@ class FileSystemStorage implements DIDStorage {
 
 	@Override
 	public boolean containsPrivateKeys(DID did) {
+		StorageIndex index = getIndex(did);
+		if (index != null)
+			return index.containsPrivateKeys(did.getMethodSpecificId());
+
 		File dir = getPrivateKeysDir(did);
 		if (!dir.exists())
 			return false;
@@ -766,12 +951,13 @@ class FileSystemStorage implements DIDStorage {
 	public boolean deletePrivateKey(DIDURL id) {
 		File file = getPrivateKeyFile(id, false);
 		if (file.exists()) {
-			file.delete();
+			remove(file);
 
 			// Remove the privatekeys directory is no privatekey exists.
-			File dir = getPrivateKeysDir(id.getDid());
-			if (dir.list().length == 0)
-				dir.delete();
+			removeIfEmpty(getPrivateKeysDir(id.getDid()));
+
+			updateIndex((i) -> i.privateKeyDeleted(
+					id.getDid().getMethodSpecificId(), toPath(id)));
 
 			return true;
 		} else {
@@ -781,6 +967,16 @@ class FileSystemStorage implements DIDStorage {
 
 	@Override
 	public List<DIDURL> listPrivateKeys(DID did) throws DIDStorageException {
+		StorageIndex index = getIndex(did);
+		if (index != null) {
+			List<String> paths = index.listPrivateKeys(did.getMethodSpecificId());
+			ArrayList<DIDURL> sks = new ArrayList<DIDURL>(paths.size());
+			for (String path : paths)
+				sks.add(toDIDURL(did, path));
+
+			return sks;
+		}
+
 		File dir = getPrivateKeysDir(did);
 		if (!dir.exists())
 			return Collections.emptyList();
@@ -874,6 +1070,9 @@ class FileSystemStorage implements DIDStorage {
 	@Override
 	public void changePassword(ReEncryptor reEncryptor)
 			throws DIDStorageException {
+		if (currentBatch.get() != null)
+			throw new DIDStorageException("Can not change the password in a batch");
+
 		try {
 			File dataDir = getDir(DATA_DIR);
 			File dataJournal = getDir(DATA_DIR + JOURNAL_SUFFIX);
@@ -1212,6 +1411,8 @@ class FileSystemStorage implements DIDStorage {
 	}
 
 	private void postOperations() throws DIDStorageException {
+		recoverBatch();
+
 		File stageFile = getFile("postUpgrade");
 		if (stageFile.exists()) {
 			postUpgrade();
@@ -1224,4 +1425,273 @@ class FileSystemStorage implements DIDStorage {
 			return;
 		}
 	}
+
+	/**
+	 * Collect the file operations of the batch, and commit them with the
+	 * batches of the other threads that are waiting at the same time.
+	 *
+	 * <p>
+	 * The operations of a group are written to a redo journal and synced
+	 * once, then applied file by file: each file is written to a temporary
+	 * file, synced and renamed to the target. The journal is removed after
+	 * all the operations applied, a crash in between is recovered by
+	 * replaying the journal when opening the store. The group is committed
+	 * once the journal synced, a failed apply is rolled forward by the
+	 * replay rather than reported. The reads in the writer do not see its
+	 * own writes.
+	 * </p>
+	 */
+	@Override
+	public void writeBatch(BatchWriter writer) throws DIDStorageException {
+		// Nested in another batch
+		if (currentBatch.get() != null) {
+			writer.write(this);
+			return;
+		}
+
+		FileBatch batch = new FileBatch();
+		currentBatch.set(batch);
+		try {
+			writer.write(this);
+		} finally {
+			currentBatch.remove();
+		}
+
+		if (batch.isEmpty())
+			return;
+
+		synchronized (pendingBatches) {
+			pendingBatches.add(batch);
+		}
+
+		synchronized (commitLock) {
+			// Committed by the leader of a previous group
+			if (!batch.done) {
+				List<FileBatch> group;
+				synchronized (pendingBatches) {
+					group = new ArrayList<FileBatch>(pendingBatches);
+					pendingBatches.clear();
+				}
+
+				DIDStorageException error = null;
+				try {
+					commitBatches(group);
+				} catch (DIDStorageException e) {
+					error = e;
+				}
+
+				for (FileBatch b : group) {
+					b.error = error;
+					b.done = true;
+				}
+			}
+		}
+
+		if (batch.error != null)
+			throw batch.error;
+	}
+
+	private void commitBatches(List<FileBatch> group) throws DIDStorageException {
+		log.debug("Committing {} batches to DID store {}", group.size(),
+				storeRoot.getAbsolutePath());
+
+		// The journal left by a failed commit
+		recoverBatch();
+
+		File journal = getFile(BATCH_JOURNAL);
+		byte[] data;
+		try {
+			ByteArrayOutputStream payload = new ByteArrayOutputStream(4096);
+			DataOutputStream out = new DataOutputStream(payload);
+			for (FileBatch batch : group) {
+				for (int i = 0; i < batch.types.size(); i++) {
+					byte[] content = batch.contents.get(i);
+
+					out.writeByte(batch.types.get(i));
+					out.writeUTF(batch.paths.get(i));
+					if (content != null) {
+						out.writeInt(content.length);
+						out.write(content);
+					}
+				}
+			}
+			out.flush();
+
+			data = payload.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(data);
+
+			try (FileOutputStream journalOut = new FileOutputStream(journal)) {
+				out = new DataOutputStream(journalOut);
+				out.writeInt(BATCH_MAGIC);
+				out.writeInt(data.length);
+				out.writeInt((int)crc.getValue());
+				out.write(data);
+				out.flush();
+				journalOut.getFD().sync();
+			}
+
+			// Make the new journal entry durable
+			syncDirectory(storeRoot);
+		} catch (IOException e) {
+			// Not committed, the journal must not be replayed
+			journal.delete();
+			throw new DIDStorageException("Commit batch to DIDStore error", e);
+		}
+
+		try {
+			applyBatch(data);
+		} catch (IOException e) {
+			log.error("Apply batch to DID store {} error, replaying the journal",
+					storeRoot.getAbsolutePath(), e);
+
+			// The journal is kept if the replay failed again, replayed by
+			// the next commit or opening the store
+			try {
+				recoverBatch();
+			} catch (DIDStorageException ex) {
+				log.error("Replay the batch journal error", ex);
+				getFile(DATA_DIR, StorageIndex.INDEX_FILE).delete();
+			}
+
+			return;
+		}
+
+		journal.delete();
+		deleteFile(getDir(BATCH_TMP_DIR));
+
+		for (FileBatch batch : group) {
+			for (Consumer<StorageIndex> update : batch.indexUpdates)
+				updateIndex(update);
+		}
+	}
+
+	// Apply the operations, and sync the changed directories before the
+	// journal can be deleted
+	private void applyBatch(byte[] data) throws IOException {
+		File tmpDir = getDir(BATCH_TMP_DIR);
+		tmpDir.mkdirs();
+
+		LinkedHashSet<File> dirs = new LinkedHashSet<File>();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int n = 0;
+		while (in.available() > 0) {
+			byte type = in.readByte();
+			File file = new File(storeRoot, in.readUTF());
+			dirs.add(file.getParentFile());
+
+			switch (type) {
+			case OP_WRITE:
+				byte[] content = new byte[in.readInt()];
+				in.readFully(content);
+
+				File parent = file.getParentFile();
+				if (parent.isFile())
+					parent.delete();
+
+				// The created directories are the new entries of their parents
+				for (File dir = parent; !dir.exists(); dir = dir.getParentFile())
+					dirs.add(dir.getParentFile());
+				parent.mkdirs();
+
+				if (file.isDirectory())
+					deleteFile(file);
+
+				File tmp = new File(tmpDir, Integer.toString(n++));
+				try (FileOutputStream out = new FileOutputStream(tmp)) {
+					out.write(content);
+					out.getFD().sync();
+				}
+
+				try {
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+							StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				break;
+
+			case OP_DELETE:
+				deleteFile(file);
+				break;
+
+			case OP_DELETE_IF_EMPTY:
+				String[] children = file.list();
+				if (children != null && children.length == 0)
+					file.delete();
+				break;
+
+			default:
+				throw new IOException("Unknown batch operation: " + type);
+			}
+		}
+
+		for (File dir : dirs) {
+			if (dir.isDirectory())
+				syncDirectory(dir);
+		}
+	}
+
+	private static void syncDirectory(File dir) throws IOException {
+		try (FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (AccessDeniedException e) {
+			// The directories can not be opened on Windows, the file system
+			// makes the renames durable
+		}
+	}
+
+	/**
+	 * Replay the journal of an interrupted batch commit. A torn journal
+	 * means the batch was not committed, it is dropped.
+	 *
+	 * @throws DIDStorageException if an error occurred when replaying
+	 */
+	private void recoverBatch() throws DIDStorageException {
+		File journal = getFile(BATCH_JOURNAL);
+		if (!journal.exists()) {
+			deleteFile(getDir(BATCH_TMP_DIR));
+			return;
+		}
+
+		byte[] data = null;
+		try (DataInputStream in = new DataInputStream(new FileInputStream(journal))) {
+			if (in.readInt() == BATCH_MAGIC) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if (length >= 0 && length <= journal.length()) {
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+
+					CRC32 crc = new CRC32();
+					crc.update(payload);
+					if ((int)crc.getValue() == checksum)
+						data = payload;
+				}
+			}
+		} catch (IOException e) {
+			// Torn journal
+		}
+
+		try {
+			if (data != null) {
+				log.info("Recovering the interrupted batch of DID store {}",
+						storeRoot.getAbsolutePath());
+				applyBatch(data);
+
+				// The index misses the replayed operations
+				getFile(DATA_DIR, StorageIndex.INDEX_FILE).delete();
+				if (index != null)
+					index.refresh();
+			} else {
+				log.warn("Dropping the torn batch journal of DID store {}",
+						storeRoot.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			throw new DIDStorageException("Recover batch of DIDStore error", e);
+		}
+
+		journal.delete();
+		deleteFile(getDir(BATCH_TMP_DIR));
+	}
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * The HTTP transport that the DefaultDIDAdapter sends the requests with.
+ *
+ * <p>
+ * The SDK uses the {@link DefaultHttpTransport} by default. Applications
+ * can plug in a transport that based on another HTTP client, such as a
+ * HTTP/2 client, by the DefaultDIDAdapter's constructors.
+ * </p>
+ */
+public interface HttpTransport {
+	/**
+	 * Perform a HTTP POST request with given JSON body to the url.
+	 *
+	 * @param url the target HTTP endpoint
+	 * @param body the JSON request body
+	 * @return an input stream object of the decoded response body, the
+	 * 		   caller should close it after read
+	 * @throws IOException if an error occurred when processing the request
+	 */
+	public InputStream post(URL url, String body) throws IOException;
+}
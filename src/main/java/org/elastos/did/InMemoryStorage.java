@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.elastos.did.exception.DIDStorageException;
+import org.elastos.did.exception.DIDStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * In-memory DID Store: the objects are kept in a sorted concurrent map, with
+ * the key layout of the KeyValueStorage, for example "ids/ixxxx/document".
+ *
+ * The snapshot stream format:
+ *
+ *   int magic | int version | int count | (int key length | key | int value length | value) * count
+ */
+
+/**
+ * The DIDStorage implementation that keeps all the objects in memory.
+ *
+ * <p>
+ * The storage suits the short-lived stores that only sign and publish, and
+ * the tests. The reads are lock-free, the writes from different threads
+ * run concurrently and only wait for the snapshot or the password change.
+ * The content can be saved to a stream and restored later.
+ * </p>
+ */
+class InMemoryStorage extends KeyValueStorage implements Closeable {
+	private static final int SNAPSHOT_MAGIC = 0x44494D53; // "DIMS"
+	private static final int SNAPSHOT_VERSION = 1;
+	// Same as the object size limit of the LogStructuredStorage
+	private static final int MAX_ENTRY_SIZE = (1 << 24) - 1;
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	private String location;
+	private ConcurrentSkipListMap<String, String> objects;
+
+	// The writes share the read lock, the snapshot and the password change
+	// take the write lock to see and make a consistent state
+	private ReadWriteLock lock;
+
+	private static final Logger log = LoggerFactory.getLogger(InMemoryStorage.class);
+
+	/**
+	 * Create an empty in-memory storage.
+	 */
+	InMemoryStorage() {
+		location = "memory:" + counter.incrementAndGet();
+		objects = new ConcurrentSkipListMap<String, String>();
+		lock = new ReentrantReadWriteLock();
+
+		objects.put(METADATA, new DIDStore.Metadata().serialize());
+	}
+
+	/**
+	 * Create an in-memory storage with the objects from a snapshot.
+	 *
+	 * @param in the input stream of the snapshot
+	 * @throws DIDStorageException if the snapshot is invalid
+	 */
+	InMemoryStorage(InputStream in) throws DIDStorageException {
+		location = "memory:" + counter.incrementAndGet();
+		objects = new ConcurrentSkipListMap<String, String>();
+		lock = new ReentrantReadWriteLock();
+
+		int count;
+		try {
+			DataInputStream data = new DataInputStream(in);
+			if (data.readInt() != SNAPSHOT_MAGIC || data.readInt() != SNAPSHOT_VERSION)
+				throw new DIDStorageException("Invalid DIDStore snapshot");
+
+			count = data.readInt();
+			for (int i = 0; i < count; i++)
+				objects.put(readString(data), readString(data));
+		} catch (IOException e) {
+			throw new DIDStorageException("Read DIDStore snapshot error", e);
+		}
+
+		DIDStore.Metadata metadata = loadMetadata();
+		if (metadata == null)
+			throw new DIDStorageException("Missing store metadata");
+
+		if (!metadata.getType().equals(DIDStore.DID_STORE_TYPE))
+			throw new DIDStorageException("Unknown DIDStore type");
+
+		if (metadata.getVersion() != DIDStore.DID_STORE_VERSION)
+			throw new DIDStorageException("Unsupported DIDStore version");
+
+		log.debug("Restored DID store {} from snapshot, {} objects", location, count);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_ENTRY_SIZE)
+			throw new IOException("Invalid snapshot entry");
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Write all the objects of this storage to the output stream.
+	 *
+	 * @param out the output stream of the snapshot
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	void writeSnapshot(OutputStream out) throws DIDStorageException {
+		lock.writeLock().lock();
+		try {
+			DataOutputStream data = new DataOutputStream(out);
+			data.writeInt(SNAPSHOT_MAGIC);
+			data.writeInt(SNAPSHOT_VERSION);
+			data.writeInt(objects.size());
+			for (Map.Entry<String, String> entry : objects.entrySet()) {
+				writeString(data, entry.getKey());
+				writeString(data, entry.getValue());
+			}
+			data.flush();
+		} catch (IOException e) {
+			throw new DIDStorageException("Write DIDStore snapshot error", e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Drop all the objects.
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			objects.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	protected String get(String key) {
+		return objects.get(key);
+	}
+
+	@Override
+	protected void put(String key, String value) {
+		lock.readLock().lock();
+		try {
+			objects.put(key, value);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected boolean remove(String key) {
+		lock.readLock().lock();
+		try {
+			return objects.remove(key) != null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected boolean delete(String prefix) {
+		lock.readLock().lock();
+		try {
+			Map<String, String> children = objects.subMap(prefix, prefix + '\uffff');
+			boolean exists = !children.isEmpty();
+			children.clear();
+			return exists;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected boolean contains(String prefix) {
+		return contains(objects, prefix);
+	}
+
+	@Override
+	protected List<String> listChildren(String prefix) {
+		return listChildren(objects, prefix);
+	}
+
+	@Override
+	public String getLocation() {
+		return location;
+	}
+
+	@Override
+	public void changePassword(ReEncryptor reEncryptor)
+			throws DIDStorageException {
+		lock.writeLock().lock();
+		try {
+			// Re-encrypt all the secrets before applying any of them
+			Map<String, String> secrets = new HashMap<String, String>();
+			for (Map.Entry<String, String> entry : objects.entrySet()) {
+				if (needReencrypt(entry.getKey()))
+					secrets.put(entry.getKey(), reEncryptor.reEncrypt(entry.getValue()));
+			}
+
+			objects.putAll(secrets);
+		} catch (DIDStoreException e) {
+			throw new DIDStorageException("Change store password failed.", e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply the batch under the write lock, the snapshots and the other
+	 * writers see either none or all of its writes. The lock-free readers
+	 * may observe a batch that partially applied.
+	 */
+	@Override
+	public void writeBatch(BatchWriter writer) throws DIDStorageException {
+		lock.writeLock().lock();
+		try {
+			writer.write(this);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+}
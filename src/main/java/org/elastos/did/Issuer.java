@@ -178,6 +178,14 @@ public class Issuer {
 		return self.sign(signKey, storepass, data);
 	}
 
+	String signDigest(String storepass, byte[] digest) throws DIDStoreException {
+		return self.signDigest(signKey, storepass, digest);
+	}
+
+	String signDigest(DIDStore.Session session, byte[] digest) throws DIDStoreException {
+		return self.signDigest(signKey, session, digest);
+	}
+
 	/**
 	 * Issue a credential to the given DID.
 	 *
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+
+import org.elastos.did.exception.DIDStorageException;
+import org.elastos.did.exception.DIDSyntaxException;
+
+/*
+ * Key-value DID Store: key layout
+ *
+ * The keys are the relative paths in the FileSystemStorage data directory,
+ * joined by "/":
+ *
+ *   .metadata								[Store metadata]
+ *   roots/<id>/mnemonic|private|public|index|.metadata
+ *   ids/<msid>/document|.metadata
+ *   ids/<msid>/credentials/<path>/credential|.metadata
+ *   ids/<msid>/privatekeys/<path>
+ *
+ * The <path> is the DIDURL relative to its DID, with the reserved
+ * characters replaced, for example "#profile".
+ */
+
+/**
+ * The base of the DIDStorage implementations that keep the objects as the
+ * key-value pairs in a sorted key space.
+ *
+ * <p>
+ * The subclasses provide the primitive operations on the keys, the storage
+ * operations and the key layout are shared. The key layout is also used by
+ * the StagingStorage to address the staged objects.
+ * </p>
+ */
+abstract class KeyValueStorage implements DIDStorage {
+	static final String ROOT_IDENTITIES_DIR = "roots";
+
+	static final String ROOT_IDENTITY_MNEMONIC_FILE = "mnemonic";
+	static final String ROOT_IDENTITY_PRIVATEKEY_FILE = "private";
+	static final String ROOT_IDENTITY_PUBLICKEY_FILE = "public";
+	static final String ROOT_IDENTITY_INDEX_FILE = "index";
+
+	static final String DID_DIR = "ids";
+	static final String DOCUMENT_FILE = "document";
+
+	static final String CREDENTIALS_DIR = "credentials";
+	static final String CREDENTIAL_FILE = "credential";
+
+	static final String PRIVATEKEYS_DIR = "privatekeys";
+
+	static final String METADATA = ".metadata";
+
+	static final String SEPARATOR = "/";
+
+	/**
+	 * Get the value of the key.
+	 *
+	 * @param key the key
+	 * @return the value, or null if not exists
+	 * @throws DIDStorageException if an error occurred when reading
+	 */
+	protected abstract String get(String key) throws DIDStorageException;
+
+	/**
+	 * Put the value of the key.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	protected abstract void put(String key, String value) throws DIDStorageException;
+
+	/**
+	 * Remove the key.
+	 *
+	 * @param key the key
+	 * @return true if the key existed, false otherwise
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	protected abstract boolean remove(String key) throws DIDStorageException;
+
+	/**
+	 * Remove all the keys under the prefix.
+	 *
+	 * @param prefix the key prefix, ends with the separator
+	 * @return true if any key existed, false otherwise
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	protected abstract boolean delete(String prefix) throws DIDStorageException;
+
+	/**
+	 * Check whether any key exists under the prefix.
+	 *
+	 * @param prefix the key prefix
+	 * @return true if exists, false otherwise
+	 */
+	protected abstract boolean contains(String prefix);
+
+	/**
+	 * List the distinct names of the next path level under the prefix.
+	 *
+	 * @param prefix the key prefix, ends with the separator
+	 * @return the names in the key order
+	 */
+	protected abstract List<String> listChildren(String prefix);
+
+	static boolean contains(NavigableMap<String, ?> keys, String prefix) {
+		String key = keys.ceilingKey(prefix);
+		return key != null && key.startsWith(prefix);
+	}
+
+	static List<String> listChildren(NavigableMap<String, ?> keys, String prefix) {
+		List<String> names = new ArrayList<String>();
+
+		String key = keys.ceilingKey(prefix);
+		while (key != null && key.startsWith(prefix)) {
+			int sep = key.indexOf(SEPARATOR, prefix.length());
+			if (sep < 0) {
+				names.add(key.substring(prefix.length()));
+				key = keys.higherKey(key);
+			} else {
+				String name = key.substring(prefix.length(), sep);
+				names.add(name);
+				key = keys.higherKey(prefix + name + SEPARATOR + '\uffff');
+			}
+		}
+
+		return names;
+	}
+
+	static String toPath(DIDURL id) {
+		String path = id.toString(id.getDid());
+		return path.replace(';', '+').replace('/', '~').replace('?', '!');
+	}
+
+	static DIDURL toDIDURL(DID did, String path) {
+		path = path.replace('+', ';').replace('~', '/').replace('!', '?');
+		return new DIDURL(did, path);
+	}
+
+	static String toKey(String ... path) {
+		return String.join(SEPARATOR, path);
+	}
+
+	static String getRootIdentityKey(String id, String file) {
+		return toKey(ROOT_IDENTITIES_DIR, id, file);
+	}
+
+	static String getDidKey(DID did, String file) {
+		return toKey(DID_DIR, did.getMethodSpecificId(), file);
+	}
+
+	static String getCredentialKey(DIDURL id, String file) {
+		return toKey(DID_DIR, id.getDid().getMethodSpecificId(),
+				CREDENTIALS_DIR, toPath(id), file);
+	}
+
+	static String getCredentialsPrefix(DID did) {
+		return toKey(DID_DIR, did.getMethodSpecificId(), CREDENTIALS_DIR, "");
+	}
+
+	static String getPrivateKeyKey(DIDURL id) {
+		return toKey(DID_DIR, id.getDid().getMethodSpecificId(),
+				PRIVATEKEYS_DIR, toPath(id));
+	}
+
+	static String getPrivateKeysPrefix(DID did) {
+		return toKey(DID_DIR, did.getMethodSpecificId(), PRIVATEKEYS_DIR, "");
+	}
+
+	// The keys of the secrets that re-encrypted when changing the password
+	static boolean needReencrypt(String key) {
+		String[] path = key.split(SEPARATOR);
+
+		// Root identity's private key and mnemonic
+		if (path.length == 3 && path[0].equals(ROOT_IDENTITIES_DIR))
+			return path[2].equals(ROOT_IDENTITY_PRIVATEKEY_FILE) ||
+					path[2].equals(ROOT_IDENTITY_MNEMONIC_FILE);
+
+		// DID's private keys
+		return path.length == 4 && path[0].equals(DID_DIR) &&
+				path[2].equals(PRIVATEKEYS_DIR);
+	}
+
+	private void storeMetadata(String key, AbstractMetadata metadata)
+			throws DIDStorageException {
+		if (metadata == null || metadata.isEmpty())
+			remove(key);
+		else
+			put(key, metadata.serialize());
+	}
+
+	private <T extends AbstractMetadata> T loadMetadata(String key, Class<T> clazz)
+			throws DIDStorageException {
+		String json = get(key);
+		if (json == null)
+			return null;
+
+		try {
+			return DIDEntity.parse(json, clazz);
+		} catch (DIDSyntaxException e) {
+			throw new DIDStorageException("Load metadata error: " + key, e);
+		}
+	}
+
+	@Override
+	public void storeMetadata(DIDStore.Metadata metadata) throws DIDStorageException {
+		storeMetadata(METADATA, metadata);
+	}
+
+	@Override
+	public DIDStore.Metadata loadMetadata() throws DIDStorageException {
+		return loadMetadata(METADATA, DIDStore.Metadata.class);
+	}
+
+	@Override
+	public void storeRootIdentityMetadata(String id, RootIdentity.Metadata metadata)
+			throws DIDStorageException {
+		storeMetadata(getRootIdentityKey(id, METADATA), metadata);
+	}
+
+	@Override
+	public RootIdentity.Metadata loadRootIdentityMetadata(String id)
+			throws DIDStorageException {
+		return loadMetadata(getRootIdentityKey(id, METADATA), RootIdentity.Metadata.class);
+	}
+
+	@Override
+	public void storeRootIdentity(String id, String mnemonic, String privateKey,
+			String publicKey, int index) throws DIDStorageException {
+		if (mnemonic != null)
+			put(getRootIdentityKey(id, ROOT_IDENTITY_MNEMONIC_FILE), mnemonic);
+
+		if (privateKey != null)
+			put(getRootIdentityKey(id, ROOT_IDENTITY_PRIVATEKEY_FILE), privateKey);
+
+		put(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE), Integer.toString(index));
+
+		// The public key marks the identity visible, store it last
+		if (publicKey != null)
+			put(getRootIdentityKey(id, ROOT_IDENTITY_PUBLICKEY_FILE), publicKey);
+	}
+
+	@Override
+	public RootIdentity loadRootIdentity(String id) throws DIDStorageException {
+		String publicKey = get(getRootIdentityKey(id, ROOT_IDENTITY_PUBLICKEY_FILE));
+		if (publicKey == null)
+			return null;
+
+		String index = get(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE));
+		try {
+			return RootIdentity.create(publicKey, Integer.valueOf(index));
+		} catch (NumberFormatException e) {
+			throw new DIDStorageException("Load index for identity error: " + id, e);
+		}
+	}
+
+	@Override
+	public void updateRootIdentityIndex(String id, int index)
+			throws DIDStorageException {
+		put(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE), Integer.toString(index));
+	}
+
+	@Override
+	public String loadRootIdentityPrivateKey(String id) throws DIDStorageException {
+		return get(getRootIdentityKey(id, ROOT_IDENTITY_PRIVATEKEY_FILE));
+	}
+
+	@Override
+	public String loadRootIdentityMnemonic(String id) throws DIDStorageException {
+		return get(getRootIdentityKey(id, ROOT_IDENTITY_MNEMONIC_FILE));
+	}
+
+	@Override
+	public boolean deleteRootIdentity(String id) throws DIDStorageException {
+		return delete(toKey(ROOT_IDENTITIES_DIR, id, ""));
+	}
+
+	@Override
+	public List<RootIdentity> listRootIdentities() throws DIDStorageException {
+		List<String> names = listChildren(ROOT_IDENTITIES_DIR + SEPARATOR);
+		if (names.isEmpty())
+			return Collections.emptyList();
+
+		List<RootIdentity> ids = new ArrayList<RootIdentity>(names.size());
+		for (String id : names) {
+			RootIdentity identity = loadRootIdentity(id);
+			if (identity != null)
+				ids.add(identity);
+		}
+
+		return ids;
+	}
+
+	@Override
+	public boolean containsRootIdenities() {
+		return contains(ROOT_IDENTITIES_DIR + SEPARATOR);
+	}
+
+	@Override
+	public void storeDidMetadata(DID did, DIDMetadata metadata) throws DIDStorageException {
+		storeMetadata(getDidKey(did, METADATA), metadata);
+	}
+
+	@Override
+	public DIDMetadata loadDidMetadata(DID did) throws DIDStorageException {
+		return loadMetadata(getDidKey(did, METADATA), DIDMetadata.class);
+	}
+
+	@Override
+	public void storeDid(DIDDocument doc) throws DIDStorageException {
+		put(getDidKey(doc.getSubject(), DOCUMENT_FILE), doc.serialize(true));
+	}
+
+	@Override
+	public DIDDocument loadDid(DID did) throws DIDStorageException {
+		String json = get(getDidKey(did, DOCUMENT_FILE));
+		if (json == null)
+			return null;
+
+		try {
+			return DIDDocument.parse(json);
+		} catch (DIDSyntaxException e) {
+			throw new DIDStorageException("Load DID document error: " + did, e);
+		}
+	}
+
+	@Override
+	public boolean deleteDid(DID did) throws DIDStorageException {
+		return delete(getDidKey(did, ""));
+	}
+
+	@Override
+	public List<DID> listDids() {
+		List<String> names = listChildren(DID_DIR + SEPARATOR);
+		if (names.isEmpty())
+			return Collections.emptyList();
+
+		List<DID> dids = new ArrayList<DID>(names.size());
+		for (String name : names)
+			dids.add(new DID(DID.METHOD, name));
+
+		return dids;
+	}
+
+	@Override
+	public void storeCredentialMetadata(DIDURL id, CredentialMetadata metadata)
+			throws DIDStorageException {
+		storeMetadata(getCredentialKey(id, METADATA), metadata);
+	}
+
+	@Override
+	public CredentialMetadata loadCredentialMetadata(DIDURL id)
+			throws DIDStorageException {
+		return loadMetadata(getCredentialKey(id, METADATA), CredentialMetadata.class);
+	}
+
+	@Override
+	public void storeCredential(VerifiableCredential credential)
+			throws DIDStorageException {
+		put(getCredentialKey(credential.getId(), CREDENTIAL_FILE),
+				credential.serialize(true));
+	}
+
+	@Override
+	public VerifiableCredential loadCredential(DIDURL id)
+			throws DIDStorageException {
+		String json = get(getCredentialKey(id, CREDENTIAL_FILE));
+		if (json == null)
+			return null;
+
+		try {
+			return VerifiableCredential.parse(json);
+		} catch (DIDSyntaxException e) {
+			throw new DIDStorageException("Load credential error: " + id, e);
+		}
+	}
+
+	@Override
+	public boolean containsCredentials(DID did) {
+		return contains(getCredentialsPrefix(did));
+	}
+
+	@Override
+	public boolean deleteCredential(DIDURL id) throws DIDStorageException {
+		return delete(getCredentialKey(id, ""));
+	}
+
+	@Override
+	public List<DIDURL> listCredentials(DID did) {
+		List<String> names = listChildren(getCredentialsPrefix(did));
+		if (names.isEmpty())
+			return Collections.emptyList();
+
+		List<DIDURL> credentials = new ArrayList<DIDURL>(names.size());
+		for (String name : names)
+			credentials.add(toDIDURL(did, name));
+
+		return credentials;
+	}
+
+	@Override
+	public void storePrivateKey(DIDURL id, String privateKey)
+			throws DIDStorageException {
+		put(getPrivateKeyKey(id), privateKey);
+	}
+
+	@Override
+	public String loadPrivateKey(DIDURL id) throws DIDStorageException {
+		return get(getPrivateKeyKey(id));
+	}
+
+	@Override
+	public boolean containsPrivateKeys(DID did) {
+		return contains(getPrivateKeysPrefix(did));
+	}
+
+	@Override
+	public boolean deletePrivateKey(DIDURL id) throws DIDStorageException {
+		return remove(getPrivateKeyKey(id));
+	}
+
+	@Override
+	public List<DIDURL> listPrivateKeys(DID did) {
+		List<String> names = listChildren(getPrivateKeysPrefix(did));
+		if (names.isEmpty())
+			return Collections.emptyList();
+
+		List<DIDURL> sks = new ArrayList<DIDURL>(names.size());
+		for (String name : names)
+			sks.add(toDIDURL(did, name));
+
+		return sks;
+	}
+}
@@ -0,0 +1,1003 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.elastos.did.exception.DIDStorageException;
+import org.elastos.did.exception.DIDStoreException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Utf8;
+
+/*
+ * Log-structured DID Store: storage layout
+ *
+ *  + DIDStore root
+ *    - store.log							[The append-only log file]
+ *    - store.log.compact					[The compacting log, temporary]
+ *    - store.log.migrate					[The migrating log, temporary]
+ *    + data_xxxxxxxxxx						[The migrated FileSystemStorage data]
+ *
+ * The log file starts with an 8 bytes header, magic and version, followed
+ * by the frames. Each frame is one atomic batch of the put and delete
+ * operations:
+ *
+ *   int magic | int payload length | int payload crc32 | payload
+ *
+ * The payload is a sequence of operations:
+ *
+ *   byte PUT | int key length | key | int value length | value
+ *   byte DELETE | int key length | key
+ *
+ * The keys are the relative paths in the FileSystemStorage data directory,
+ * for example "ids/ixxxx/document", so the migration is a plain copy. The
+ * index from the keys to the value locations is kept in memory, and the
+ * values are read from the log file on demand.
+ */
+
+/**
+ * The DIDStorage implementation that keeps all the objects of a DIDStore
+ * in one append-only log file.
+ *
+ * <p>
+ * The store only holds one file open, the reads are positional reads on
+ * the log and the lists are served by the in-memory key index. Each
+ * storage operation is appended as one checksummed frame, a torn frame
+ * after a crash is dropped when opening, so the operations are atomic.
+ * The log is compacted in background when more than half of it is
+ * obsolete.
+ * </p>
+ *
+ * <p>
+ * Opening a directory with the FileSystemStorage layout migrates all the
+ * data to the log, and keeps the old data directory as data_timestamp.
+ * Only one LogStructuredStorage should open the same location at a time.
+ * </p>
+ */
+class LogStructuredStorage extends KeyValueStorage implements Closeable {
+	static final String LOG_FILE = "store.log";
+	private static final String COMPACT_FILE = LOG_FILE + ".compact";
+	private static final String MIGRATE_FILE = LOG_FILE + ".migrate";
+
+	private static final String DATA_DIR = "data";
+
+	private static final int FILE_MAGIC = 0x44494453; // "DIDS"
+	private static final int FILE_VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	private static final int FRAME_MAGIC = 0x4C4F4746; // "LOGF"
+	private static final int FRAME_HEADER_SIZE = 12;
+
+	private static final byte OP_PUT = 1;
+	private static final byte OP_DELETE = 2;
+
+	// The value location packs the offset and the length into a long
+	private static final int LENGTH_BITS = 24;
+	private static final int MAX_VALUE_SIZE = (1 << LENGTH_BITS) - 1;
+
+	// Compact when the obsolete bytes exceed both the limit and half of the log
+	private static final long COMPACT_MIN_GARBAGE = 1024 * 1024;
+	private static final int COMPACT_FRAME_SIZE = 1024 * 1024;
+
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor((r) -> {
+		Thread t = new Thread(r, "DIDStore-compactor");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private File storeRoot;
+	private File logFile;
+	private FileChannel channel;
+	private TreeMap<String, Long> index;
+	private long end;
+	private long garbage;
+	private volatile boolean closed;
+	// The bytes ever appended and synced, not reset by the compaction
+	private long written;
+	private long synced;
+
+	private ReadWriteLock lock;
+	private Object compactLock;
+	private Object syncLock;
+	private AtomicBoolean compacting;
+	// The batch that collects the writes of the current writeBatch call
+	private ThreadLocal<Batch> pending;
+
+	private static final Logger log = LoggerFactory.getLogger(LogStructuredStorage.class);
+
+	/**
+	 * A batch of the put and delete operations, committed in one frame.
+	 */
+	private static class Batch {
+		private List<String> keys = new ArrayList<String>();
+		private List<byte[]> values = new ArrayList<byte[]>();
+		private int size;
+
+		public Batch put(String key, String value) {
+			return put(key, value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public Batch put(String key, byte[] value) {
+			keys.add(key);
+			values.add(value);
+			size += 9 + key.length() * 3 + value.length;
+			return this;
+		}
+
+		public Batch delete(String key) {
+			keys.add(key);
+			values.add(null);
+			size += 5 + key.length() * 3;
+			return this;
+		}
+
+		public Batch addAll(Batch batch) {
+			keys.addAll(batch.keys);
+			values.addAll(batch.values);
+			size += batch.size;
+			return this;
+		}
+
+		// Drop the puts and deletes under the prefix
+		public boolean drop(String prefix) {
+			boolean dropped = false;
+			for (int i = keys.size() - 1; i >= 0; i--) {
+				String key = keys.get(i);
+				if (!key.startsWith(prefix))
+					continue;
+
+				byte[] value = values.get(i);
+				size -= (value != null ? 9 + value.length : 5) + key.length() * 3;
+				dropped = dropped || value != null;
+				keys.remove(i);
+				values.remove(i);
+			}
+
+			return dropped;
+		}
+
+		public boolean isEmpty() {
+			return keys.isEmpty();
+		}
+
+		public ByteBuffer toFrame() {
+			ByteBuffer buf = ByteBuffer.allocate(FRAME_HEADER_SIZE + size);
+			buf.position(FRAME_HEADER_SIZE);
+
+			for (int i = 0; i < keys.size(); i++) {
+				byte[] key = keys.get(i).getBytes(StandardCharsets.UTF_8);
+				byte[] value = values.get(i);
+
+				buf.put(value != null ? OP_PUT : OP_DELETE);
+				buf.putInt(key.length);
+				buf.put(key);
+				if (value != null) {
+					buf.putInt(value.length);
+					buf.put(value);
+				}
+			}
+
+			int length = buf.position() - FRAME_HEADER_SIZE;
+			CRC32 crc = new CRC32();
+			crc.update(buf.array(), FRAME_HEADER_SIZE, length);
+
+			buf.putInt(0, FRAME_MAGIC);
+			buf.putInt(4, length);
+			buf.putInt(8, (int)crc.getValue());
+			buf.flip();
+			return buf;
+		}
+	}
+
+	protected LogStructuredStorage(File dir) throws DIDStorageException {
+		storeRoot = dir;
+		logFile = new File(dir, LOG_FILE);
+
+		lock = new ReentrantReadWriteLock();
+		compactLock = new Object();
+		syncLock = new Object();
+		compacting = new AtomicBoolean();
+		pending = new ThreadLocal<Batch>();
+
+		// The interrupted compaction or initialization
+		new File(dir, COMPACT_FILE).delete();
+		new File(dir, MIGRATE_FILE).delete();
+
+		try {
+			if (!logFile.exists()) {
+				if (storeRoot.isFile()) {
+					log.error("Path {} not a directory", storeRoot.getAbsolutePath());
+					throw new DIDStorageException("Invalid DIDStore \""
+							+ storeRoot.getAbsolutePath() + "\".");
+				}
+
+				String[] files = storeRoot.list();
+				if (files == null || files.length == 0)
+					initializeStore();
+				else
+					migrateFromFileSystem();
+			}
+
+			openLog();
+		} catch (IOException e) {
+			throw new DIDStorageException("Open DIDStore \""
+					+ storeRoot.getAbsolutePath() + "\" error.", e);
+		}
+
+		checkStore();
+	}
+
+	/**
+	 * Check whether the location is a log-structured DID store.
+	 *
+	 * @param dir the store location
+	 * @return true if the location has the store log, false otherwise
+	 */
+	static boolean exists(File dir) {
+		return new File(dir, LOG_FILE).isFile();
+	}
+
+	private void initializeStore() throws IOException {
+		log.debug("Initializing DID store at {}", storeRoot.getAbsolutePath());
+
+		storeRoot.mkdirs();
+
+		Batch batch = new Batch().put(METADATA, new DIDStore.Metadata().serialize());
+		writeLog(new File(storeRoot, MIGRATE_FILE), Collections.singletonList(batch));
+		move(new File(storeRoot, MIGRATE_FILE), logFile);
+	}
+
+	private void migrateFromFileSystem() throws DIDStorageException, IOException {
+		log.info("Migrating DID store {} to the log-structured storage...",
+				storeRoot.getAbsolutePath());
+
+		// Finish the pending upgrade or password change of the old store
+		new FileSystemStorage(storeRoot);
+
+		Path dataDir = new File(storeRoot, DATA_DIR).toPath();
+		File migrating = new File(storeRoot, MIGRATE_FILE);
+		Batch batch = new Batch();
+		int count = 0;
+
+		// Stream the frames to the log, the store may be larger than the heap
+		try (LogWriter writer = new LogWriter(migrating);
+				Stream<Path> files = Files.walk(dataDir)) {
+			for (Path file : (Iterable<Path>)files.sorted()::iterator) {
+				// Skip the directory index, it is derived data
+				if (!Files.isRegularFile(file) || (file.getParent().equals(dataDir) &&
+						file.getFileName().toString().startsWith(StorageIndex.INDEX_FILE)))
+					continue;
+
+				StringBuilder key = new StringBuilder(128);
+				for (Path name : dataDir.relativize(file)) {
+					if (key.length() > 0)
+						key.append(SEPARATOR);
+					key.append(name.toString());
+				}
+
+				batch.put(key.toString(), Files.readAllBytes(file));
+				count++;
+
+				if (batch.size >= COMPACT_FRAME_SIZE) {
+					writer.append(batch);
+					batch = new Batch();
+				}
+			}
+
+			if (!batch.isEmpty())
+				writer.append(batch);
+		}
+
+		// The log takes effect by the atomic rename
+		move(migrating, logFile);
+
+		int timestamp = (int)(System.currentTimeMillis() / 1000);
+		File deprecated = new File(storeRoot, DATA_DIR + "_" + timestamp);
+		if (!dataDir.toFile().renameTo(deprecated))
+			log.warn("Can not rename the migrated data directory {}", dataDir);
+
+		log.info("Migrated {} objects to the log-structured storage", count);
+	}
+
+	private static void writeLog(File file, List<Batch> batches) throws IOException {
+		try (LogWriter writer = new LogWriter(file)) {
+			for (Batch batch : batches)
+				writer.append(batch);
+		}
+	}
+
+	// Writes a new log file frame by frame, synced when closed
+	private static class LogWriter implements Closeable {
+		private FileChannel ch;
+		private long pos;
+
+		public LogWriter(File file) throws IOException {
+			ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+			try {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+				writeFully(ch, header, 0);
+				pos = HEADER_SIZE;
+			} catch (IOException e) {
+				ch.close();
+				throw e;
+			}
+		}
+
+		public void append(Batch batch) throws IOException {
+			ByteBuffer frame = batch.toFrame();
+			int length = frame.remaining();
+			writeFully(ch, frame, pos);
+			pos += length;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				ch.force(true);
+			} finally {
+				ch.close();
+			}
+		}
+	}
+
+	private static void move(File src, File dest) throws IOException {
+		try {
+			Files.move(src.toPath(), dest.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(src.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void writeFully(FileChannel ch, ByteBuffer buf, long pos)
+			throws IOException {
+		while (buf.hasRemaining())
+			pos += ch.write(buf, pos);
+	}
+
+	private static void readFully(FileChannel ch, ByteBuffer buf, long pos)
+			throws IOException {
+		while (buf.hasRemaining()) {
+			int n = ch.read(buf, pos);
+			if (n < 0)
+				throw new EOFException();
+
+			pos += n;
+		}
+
+		buf.flip();
+	}
+
+	private void openLog() throws DIDStorageException, IOException {
+		channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		try {
+			readFully(channel, header, 0);
+		} catch (EOFException e) {
+			channel.close();
+			throw new DIDStorageException("Invalid DIDStore log \"" + logFile + "\".");
+		}
+
+		if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION) {
+			channel.close();
+			throw new DIDStorageException("Invalid DIDStore log \"" + logFile + "\".");
+		}
+
+		index = new TreeMap<String, Long>();
+		long size = channel.size();
+		end = replay(channel, HEADER_SIZE, size, index);
+		garbage = getGarbage(index, end);
+
+		// Drop the torn frame of the interrupted write
+		if (end < size) {
+			log.warn("Dropped {} bytes of the incomplete write from {}",
+					size - end, logFile);
+			channel.truncate(end);
+		}
+
+		log.debug("Opened DID store log {}, {} objects, {} bytes, {} obsolete",
+				logFile, index.size(), end, garbage);
+	}
+
+	/**
+	 * Apply the valid frames between from and to to the index.
+	 *
+	 * @return the end of the last valid frame
+	 */
+	private long replay(FileChannel ch, long from, long to,
+			TreeMap<String, Long> index) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+		long pos = from;
+
+		while (pos + FRAME_HEADER_SIZE <= to) {
+			header.clear();
+			readFully(ch, header, pos);
+			int magic = header.getInt();
+			int length = header.getInt();
+			int checksum = header.getInt();
+
+			if (magic != FRAME_MAGIC || length < 0 ||
+					pos + FRAME_HEADER_SIZE + length > to)
+				break;
+
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			readFully(ch, payload, pos + FRAME_HEADER_SIZE);
+
+			CRC32 crc = new CRC32();
+			crc.update(payload.array(), 0, length);
+			if ((int)crc.getValue() != checksum)
+				break;
+
+			long base = pos + FRAME_HEADER_SIZE;
+			while (payload.hasRemaining()) {
+				byte op = payload.get();
+				byte[] key = new byte[payload.getInt()];
+				payload.get(key);
+				String k = new String(key, StandardCharsets.UTF_8);
+
+				if (op == OP_PUT) {
+					int size = payload.getInt();
+					index.put(k, location(base + payload.position(), size));
+					payload.position(payload.position() + size);
+				} else {
+					index.remove(k);
+				}
+			}
+
+			pos += FRAME_HEADER_SIZE + length;
+		}
+
+		return pos;
+	}
+
+	// The log size except the live objects, include the frame headers
+	private static long getGarbage(TreeMap<String, Long> index, long end) {
+		long live = HEADER_SIZE;
+		for (Map.Entry<String, Long> entry : index.entrySet())
+			live += 9 + Utf8.encodedLength(entry.getKey()) + length(entry.getValue());
+
+		return Math.max(0, end - live);
+	}
+
+	private void checkStore() throws DIDStorageException {
+		try {
+			DIDStore.Metadata metadata = loadMetadata();
+			if (metadata == null)
+				throw new DIDStorageException("Missing store metadata");
+
+			if (!metadata.getType().equals(DIDStore.DID_STORE_TYPE))
+				throw new DIDStorageException("Unknown DIDStore type");
+
+			if (metadata.getVersion() != DIDStore.DID_STORE_VERSION)
+				throw new DIDStorageException("Unsupported DIDStore version");
+		} catch (DIDStorageException e) {
+			log.error("Check DID store error, failed load store metadata", e);
+			close();
+			throw e;
+		}
+	}
+
+	private static long location(long offset, int length) {
+		return offset << LENGTH_BITS | length;
+	}
+
+	private static long offset(long location) {
+		return location >>> LENGTH_BITS;
+	}
+
+	private static int length(long location) {
+		return (int)(location & MAX_VALUE_SIZE);
+	}
+
+	@Override
+	protected String get(String key) throws DIDStorageException {
+		lock.readLock().lock();
+		try {
+			Long loc = index.get(key);
+			if (loc == null)
+				return null;
+
+			ByteBuffer buf = ByteBuffer.allocate(length(loc));
+			readFully(channel, buf, offset(loc));
+			return new String(buf.array(), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new DIDStorageException("Read DIDStore log error: " + key, e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Append the batch to the log as one frame. In a writeBatch call the
+	 * batch is merged to the pending batch of the call.
+	 *
+	 * @param batch the operations to commit
+	 * @return the appended bytes after this frame, 0 if nothing appended
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	private long commit(Batch batch) throws DIDStorageException {
+		if (batch.isEmpty())
+			return 0;
+
+		Batch current = pending.get();
+		if (current != null) {
+			current.addAll(batch);
+			return 0;
+		}
+
+		for (byte[] value : batch.values) {
+			if (value != null && value.length > MAX_VALUE_SIZE)
+				throw new DIDStorageException("Object too large");
+		}
+
+		ByteBuffer frame = batch.toFrame();
+		int frameSize = frame.remaining();
+		boolean compact;
+		long appended;
+
+		lock.writeLock().lock();
+		try {
+			if (closed)
+				throw new DIDStorageException("DIDStore log closed");
+
+			long pos = end;
+			try {
+				writeFully(channel, frame, pos);
+			} catch (IOException e) {
+				// Remove the partial frame
+				try {
+					channel.truncate(pos);
+				} catch (IOException ignore) {
+				}
+
+				throw new DIDStorageException("Write DIDStore log error", e);
+			}
+
+			end = pos + frameSize;
+			written += frameSize;
+			appended = written;
+			garbage += FRAME_HEADER_SIZE;
+
+			long base = pos + FRAME_HEADER_SIZE;
+			int offset = 0;
+			for (int i = 0; i < batch.keys.size(); i++) {
+				String key = batch.keys.get(i);
+				byte[] value = batch.values.get(i);
+				int keySize = key.getBytes(StandardCharsets.UTF_8).length;
+
+				Long old;
+				if (value != null) {
+					offset += 9 + keySize;
+					old = index.put(key, location(base + offset, value.length));
+					offset += value.length;
+				} else {
+					offset += 5 + keySize;
+					old = index.remove(key);
+					garbage += 5 + keySize;
+				}
+
+				if (old != null)
+					garbage += 9 + keySize + length(old);
+			}
+
+			compact = garbage > COMPACT_MIN_GARBAGE && garbage * 2 > end;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (compact && compacting.compareAndSet(false, true)) {
+			compactor.execute(() -> {
+				try {
+					compact();
+				} catch (DIDStorageException e) {
+					log.error("Compact DID store log error", e);
+				} finally {
+					compacting.set(false);
+				}
+			});
+		}
+
+		return appended;
+	}
+
+	/**
+	 * Force the log to the disk up to the given appended bytes. The callers
+	 * waiting on the lock share the next force, one fsync for a group of
+	 * the concurrent batches.
+	 *
+	 * @param target the appended bytes to sync
+	 * @throws DIDStorageException if an error occurred when syncing
+	 */
+	private void sync(long target) throws DIDStorageException {
+		if (target <= 0)
+			return;
+
+		synchronized (syncLock) {
+			// Synced by the force of another batch
+			if (synced >= target)
+				return;
+
+			FileChannel ch;
+			long upTo;
+			lock.readLock().lock();
+			try {
+				ch = channel;
+				upTo = written;
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			try {
+				ch.force(false);
+			} catch (ClosedChannelException e) {
+				// The compaction or the close forced the log before closing it
+			} catch (IOException e) {
+				throw new DIDStorageException("Sync DIDStore log error", e);
+			}
+
+			synced = upTo;
+		}
+	}
+
+	@Override
+	protected boolean delete(String prefix) throws DIDStorageException {
+		Batch current = pending.get();
+		boolean dropped = current != null && current.drop(prefix);
+
+		Batch batch = new Batch();
+		lock.readLock().lock();
+		try {
+			for (String key : index.subMap(prefix, prefix + '\uffff').keySet())
+				batch.delete(key);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		commit(batch);
+		return !batch.isEmpty() || dropped;
+	}
+
+	@Override
+	protected void put(String key, String value) throws DIDStorageException {
+		commit(new Batch().put(key, value));
+	}
+
+	// In a writeBatch call the key may be put by the pending batch, so
+	// the delete is always staged
+	@Override
+	protected boolean remove(String key) throws DIDStorageException {
+		boolean exists = exists(key);
+		if (exists || pending.get() != null)
+			commit(new Batch().delete(key));
+
+		return exists;
+	}
+
+	private boolean exists(String key) {
+		lock.readLock().lock();
+		try {
+			return index.containsKey(key);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected boolean contains(String prefix) {
+		lock.readLock().lock();
+		try {
+			return contains(index, prefix);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected List<String> listChildren(String prefix) {
+		lock.readLock().lock();
+		try {
+			return listChildren(index, prefix);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Rewrite the live objects to a new log, and replace the current log
+	 * with it. The writes are only blocked when switching the logs.
+	 *
+	 * @throws DIDStorageException if an error occurred when compacting
+	 */
+	void compact() throws DIDStorageException {
+		synchronized (compactLock) {
+			List<Map.Entry<String, Long>> live;
+			long snapshot;
+
+			lock.readLock().lock();
+			try {
+				if (closed)
+					return;
+
+				live = new ArrayList<Map.Entry<String, Long>>(index.entrySet());
+				snapshot = end;
+			} finally {
+				lock.readLock().unlock();
+			}
+
+			log.debug("Compacting DID store log {}, {} objects, {} bytes...",
+					logFile, live.size(), snapshot);
+
+			File compacting = new File(storeRoot, COMPACT_FILE);
+			TreeMap<String, Long> newIndex = new TreeMap<String, Long>();
+			FileChannel ch = null;
+			boolean done = false;
+
+			try {
+				ch = FileChannel.open(compacting.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+						StandardOpenOption.WRITE);
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+				writeFully(ch, header, 0);
+				long pos = HEADER_SIZE;
+
+				// The log before the snapshot is immutable, copy without lock
+				Batch batch = new Batch();
+				for (Map.Entry<String, Long> entry : live) {
+					long loc = entry.getValue();
+					ByteBuffer value = ByteBuffer.allocate(length(loc));
+					readFully(channel, value, offset(loc));
+					batch.put(entry.getKey(), value.array());
+
+					if (batch.size >= COMPACT_FRAME_SIZE) {
+						pos = append(ch, batch, pos, newIndex);
+						batch = new Batch();
+					}
+				}
+				pos = append(ch, batch, pos, newIndex);
+
+				lock.writeLock().lock();
+				try {
+					if (closed)
+						return;
+
+					// Catch up the writes after the snapshot
+					long tail = end - snapshot;
+					channel.position(snapshot);
+					while (tail > 0) {
+						long n = ch.transferFrom(channel, pos, tail);
+						if (n <= 0)
+							throw new EOFException();
+
+						pos += n;
+						tail -= n;
+					}
+
+					if (end > snapshot)
+						replay(ch, pos - (end - snapshot), pos, newIndex);
+
+					garbage = getGarbage(newIndex, pos);
+
+					ch.force(true);
+					ch.close();
+					ch = null;
+
+					channel.close();
+					move(compacting, logFile);
+					channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ,
+							StandardOpenOption.WRITE);
+
+					index = newIndex;
+					end = pos;
+					done = true;
+				} finally {
+					lock.writeLock().unlock();
+				}
+
+				log.debug("Compacted DID store log {}, {} objects, {} bytes",
+						logFile, newIndex.size(), pos);
+			} catch (IOException e) {
+				// The store closed while compacting
+				if (closed)
+					return;
+
+				throw new DIDStorageException("Compact DIDStore log error", e);
+			} finally {
+				if (ch != null) {
+					try {
+						ch.close();
+					} catch (IOException ignore) {
+					}
+				}
+
+				if (!done)
+					compacting.delete();
+			}
+		}
+	}
+
+	private static long append(FileChannel ch, Batch batch, long pos,
+			TreeMap<String, Long> index) throws IOException {
+		if (batch.isEmpty())
+			return pos;
+
+		ByteBuffer frame = batch.toFrame();
+		int length = frame.remaining();
+		writeFully(ch, frame, pos);
+
+		long offset = pos + FRAME_HEADER_SIZE;
+		for (int i = 0; i < batch.keys.size(); i++) {
+			String key = batch.keys.get(i);
+			byte[] value = batch.values.get(i);
+
+			offset += 9 + key.getBytes(StandardCharsets.UTF_8).length;
+			index.put(key, location(offset, value.length));
+			offset += value.length;
+		}
+
+		return pos + length;
+	}
+
+	/**
+	 * Get the size of the log file.
+	 *
+	 * @return the log size in bytes
+	 */
+	long getLogSize() {
+		lock.readLock().lock();
+		try {
+			return end;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Flush the log to the disk, and close it.
+	 */
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			if (closed)
+				return;
+
+			closed = true;
+			channel.force(true);
+			channel.close();
+		} catch (IOException e) {
+			log.error("Close DID store log error", e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public String getLocation() {
+		return storeRoot.toString();
+	}
+
+	// All the objects of the identity in one frame
+	@Override
+	public void storeRootIdentity(String id, String mnemonic, String privateKey,
+			String publicKey, int index) throws DIDStorageException {
+		Batch batch = new Batch();
+
+		if (mnemonic != null)
+			batch.put(getRootIdentityKey(id, ROOT_IDENTITY_MNEMONIC_FILE), mnemonic);
+
+		if (privateKey != null)
+			batch.put(getRootIdentityKey(id, ROOT_IDENTITY_PRIVATEKEY_FILE), privateKey);
+
+		if (publicKey != null)
+			batch.put(getRootIdentityKey(id, ROOT_IDENTITY_PUBLICKEY_FILE), publicKey);
+
+		batch.put(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE), Integer.toString(index));
+		commit(batch);
+	}
+
+	@Override
+	public void changePassword(ReEncryptor reEncryptor)
+			throws DIDStorageException {
+		List<String> keys = new ArrayList<String>();
+		lock.readLock().lock();
+		try {
+			for (String key : index.keySet()) {
+				if (needReencrypt(key))
+					keys.add(key);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// All the secrets are re-encrypted in one atomic frame
+		Batch batch = new Batch();
+		try {
+			for (String key : keys) {
+				String secret = get(key);
+				if (secret != null)
+					batch.put(key, reEncryptor.reEncrypt(secret));
+			}
+		} catch (DIDStoreException e) {
+			throw new DIDStorageException("Change store password failed.", e);
+		}
+
+		commit(batch);
+	}
+
+	/**
+	 * Collect all the writes of the batch into one frame, and force it to
+	 * the disk before returning. The reads in the writer do not see its
+	 * own writes.
+	 */
+	@Override
+	public void writeBatch(BatchWriter writer) throws DIDStorageException {
+		// Nested in another batch
+		if (pending.get() != null) {
+			writer.write(this);
+			return;
+		}
+
+		Batch batch = new Batch();
+		pending.set(batch);
+		try {
+			writer.write(this);
+		} finally {
+			pending.remove();
+		}
+
+		sync(commit(batch));
+	}
+}
@@ -0,0 +1,744 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elastos.did.exception.DIDResolveException;
+import org.elastos.did.exception.DIDTransactionException;
+import org.elastos.did.exception.NetworkException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The DIDAdapter implementation that resolves from a group of the resolver
+ * endpoints.
+ *
+ * <p>
+ * The adapter tracks the latency (EWMA) and the error rate of each
+ * endpoint, and routes every request to the fastest healthy endpoint. If
+ * the request not completes in the hedge delay, that is the configured
+ * latency percentile of the endpoint, a hedged request will be sent to the
+ * next endpoint, and the first successful response wins. The failed
+ * request fails over to the next endpoint. The endpoints that keep failing
+ * will be ejected by a circuit breaker for a while, then one trial request
+ * decides whether to take it back.
+ * </p>
+ *
+ * <p>
+ * The ID transactions are never hedged or retried, they are sent to the
+ * best endpoint only.
+ * </p>
+ */
+public class MultiEndpointDIDAdapter implements BatchDIDAdapter {
+	/**
+	 * The default latency percentile that decides the hedge delay.
+	 */
+	public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+
+	/**
+	 * The default minimal hedge delay in milliseconds.
+	 */
+	public static final long DEFAULT_MIN_HEDGE_DELAY = 20;
+
+	/**
+	 * The default number of the consecutive failures that opens the
+	 * circuit breaker of an endpoint.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+	/**
+	 * The default time in milliseconds that an ejected endpoint keeps
+	 * ejected.
+	 */
+	public static final long DEFAULT_OPEN_DURATION = 30000;
+
+	// The hedge delay before an endpoint has enough latency samples
+	private static final long INITIAL_HEDGE_DELAY = 500;
+	private static final double EWMA_ALPHA = 0.2;
+	private static final int LATENCY_SAMPLES = 64;
+	private static final int MIN_PERCENTILE_SAMPLES = 8;
+
+	// Answers the batch request if no endpoint supports it, then the
+	// DIDBackend falls back to resolve one by one
+	private static final String BATCH_UNSUPPORTED = "{\"id\":null,\"jsonrpc\":\"2.0\",\"error\":{\"code\":-32600,\"message\":\"Batch request not supported\"}}";
+
+	private List<Endpoint> endpoints;
+	private Executor executor;
+
+	private boolean hedging;
+	private double hedgePercentile;
+	private long minHedgeDelay;
+	private int failureThreshold;
+	private long openDuration;
+
+	private LongAdder hedges;
+
+	private static final Logger log = LoggerFactory.getLogger(MultiEndpointDIDAdapter.class);
+
+	/**
+	 * The circuit breaker state of an endpoint.
+	 */
+	public enum CircuitState {
+		/**
+		 * The endpoint is healthy.
+		 */
+		CLOSED,
+		/**
+		 * The endpoint is ejected.
+		 */
+		OPEN,
+		/**
+		 * The endpoint is waiting for a trial request.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * The statistics snapshot of a resolver endpoint.
+	 */
+	public static final class EndpointStats {
+		private String name;
+		private CircuitState state;
+		private double latency;
+		private double errorRate;
+		private long requestCount;
+		private long failureCount;
+
+		private EndpointStats(Endpoint endpoint, long now) {
+			synchronized (endpoint) {
+				name = endpoint.name;
+				state = endpoint.getState(now);
+				latency = endpoint.sampleCount == 0 ? 0 : endpoint.latency;
+				errorRate = endpoint.errorRate;
+				requestCount = endpoint.requests;
+				failureCount = endpoint.failures;
+			}
+		}
+
+		/**
+		 * Get the name of the endpoint.
+		 *
+		 * @return the endpoint name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Get the circuit breaker state of the endpoint.
+		 *
+		 * @return the CircuitState
+		 */
+		public CircuitState getState() {
+			return state;
+		}
+
+		/**
+		 * Get the moving average latency of the endpoint.
+		 *
+		 * @return the latency in milliseconds, 0 if no successful request
+		 */
+		public double getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Get the moving average error rate of the endpoint.
+		 *
+		 * @return the error rate between 0 and 1
+		 */
+		public double getErrorRate() {
+			return errorRate;
+		}
+
+		/**
+		 * Get the number of the requests that sent to the endpoint.
+		 *
+		 * @return the request count
+		 */
+		public long getRequestCount() {
+			return requestCount;
+		}
+
+		/**
+		 * Get the number of the failed requests.
+		 *
+		 * @return the failure count
+		 */
+		public long getFailureCount() {
+			return failureCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s(%s, latency:%.1fms, errorRate:%.2f, requests:%d, failures:%d)",
+					name, state, latency, errorRate, requestCount, failureCount);
+		}
+	}
+
+	private static class Endpoint {
+		private String name;
+		private DIDAdapter adapter;
+
+		private double latency;
+		private double errorRate;
+		private long[] samples;
+		private int sampleCount;
+		private int sampleIndex;
+		private int consecutiveFailures;
+		// System.nanoTime() until the circuit keeps open, 0 if closed
+		private long openUntil;
+		private boolean probing;
+		private long lastUsed;
+		private long requests;
+		private long failures;
+
+		public Endpoint(String name, DIDAdapter adapter) {
+			this.name = name;
+			this.adapter = adapter;
+			this.samples = new long[LATENCY_SAMPLES];
+			this.lastUsed = System.nanoTime();
+		}
+
+		public synchronized CircuitState getState(long now) {
+			if (openUntil == 0)
+				return CircuitState.CLOSED;
+
+			return now - openUntil < 0 ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+		}
+
+		public synchronized boolean isAvailable(long now) {
+			CircuitState state = getState(now);
+			return state == CircuitState.CLOSED ||
+					(state == CircuitState.HALF_OPEN && !probing);
+		}
+
+		// Only one trial request passes when half open
+		public synchronized boolean tryAcquire(long now, boolean force) {
+			if (!force) {
+				switch (getState(now)) {
+				case CLOSED:
+					break;
+
+				case HALF_OPEN:
+					if (probing)
+						return false;
+
+					probing = true;
+					break;
+
+				default:
+					return false;
+				}
+			}
+
+			lastUsed = now;
+			return true;
+		}
+
+		// Claim the endpoint that idle for the interval to refresh its stats
+		public synchronized boolean claimProbe(long now, long interval) {
+			if (now - lastUsed < TimeUnit.MILLISECONDS.toNanos(interval))
+				return false;
+
+			lastUsed = now;
+			return true;
+		}
+
+		public synchronized void success(long elapsed) {
+			double millis = elapsed / 1000000.0;
+
+			requests++;
+			latency = sampleCount == 0 ? millis :
+				EWMA_ALPHA * millis + (1 - EWMA_ALPHA) * latency;
+			errorRate = (1 - EWMA_ALPHA) * errorRate;
+
+			samples[sampleIndex] = elapsed;
+			sampleIndex = (sampleIndex + 1) % samples.length;
+			if (sampleCount < samples.length)
+				sampleCount++;
+
+			consecutiveFailures = 0;
+			if (openUntil != 0)
+				log.info("Resolver endpoint {} recovered", name);
+			openUntil = 0;
+			probing = false;
+		}
+
+		public synchronized void failure(long now, int threshold, long openDuration) {
+			requests++;
+			failures++;
+			errorRate = EWMA_ALPHA + (1 - EWMA_ALPHA) * errorRate;
+			consecutiveFailures++;
+
+			if (probing || consecutiveFailures >= threshold) {
+				long until = now + TimeUnit.MILLISECONDS.toNanos(openDuration);
+				openUntil = until != 0 ? until : 1;
+				probing = false;
+				log.warn("Resolver endpoint {} ejected after {} failures", name, consecutiveFailures);
+			}
+		}
+
+		// Lower is better, the endpoints never tried go first
+		public synchronized double score() {
+			if (sampleCount == 0)
+				return failures == 0 ? 0 : Double.MAX_VALUE;
+
+			return latency / Math.max(0.05, 1 - errorRate);
+		}
+
+		// Returns -1 if not enough samples
+		public synchronized long percentile(double p) {
+			if (sampleCount < MIN_PERCENTILE_SAMPLES)
+				return -1;
+
+			long[] sorted = Arrays.copyOf(samples, sampleCount);
+			Arrays.sort(sorted);
+			int index = (int)Math.ceil(p * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+		}
+	}
+
+	@FunctionalInterface
+	private interface Call {
+		InputStream call(DIDAdapter adapter) throws DIDResolveException;
+	}
+
+	private static class Outcome {
+		private Endpoint endpoint;
+		private InputStream result;
+		private DIDResolveException error;
+
+		public Outcome(Endpoint endpoint, InputStream result, DIDResolveException error) {
+			this.endpoint = endpoint;
+			this.result = result;
+			this.error = error;
+		}
+
+		public void discard() {
+			if (result != null) {
+				try {
+					result.close();
+				} catch (IOException ignore) {
+				}
+			}
+		}
+	}
+
+	// The attempts of one request on the endpoints, first success wins
+	private static class Race {
+		private LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<Outcome>();
+		private boolean settled;
+
+		public void complete(Outcome outcome) {
+			synchronized (this) {
+				if (!settled) {
+					outcomes.offer(outcome);
+					return;
+				}
+			}
+
+			// The race is over, close the losing response
+			outcome.discard();
+		}
+
+		public Outcome poll(long timeout) throws InterruptedException {
+			return outcomes.poll(timeout, TimeUnit.NANOSECONDS);
+		}
+
+		public Outcome take() throws InterruptedException {
+			return outcomes.take();
+		}
+
+		public void settle() {
+			List<Outcome> losers = new ArrayList<Outcome>();
+			synchronized (this) {
+				settled = true;
+				outcomes.drainTo(losers);
+			}
+
+			for (Outcome outcome : losers)
+				outcome.discard();
+		}
+	}
+
+	// Not the DIDBackend pool, the resolves on that pool wait for the hedges
+	private static class DefaultExecutor {
+		private static final DIDExecutor executor = DIDExecutor.newIOPool(
+				"MultiEndpointDIDAdapter", DIDExecutor.DEFAULT_IO_THREADS);
+	}
+
+	/**
+	 * Create a MultiEndpointDIDAdapter instance with the adapters that
+	 * access the resolver endpoints.
+	 *
+	 * @param adapters the adapters of the endpoints
+	 */
+	public MultiEndpointDIDAdapter(List<? extends DIDAdapter> adapters) {
+		checkArgument(adapters != null && !adapters.isEmpty(), "Invalid adapters");
+
+		List<Endpoint> endpoints = new ArrayList<Endpoint>(adapters.size());
+		for (DIDAdapter adapter : adapters) {
+			checkArgument(adapter != null, "Invalid adapter");
+			endpoints.add(new Endpoint("endpoint-" + endpoints.size(), adapter));
+		}
+
+		init(endpoints);
+	}
+
+	/**
+	 * Create a MultiEndpointDIDAdapter instance with given resolver
+	 * endpoints and the HTTP transport.
+	 *
+	 * @param transport the HTTP transport, null for a DefaultHttpTransport
+	 * @param resolvers the resolver url strings
+	 */
+	public MultiEndpointDIDAdapter(HttpTransport transport, String... resolvers) {
+		checkArgument(resolvers != null && resolvers.length > 0, "Invalid resolvers");
+
+		if (transport == null)
+			transport = new DefaultHttpTransport();
+
+		List<Endpoint> endpoints = new ArrayList<Endpoint>(resolvers.length);
+		for (String resolver : resolvers)
+			endpoints.add(new Endpoint(resolver, new DefaultDIDAdapter(resolver, transport)));
+
+		init(endpoints);
+	}
+
+	/**
+	 * Create a MultiEndpointDIDAdapter instance with given resolver
+	 * endpoints.
+	 *
+	 * @param resolvers the resolver url strings
+	 */
+	public MultiEndpointDIDAdapter(String... resolvers) {
+		this(null, resolvers);
+	}
+
+	private void init(List<Endpoint> endpoints) {
+		this.endpoints = Collections.unmodifiableList(endpoints);
+		this.executor = DefaultExecutor.executor;
+		this.hedging = endpoints.size() > 1;
+		this.hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+		this.minHedgeDelay = DEFAULT_MIN_HEDGE_DELAY;
+		this.failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+		this.openDuration = DEFAULT_OPEN_DURATION;
+		this.hedges = new LongAdder();
+	}
+
+	/**
+	 * Configure the hedged requests.
+	 *
+	 * @param enabled enable the hedged requests or not
+	 * @param percentile the latency percentile of the primary endpoint
+	 * 		  that the hedged request waits for, between 0 and 1
+	 * @param minDelay the minimal hedge delay in milliseconds
+	 * @return this adapter object
+	 */
+	public MultiEndpointDIDAdapter setHedging(boolean enabled,
+			double percentile, long minDelay) {
+		checkArgument(percentile > 0 && percentile <= 1, "Invalid percentile");
+		checkArgument(minDelay >= 0, "Invalid delay");
+
+		this.hedging = enabled;
+		this.hedgePercentile = percentile;
+		this.minHedgeDelay = minDelay;
+		return this;
+	}
+
+	/**
+	 * Configure the circuit breaker of the endpoints.
+	 *
+	 * @param failureThreshold the number of the consecutive failures that
+	 * 		  ejects the endpoint
+	 * @param openDuration the time in milliseconds that the endpoint keeps
+	 * 		  ejected before the trial request
+	 * @return this adapter object
+	 */
+	public MultiEndpointDIDAdapter setCircuitBreaker(int failureThreshold,
+			long openDuration) {
+		checkArgument(failureThreshold > 0, "Invalid failure threshold");
+		checkArgument(openDuration >= 0, "Invalid open duration");
+
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+		return this;
+	}
+
+	/**
+	 * Set the executor that runs the hedged requests. The default is a
+	 * bounded IO pool that shared by all the MultiEndpointDIDAdapters,
+	 * separated from the DIDBackend executor.
+	 *
+	 * @param executor the executor object
+	 * @return this adapter object
+	 */
+	public MultiEndpointDIDAdapter setExecutor(Executor executor) {
+		checkArgument(executor != null, "Invalid executor");
+
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Get the statistics snapshots of the endpoints.
+	 *
+	 * @return the list of the EndpointStats in the endpoints order
+	 */
+	public List<EndpointStats> getEndpointStats() {
+		long now = System.nanoTime();
+
+		List<EndpointStats> stats = new ArrayList<EndpointStats>(endpoints.size());
+		for (Endpoint endpoint : endpoints)
+			stats.add(new EndpointStats(endpoint, now));
+
+		return stats;
+	}
+
+	/**
+	 * Get the number of the hedged requests that sent.
+	 *
+	 * @return the hedge count
+	 */
+	public long getHedgeCount() {
+		return hedges.sum();
+	}
+
+	// The candidate endpoints from the best
+	private List<Endpoint> select(boolean batch, boolean availableOnly) {
+		long now = System.nanoTime();
+
+		List<Endpoint> candidates = new ArrayList<Endpoint>(endpoints.size());
+		for (Endpoint endpoint : endpoints) {
+			if (batch && !(endpoint.adapter instanceof BatchDIDAdapter))
+				continue;
+
+			if (!availableOnly || endpoint.isAvailable(now))
+				candidates.add(endpoint);
+		}
+
+		// Snapshot the scores, they are changing concurrently
+		double[] scores = new double[candidates.size()];
+		Integer[] order = new Integer[candidates.size()];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = candidates.get(i).score();
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingDouble((i) -> scores[i]));
+
+		List<Endpoint> sorted = new ArrayList<Endpoint>(candidates.size());
+		for (Integer i : order)
+			sorted.add(candidates.get(i));
+
+		return sorted;
+	}
+
+	// The endpoints behind the best one get no request, their stats never
+	// recover from a failure or a slow period. Give one of them a request
+	// after the open duration, covered by the hedged request and fail over.
+	private void probe(List<Endpoint> candidates) {
+		long now = System.nanoTime();
+		for (int i = 1; i < candidates.size(); i++) {
+			if (candidates.get(i).claimProbe(now, openDuration)) {
+				candidates.add(0, candidates.remove(i));
+				return;
+			}
+		}
+	}
+
+	private long getHedgeDelay(Endpoint endpoint) {
+		long delay = endpoint.percentile(hedgePercentile);
+		if (delay < 0)
+			return TimeUnit.MILLISECONDS.toNanos(INITIAL_HEDGE_DELAY);
+
+		return Math.max(TimeUnit.MILLISECONDS.toNanos(minHedgeDelay), delay);
+	}
+
+	private Outcome call(Endpoint endpoint, Call call) {
+		long start = System.nanoTime();
+		try {
+			InputStream is = call.call(endpoint.adapter);
+			if (is == null)
+				throw new DIDResolveException("Unknown error, got null result.");
+
+			endpoint.success(System.nanoTime() - start);
+			return new Outcome(endpoint, is, null);
+		} catch (DIDResolveException e) {
+			log.debug("Resolve from endpoint {} failed: {}", endpoint.name, e.getMessage());
+			endpoint.failure(System.nanoTime(), failureThreshold, openDuration);
+			return new Outcome(endpoint, null, e);
+		} catch (RuntimeException e) {
+			log.debug("Resolve from endpoint {} failed", endpoint.name, e);
+			endpoint.failure(System.nanoTime(), failureThreshold, openDuration);
+			return new Outcome(endpoint, null,
+					new NetworkException("Resolver endpoint error.", e));
+		}
+	}
+
+	// Start the next available candidate on the executor
+	private Endpoint launch(Iterator<Endpoint> candidates, boolean force,
+			Call call, Race race) {
+		long now = System.nanoTime();
+		while (candidates.hasNext()) {
+			Endpoint endpoint = candidates.next();
+			if (!endpoint.tryAcquire(now, force))
+				continue;
+
+			executor.execute(() -> race.complete(call(endpoint, call)));
+			return endpoint;
+		}
+
+		return null;
+	}
+
+	private InputStream perform(Call call, boolean batch) throws DIDResolveException {
+		List<Endpoint> candidates = select(batch, true);
+		// All endpoints are ejected, try all of them rather than fail directly
+		boolean force = candidates.isEmpty();
+		if (force)
+			candidates = select(batch, false);
+		else
+			probe(candidates);
+
+		if (candidates.isEmpty())
+			throw new NetworkException("No available resolver endpoint.");
+
+		DIDResolveException error = null;
+
+		if (!hedging || candidates.size() == 1) {
+			// Fail over one by one on the calling thread
+			long now = System.nanoTime();
+			for (Endpoint endpoint : candidates) {
+				if (!endpoint.tryAcquire(now, force))
+					continue;
+
+				Outcome outcome = call(endpoint, call);
+				if (outcome.error == null)
+					return outcome.result;
+
+				error = outcome.error;
+			}
+		} else {
+			Race race = new Race();
+			Iterator<Endpoint> it = candidates.iterator();
+			try {
+				Endpoint primary = launch(it, force, call, race);
+				int running = primary != null ? 1 : 0;
+				boolean hedged = false;
+				long delay = primary != null ? getHedgeDelay(primary) : 0;
+
+				while (running > 0) {
+					Outcome outcome;
+					if (!hedged && it.hasNext()) {
+						outcome = race.poll(delay);
+						if (outcome == null) {
+							hedged = true;
+							if (launch(it, force, call, race) != null) {
+								hedges.increment();
+								running++;
+								log.debug("Hedged the request to another endpoint after {}ms",
+										TimeUnit.NANOSECONDS.toMillis(delay));
+							}
+
+							continue;
+						}
+					} else {
+						outcome = race.take();
+					}
+
+					running--;
+					if (outcome.error == null)
+						return outcome.result;
+
+					error = outcome.error;
+
+					// Fail over if nothing else in flight
+					if (running == 0 && launch(it, force, call, race) != null)
+						running++;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new NetworkException("Resolve interrupted.", e);
+			} finally {
+				race.settle();
+			}
+		}
+
+		throw error != null ? error : new NetworkException("No available resolver endpoint.");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream resolve(String request) throws DIDResolveException {
+		checkArgument(request != null && !request.isEmpty(), "Invalid request");
+
+		return perform((adapter) -> adapter.resolve(request), false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputStream resolveBatch(String requests) throws DIDResolveException {
+		checkArgument(requests != null && !requests.isEmpty(), "Invalid requests");
+
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.adapter instanceof BatchDIDAdapter)
+				return perform((adapter) -> ((BatchDIDAdapter)adapter).resolveBatch(requests), true);
+		}
+
+		return new ByteArrayInputStream(BATCH_UNSUPPORTED.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void createIdTransaction(String payload, String memo)
+			throws DIDTransactionException {
+		List<Endpoint> candidates = select(false, true);
+		if (candidates.isEmpty())
+			candidates = select(false, false);
+
+		candidates.get(0).adapter.createIdTransaction(payload, memo);
+	}
+}
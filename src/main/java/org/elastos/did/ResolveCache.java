@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.elastos.did.DIDBackend.CacheOutcome;
+import org.elastos.did.DIDBackend.CachePolicy;
+import org.elastos.did.DIDBackend.CacheStats;
+import org.elastos.did.backend.CredentialBiography;
+import org.elastos.did.backend.CredentialResolveRequest;
+import org.elastos.did.backend.DIDBiography;
+import org.elastos.did.backend.DIDResolveRequest;
+import org.elastos.did.backend.PersistentResolveCache;
+import org.elastos.did.backend.ResolveRequest;
+import org.elastos.did.backend.ResolveResult;
+import org.elastos.did.exception.DIDResolveException;
+import org.elastos.did.exception.DIDSyntaxException;
+import org.elastos.did.metrics.DIDMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+
+/**
+ * The two levels cache for the DIDBackend resolve results.
+ *
+ * <p>
+ * The first level is the in-memory cache that applies the CachePolicy,
+ * the second level is the optional PersistentResolveCache.
+ * </p>
+ *
+ * <p>
+ * The in-memory results are kept in separate caches by their outcome:
+ * the VALID results in the main cache with the stale-while-revalidate and
+ * refresh-ahead policies, the NOT_FOUND results in a small negative cache
+ * with a short TTL, and the deactivated DIDs and revoked credentials,
+ * which never change again, in a long-lived terminal cache. So the
+ * probes of the random DIDs can not evict the useful entries. The
+ * NOT_FOUND results are not persisted.
+ * </p>
+ */
+class ResolveCache {
+	private CachePolicy policy;
+	private Loader loader;
+
+	private LoadingCache<ResolveRequest<?, ?>, ResolveResult<?>> cache;
+	private Cache<ResolveRequest<?, ?>, ResolveResult<?>> negativeCache;
+	private Cache<ResolveRequest<?, ?>, ResolveResult<?>> terminalCache;
+
+	// The loads in flight, the same requests share one load
+	private ConcurrentMap<ResolveRequest<?, ?>, CompletableFuture<ResolveResult<?>>> loadings;
+
+	// The load time and hits of the entries, only for the refresh-ahead
+	private ConcurrentMap<ResolveRequest<?, ?>, Stamp> stamps;
+	private long refreshAheadAge;
+
+	private Map<CacheOutcome, LongAdder> hits;
+	private Map<CacheOutcome, LongAdder> misses;
+
+	private volatile PersistentResolveCache persistentCache;
+
+	private static final Logger log = LoggerFactory.getLogger(ResolveCache.class);
+
+	/**
+	 * Load the result from the ID chain.
+	 */
+	@FunctionalInterface
+	interface Loader {
+		ResolveResult<?> load(ResolveRequest<?, ?> request) throws DIDResolveException;
+	}
+
+	private static class Stamp {
+		private long loaded;
+		private AtomicInteger hits;
+		private AtomicBoolean refreshing;
+
+		private Stamp(long loaded) {
+			this.loaded = loaded;
+			hits = new AtomicInteger();
+			refreshing = new AtomicBoolean();
+		}
+	}
+
+	/**
+	 * Create a ResolveCache object.
+	 *
+	 * @param policy the cache policy
+	 * @param loader the loader that resolves from the ID chain
+	 * @param executor the executor for the background refreshes
+	 */
+	ResolveCache(CachePolicy policy, Loader loader, Executor executor) {
+		this.policy = policy;
+		this.loader = loader;
+
+		// Only the VALID results are refreshed, the cache misses are loaded
+		// by get() that dispatches the results by their outcome
+		CacheLoader<ResolveRequest<?, ?>, ResolveResult<?>> cl;
+		cl = new CacheLoader<ResolveRequest<?, ?>, ResolveResult<?>>() {
+			// Load and refresh from the ID chain, never from the persistent cache;
+			// the default reload() delegates here on the refresh executor
+			@Override
+			public ResolveResult<?> load(ResolveRequest<?, ?> key)
+					throws DIDResolveException {
+				log.trace("Cache refreshing {}...", key);
+
+				ResolveResult<?> result;
+				long start = System.nanoTime();
+				try {
+					result = loader.load(key);
+					DIDBackend.getMetrics().cacheLoad(DIDMetrics.CACHE_RESOLVE,
+							System.nanoTime() - start, true);
+				} catch (DIDResolveException e) {
+					DIDBackend.getMetrics().cacheLoad(DIDMetrics.CACHE_RESOLVE,
+							System.nanoTime() - start, false);
+
+					// Keep the old value, allow the next refresh-ahead
+					Stamp stamp = stamps != null ? stamps.get(key) : null;
+					if (stamp != null)
+						stamp.refreshing.set(false);
+
+					throw e;
+				}
+
+				storePersistent(key, result);
+				// The outcome changed, the other caches shadow the stale one
+				CacheOutcome outcome = getOutcome(result);
+				if (outcome != CacheOutcome.VALID)
+					getCache(outcome).put(key, result);
+
+				stamp(key);
+				return result;
+			}
+		};
+
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+				.initialCapacity(policy.getInitialCapacity())
+				.maximumSize(policy.getMaxCapacity())
+				.expireAfterWrite(policy.getTtl(), TimeUnit.MILLISECONDS)
+				.ticker(policy.getTicker())
+				.softValues();
+
+		if (policy.getRefreshAfter() > 0)
+			builder.refreshAfterWrite(policy.getRefreshAfter(), TimeUnit.MILLISECONDS);
+
+		if (policy.getRefreshAheadHits() > 0) {
+			stamps = new ConcurrentHashMap<ResolveRequest<?, ?>, Stamp>();
+			// Refresh the hot entries at three quarters of their fresh age
+			long age = policy.getRefreshAfter() > 0 ?
+					policy.getRefreshAfter() : policy.getTtl();
+			refreshAheadAge = age / 4 * 3;
+		}
+
+		RemovalListener<ResolveRequest<?, ?>, ResolveResult<?>> listener = (n) -> {
+			if (n.wasEvicted())
+				DIDBackend.getMetrics().cacheEviction(DIDMetrics.CACHE_RESOLVE);
+
+			// The refreshed entries are REPLACED, keep their new stamps
+			if (stamps != null && n.getCause() != RemovalCause.REPLACED)
+				stamps.remove(n.getKey());
+		};
+
+		cache = builder.removalListener(listener)
+				.build(CacheLoader.asyncReloading(cl, executor));
+
+		negativeCache = CacheBuilder.newBuilder()
+				.maximumSize(policy.getNegativeCapacity())
+				.expireAfterWrite(policy.getNegativeTtl(), TimeUnit.MILLISECONDS)
+				.ticker(policy.getTicker())
+				.removalListener(listener)
+				.build();
+
+		terminalCache = CacheBuilder.newBuilder()
+				.maximumSize(policy.getTerminalCapacity())
+				.expireAfterWrite(policy.getTerminalTtl(), TimeUnit.MILLISECONDS)
+				.ticker(policy.getTicker())
+				.softValues()
+				.removalListener(listener)
+				.build();
+
+		loadings = new ConcurrentHashMap<ResolveRequest<?, ?>, CompletableFuture<ResolveResult<?>>>();
+
+		hits = new EnumMap<CacheOutcome, LongAdder>(CacheOutcome.class);
+		misses = new EnumMap<CacheOutcome, LongAdder>(CacheOutcome.class);
+		for (CacheOutcome outcome : CacheOutcome.values()) {
+			hits.put(outcome, new LongAdder());
+			misses.put(outcome, new LongAdder());
+		}
+	}
+
+	/**
+	 * Get the outcome of the resolve result.
+	 *
+	 * @param result the resolve result
+	 * @return the CacheOutcome of the result
+	 */
+	static CacheOutcome getOutcome(ResolveResult<?> result) {
+		if (result instanceof DIDBiography) {
+			switch (((DIDBiography)result).getStatus()) {
+			case NOT_FOUND:
+				return CacheOutcome.NOT_FOUND;
+
+			case DEACTIVATED:
+				return CacheOutcome.TERMINAL;
+
+			default:
+				return CacheOutcome.VALID;
+			}
+		} else if (result instanceof CredentialBiography) {
+			switch (((CredentialBiography)result).getStatus()) {
+			case NOT_FOUND:
+				return CacheOutcome.NOT_FOUND;
+
+			case REVOKED:
+				return CacheOutcome.TERMINAL;
+
+			default:
+				return CacheOutcome.VALID;
+			}
+		} else {
+			return CacheOutcome.VALID;
+		}
+	}
+
+	private Cache<ResolveRequest<?, ?>, ResolveResult<?>> getCache(CacheOutcome outcome) {
+		switch (outcome) {
+		case NOT_FOUND:
+			return negativeCache;
+
+		case TERMINAL:
+			return terminalCache;
+
+		default:
+			return cache;
+		}
+	}
+
+	private long now() {
+		return TimeUnit.NANOSECONDS.toMillis(policy.getTicker().read());
+	}
+
+	private void stamp(ResolveRequest<?, ?> request) {
+		if (stamps != null)
+			stamps.put(request, new Stamp(now()));
+	}
+
+	// Count the hit, and start the refresh-ahead for the hot entry
+	private void touch(ResolveRequest<?, ?> request) {
+		if (stamps == null)
+			return;
+
+		Stamp stamp = stamps.get(request);
+		if (stamp == null)
+			return;
+
+		if (stamp.hits.incrementAndGet() >= policy.getRefreshAheadHits() &&
+				now() - stamp.loaded >= refreshAheadAge &&
+				stamp.refreshing.compareAndSet(false, true)) {
+			log.trace("Cache refreshing ahead {}...", request);
+			cache.refresh(request);
+		}
+	}
+
+	/**
+	 * Get the cache policy.
+	 *
+	 * @return the CachePolicy object
+	 */
+	CachePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Get the statistics snapshot of the in-memory cache.
+	 *
+	 * @return the CacheStats object
+	 */
+	CacheStats getStats() {
+		Map<CacheOutcome, Long> h = new EnumMap<CacheOutcome, Long>(CacheOutcome.class);
+		Map<CacheOutcome, Long> m = new EnumMap<CacheOutcome, Long>(CacheOutcome.class);
+		Map<CacheOutcome, Long> s = new EnumMap<CacheOutcome, Long>(CacheOutcome.class);
+		for (CacheOutcome outcome : CacheOutcome.values()) {
+			h.put(outcome, hits.get(outcome).sum());
+			m.put(outcome, misses.get(outcome).sum());
+			s.put(outcome, getCache(outcome).size());
+		}
+
+		return new CacheStats(h, m, s);
+	}
+
+	void setPersistentCache(PersistentResolveCache cache) {
+		persistentCache = cache;
+	}
+
+	PersistentResolveCache getPersistentCache() {
+		return persistentCache;
+	}
+
+	// The key of the persistent cache, independent of the request id
+	private static String getCacheKey(ResolveRequest<?, ?> request) {
+		return request.getMethod() + " " + request.toString();
+	}
+
+	// The credential lists are paged and volatile, not persisted
+	private static Class<? extends ResolveResult<?>> getResultClass(
+			ResolveRequest<?, ?> request) {
+		switch (request.getMethod()) {
+		case DIDResolveRequest.METHOD_NAME:
+			return DIDBiography.class;
+
+		case CredentialResolveRequest.METHOD_NAME:
+			return CredentialBiography.class;
+
+		default:
+			return null;
+		}
+	}
+
+	private ResolveResult<?> loadPersistent(ResolveRequest<?, ?> request) {
+		PersistentResolveCache pc = persistentCache;
+		Class<? extends ResolveResult<?>> clazz = getResultClass(request);
+		if (pc == null || clazz == null)
+			return null;
+
+		String key = getCacheKey(request);
+		String json = pc.get(key);
+		if (json == null)
+			return null;
+
+		try {
+			log.trace("Persistent cache hit {}", request);
+			return DIDEntity.parse(json, clazz);
+		} catch (DIDSyntaxException e) {
+			log.warn("Malformed persistent cache entry {}, removed", key, e);
+			pc.remove(key);
+			return null;
+		}
+	}
+
+	private void storePersistent(ResolveRequest<?, ?> request, ResolveResult<?> result) {
+		PersistentResolveCache pc = persistentCache;
+		if (pc == null || getResultClass(request) == null ||
+				getOutcome(result) == CacheOutcome.NOT_FOUND)
+			return;
+
+		pc.put(getCacheKey(request), result.serialize(true));
+	}
+
+	/**
+	 * Get the result from the cache, or load it if missing. The same
+	 * requests in flight share one load.
+	 *
+	 * @param request the resolve request
+	 * @return the resolve result
+	 * @throws DIDResolveException if an error occurred when loading
+	 */
+	ResolveResult<?> get(ResolveRequest<?, ?> request) throws DIDResolveException {
+		ResolveResult<?> result = getIfPresent(request);
+		if (result != null)
+			return result;
+
+		CompletableFuture<ResolveResult<?>> future = new CompletableFuture<ResolveResult<?>>();
+		CompletableFuture<ResolveResult<?>> pending = loadings.putIfAbsent(request, future);
+		if (pending != null) {
+			try {
+				return pending.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof DIDResolveException)
+					throw (DIDResolveException)e.getCause();
+
+				throw new DIDResolveException(e.getCause());
+			}
+		}
+
+		long start = System.nanoTime();
+		try {
+			log.trace("Cache loading {}...", request);
+			result = loader.load(request);
+			DIDBackend.getMetrics().cacheLoad(DIDMetrics.CACHE_RESOLVE,
+					System.nanoTime() - start, true);
+			put(request, result);
+			future.complete(result);
+			return result;
+		} catch (DIDResolveException | RuntimeException e) {
+			DIDBackend.getMetrics().cacheLoad(DIDMetrics.CACHE_RESOLVE,
+					System.nanoTime() - start, false);
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			loadings.remove(request, future);
+		}
+	}
+
+	/**
+	 * Get the result from the in-memory cache or the persistent cache.
+	 *
+	 * @param request the resolve request
+	 * @return the resolve result, or null if not cached
+	 */
+	ResolveResult<?> getIfPresent(ResolveRequest<?, ?> request) {
+		DIDMetrics metrics = DIDBackend.getMetrics();
+
+		ResolveResult<?> result = negativeCache.getIfPresent(request);
+		if (result != null) {
+			hits.get(CacheOutcome.NOT_FOUND).increment();
+			metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+			return result;
+		}
+
+		result = terminalCache.getIfPresent(request);
+		if (result != null) {
+			hits.get(CacheOutcome.TERMINAL).increment();
+			metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+			return result;
+		}
+
+		result = cache.getIfPresent(request);
+		if (result != null) {
+			hits.get(CacheOutcome.VALID).increment();
+			metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+			touch(request);
+			return result;
+		}
+
+		result = loadPersistent(request);
+		if (result != null) {
+			CacheOutcome outcome = getOutcome(result);
+			hits.get(outcome).increment();
+			metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+			getCache(outcome).put(request, result);
+			if (outcome == CacheOutcome.VALID)
+				stamp(request);
+		} else {
+			metrics.cacheMiss(DIDMetrics.CACHE_RESOLVE);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Put the loaded result to the cache of its outcome, and count it as
+	 * a cache miss.
+	 *
+	 * @param request the resolve request
+	 * @param result the resolve result
+	 */
+	void put(ResolveRequest<?, ?> request, ResolveResult<?> result) {
+		CacheOutcome outcome = getOutcome(result);
+		misses.get(outcome).increment();
+
+		getCache(outcome).put(request, result);
+		storePersistent(request, result);
+		if (outcome == CacheOutcome.VALID)
+			stamp(request);
+	}
+
+	/**
+	 * Put the loaded results to the cache.
+	 *
+	 * @param results the resolve results
+	 */
+	void putAll(Map<ResolveRequest<?, ?>, ResolveResult<?>> results) {
+		for (Map.Entry<ResolveRequest<?, ?>, ResolveResult<?>> entry : results.entrySet())
+			put(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Invalidate the request from all the cache levels.
+	 *
+	 * @param request the resolve request
+	 */
+	void invalidate(ResolveRequest<?, ?> request) {
+		cache.invalidate(request);
+		negativeCache.invalidate(request);
+		terminalCache.invalidate(request);
+
+		PersistentResolveCache pc = persistentCache;
+		if (pc != null && getResultClass(request) != null)
+			pc.remove(getCacheKey(request));
+	}
+
+	/**
+	 * Invalidate all the cached results from all the cache levels.
+	 */
+	void invalidateAll() {
+		cache.invalidateAll();
+		negativeCache.invalidateAll();
+		terminalCache.invalidateAll();
+
+		PersistentResolveCache pc = persistentCache;
+		if (pc != null)
+			pc.clear();
+	}
+}
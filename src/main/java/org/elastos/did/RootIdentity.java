@@ -3,7 +3,6 @@ package org.elastos.did;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.elastos.did.DIDStore.ConflictHandle;
@@ -11,9 +10,9 @@ import org.elastos.did.crypto.Base58;
 import org.elastos.did.crypto.HDKey;
 import org.elastos.did.exception.DIDAlreadyExistException;
 import org.elastos.did.exception.DIDDeactivatedException;
+import org.elastos.did.exception.DIDException;
 import org.elastos.did.exception.DIDResolveException;
 import org.elastos.did.exception.DIDStoreException;
-import org.elastos.did.exception.MalformedDocumentException;
 import org.elastos.did.exception.MnemonicException;
 import org.elastos.did.exception.RootIdentityAlreadyExistException;
 import org.elastos.did.exception.UnknownInternalException;
@@ -495,7 +494,7 @@ public final class RootIdentity {
 		return did;
 	}
 
-	static byte[] lazyCreateDidPrivateKey(DIDURL id, DIDStore store, String storepass)
+	static byte[] lazyCreateDidPrivateKey(DIDURL id, DIDStore store, DIDStore.Session session)
 			throws DIDStoreException {
 		DIDDocument doc = store.loadDid(id.getDid());
 		if (doc == null) {
@@ -508,7 +507,7 @@ public final class RootIdentity {
 			return null;
 
 		HDKey key = store.derive(identity, HDKey.DERIVE_PATH_PREFIX +
-				doc.getMetadata().getIndex(), storepass);
+				doc.getMetadata().getIndex(), session);
 
 		DIDDocument.PublicKey pk = doc.getPublicKey(id);
 		if (pk == null) {
@@ -521,7 +520,7 @@ public final class RootIdentity {
 			throw new DIDStoreException("Invalid DID metadata: " + id.getDid());
 		}
 
-		store.storePrivateKey(id, key.serialize(), storepass);
+		store.storePrivateKey(id, key.serialize(), session);
 		byte[] sk = key.serialize();
 		key.wipe();
 		return sk;
@@ -565,17 +564,23 @@ public final class RootIdentity {
 
 		HDKey key = getStore().derive(getId(), HDKey.DERIVE_PATH_PREFIX + index, storepass);
 		try {
-			DIDURL id = new DIDURL(did, "#primary");
-			getStore().storePrivateKey(id, key.serialize(), storepass);
-
-			DIDDocument.Builder db = new DIDDocument.Builder(did, getStore());
-			db.addAuthenticationKey(id, key.getPublicKeyBase58());
-			doc = db.seal(storepass);
-			getStore().storeDid(doc);
-
-			return doc;
-		} catch (MalformedDocumentException ignore) {
-			throw new UnknownInternalException(ignore);
+			// The private key and the document are stored atomically
+			DIDStore.Transaction<DIDDocument> create = () -> {
+				DIDURL id = new DIDURL(did, "#primary");
+				getStore().storePrivateKey(id, key.serialize(), storepass);
+
+				DIDDocument.Builder db = new DIDDocument.Builder(did, getStore());
+				db.addAuthenticationKey(id, key.getPublicKeyBase58());
+				DIDDocument newDoc = db.seal(storepass);
+				getStore().storeDid(newDoc);
+				return newDoc;
+			};
+
+			return getStore().inBatch() ? create.run() : getStore().transaction(create);
+		} catch (DIDStoreException | DIDResolveException e) {
+			throw e;
+		} catch (DIDException e) {
+			throw new UnknownInternalException(e);
 		} finally {
 			key.wipe();
 		}
@@ -606,9 +611,25 @@ public final class RootIdentity {
 	 */
 	public synchronized DIDDocument newDid(boolean overwrite, String storepass)
 			throws DIDResolveException, DIDStoreException {
-		DIDDocument doc = newDid(getIndex(), overwrite, storepass);
-		incrementIndex();
-		return doc;
+		int idx = getIndex();
+
+		// The new DID and the advanced index are stored atomically
+		DIDStore.Transaction<DIDDocument> create = () -> {
+			DIDDocument doc = newDid(idx, overwrite, storepass);
+
+			getStore().onAbort(() -> index.compareAndSet(idx + 1, idx));
+			index.set(idx + 1);
+			getStore().storeRootIdentity(this);
+			return doc;
+		};
+
+		try {
+			return getStore().inBatch() ? create.run() : getStore().transaction(create);
+		} catch (DIDStoreException | DIDResolveException e) {
+			throw e;
+		} catch (DIDException e) {
+			throw new UnknownInternalException(e);
+		}
 	}
 
 	/**
@@ -758,13 +779,7 @@ public final class RootIdentity {
 	 * 			indicate the synchronize result
 	 */
 	public CompletableFuture<Boolean> synchronizeAsync(int index, ConflictHandle handle) {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return synchronize(index, handle);
-			} catch (DIDResolveException | DIDStoreException e) {
-				throw new CompletionException(e);
-			}
-		});
+		CompletableFuture<Boolean> future = DIDBackend.supplyAsync(() -> synchronize(index, handle));
 
 		return future;
 	}
@@ -849,12 +864,9 @@ public final class RootIdentity {
 	 * @return a new CompletableStage
 	 */
 	public CompletableFuture<Void> synchronizeAsync(ConflictHandle handle) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				synchronize(handle);
-			} catch (DIDResolveException | DIDStoreException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			synchronize(handle);
+			return null;
 		});
 
 		return future;
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.elastos.did.KeyValueStorage.CREDENTIAL_FILE;
+import static org.elastos.did.KeyValueStorage.DID_DIR;
+import static org.elastos.did.KeyValueStorage.DOCUMENT_FILE;
+import static org.elastos.did.KeyValueStorage.METADATA;
+import static org.elastos.did.KeyValueStorage.ROOT_IDENTITIES_DIR;
+import static org.elastos.did.KeyValueStorage.ROOT_IDENTITY_INDEX_FILE;
+import static org.elastos.did.KeyValueStorage.ROOT_IDENTITY_MNEMONIC_FILE;
+import static org.elastos.did.KeyValueStorage.ROOT_IDENTITY_PRIVATEKEY_FILE;
+import static org.elastos.did.KeyValueStorage.ROOT_IDENTITY_PUBLICKEY_FILE;
+import static org.elastos.did.KeyValueStorage.SEPARATOR;
+import static org.elastos.did.KeyValueStorage.getCredentialKey;
+import static org.elastos.did.KeyValueStorage.getCredentialsPrefix;
+import static org.elastos.did.KeyValueStorage.getDidKey;
+import static org.elastos.did.KeyValueStorage.getPrivateKeyKey;
+import static org.elastos.did.KeyValueStorage.getPrivateKeysPrefix;
+import static org.elastos.did.KeyValueStorage.getRootIdentityKey;
+import static org.elastos.did.KeyValueStorage.toDIDURL;
+import static org.elastos.did.KeyValueStorage.toKey;
+import static org.elastos.did.KeyValueStorage.toPath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.elastos.did.exception.DIDStorageException;
+import org.elastos.did.exception.DIDSyntaxException;
+
+/**
+ * The DIDStorage decorator that stages the writes of a DIDStore batch.
+ *
+ * <p>
+ * The staged objects are addressed by the key layout of the
+ * KeyValueStorage, for example "ids/ixxxx/document". The reads see the
+ * staged writes first, then the underlying storage. Only the final state of
+ * each object is kept: the deletes of the DIDs, credentials and root
+ * identities are committed first, followed by the latest value of each
+ * staged object, all in one {@link DIDStorage#writeBatch} call.
+ * </p>
+ *
+ * <p>
+ * A StagingStorage belongs to the thread that started the batch, it is not
+ * thread-safe.
+ * </p>
+ */
+class StagingStorage implements DIDStorage {
+	private DIDStorage storage;
+
+	// The staged objects, a null value means deleted. The writer is null
+	// for the values that written by the writer of another key
+	private TreeMap<String, Staged> staged;
+	// The deleted key prefixes and their writers
+	private LinkedHashMap<String, BatchWriter> deleted;
+
+	private static class Staged {
+		private Object value;
+		private BatchWriter writer;
+
+		private Staged(Object value, BatchWriter writer) {
+			this.value = value;
+			this.writer = writer;
+		}
+	}
+
+	StagingStorage(DIDStorage storage) {
+		this.storage = storage;
+		this.staged = new TreeMap<String, Staged>();
+		this.deleted = new LinkedHashMap<String, BatchWriter>();
+	}
+
+	/**
+	 * Get the number of the staged objects and deletes.
+	 *
+	 * @return the number of the staged writes
+	 */
+	int size() {
+		return staged.size() + deleted.size();
+	}
+
+	/**
+	 * Commit all the staged writes to the underlying storage atomically.
+	 *
+	 * @throws DIDStorageException if an error occurred when writing
+	 */
+	void commit() throws DIDStorageException {
+		if (size() == 0)
+			return;
+
+		storage.writeBatch((s) -> {
+			for (BatchWriter writer : deleted.values())
+				writer.write(s);
+
+			for (Staged object : staged.values()) {
+				if (object.writer != null)
+					object.writer.write(s);
+			}
+		});
+	}
+
+	private void put(String key, Object value, BatchWriter writer) {
+		staged.put(key, new Staged(value, writer));
+	}
+
+	private boolean delete(String prefix, BatchWriter writer) throws DIDStorageException {
+		boolean exists = !listChildren(prefix, null, true).isEmpty() || !isDeleted(prefix)
+				&& baseContains(prefix);
+
+		staged.subMap(prefix, prefix + '\uffff').clear();
+		deleted.put(prefix, writer);
+		return exists;
+	}
+
+	// Whether the key is under a deleted prefix
+	private boolean isDeleted(String key) {
+		if (deleted.isEmpty())
+			return false;
+
+		int pos = key.indexOf(SEPARATOR);
+		while (pos >= 0) {
+			if (deleted.containsKey(key.substring(0, pos + 1)))
+				return true;
+
+			pos = key.indexOf(SEPARATOR, pos + 1);
+		}
+
+		return false;
+	}
+
+	// Whether the object is decided by this batch
+	private boolean isStaged(String key) {
+		return staged.containsKey(key) || isDeleted(key);
+	}
+
+	private Object getStaged(String key) {
+		Staged object = staged.get(key);
+		return object == null ? null : object.value;
+	}
+
+	// Existence of the prefix in the underlying storage, by its kind
+	private boolean baseContains(String prefix) throws DIDStorageException {
+		String[] path = prefix.split(SEPARATOR);
+		if (path[0].equals(ROOT_IDENTITIES_DIR))
+			return storage.loadRootIdentity(path[1]) != null;
+
+		DID did = new DID(DID.METHOD, path[1]);
+		if (path.length == 2)
+			return storage.loadDid(did) != null || storage.loadDidMetadata(did) != null ||
+					storage.containsCredentials(did) || storage.containsPrivateKeys(did);
+		else
+			return storage.loadCredential(toDIDURL(did, path[3])) != null;
+	}
+
+	/**
+	 * Merge the names of the next path level under the prefix.
+	 *
+	 * @param prefix the key prefix
+	 * @param names the names from the underlying storage, or null
+	 * @param dirs whether the names are the directories or the leaves
+	 * @return the merged names, in the key order
+	 */
+	private List<String> listChildren(String prefix, Collection<String> names, boolean dirs) {
+		TreeSet<String> children = new TreeSet<String>();
+
+		if (names != null) {
+			for (String name : names) {
+				if (dirs) {
+					if (!isDeleted(prefix + name + SEPARATOR))
+						children.add(name);
+				} else {
+					String key = prefix + name;
+					if (!isStaged(key) || getStaged(key) != null)
+						children.add(name);
+				}
+			}
+		}
+
+		for (Map.Entry<String, Staged> entry :
+				staged.subMap(prefix, prefix + '\uffff').entrySet()) {
+			if (entry.getValue().value == null)
+				continue;
+
+			String name = entry.getKey().substring(prefix.length());
+			int sep = name.indexOf(SEPARATOR);
+			children.add(sep < 0 ? name : name.substring(0, sep));
+		}
+
+		return new ArrayList<String>(children);
+	}
+
+	private boolean isUntouched(String prefix) {
+		return deleted.isEmpty() && staged.subMap(prefix, prefix + '\uffff').isEmpty();
+	}
+
+	// The metadata objects are mutable, stage the serialized form
+	private static String serialize(AbstractMetadata metadata) {
+		return metadata == null || metadata.isEmpty() ? null : metadata.serialize();
+	}
+
+	private static <T extends AbstractMetadata> T parse(String json, Class<T> clazz)
+			throws DIDStorageException {
+		if (json == null)
+			return null;
+
+		try {
+			return DIDEntity.parse(json, clazz);
+		} catch (DIDSyntaxException e) {
+			throw new DIDStorageException("Load staged metadata error", e);
+		}
+	}
+
+	@Override
+	public String getLocation() {
+		return storage.getLocation();
+	}
+
+	@Override
+	public void storeMetadata(DIDStore.Metadata metadata) {
+		String json = serialize(metadata);
+		put(METADATA, json, (s) -> s.storeMetadata(parse(json, DIDStore.Metadata.class)));
+	}
+
+	@Override
+	public DIDStore.Metadata loadMetadata() throws DIDStorageException {
+		if (isStaged(METADATA))
+			return parse((String)getStaged(METADATA), DIDStore.Metadata.class);
+
+		return storage.loadMetadata();
+	}
+
+	@Override
+	public void storeRootIdentityMetadata(String id, RootIdentity.Metadata metadata) {
+		String json = serialize(metadata);
+		put(getRootIdentityKey(id, METADATA), json, (s) ->
+				s.storeRootIdentityMetadata(id, parse(json, RootIdentity.Metadata.class)));
+	}
+
+	@Override
+	public RootIdentity.Metadata loadRootIdentityMetadata(String id)
+			throws DIDStorageException {
+		String key = getRootIdentityKey(id, METADATA);
+		if (isStaged(key))
+			return parse((String)getStaged(key), RootIdentity.Metadata.class);
+
+		return storage.loadRootIdentityMetadata(id);
+	}
+
+	// The root identity is written as a whole by the writer of the index
+	private BatchWriter getRootIdentityWriter(String id) {
+		return (s) -> {
+			String mnemonic = (String)getStaged(getRootIdentityKey(id, ROOT_IDENTITY_MNEMONIC_FILE));
+			String privateKey = (String)getStaged(getRootIdentityKey(id, ROOT_IDENTITY_PRIVATEKEY_FILE));
+			String publicKey = (String)getStaged(getRootIdentityKey(id, ROOT_IDENTITY_PUBLICKEY_FILE));
+			int index = (Integer)getStaged(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE));
+
+			if (mnemonic == null && privateKey == null && publicKey == null)
+				s.updateRootIdentityIndex(id, index);
+			else
+				s.storeRootIdentity(id, mnemonic, privateKey, publicKey, index);
+		};
+	}
+
+	@Override
+	public void storeRootIdentity(String id, String mnemonic, String privateKey,
+			String publicKey, int index) {
+		if (mnemonic != null)
+			put(getRootIdentityKey(id, ROOT_IDENTITY_MNEMONIC_FILE), mnemonic, null);
+
+		if (privateKey != null)
+			put(getRootIdentityKey(id, ROOT_IDENTITY_PRIVATEKEY_FILE), privateKey, null);
+
+		if (publicKey != null)
+			put(getRootIdentityKey(id, ROOT_IDENTITY_PUBLICKEY_FILE), publicKey, null);
+
+		put(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE), index,
+				getRootIdentityWriter(id));
+	}
+
+	@Override
+	public RootIdentity loadRootIdentity(String id) throws DIDStorageException {
+		String publicKeyKey = getRootIdentityKey(id, ROOT_IDENTITY_PUBLICKEY_FILE);
+		String indexKey = getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE);
+
+		String publicKey = (String)getStaged(publicKeyKey);
+		Integer index = (Integer)getStaged(indexKey);
+		if (publicKey == null) {
+			if (isDeleted(publicKeyKey))
+				return null;
+
+			RootIdentity identity = storage.loadRootIdentity(id);
+			if (identity == null || index == null)
+				return identity;
+
+			publicKey = identity.getPreDerivedPublicKey().serializePublicKeyBase58();
+		}
+
+		return RootIdentity.create(publicKey, index);
+	}
+
+	@Override
+	public void updateRootIdentityIndex(String id, int index) {
+		put(getRootIdentityKey(id, ROOT_IDENTITY_INDEX_FILE), index,
+				getRootIdentityWriter(id));
+	}
+
+	@Override
+	public String loadRootIdentityPrivateKey(String id) throws DIDStorageException {
+		String key = getRootIdentityKey(id, ROOT_IDENTITY_PRIVATEKEY_FILE);
+		return isStaged(key) ? (String)getStaged(key) : storage.loadRootIdentityPrivateKey(id);
+	}
+
+	@Override
+	public String loadRootIdentityMnemonic(String id) throws DIDStorageException {
+		String key = getRootIdentityKey(id, ROOT_IDENTITY_MNEMONIC_FILE);
+		return isStaged(key) ? (String)getStaged(key) : storage.loadRootIdentityMnemonic(id);
+	}
+
+	@Override
+	public boolean deleteRootIdentity(String id) throws DIDStorageException {
+		return delete(toKey(ROOT_IDENTITIES_DIR, id, ""), (s) -> s.deleteRootIdentity(id));
+	}
+
+	@Override
+	public List<RootIdentity> listRootIdentities() throws DIDStorageException {
+		String prefix = ROOT_IDENTITIES_DIR + SEPARATOR;
+		if (isUntouched(prefix))
+			return storage.listRootIdentities();
+
+		List<String> names = new ArrayList<String>();
+		for (RootIdentity identity : storage.listRootIdentities())
+			names.add(identity.getId());
+
+		List<RootIdentity> ids = new ArrayList<RootIdentity>();
+		for (String id : listChildren(prefix, names, true)) {
+			RootIdentity identity = loadRootIdentity(id);
+			if (identity != null)
+				ids.add(identity);
+		}
+
+		return ids;
+	}
+
+	@Override
+	public boolean containsRootIdenities() throws DIDStorageException {
+		return !listRootIdentities().isEmpty();
+	}
+
+	@Override
+	public void storeDidMetadata(DID did, DIDMetadata metadata) {
+		String json = serialize(metadata);
+		put(getDidKey(did, METADATA), json, (s) ->
+				s.storeDidMetadata(did, parse(json, DIDMetadata.class)));
+	}
+
+	@Override
+	public DIDMetadata loadDidMetadata(DID did) throws DIDStorageException {
+		String key = getDidKey(did, METADATA);
+		if (isStaged(key))
+			return parse((String)getStaged(key), DIDMetadata.class);
+
+		return storage.loadDidMetadata(did);
+	}
+
+	@Override
+	public void storeDid(DIDDocument doc) {
+		put(getDidKey(doc.getSubject(), DOCUMENT_FILE), doc, (s) -> s.storeDid(doc));
+	}
+
+	@Override
+	public DIDDocument loadDid(DID did) throws DIDStorageException {
+		String key = getDidKey(did, DOCUMENT_FILE);
+		return isStaged(key) ? (DIDDocument)getStaged(key) : storage.loadDid(did);
+	}
+
+	@Override
+	public boolean deleteDid(DID did) throws DIDStorageException {
+		return delete(getDidKey(did, ""), (s) -> s.deleteDid(did));
+	}
+
+	@Override
+	public List<DID> listDids() throws DIDStorageException {
+		String prefix = DID_DIR + SEPARATOR;
+		if (isUntouched(prefix))
+			return storage.listDids();
+
+		List<String> names = new ArrayList<String>();
+		for (DID did : storage.listDids())
+			names.add(did.getMethodSpecificId());
+
+		List<DID> dids = new ArrayList<DID>();
+		for (String name : listChildren(prefix, names, true))
+			dids.add(new DID(DID.METHOD, name));
+
+		return dids;
+	}
+
+	@Override
+	public void storeCredentialMetadata(DIDURL id, CredentialMetadata metadata) {
+		String json = serialize(metadata);
+		put(getCredentialKey(id, METADATA), json, (s) ->
+				s.storeCredentialMetadata(id, parse(json, CredentialMetadata.class)));
+	}
+
+	@Override
+	public CredentialMetadata loadCredentialMetadata(DIDURL id)
+			throws DIDStorageException {
+		String key = getCredentialKey(id, METADATA);
+		if (isStaged(key))
+			return parse((String)getStaged(key), CredentialMetadata.class);
+
+		return storage.loadCredentialMetadata(id);
+	}
+
+	@Override
+	public void storeCredential(VerifiableCredential credential) {
+		put(getCredentialKey(credential.getId(), CREDENTIAL_FILE), credential,
+				(s) -> s.storeCredential(credential));
+	}
+
+	@Override
+	public VerifiableCredential loadCredential(DIDURL id)
+			throws DIDStorageException {
+		String key = getCredentialKey(id, CREDENTIAL_FILE);
+		return isStaged(key) ? (VerifiableCredential)getStaged(key) : storage.loadCredential(id);
+	}
+
+	@Override
+	public boolean containsCredentials(DID did) throws DIDStorageException {
+		return !listCredentials(did).isEmpty();
+	}
+
+	@Override
+	public boolean deleteCredential(DIDURL id) throws DIDStorageException {
+		return delete(getCredentialKey(id, ""), (s) -> s.deleteCredential(id));
+	}
+
+	@Override
+	public List<DIDURL> listCredentials(DID did) throws DIDStorageException {
+		String prefix = getCredentialsPrefix(did);
+		if (isUntouched(prefix))
+			return storage.listCredentials(did);
+
+		List<String> names = new ArrayList<String>();
+		for (DIDURL id : storage.listCredentials(did))
+			names.add(toPath(id));
+
+		List<DIDURL> ids = new ArrayList<DIDURL>();
+		for (String name : listChildren(prefix, names, true))
+			ids.add(toDIDURL(did, name));
+
+		return ids;
+	}
+
+	@Override
+	public void storePrivateKey(DIDURL id, String privateKey) {
+		put(getPrivateKeyKey(id), privateKey, (s) -> s.storePrivateKey(id, privateKey));
+	}
+
+	@Override
+	public String loadPrivateKey(DIDURL id) throws DIDStorageException {
+		String key = getPrivateKeyKey(id);
+		return isStaged(key) ? (String)getStaged(key) : storage.loadPrivateKey(id);
+	}
+
+	@Override
+	public boolean containsPrivateKeys(DID did) throws DIDStorageException {
+		return !listPrivateKeys(did).isEmpty();
+	}
+
+	@Override
+	public boolean deletePrivateKey(DIDURL id) throws DIDStorageException {
+		boolean exists = loadPrivateKey(id) != null;
+		put(getPrivateKeyKey(id), null, (s) -> s.deletePrivateKey(id));
+		return exists;
+	}
+
+	@Override
+	public List<DIDURL> listPrivateKeys(DID did) throws DIDStorageException {
+		String prefix = getPrivateKeysPrefix(did);
+		if (isUntouched(prefix))
+			return storage.listPrivateKeys(did);
+
+		List<String> names = new ArrayList<String>();
+		for (DIDURL id : storage.listPrivateKeys(did))
+			names.add(toPath(id));
+
+		List<DIDURL> ids = new ArrayList<DIDURL>();
+		for (String name : listChildren(prefix, names, false))
+			ids.add(toDIDURL(did, name));
+
+		return ids;
+	}
+
+	@Override
+	public void changePassword(ReEncryptor reEncryptor) throws DIDStorageException {
+		throw new DIDStorageException("Can not change the password in a batch");
+	}
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * The persistent directory index of the FileSystemStorage.
+ *
+ * The index maps the DIDs to their credential ids, private key ids and the
+ * DID metadata, so the listing and filtering do not walk the directory tree.
+ * It is an append-only journal of text records, one record per line:
+ *
+ *   DIDStore-index <version>		[Header]
+ *   M <mtime>						[Last modified time of the ids directory]
+ *   D <msid>						[DID added]
+ *   X <msid>						[DID removed]
+ *   A <msid> [metadata]			[DID metadata, in compact JSON format]
+ *   C|c <msid> <path>				[Credential added/removed]
+ *   K|k <msid> <path>				[Private key added/removed]
+ *   T <msid> <mtime>				[Last modified time of the DID directory]
+ *
+ * All records are idempotent, the index is the replay of the journal. The
+ * journal is rewritten to a snapshot when it grows too large. The index is
+ * rebuilt from the directory tree if the file is missing, corrupted, or the
+ * ids directory or any DID directory was modified without updating the
+ * index. The modified time of a DID directory is the latest one of the
+ * directory itself, its metadata file, credentials and private keys
+ * directories.
+ */
+class StorageIndex {
+	static final String INDEX_FILE = ".index";
+
+	private static final String HEADER = "DIDStore-index";
+	private static final int VERSION = 2;
+
+	private static final int COMPACT_THRESHOLD = 4096;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File dataDir;
+	private File file;
+
+	private TreeMap<String, Entry> dids;
+	private long stamp;
+
+	private Object fileKey;
+	private long position;
+	private int records;
+	private int snapshotRecords;
+	private boolean broken;
+
+	private static final Logger log = LoggerFactory.getLogger(StorageIndex.class);
+
+	private static class Entry {
+		private TreeSet<String> credentials = new TreeSet<String>();
+		private TreeSet<String> privateKeys = new TreeSet<String>();
+		private String metadata;
+		private long stamp;
+	}
+
+	StorageIndex(File dataDir) {
+		this.dataDir = dataDir;
+		this.file = new File(dataDir, INDEX_FILE);
+	}
+
+	/**
+	 * Synchronize the index with the journal file, load or rebuild the
+	 * index if necessary.
+	 *
+	 * @return true if the index is available, false otherwise
+	 */
+	synchronized boolean refresh() {
+		return refresh(null);
+	}
+
+	/**
+	 * Synchronize the index with the journal file, and validate the index
+	 * entry of the given DID against its directory.
+	 *
+	 * @param msid the method specific id of the DID to validate, or null
+	 * @return true if the index is available, false otherwise
+	 */
+	synchronized boolean refresh(String msid) {
+		if (broken)
+			return false;
+
+		try {
+			sync();
+
+			if (stamp != getIdsModified() || (msid != null && isStale(msid))) {
+				log.info("DID store index is stale, rebuilding...");
+				rebuild();
+			}
+
+			return true;
+		} catch (IOException e) {
+			log.warn("DID store index unavailable, fall back to scan the directories", e);
+			dids = null;
+			broken = true;
+			return false;
+		}
+	}
+
+	// Catch up with the journal. The directory tree is not validated,
+	// the storage already changed it before updating the index.
+	private void sync() throws IOException {
+		BasicFileAttributes attrs = file.exists() ?
+				Files.readAttributes(file.toPath(), BasicFileAttributes.class) : null;
+
+		if (dids == null || attrs == null || attrs.size() < position ||
+				!Objects.equals(getFileKey(attrs), fileKey)) {
+			load();
+		} else if (attrs.size() > position) {
+			if (!replay())
+				rebuild();
+		}
+	}
+
+	synchronized List<String> listDids() {
+		return new ArrayList<String>(dids.keySet());
+	}
+
+	synchronized boolean containsDid(String msid) {
+		return dids.containsKey(msid);
+	}
+
+	synchronized String getMetadata(String msid) {
+		Entry entry = dids.get(msid);
+		return entry == null ? null : entry.metadata;
+	}
+
+	synchronized List<String> listCredentials(String msid) {
+		Entry entry = dids.get(msid);
+		return entry == null ? Collections.emptyList() :
+			new ArrayList<String>(entry.credentials);
+	}
+
+	synchronized boolean containsCredentials(String msid) {
+		Entry entry = dids.get(msid);
+		return entry != null && !entry.credentials.isEmpty();
+	}
+
+	synchronized List<String> listPrivateKeys(String msid) {
+		Entry entry = dids.get(msid);
+		return entry == null ? Collections.emptyList() :
+			new ArrayList<String>(entry.privateKeys);
+	}
+
+	synchronized boolean containsPrivateKeys(String msid) {
+		Entry entry = dids.get(msid);
+		return entry != null && !entry.privateKeys.isEmpty();
+	}
+
+	synchronized void didStored(String msid) {
+		update(msid, true, null);
+	}
+
+	synchronized void didDeleted(String msid) {
+		update(null, false, "X\t" + msid + "\nM\t" + getIdsModified() + "\n");
+	}
+
+	synchronized void metadataStored(String msid, String metadata) {
+		update(msid, true, "A\t" + msid + (metadata == null ? "" :
+				"\t" + compactJson(metadata)) + "\n");
+	}
+
+	synchronized void credentialStored(String msid, String path) {
+		update(msid, true, "C\t" + msid + "\t" + path + "\n");
+	}
+
+	synchronized void credentialDeleted(String msid, String path) {
+		update(msid, false, "c\t" + msid + "\t" + path + "\n");
+	}
+
+	synchronized void privateKeyStored(String msid, String path) {
+		update(msid, true, "K\t" + msid + "\t" + path + "\n");
+	}
+
+	synchronized void privateKeyDeleted(String msid, String path) {
+		update(msid, false, "k\t" + msid + "\t" + path + "\n");
+	}
+
+	// The storage applies the change to the directory tree first, then
+	// appends the records. If the did is not indexed yet, its directory
+	// was created by this change, so record the new ids directory mtime.
+	// The DID directory mtime is recorded after the change records.
+	private void update(String did, boolean create, String record) {
+		if (broken)
+			return;
+
+		try {
+			sync();
+
+			StringBuilder sb = new StringBuilder(256);
+			boolean indexed = did != null && dids.containsKey(did);
+			if (did != null && create && !indexed)
+				sb.append("D\t").append(did).append("\nM\t")
+					.append(getIdsModified()).append('\n');
+
+			if (record != null)
+				sb.append(record);
+
+			if (did != null && (create || indexed))
+				sb.append("T\t").append(did).append('\t')
+					.append(getDidModified(did)).append('\n');
+
+			try (FileOutputStream out = new FileOutputStream(file, true)) {
+				out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+			}
+
+			// Replay the tail, includes the records from the other instances
+			if (!replay())
+				rebuild();
+			else if (records > snapshotRecords * 2 + COMPACT_THRESHOLD)
+				writeSnapshot();
+		} catch (IOException e) {
+			log.warn("Update DID store index error, will rebuild the index", e);
+			dids = null;
+			file.delete();
+		}
+	}
+
+	private void load() throws IOException {
+		dids = new TreeMap<String, Entry>();
+		stamp = -1;
+		position = 0;
+		records = 0;
+
+		if (file.exists()) {
+			BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+					BasicFileAttributes.class);
+			fileKey = getFileKey(attrs);
+
+			// The journal should end with a complete record
+			if (replay() && position == attrs.size() && stamp == getIdsModified() &&
+					!hasStaleEntry()) {
+				snapshotRecords = countLiveRecords();
+				log.debug("Loaded DID store index with {} DIDs", dids.size());
+				return;
+			}
+
+			log.info("DID store index is stale, rebuilding...");
+		}
+
+		rebuild();
+	}
+
+	private boolean replay() throws IOException {
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+			long pos = position;
+			while (true) {
+				buf.clear();
+				int n = ch.read(buf, pos);
+				if (n <= 0)
+					break;
+
+				for (int i = 0; i < n; i++) {
+					byte b = buf.get(i);
+					if (b != '\n') {
+						line.write(b);
+						continue;
+					}
+
+					if (!apply(new String(line.toByteArray(), StandardCharsets.UTF_8)))
+						return false;
+
+					line.reset();
+					position = pos + i + 1;
+				}
+
+				pos += n;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean apply(String record) {
+		String[] fields = record.split("\t", 3);
+
+		if (records++ == 0)
+			return fields.length == 2 && fields[0].equals(HEADER) &&
+					fields[1].equals(Integer.toString(VERSION));
+
+		if (fields[0].length() != 1 || fields.length < 2)
+			return false;
+
+		char op = fields[0].charAt(0);
+		String did = fields[1];
+		String path = fields.length == 3 ? fields[2] : null;
+
+		switch (op) {
+		case 'M':
+			try {
+				stamp = Long.parseLong(did);
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+
+		case 'D':
+			getEntry(did);
+			return true;
+
+		case 'X':
+			dids.remove(did);
+			return true;
+
+		case 'A':
+			getEntry(did).metadata = path;
+			return true;
+		}
+
+		if (path == null)
+			return false;
+
+		switch (op) {
+		case 'T':
+			try {
+				long mtime = Long.parseLong(path);
+				if (dids.containsKey(did))
+					dids.get(did).stamp = mtime;
+				return true;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+
+		case 'C':
+			getEntry(did).credentials.add(path);
+			return true;
+
+		case 'c':
+			if (dids.containsKey(did))
+				dids.get(did).credentials.remove(path);
+			return true;
+
+		case 'K':
+			getEntry(did).privateKeys.add(path);
+			return true;
+
+		case 'k':
+			if (dids.containsKey(did))
+				dids.get(did).privateKeys.remove(path);
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	private Entry getEntry(String did) {
+		Entry entry = dids.get(did);
+		if (entry == null) {
+			entry = new Entry();
+			dids.put(did, entry);
+		}
+
+		return entry;
+	}
+
+	private void rebuild() throws IOException {
+		long start = System.currentTimeMillis();
+
+		// Take the stamp before scanning, any concurrent change makes the
+		// index stale rather than lost
+		stamp = getIdsModified();
+		dids = new TreeMap<String, Entry>();
+
+		File dir = new File(dataDir, FileSystemStorage.DID_DIR);
+		File[] children = dir.listFiles((f) -> {
+			return f.isDirectory();
+		});
+
+		if (children != null) {
+			for (File didRoot : children) {
+				Entry entry = getEntry(didRoot.getName());
+				// Before scanning, same as the ids directory stamp
+				entry.stamp = getDidModified(didRoot.getName());
+
+				File file = new File(didRoot, FileSystemStorage.METADATA);
+				if (file.isFile()) {
+					String metadata = new String(Files.readAllBytes(file.toPath()),
+							StandardCharsets.UTF_8).trim();
+					if (!metadata.isEmpty())
+						entry.metadata = compactJson(metadata);
+				}
+
+				File[] vcs = new File(didRoot, FileSystemStorage.CREDENTIALS_DIR).listFiles((f) -> {
+					return f.isDirectory();
+				});
+				if (vcs != null) {
+					for (File vc : vcs)
+						entry.credentials.add(vc.getName());
+				}
+
+				File[] sks = new File(didRoot, FileSystemStorage.PRIVATEKEYS_DIR).listFiles((f) -> {
+					return f.isFile();
+				});
+				if (sks != null) {
+					for (File sk : sks)
+						entry.privateKeys.add(sk.getName());
+				}
+			}
+		}
+
+		writeSnapshot();
+
+		log.debug("Rebuilt DID store index with {} DIDs in {}ms", dids.size(),
+				System.currentTimeMillis() - start);
+	}
+
+	private void writeSnapshot() throws IOException {
+		File tmp = new File(dataDir, INDEX_FILE + ".tmp");
+		int count = 0;
+
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(tmp), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+			out.write(HEADER + "\t" + VERSION + "\n");
+			count++;
+
+			for (Map.Entry<String, Entry> e : dids.entrySet()) {
+				String did = e.getKey();
+				Entry entry = e.getValue();
+
+				out.write("D\t" + did + "\n");
+				count++;
+
+				if (entry.metadata != null) {
+					out.write("A\t" + did + "\t" + entry.metadata + "\n");
+					count++;
+				}
+
+				for (String path : entry.credentials) {
+					out.write("C\t" + did + "\t" + path + "\n");
+					count++;
+				}
+
+				for (String path : entry.privateKeys) {
+					out.write("K\t" + did + "\t" + path + "\n");
+					count++;
+				}
+
+				out.write("T\t" + did + "\t" + entry.stamp + "\n");
+				count++;
+			}
+
+			out.write("M\t" + stamp + "\n");
+			count++;
+		}
+
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+				BasicFileAttributes.class);
+		fileKey = getFileKey(attrs);
+		position = attrs.size();
+		records = count;
+		snapshotRecords = count;
+	}
+
+	private int countLiveRecords() {
+		int count = 2;
+		for (Entry entry : dids.values())
+			count += 2 + (entry.metadata != null ? 1 : 0) +
+					entry.credentials.size() + entry.privateKeys.size();
+
+		return count;
+	}
+
+	private long getIdsModified() {
+		return new File(dataDir, FileSystemStorage.DID_DIR).lastModified();
+	}
+
+	private long getDidModified(String msid) {
+		File didRoot = new File(new File(dataDir, FileSystemStorage.DID_DIR), msid);
+
+		long mtime = didRoot.lastModified();
+		mtime = Math.max(mtime, new File(didRoot, FileSystemStorage.METADATA).lastModified());
+		mtime = Math.max(mtime, new File(didRoot, FileSystemStorage.CREDENTIALS_DIR).lastModified());
+		mtime = Math.max(mtime, new File(didRoot, FileSystemStorage.PRIVATEKEYS_DIR).lastModified());
+		return mtime;
+	}
+
+	private boolean isStale(String msid) {
+		Entry entry = dids.get(msid);
+		return entry != null && entry.stamp != getDidModified(msid);
+	}
+
+	private boolean hasStaleEntry() {
+		for (String msid : dids.keySet()) {
+			if (isStale(msid))
+				return true;
+		}
+
+		return false;
+	}
+
+	private static Object getFileKey(BasicFileAttributes attrs) {
+		// No file key on some platforms, the creation time is good enough
+		Object key = attrs.fileKey();
+		return key != null ? key : attrs.creationTime();
+	}
+
+	// Line breaks and tabs can only be the whitespaces between the JSON
+	// tokens, the ones in the strings are escaped.
+	private static String compactJson(String json) {
+		return json.replace('\n', ' ').replace('\r', ' ').replace('\t', ' ');
+	}
+}
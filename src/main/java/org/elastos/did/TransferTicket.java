@@ -35,7 +35,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 
-import org.elastos.did.crypto.EcdsaSigner;
 import org.elastos.did.exception.AlreadySignedException;
 import org.elastos.did.exception.DIDResolveException;
 import org.elastos.did.exception.DIDStoreException;
@@ -47,11 +46,13 @@ import org.elastos.did.exception.NotCustomizedDIDException;
 import org.elastos.did.exception.UnknownInternalException;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
 
 /**
  * Transfer ticket class.
@@ -65,6 +66,7 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
  */
 @JsonPropertyOrder({ TransferTicket.ID, TransferTicket.TO,
 	TransferTicket.TXID, TransferTicket.PROOF })
+@JsonFilter("transferTicketFilter")
 public class TransferTicket extends DIDEntity<TransferTicket> {
 	protected final static String ID = "id";
 	protected final static String TO = "to";
@@ -109,6 +111,8 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 		private DIDURL verificationMethod;
 		@JsonProperty(SIGNATURE)
 		private String signature;
+		// Lazy decoded signature, see getSignatureBytes()
+		private volatile byte[] signatureBytes;
 
 		/**
 		 * Constructs the Proof object with the given values.
@@ -176,6 +180,14 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 			return signature;
 		}
 
+		byte[] getSignatureBytes() {
+			byte[] bytes = signatureBytes;
+			if (bytes == null)
+				signatureBytes = bytes = decodeSignature(signature);
+
+			return bytes;
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -228,23 +240,6 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 		this.txid = txid;
 	}
 
-	/**
-	 * Copy constructor.
-	 *
-	 * @param ticket the source object
-	 * @param withProof if copy with the proof objects
-	 */
-	private TransferTicket(TransferTicket ticket, boolean withProof) {
-		this.id = ticket.id;
-		this.to = ticket.to;
-		this.txid = ticket.txid;
-		this.doc = ticket.doc;
-		if (withProof) {
-			this.proofs = ticket.proofs;
-			this._proofs = ticket._proofs;
-		}
-	}
-
 	/**
 	 * Get the target DID of this ticket.
 	 *
@@ -336,9 +331,7 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 			return false;
 		}
 
-		TransferTicket tt = new TransferTicket(this, false);
-		String json = tt.serialize(true);
-		byte[] digest = EcdsaSigner.sha256Digest(json.getBytes());
+		byte[] digest = getDigest();
 
 		for (Proof proof : _proofs) {
 			if (!proof.getType().equals(Constants.DEFAULT_PUBLICKEY_TYPE)) {
@@ -382,7 +375,7 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 				return false;
 			}
 
-			if (!doc.verifyDigest(proof.getVerificationMethod(), proof.getSignature(), digest)) {
+			if (!doc.verifySignature(proof.getVerificationMethod(), proof.getSignatureBytes(), digest)) {
 				if (listener != null) {
 					listener.failed(this, "Ticket %s: proof '%s' is invalid, signature mismatch",
 							this.getSubject(), proof.getVerificationMethod());
@@ -488,6 +481,10 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 		return proofs.size() == (multisig == null ? 1 : multisig.m());
 	}
 
+	static PropertyFilter getFilter() {
+		return new DIDPropertyFilter();
+	}
+
 	/**
 	 * Sanitize routine before sealing or after deserialization.
 	 *
@@ -560,8 +557,7 @@ public class TransferTicket extends DIDEntity<TransferTicket> {
 
 		_proofs = null;
 
-		String json = serialize(true);
-		String sig = controller.sign(storepass, json.getBytes());
+		String sig = controller.signDigest(storepass, getDigest());
 		Proof proof = new Proof(signKey, sig);
 		proofs.put(proof.getVerificationMethod().getDid(), proof);
 
@@ -48,14 +48,12 @@ import org.elastos.did.exception.CredentialExpiredException;
 import org.elastos.did.exception.CredentialNotGenuineException;
 import org.elastos.did.exception.CredentialRevokedException;
 import org.elastos.did.exception.DIDBackendException;
-import org.elastos.did.exception.DIDException;
 import org.elastos.did.exception.DIDNotFoundException;
 import org.elastos.did.exception.DIDResolveException;
 import org.elastos.did.exception.DIDStoreException;
 import org.elastos.did.exception.DIDSyntaxException;
 import org.elastos.did.exception.InvalidKeyException;
 import org.elastos.did.exception.MalformedCredentialException;
-import org.elastos.did.exception.MalformedDIDURLException;
 import org.elastos.did.exception.NotAttachedWithStoreException;
 import org.elastos.did.exception.UnknownInternalException;
 import org.slf4j.Logger;
@@ -261,6 +259,8 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 		private DIDURL verificationMethod;
 		@JsonProperty(SIGNATURE)
 		private String signature;
+		// Lazy decoded signature, see getSignatureBytes()
+		private volatile byte[] signatureBytes;
 
 		/**
 		 * Constructs a Proof object with the given values.
@@ -328,6 +328,14 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 			return signature;
 		}
 
+		byte[] getSignatureBytes() {
+			byte[] bytes = signatureBytes;
+			if (bytes == null)
+				signatureBytes = bytes = decodeSignature(signature);
+
+			return bytes;
+		}
+
 		static PropertyFilter getFilter() {
 			return new DIDPropertyFilter() {
 				@Override
@@ -355,22 +363,6 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	protected VerifiableCredential() {
 	}
 
-	/**
-	 * Copy constructor.
-	 *
-	 * @param vc the source credential object
-	 */
-	private VerifiableCredential(VerifiableCredential vc, boolean withProof) {
-		this.id = vc.id;
-		this.type = vc.type;
-		this.issuer = vc.issuer;
-		this.issuanceDate = vc.issuanceDate;
-		this.expirationDate = vc.expirationDate;
-		this.subject = vc.subject;
-		if (withProof)
-			this.proof = vc.proof;
-	}
-
 	private void checkAttachedStore() throws NotAttachedWithStoreException {
 		if (!getMetadata().attachedStore())
 			throw new NotAttachedWithStoreException();
@@ -604,6 +596,12 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 		return issuer.equals(subject.id);
 	}
 
+	// Load the documents that the verification depends on asynchronously
+	private CompletableFuture<Void> prefetchDocuments() {
+		return DIDBackend.getInstance().prefetchDids(Arrays.asList(getIssuer(),
+				getSubject().getId()));
+	}
+
 	/**
 	 * Check if this credential object is expired or not.
 	 *
@@ -641,15 +639,13 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 *         The boolean result is expired or not
 	 */
 	public CompletableFuture<Boolean> isExpiredAsync() {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
+		return prefetchDocuments().thenApply((v) -> {
 			try {
 				return isExpired();
 			} catch (DIDResolveException e) {
 				throw new CompletionException(e);
 			}
 		});
-
-		return future;
 	}
 
 	/**
@@ -715,10 +711,8 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 			return false;
 		}
 
-		VerifiableCredential vc = new VerifiableCredential(this, false);
-		String json = vc.serialize(true);
-		if (!issuerDoc.verify(proof.getVerificationMethod(),
-				proof.getSignature(), json.getBytes())) {
+		if (!issuerDoc.verifySignature(proof.getVerificationMethod(),
+				proof.getSignatureBytes(), getDigest())) {
 			if (listener != null) {
 				listener.failed(this, "VC %s: proof is invalid, signature mismatch", getId());
 				listener.failed(this, "VC %s: is not genuine", getId());
@@ -755,6 +749,22 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 		return isGenuine(null);
 	}
 
+	/**
+	 * Check whether the given credentials are genuine. The signatures of all
+	 * the credentials, including their issuers' or holders' documents, are
+	 * verified in one batch by
+	 * {@link org.elastos.did.crypto.EcdsaSigner#verifyAll(List)}.
+	 *
+	 * @param vcs the credentials to be checked
+	 * @return the results in the same order of the credentials
+	 * @throws DIDResolveException if error occurs when resolve the DIDs
+	 */
+	public static boolean[] isGenuineBatch(List<VerifiableCredential> vcs) throws DIDResolveException {
+		checkArgument(vcs != null, "Invalid credentials");
+
+		return BatchVerifier.isGenuine(vcs, (vc) -> vc.isGenuine());
+	}
+
 	/**
 	 * Check whether this credential object is genuine or not in asynchronous mode.
 	 *
@@ -763,15 +773,13 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 *         The boolean result is genuine or not
 	 */
 	public CompletableFuture<Boolean> isGenuineAsync(VerificationEventListener listener) {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
+		return prefetchDocuments().thenApply((v) -> {
 			try {
 				return isGenuine(listener);
 			} catch (DIDResolveException e) {
 				throw new CompletionException(e);
 			}
 		});
-
-		return future;
 	}
 
 	/**
@@ -794,8 +802,12 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 		if (getMetadata().isRevoked())
 			return true;
 
-		CredentialBiography bio = DIDBackend.getInstance().resolveCredentialBiography(
-				getId(), getIssuer());
+		return isRevoked(DIDBackend.getInstance().resolveCredentialBiography(
+				getId(), getIssuer()));
+	}
+
+	// Check the revoked status from the resolved biography
+	private boolean isRevoked(CredentialBiography bio) {
 		boolean revoked = bio.getStatus() == CredentialBiography.Status.REVOKED;
 
 		if (revoked)
@@ -811,15 +823,11 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 *         The boolean result is revoked or not
 	 */
 	public CompletableFuture<Boolean> isRevokedAsync() {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return isRevoked();
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		if (getMetadata().isRevoked())
+			return CompletableFuture.completedFuture(true);
 
-		return future;
+		return DIDBackend.getInstance().resolveCredentialBiographyAsync(
+				getId(), getIssuer()).thenApply(this::isRevoked);
 	}
 
 	/**
@@ -890,10 +898,8 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 			return false;
 		}
 
-		VerifiableCredential vc = new VerifiableCredential(this, false);
-		String json = vc.serialize(true);
-		if (!issuerDoc.verify(proof.getVerificationMethod(),
-				proof.getSignature(), json.getBytes())){
+		if (!issuerDoc.verifySignature(proof.getVerificationMethod(),
+				proof.getSignatureBytes(), getDigest())){
 			if (listener != null) {
 				listener.failed(this, "VC %s: proof is invalid, signature mismatch", getId());
 				listener.failed(this, "VC %s: is invalid", getId());
@@ -938,15 +944,13 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 	       The boolean result is valid or not
 	 */
 	public CompletableFuture<Boolean> isValidAsync(VerificationEventListener listener) {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
+		return prefetchDocuments().thenApply((v) -> {
 			try {
 				return isValid(listener);
 			} catch (DIDResolveException e) {
 				throw new CompletionException(e);
 			}
 		});
-
-		return future;
 	}
 
 	/**
@@ -966,9 +970,12 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * @throws DIDResolveException if error occurs when resolve the DIDs
 	 */
 	public boolean wasDeclared() throws DIDResolveException {
-		CredentialBiography bio = DIDBackend.getInstance().resolveCredentialBiography(
-				getId(), getIssuer());
+		return wasDeclared(DIDBackend.getInstance().resolveCredentialBiography(
+				getId(), getIssuer()));
+	}
 
+	// Check the declare transaction from the resolved biography
+	private static boolean wasDeclared(CredentialBiography bio) {
 		if (bio.getStatus() == CredentialBiography.Status.NOT_FOUND)
 			return false;
 
@@ -987,15 +994,8 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 	       The boolean result was declared or not
 	 */
 	public CompletableFuture<Boolean> wasDeclaredAsync() {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return wasDeclared();
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
-
-		return future;
+		return DIDBackend.getInstance().resolveCredentialBiographyAsync(
+				getId(), getIssuer()).thenApply(VerifiableCredential::wasDeclared);
 	}
 
 	/**
@@ -1170,12 +1170,9 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 */
 	public CompletableFuture<Void> declareAsync(DIDURL signKey, String storepass,
 			DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				declare(signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			declare(signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -1215,12 +1212,9 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 */
 	public CompletableFuture<Void> declareAsync(String signKey, String storepass,
 			DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				declare(signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			declare(signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -1579,12 +1573,9 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 */
 	public CompletableFuture<Void> revokeAsync(DIDDocument signer,
 			DIDURL signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				revoke(signer, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			revoke(signer, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -1625,12 +1616,9 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 */
 	public CompletableFuture<Void> revokeAsync(DIDDocument signer,
 			String signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				revoke(signer, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			revoke(signer, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -1966,12 +1954,9 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 */
 	public static CompletableFuture<Void> revokeAsync(DIDURL id, DIDDocument signer,
 			DIDURL signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				revoke(id, signer, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			revoke(id, signer, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -2006,12 +1991,9 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 */
 	public static CompletableFuture<Void> revokeAsync(String id, DIDDocument signer,
 			String signKey, String storepass, DIDTransactionAdapter adapter) {
-		CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
-			try {
-				revoke(id, signer, signKey, storepass, adapter);
-			} catch (DIDException e) {
-				throw new CompletionException(e);
-			}
+		CompletableFuture<Void> future = DIDBackend.supplyAsync(() -> {
+			revoke(id, signer, signKey, storepass, adapter);
+			return null;
 		});
 
 		return future;
@@ -2258,15 +2240,16 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 			VerifiableCredential object if success; null otherwise
 	 */
 	public static CompletableFuture<VerifiableCredential> resolveAsync(DIDURL id, DID issuer, boolean force) {
-		CompletableFuture<VerifiableCredential> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolve(id, issuer, force);
-			} catch (DIDBackendException e) {
-				throw new CompletionException(e);
-			}
-		});
+		if (id == null)
+			return DIDBackend.failedFuture(new IllegalArgumentException());
 
-		return future;
+		return DIDBackend.getInstance().resolveCredentialAsync(
+				id, issuer, force).thenApply((vc) -> {
+			if (vc != null)
+				id.setMetadata(vc.getMetadata());
+
+			return vc;
+		});
 	}
 
 	/**
@@ -2283,15 +2266,11 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 			VerifiableCredential object if success; null otherwise
 	 */
 	public static CompletableFuture<VerifiableCredential> resolveAsync(String id, String issuer, boolean force) {
-		CompletableFuture<VerifiableCredential> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolve(id, issuer, force);
-			} catch (DIDBackendException | MalformedDIDURLException e) {
-				throw new CompletionException(e);
-			}
-		});
-
-		return future;
+		try {
+			return resolveAsync(DIDURL.valueOf(id), DID.valueOf(issuer), force);
+		} catch (IllegalArgumentException e) {
+			return DIDBackend.failedFuture(e);
+		}
 	}
 
 	/**
@@ -2459,15 +2438,10 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 			CredentialBiography object if success; null otherwise
 	 */
 	public static CompletableFuture<CredentialBiography> resolveBiographyAsync(DIDURL id, DID issuer) {
-		CompletableFuture<CredentialBiography> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolveBiography(id, issuer);
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		if (id == null)
+			return DIDBackend.failedFuture(new IllegalArgumentException("Invalid credential id"));
 
-		return future;
+		return DIDBackend.getInstance().resolveCredentialBiographyAsync(id, issuer);
 	}
 
 	/**
@@ -2478,15 +2452,7 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 			CredentialBiography object if success; null otherwise
 	 */
 	public static CompletableFuture<CredentialBiography> resolveBiographyAsync(DIDURL id) {
-		CompletableFuture<CredentialBiography> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolveBiography(id);
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
-
-		return future;
+		return resolveBiographyAsync(id, (DID)null);
 	}
 
 	/**
@@ -2498,15 +2464,11 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 			CredentialBiography object if success; null otherwise
 	 */
 	public static CompletableFuture<CredentialBiography> resolveBiographyAsync(String id, String issuer) {
-		CompletableFuture<CredentialBiography> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolveBiography(id, issuer);
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
-
-		return future;
+		try {
+			return resolveBiographyAsync(DIDURL.valueOf(id), DID.valueOf(issuer));
+		} catch (IllegalArgumentException e) {
+			return DIDBackend.failedFuture(e);
+		}
 	}
 
 	/**
@@ -2517,15 +2479,7 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 			CredentialBiography object if success; null otherwise
 	 */
 	public static CompletableFuture<CredentialBiography> resolveBiographyAsync(String id) {
-		CompletableFuture<CredentialBiography> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return resolveBiography(id);
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
-
-		return future;
+		return resolveBiographyAsync(id, null);
 	}
 
 	/**
@@ -2589,15 +2543,10 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 	 * 		   denoting the credentials
 	 */
 	public static CompletableFuture<List<DIDURL>> listAsync(DID did, int skip, int limit) {
-		CompletableFuture<List<DIDURL>> future = CompletableFuture.supplyAsync(() -> {
-			try {
-				return list(did, skip, limit);
-			} catch (DIDResolveException e) {
-				throw new CompletionException(e);
-			}
-		});
+		if (did == null)
+			return DIDBackend.failedFuture(new IllegalArgumentException("Invalid did"));
 
-		return future;
+		return DIDBackend.getInstance().listCredentialsAsync(did, skip, limit);
 	}
 
 	/**
@@ -2967,8 +2916,31 @@ public class VerifiableCredential extends DIDEntity<VerifiableCredential> implem
 
 			sanitize();
 
-			String json = credential.serialize(true);
-			String sig = issuer.sign(storepass, json.getBytes());
+			String sig = issuer.signDigest(storepass, credential.getDigest());
+			return attachProof(sig);
+		}
+
+		/**
+		 * Seal the credential object using the unlocked session of the
+		 * DIDStore, attach the generated proof to the credential.
+		 *
+		 * @param session the unlocked session of the DIDStore
+		 * @return the sealed credential object
+		 * @throws MalformedCredentialException if the Credential is malformed
+		 * @throws DIDStoreException if an error occurs when accessing the DID store
+		 */
+		public VerifiableCredential seal(DIDStore.Session session)
+				throws MalformedCredentialException, DIDStoreException {
+			checkNotSealed();
+			checkArgument(session != null, "Invalid session");
+
+			sanitize();
+
+			String sig = issuer.signDigest(session, credential.getDigest());
+			return attachProof(sig);
+		}
+
+		private VerifiableCredential attachProof(String sig) {
 			Proof proof = new Proof(issuer.getSignKey(), sig);
 			credential.proof = proof;
 
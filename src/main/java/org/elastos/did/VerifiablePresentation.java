@@ -51,12 +51,14 @@ import org.elastos.did.exception.MalformedCredentialException;
 import org.elastos.did.exception.MalformedPresentationException;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
 
 /**
  * A Presentation object is used to combine and present credentials.
@@ -74,6 +76,7 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 	VerifiablePresentation.CREATED,
 	VerifiablePresentation.VERIFIABLE_CREDENTIAL,
 	VerifiablePresentation.PROOF })
+@JsonFilter("presentationFilter")
 public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 	/**
 	 * Default presentation type
@@ -129,6 +132,8 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 		private String nonce;
 		@JsonProperty(SIGNATURE)
 		private String signature;
+		// Lazy decoded signature, see getSignatureBytes()
+		private volatile byte[] signatureBytes;
 
 		/**
 		 * Create the proof object with the given values.
@@ -209,6 +214,14 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 		public String getSignature() {
 			return signature;
 		}
+
+		byte[] getSignatureBytes() {
+			byte[] bytes = signatureBytes;
+			if (bytes == null)
+				signatureBytes = bytes = decodeSignature(signature);
+
+			return bytes;
+		}
 	}
 
 	/**
@@ -228,22 +241,6 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 		this(null);
 	}
 
-	/**
-	 * Copy constructor.
-	 *
-	 * @param vp the source VerifiablePresentation object
-	 */
-	private VerifiablePresentation(VerifiablePresentation vp, boolean withProof) {
-		this.id = vp.id;
-		this.type = vp.type;
-		this.holder = vp.holder;
-		this.created = vp.created;
-		this.credentials = vp.credentials;
-		this._credentials = vp._credentials;
-		if (withProof)
-			this.proof = vp.proof;
-	}
-
 	/**
 	 * Get the id of this presentation object.
 	 *
@@ -340,6 +337,22 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 		return proof;
 	}
 
+	/**
+	 * The presentation proof signed the realm and nonce after the
+	 * proof-less JSON.
+	 *
+	 * @return the digest bytes
+	 */
+	@Override
+	protected byte[] computeDigest() {
+		return digestWithoutProof(proof.getRealm().getBytes(),
+				proof.getNonce().getBytes());
+	}
+
+	static PropertyFilter getFilter() {
+		return new DIDPropertyFilter();
+	}
+
 	/**
 	 * Sanitize routine before sealing or after deserialization.
 	 *
@@ -378,6 +391,18 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 		_credentials = new ArrayList<VerifiableCredential>(credentials.values());
 	}
 
+	// Load the documents that the verification depends on asynchronously
+	private CompletableFuture<Void> prefetchDocuments() {
+		List<DID> dids = new ArrayList<DID>();
+		dids.add(getHolder());
+		for (VerifiableCredential vc : _credentials) {
+			dids.add(vc.getIssuer());
+			dids.add(vc.getSubject().getId());
+		}
+
+		return DIDBackend.getInstance().prefetchDids(dids);
+	}
+
 	/**
 	 * Check whether the presentation is genuine or not.
 	 *
@@ -451,12 +476,8 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 			}
 		}
 
-		VerifiablePresentation vp = new VerifiablePresentation(this, false);
-		String json = vp.serialize(true);
-
-		boolean result = holderDoc.verify(proof.getVerificationMethod(),
-				proof.getSignature(), json.getBytes(),
-				proof.getRealm().getBytes(), proof.getNonce().getBytes());
+		boolean result = holderDoc.verifySignature(proof.getVerificationMethod(),
+				proof.getSignatureBytes(), getDigest());
 		if (listener != null) {
 			if (result) {
 				listener.succeeded(this, "VP %s: is genuine", getId());
@@ -479,6 +500,22 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 		return isGenuine(null);
 	}
 
+	/**
+	 * Check whether the given presentations are genuine. The signatures of all
+	 * the presentations, including their issuers' or holders' documents, are
+	 * verified in one batch by
+	 * {@link org.elastos.did.crypto.EcdsaSigner#verifyAll(List)}.
+	 *
+	 * @param vps the presentations to be checked
+	 * @return the results in the same order of the presentations
+	 * @throws DIDResolveException if error occurs when resolve the DIDs
+	 */
+	public static boolean[] isGenuineBatch(List<VerifiablePresentation> vps) throws DIDResolveException {
+		checkArgument(vps != null, "Invalid presentations");
+
+		return BatchVerifier.isGenuine(vps, (vp) -> vp.isGenuine());
+	}
+
 	/**
 	 * Check whether the presentation is genuine or not in asynchronous mode.
 	 *
@@ -487,15 +524,13 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 	 *         The boolean result is genuine or not
 	 */
 	public CompletableFuture<Boolean> isGenuineAsync(VerificationEventListener listener) {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
+		return prefetchDocuments().thenApply((v) -> {
 			try {
 				return isGenuine(listener);
 			} catch (DIDResolveException e) {
 				throw new CompletionException(e);
 			}
 		});
-
-		return future;
 	}
 
 	/**
@@ -582,12 +617,8 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 			}
 		}
 
-		VerifiablePresentation vp = new VerifiablePresentation(this, false);
-		String json = vp.serialize(true);
-
-		boolean result = holderDoc.verify(proof.getVerificationMethod(),
-				proof.getSignature(), json.getBytes(),
-				proof.getRealm().getBytes(), proof.getNonce().getBytes());
+		boolean result = holderDoc.verifySignature(proof.getVerificationMethod(),
+				proof.getSignatureBytes(), getDigest());
 		if (listener != null) {
 			if (result) {
 				listener.succeeded(this, "VP %s: is valid", getId());
@@ -618,15 +649,13 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 	 * 	       The boolean result is valid or not
 	 */
 	public CompletableFuture<Boolean> isValidAsync(VerificationEventListener listener) {
-		CompletableFuture<Boolean> future = CompletableFuture.supplyAsync(() -> {
+		return prefetchDocuments().thenApply((v) -> {
 			try {
 				return isValid(listener);
 			} catch (DIDResolveException e) {
 				throw new CompletionException(e);
 			}
 		});
-
-		return future;
 	}
 
 	/**
@@ -985,6 +1014,29 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 			checkNotSealed();
 			checkArgument(storepass != null && !storepass.isEmpty(), "Invalid storepass");
 
+			return seal(storepass, null);
+		}
+
+		/**
+		 * Seal the presentation object using the unlocked session of the
+		 * DIDStore, attach the generated proof to the presentation.
+		 *
+		 * @param session the unlocked session of the DIDStore
+		 * @return the new presentation object
+		 * @throws MalformedPresentationException if the presentation is invalid
+		 * @throws DIDStoreException if an error occurs when accessing DID store
+		 */
+		public VerifiablePresentation seal(DIDStore.Session session)
+				throws MalformedPresentationException, DIDStoreException  {
+			checkNotSealed();
+			checkArgument(session != null, "Invalid session");
+
+			return seal(null, session);
+		}
+
+		private VerifiablePresentation seal(String storepass, DIDStore.Session session)
+				throws MalformedPresentationException, DIDStoreException  {
+
 			if (presentation.type == null || presentation.type.isEmpty()) {
 				presentation.type = new ArrayList<String>();
 				presentation.type.add(DEFAULT_PRESENTATION_TYPE);
@@ -997,9 +1049,11 @@ public class VerifiablePresentation extends DIDEntity<VerifiablePresentation> {
 
 			presentation._credentials = new ArrayList<VerifiableCredential>(presentation.credentials.values());
 
-			String json = presentation.serialize(true);
-			String sig = holder.sign(signKey, storepass, json.getBytes(),
-					realm.getBytes(), nonce.getBytes());
+			byte[] digest = presentation.digestWithoutProof(realm.getBytes(),
+					nonce.getBytes());
+			String sig = session != null ?
+					holder.signDigest(signKey, session, digest) :
+					holder.signDigest(signKey, storepass, digest);
 			Proof proof = new Proof(signKey, realm, nonce, sig);
 			presentation.proof = proof;
 
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did.backend;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The disk backed second level cache for the DIDBackend resolve results.
+ *
+ * <p>
+ * The results are kept in an append-only file as the raw JSON strings
+ * with the timestamps, the later record of the same key overrides the
+ * earlier ones. The file is indexed on the first access, and the values
+ * are read on demand, so the cache is warmed lazily after restart.
+ * </p>
+ *
+ * <p>
+ * The records older than the TTL are treated as missing. The file is
+ * compacted when it grows over the size limit, the expired and the
+ * overridden records are dropped, and the oldest records are evicted
+ * if the live records still exceed the limit.
+ * </p>
+ *
+ * <p>
+ * This cache is best-effort: the IO errors are logged and treated as
+ * cache misses.
+ * </p>
+ */
+public class PersistentResolveCache implements Closeable {
+	/**
+	 * The default size limit of the cache file.
+	 */
+	public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+	/**
+	 * The default TTL of the cached records.
+	 */
+	public static final long DEFAULT_TTL = 24 * 60 * 60 * 1000;
+
+	// magic, key length, value length, timestamp
+	private static final int MAGIC = 0x44494443;
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+	private File file;
+	private long maxSize;
+	private long ttl;
+
+	private FileChannel channel;
+	private Map<String, Entry> index;
+	private long size;
+
+	private static final Logger log = LoggerFactory.getLogger(PersistentResolveCache.class);
+
+	private static class Entry {
+		private long offset;
+		private int keyLength;
+		private int valueLength;
+		private long timestamp;
+
+		private Entry(long offset, int keyLength, int valueLength, long timestamp) {
+			this.offset = offset;
+			this.keyLength = keyLength;
+			this.valueLength = valueLength;
+			this.timestamp = timestamp;
+		}
+
+		private int getRecordSize() {
+			return HEADER_SIZE + keyLength + valueLength;
+		}
+	}
+
+	/**
+	 * Create a PersistentResolveCache object on the given file.
+	 *
+	 * @param file the cache file, will be created if not exists
+	 * @param maxSize the size limit of the cache file in bytes
+	 * @param ttl the live time of the cached records in milliseconds
+	 */
+	public PersistentResolveCache(File file, long maxSize, long ttl) {
+		checkArgument(file != null, "Invalid cache file");
+		checkArgument(maxSize > 0, "Invalid max size");
+		checkArgument(ttl > 0, "Invalid ttl");
+
+		this.file = file;
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Create a PersistentResolveCache object on the given file, with the
+	 * default size limit and TTL.
+	 *
+	 * @param file the cache file, will be created if not exists
+	 */
+	public PersistentResolveCache(File file) {
+		this(file, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+	}
+
+	/**
+	 * Get the cache file.
+	 *
+	 * @return the cache file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Get the TTL of the cached records.
+	 *
+	 * @return the TTL in milliseconds
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	private void open() throws IOException {
+		if (index != null)
+			return;
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.exists())
+			dir.mkdirs();
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		Map<String, Entry> index = new HashMap<String, Entry>();
+		size = 0;
+
+		long length = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (size + HEADER_SIZE <= length) {
+			header.clear();
+			readFully(header, size);
+			header.flip();
+
+			int magic = header.getInt();
+			int keyLength = header.getInt();
+			int valueLength = header.getInt();
+			long timestamp = header.getLong();
+			if (magic != MAGIC || keyLength <= 0 || valueLength < 0 ||
+					size + HEADER_SIZE + keyLength + valueLength > length)
+				break;
+
+			ByteBuffer kb = ByteBuffer.allocate(keyLength);
+			readFully(kb, size + HEADER_SIZE);
+			String key = new String(kb.array(), StandardCharsets.UTF_8);
+
+			Entry entry = new Entry(size, keyLength, valueLength, timestamp);
+			if (valueLength == 0)
+				index.remove(key);
+			else
+				index.put(key, entry);
+
+			size += entry.getRecordSize();
+		}
+
+		// Drop the incomplete tail, left by a crash when appending
+		if (size < length) {
+			log.warn("Resolve cache {} truncated from {} to {} bytes", file, length, size);
+			channel.truncate(size);
+		}
+
+		this.index = index;
+		log.debug("Resolve cache {} opened, {} entries", file, index.size());
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0)
+				throw new IOException("Unexpected end of the resolve cache file");
+		}
+	}
+
+	private void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+
+	private Entry append(FileChannel channel, long position, String key,
+			byte[] value, long timestamp) throws IOException {
+		byte[] kb = key.getBytes(StandardCharsets.UTF_8);
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + kb.length + value.length);
+		buffer.putInt(MAGIC);
+		buffer.putInt(kb.length);
+		buffer.putInt(value.length);
+		buffer.putLong(timestamp);
+		buffer.put(kb);
+		buffer.put(value);
+		buffer.flip();
+
+		writeFully(channel, buffer, position);
+		return new Entry(position, kb.length, value.length, timestamp);
+	}
+
+	private byte[] readValue(Entry entry) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(entry.valueLength);
+		readFully(buffer, entry.offset + HEADER_SIZE + entry.keyLength);
+		return buffer.array();
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		return now - entry.timestamp > ttl;
+	}
+
+	/**
+	 * Get the cached value of the given key.
+	 *
+	 * @param key the key of the value
+	 * @return the value, or null if not exists or expired
+	 */
+	public synchronized String get(String key) {
+		checkArgument(key != null && !key.isEmpty(), "Invalid key");
+
+		try {
+			open();
+
+			Entry entry = index.get(key);
+			if (entry == null)
+				return null;
+
+			if (isExpired(entry, System.currentTimeMillis())) {
+				index.remove(key);
+				return null;
+			}
+
+			return new String(readValue(entry), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			log.warn("Read resolve cache {} error", file, e);
+			close();
+			return null;
+		}
+	}
+
+	/**
+	 * Put the value to the cache.
+	 *
+	 * @param key the key of the value
+	 * @param value the value
+	 */
+	public synchronized void put(String key, String value) {
+		checkArgument(key != null && !key.isEmpty(), "Invalid key");
+		checkArgument(value != null && !value.isEmpty(), "Invalid value");
+
+		try {
+			open();
+
+			Entry entry = append(channel, size, key, value.getBytes(StandardCharsets.UTF_8),
+					System.currentTimeMillis());
+			index.put(key, entry);
+			size += entry.getRecordSize();
+
+			if (size > maxSize)
+				compact();
+		} catch (IOException e) {
+			log.warn("Write resolve cache {} error", file, e);
+			// Reopen and index the file on the next access
+			close();
+		}
+	}
+
+	/**
+	 * Remove the cached value of the given key.
+	 *
+	 * @param key the key of the value
+	 */
+	public synchronized void remove(String key) {
+		checkArgument(key != null && !key.isEmpty(), "Invalid key");
+
+		try {
+			open();
+
+			if (index.remove(key) == null)
+				return;
+
+			// Tombstone with the empty value
+			Entry entry = append(channel, size, key, new byte[0], System.currentTimeMillis());
+			size += entry.getRecordSize();
+		} catch (IOException e) {
+			log.warn("Write resolve cache {} error", file, e);
+			// Reopen and index the file on the next access
+			close();
+		}
+	}
+
+	/**
+	 * Remove all the cached values.
+	 */
+	public synchronized void clear() {
+		try {
+			open();
+
+			channel.truncate(0);
+			index.clear();
+			size = 0;
+		} catch (IOException e) {
+			log.warn("Clear resolve cache {} error", file, e);
+			close();
+		}
+	}
+
+	/**
+	 * Get the number of the cached values, include the expired ones that
+	 * not accessed yet.
+	 *
+	 * @return the number of the cached values
+	 */
+	public synchronized int size() {
+		try {
+			open();
+			return index.size();
+		} catch (IOException e) {
+			log.warn("Read resolve cache {} error", file, e);
+			close();
+			return 0;
+		}
+	}
+
+	/**
+	 * Rewrite the live records to a new file, keep the newest ones until
+	 * three quarters of the size limit, then replace the current file.
+	 */
+	private void compact() throws IOException {
+		long now = System.currentTimeMillis();
+
+		List<Map.Entry<String, Entry>> entries =
+				new ArrayList<Map.Entry<String, Entry>>(index.entrySet());
+		entries.removeIf((e) -> isExpired(e.getValue(), now));
+		// Newest first, the later appended record is newer in the same millisecond
+		entries.sort((e1, e2) -> {
+			int c = Long.compare(e2.getValue().timestamp, e1.getValue().timestamp);
+			return c != 0 ? c : Long.compare(e2.getValue().offset, e1.getValue().offset);
+		});
+
+		long limit = maxSize / 4 * 3;
+		long total = 0;
+		int count = 0;
+		for (Map.Entry<String, Entry> e : entries) {
+			if (total + e.getValue().getRecordSize() > limit)
+				break;
+
+			total += e.getValue().getRecordSize();
+			count++;
+		}
+
+		Map<String, Entry> newIndex = new HashMap<String, Entry>();
+		long newSize = 0;
+
+		// Keep the records in the append order
+		File tmp = new File(file.getPath() + ".tmp");
+		try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			for (int i = count - 1; i >= 0; i--) {
+				Map.Entry<String, Entry> e = entries.get(i);
+				Entry entry = e.getValue();
+
+				Entry newEntry = append(out, newSize, e.getKey(),
+						readValue(entry), entry.timestamp);
+				newIndex.put(e.getKey(), newEntry);
+				newSize += newEntry.getRecordSize();
+			}
+
+			out.force(false);
+		}
+
+		channel.close();
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		log.debug("Resolve cache {} compacted, {} -> {} bytes, {} -> {} entries",
+				file, size, newSize, index.size(), newIndex.size());
+
+		index = newIndex;
+		size = newSize;
+	}
+
+	/**
+	 * Close the cache file. The cache will be reopened on the next access.
+	 */
+	@Override
+	public synchronized void close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ignore) {
+			}
+
+			channel = null;
+		}
+
+		index = null;
+		size = 0;
+	}
+}
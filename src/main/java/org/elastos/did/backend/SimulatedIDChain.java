@@ -24,6 +24,7 @@ package org.elastos.did.backend;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -31,6 +32,7 @@ import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -41,14 +43,18 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.elastos.did.Constants;
 import org.elastos.did.DID;
 import org.elastos.did.DIDAdapter;
 import org.elastos.did.DIDDocument;
 import org.elastos.did.DIDURL;
+import org.elastos.did.HttpTransport;
 import org.elastos.did.VerifiableCredential;
 import org.elastos.did.exception.DIDResolveException;
+import org.elastos.did.exception.DIDSyntaxException;
 import org.elastos.did.exception.DIDTransactionException;
 import org.elastos.did.exception.UnknownInternalException;
 import org.slf4j.Logger;
@@ -85,7 +91,7 @@ import com.sun.net.httpserver.HttpServer;
  * <b>Endpoint</b>: /resolve<br>
  * <b>Method</b>: POST<br>
  * <b>Content-Type</b>: application/json<br>
- * <b>Request Body</b>: Any DID or VC resolve/list request.<br>
+ * <b>Request Body</b>: Any DID or VC resolve/list request, or a JSON-RPC batch(array) of them.<br>
  * <b>Response Body</b>: Resolved result.<br>
  * <b>Success Status</b>: 200<br>
  * </p>
@@ -745,15 +751,62 @@ public class SimulatedIDChain {
 	 * @return the DIDAdapter instance
 	 */
 	public DIDAdapter getAdapter() {
+		return getAdapter(null);
+	}
+
+	/**
+	 * Get the DIDAdapter instance that backed by this simulated ID chain,
+	 * and sends the requests with the given HTTP transport.
+	 *
+	 * @param transport the HTTP transport, null for a DefaultHttpTransport
+	 * @return the DIDAdapter instance
+	 */
+	public DIDAdapter getAdapter(HttpTransport transport) {
 		try {
 			return new SimulatedIDChainAdapter(
-				new URL("http", host, port, "/"));
+				new URL("http", host, port, "/"), transport);
 		} catch (MalformedURLException ignore) {
 			log.error("INTERNAL - error create DIDAdapter", ignore);
 			return null;
 		}
 	}
 
+	// Decode the gzip request body if the client compressed it
+	private InputStream getRequestBody(HttpExchange exchange) throws IOException {
+		InputStream is = exchange.getRequestBody();
+		String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		if ("gzip".equalsIgnoreCase(encoding)) {
+			stat.gzipRequest();
+			return new GZIPInputStream(is);
+		}
+
+		return is;
+	}
+
+	// Compress the JSON response if the client accepts gzip
+	private void sendJsonResponse(HttpExchange exchange, byte[] json)
+			throws IOException {
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("Content-Type", "application/json");
+
+		String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (encoding != null && encoding.toLowerCase().contains("gzip")) {
+			stat.gzipResponse();
+
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(json.length / 4 + 64);
+			try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+				gos.write(json);
+			}
+			json = bos.toByteArray();
+			headers.set("Content-Encoding", "gzip");
+		}
+
+		exchange.sendResponseHeaders(200, json.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(json);
+		os.close();
+	}
+
 	private class ResolveHandler implements HttpHandler {
 		@Override
 		public void handle(HttpExchange exchange) throws IOException {
@@ -766,46 +819,42 @@ public class SimulatedIDChain {
 
 			try {
 				ObjectMapper mapper = new ObjectMapper();
-				InputStream is = exchange.getRequestBody();
+				InputStream is = getRequestBody(exchange);
 				JsonNode requestJson = mapper.readTree(is);
-				JsonNode method = requestJson.get(ResolveRequest.METHOD);
-				if (method == null) {
-					log.error("Invalid resolve request, missing resolve method");
-					exchange.sendResponseHeaders(400, 0);
-					exchange.getResponseBody().close();
-					return;
-				}
-
-				ResolveResponse<?, ?> response;
-				switch (method.asText()) {
-				case DIDResolveRequest.METHOD_NAME:
-					DIDResolveRequest drr = DIDResolveRequest.parse(requestJson, DIDResolveRequest.class);
-					response = resolveDid(drr);
-					break;
-
-				case CredentialResolveRequest.METHOD_NAME:
-					CredentialResolveRequest crr = CredentialResolveRequest.parse(requestJson, CredentialResolveRequest.class);
-					response = resolveCredential(crr);
-					break;
-
-				case CredentialListRequest.METHOD_NAME:
-					CredentialListRequest clr = CredentialListRequest.parse(requestJson, CredentialListRequest.class);
-					response = listCredentials(clr);
-					break;
 
-				default:
-					log.error("Invalid resolve request, unknown resolve method");
-					exchange.sendResponseHeaders(400, 0);
-					return;
+				byte[] json;
+				if (requestJson.isArray()) {
+					stat.resolveBatch();
+
+					StringBuilder batch = new StringBuilder(requestJson.size() * 1024);
+					batch.append('[');
+					for (JsonNode request : requestJson) {
+						ResolveResponse<?, ?> response = resolve(request);
+						if (response == null) {
+							exchange.sendResponseHeaders(400, 0);
+							exchange.getResponseBody().close();
+							return;
+						}
+
+						if (batch.length() > 1)
+							batch.append(',');
+						batch.append(response.serialize(true));
+					}
+					batch.append(']');
+
+					json = batch.toString().getBytes(StandardCharsets.UTF_8);
+				} else {
+					ResolveResponse<?, ?> response = resolve(requestJson);
+					if (response == null) {
+						exchange.sendResponseHeaders(400, 0);
+						exchange.getResponseBody().close();
+						return;
+					}
+
+					json = response.serialize(true).getBytes(StandardCharsets.UTF_8);
 				}
 
-				byte[] json = response.serialize(true).getBytes();
-				Headers headers = exchange.getResponseHeaders();
-				headers.set("Content-Type", "application/json");
-				exchange.sendResponseHeaders(200, json.length);
-				OutputStream os = exchange.getResponseBody();
-				os.write(json);
-				os.close();
+				sendJsonResponse(exchange, json);
 			} catch (Exception e) {
 				log.error("Error handling the resolve request", e);
 				exchange.sendResponseHeaders(400, 0);
@@ -815,6 +864,34 @@ public class SimulatedIDChain {
 		}
 	}
 
+	// Returns null if the request is invalid
+	private ResolveResponse<?, ?> resolve(JsonNode requestJson)
+			throws DIDSyntaxException {
+		JsonNode method = requestJson.get(ResolveRequest.METHOD);
+		if (method == null) {
+			log.error("Invalid resolve request, missing resolve method");
+			return null;
+		}
+
+		switch (method.asText()) {
+		case DIDResolveRequest.METHOD_NAME:
+			DIDResolveRequest drr = DIDResolveRequest.parse(requestJson, DIDResolveRequest.class);
+			return resolveDid(drr);
+
+		case CredentialResolveRequest.METHOD_NAME:
+			CredentialResolveRequest crr = CredentialResolveRequest.parse(requestJson, CredentialResolveRequest.class);
+			return resolveCredential(crr);
+
+		case CredentialListRequest.METHOD_NAME:
+			CredentialListRequest clr = CredentialListRequest.parse(requestJson, CredentialListRequest.class);
+			return listCredentials(clr);
+
+		default:
+			log.error("Invalid resolve request, unknown resolve method");
+			return null;
+		}
+	}
+
 	private class IdtxHandler implements HttpHandler {
 		@Override
 		public void handle(HttpExchange exchange) throws IOException {
@@ -827,7 +904,7 @@ public class SimulatedIDChain {
 
 			try {
 				ObjectMapper mapper = new ObjectMapper();
-				InputStream is = exchange.getRequestBody();
+				InputStream is = getRequestBody(exchange);
 				JsonNode requestJson = mapper.readTree(is);
 				log.trace("ID chain request JSON:\n{}", requestJson.toPrettyString());
 				JsonNode header = requestJson.get(IDChainRequest.HEADER);
@@ -994,6 +1071,13 @@ public class SimulatedIDChain {
 		private AtomicInteger resolveNonExistsCredential = new AtomicInteger();
 		private AtomicInteger resolveRevokedCredential = new AtomicInteger();
 
+		// Batch resolve
+		private AtomicInteger resolveBatch = new AtomicInteger();
+
+		// HTTP compression
+		private AtomicInteger gzipRequest = new AtomicInteger();
+		private AtomicInteger gzipResponse = new AtomicInteger();
+
 		// List credential
 		private AtomicInteger listCredentials = new AtomicInteger();
 		private AtomicInteger listCredentialsWithoutSkip = new AtomicInteger();
@@ -1207,6 +1291,18 @@ public class SimulatedIDChain {
 			return resolveRevokedCredential.incrementAndGet();
 		}
 
+		public int resolveBatch() {
+			return resolveBatch.incrementAndGet();
+		}
+
+		public int gzipRequest() {
+			return gzipRequest.incrementAndGet();
+		}
+
+		public int gzipResponse() {
+			return gzipResponse.incrementAndGet();
+		}
+
 		public int listCredentials() {
 			return listCredentials.incrementAndGet();
 		}
@@ -1294,6 +1390,11 @@ public class SimulatedIDChain {
 				.append("  - Resolve non-exists credential: ").append(resolveNonExistsCredential.intValue()).append("\n")
 				.append("  - Resolve revoked credential: ").append(resolveRevokedCredential.intValue()).append("\n")
 
+				.append("+ Resolve batch: ").append(resolveBatch.intValue()).append("\n")
+
+				.append("+ Gzip request: ").append(gzipRequest.intValue()).append("\n")
+				.append("+ Gzip response: ").append(gzipResponse.intValue()).append("\n")
+
 				.append("+ List credentials: ").append(listCredentials.intValue()).append("\n")
 				.append("  - List credential(withoutSkip): ").append(listCredentialsWithoutSkip.intValue()).append("\n")
 				.append("  - list credential(withSkip): ").append(listCredentialsWithSkip.intValue()).append("\n")
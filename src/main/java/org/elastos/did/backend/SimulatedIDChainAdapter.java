@@ -30,6 +30,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 
 import org.elastos.did.DefaultDIDAdapter;
+import org.elastos.did.HttpTransport;
 import org.elastos.did.exception.DIDTransactionException;
 
 /**
@@ -45,7 +46,20 @@ public class SimulatedIDChainAdapter extends DefaultDIDAdapter {
 	 * @throws MalformedURLException if the endpoint is malformed
 	 */
 	public SimulatedIDChainAdapter(URL endpoint) throws MalformedURLException {
-		super(new URL(endpoint, "resolve"));
+		this(endpoint, null);
+	}
+
+	/**
+	 * Create a SimulatedIDChainAdapter instance at the endpoint with the
+	 * HTTP transport.
+	 *
+	 * @param endpoint the HTTP server endpoint of the simulated ID chain
+	 * @param transport the HTTP transport, null for a DefaultHttpTransport
+	 * @throws MalformedURLException if the endpoint is malformed
+	 */
+	public SimulatedIDChainAdapter(URL endpoint, HttpTransport transport)
+			throws MalformedURLException {
+		super(new URL(endpoint, "resolve"), transport);
 		idtxEndpoint = new URL(endpoint, "idtx");
 	}
 
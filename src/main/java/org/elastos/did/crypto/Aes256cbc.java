@@ -22,6 +22,7 @@
 
 package org.elastos.did.crypto;
 
+import java.security.GeneralSecurityException;
 import java.util.Arrays;
 
 import org.spongycastle.crypto.BufferedBlockCipher;
@@ -34,7 +35,124 @@ import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.params.ParametersWithIV;
 
 public class Aes256cbc {
-	private static void generatrKeyAndIv(String passwd, byte[] key, byte[] iv) {
+	public static final int KEY_BYTES = 32;
+	public static final int IV_BYTES = 16;
+
+	/**
+	 * The AES-256-CBC with PKCS#7 padding cipher implementation.
+	 */
+	public interface Engine {
+		public byte[] encrypt(byte[] plain, int offset, int length,
+				byte[] key, byte[] iv) throws CryptoException;
+
+		public byte[] decrypt(byte[] secret, int offset, int length,
+				byte[] key, byte[] iv) throws CryptoException;
+	}
+
+	/**
+	 * The JCE based engine, the JVM implements it with the AES instructions
+	 * on the supported hardware.
+	 */
+	public static final Engine JCE = new Engine() {
+		@Override
+		public byte[] encrypt(byte[] plain, int offset, int length,
+				byte[] key, byte[] iv) throws CryptoException {
+			try {
+				return Aes256cbcJavaBuiltin.encrypt(key, iv, plain, offset, length);
+			} catch (GeneralSecurityException e) {
+				throw new CryptoException("Encrypt data error.", e);
+			}
+		}
+
+		@Override
+		public byte[] decrypt(byte[] secret, int offset, int length,
+				byte[] key, byte[] iv) throws CryptoException {
+			try {
+				return Aes256cbcJavaBuiltin.decrypt(key, iv, secret, offset, length);
+			} catch (GeneralSecurityException e) {
+				throw new CryptoException("Decrypt data error.", e);
+			}
+		}
+	};
+
+	/**
+	 * The pure Java engine from spongycastle.
+	 */
+	public static final Engine SPONGYCASTLE = new Engine() {
+		@Override
+		public byte[] encrypt(byte[] plain, int offset, int length,
+				byte[] key, byte[] iv) throws CryptoException {
+			KeyParameter keyParam = new KeyParameter(key);
+			ParametersWithIV keyWithIv = new ParametersWithIV(keyParam, iv);
+
+			BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
+						new CBCBlockCipher(new AESEngine()));
+			cipher.init(true, keyWithIv);
+
+			byte[] secret = new byte[cipher.getOutputSize(length)];
+			int len = cipher.processBytes(plain, offset, length, secret, 0);
+			len += cipher.doFinal(secret, len);
+
+			if (len < secret.length)
+				secret = Arrays.copyOf(secret, len);
+
+			return secret;
+		}
+
+		@Override
+		public byte[] decrypt(byte[] secret, int offset, int length,
+				byte[] key, byte[] iv) throws CryptoException {
+			KeyParameter keyParam = new KeyParameter(key);
+			ParametersWithIV keyWithIv = new ParametersWithIV(keyParam, iv);
+
+			BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
+					new CBCBlockCipher(new AESEngine()));
+			cipher.init(false, keyWithIv);
+
+			byte[] plain = new byte[cipher.getOutputSize(length)];
+			int len = cipher.processBytes(secret, offset, length, plain, 0);
+			len += cipher.doFinal(plain, len);
+
+			if (len < plain.length)
+				plain = Arrays.copyOf(plain, len);
+
+			return plain;
+		}
+	};
+
+	private static volatile Engine engine = getDefaultEngine();
+
+	// Old JREs with the restricted crypto policy reject the 256 bits AES
+	// keys, fall back to spongycastle in that case
+	private static Engine getDefaultEngine() {
+		try {
+			JCE.encrypt(new byte[IV_BYTES], 0, IV_BYTES,
+					new byte[KEY_BYTES], new byte[IV_BYTES]);
+			return JCE;
+		} catch (Exception e) {
+			return SPONGYCASTLE;
+		}
+	}
+
+	/**
+	 * Set the cipher engine for all the Aes256cbc operations.
+	 *
+	 * @param engine the engine object, null to use the default engine
+	 */
+	public static void setEngine(Engine engine) {
+		Aes256cbc.engine = engine != null ? engine : getDefaultEngine();
+	}
+
+	/**
+	 * Get the current cipher engine.
+	 *
+	 * @return the engine object
+	 */
+	public static Engine getEngine() {
+		return engine;
+	}
+
+	public static void generateKeyAndIv(String passwd, byte[] key, byte[] iv) {
 		byte[] pass = passwd.getBytes();
 
 		// Create key from passwd
@@ -56,26 +174,22 @@ public class Aes256cbc {
 
 	public static byte[] encrypt(byte[] plain, int offset, int length,
 			String passwd) throws CryptoException {
-		byte[] key = new byte[32];
-		byte[] iv = new byte[16];
-
-		generatrKeyAndIv(passwd, key, iv);
-
-		KeyParameter keyParam = new KeyParameter(key);
-		ParametersWithIV keyWithIv = new ParametersWithIV(keyParam, iv);
-
-		BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
-					new CBCBlockCipher(new AESEngine()));
-		cipher.init(true, keyWithIv);
+		byte[] key = new byte[KEY_BYTES];
+		byte[] iv = new byte[IV_BYTES];
 
-		byte[] secret = new byte[cipher.getOutputSize(length)];
-		int len = cipher.processBytes(plain, offset, length, secret, 0);
-		len += cipher.doFinal(secret, len);
-
-		if (len < secret.length)
-			plain = Arrays.copyOf(secret, len);
+		generateKeyAndIv(passwd, key, iv);
+		try {
+			return encrypt(plain, offset, length, key, iv);
+		} finally {
+			Arrays.fill(key, (byte)0);
+			Arrays.fill(iv, (byte)0);
+		}
+	}
 
-		return secret;
+	// Encrypt with the key and iv that generated by generateKeyAndIv()
+	public static byte[] encrypt(byte[] plain, int offset, int length,
+			byte[] key, byte[] iv) throws CryptoException {
+		return engine.encrypt(plain, offset, length, key, iv);
 	}
 
 	public static byte[] encrypt(byte[] plain, int offset, String passwd)
@@ -90,26 +204,22 @@ public class Aes256cbc {
 
 	public static byte[] decrypt(byte[] secret, int offset, int length,
 			String passwd) throws CryptoException {
-		byte[] key = new byte[32];
-		byte[] iv = new byte[16];
-
-		generatrKeyAndIv(passwd, key, iv);
-
-		KeyParameter keyParam = new KeyParameter(key);
-		ParametersWithIV keyWithIv = new ParametersWithIV(keyParam, iv);
+		byte[] key = new byte[KEY_BYTES];
+		byte[] iv = new byte[IV_BYTES];
 
-		BufferedBlockCipher cipher = new PaddedBufferedBlockCipher(
-				new CBCBlockCipher(new AESEngine()));
-		cipher.init(false, keyWithIv);
-
-		byte[] plain = new byte[cipher.getOutputSize(length)];
-		int len = cipher.processBytes(secret, offset, length, plain, 0);
-		len += cipher.doFinal(plain, len);
-
-		if (len < plain.length)
-			plain = Arrays.copyOf(plain, len);
+		generateKeyAndIv(passwd, key, iv);
+		try {
+			return decrypt(secret, offset, length, key, iv);
+		} finally {
+			Arrays.fill(key, (byte)0);
+			Arrays.fill(iv, (byte)0);
+		}
+	}
 
-		return plain;
+	// Decrypt with the key and iv that generated by generateKeyAndIv()
+	public static byte[] decrypt(byte[] secret, int offset, int length,
+			byte[] key, byte[] iv) throws CryptoException {
+		return engine.decrypt(secret, offset, length, key, iv);
 	}
 
 	public static byte[] decrypt(byte[] secret, int offset, String passwd)
@@ -54,6 +54,38 @@ public class Aes256cbcJavaBuiltin {
 		System.arraycopy(hash, 0, iv, 0, 16);
 	}
 
+	// Cipher.getInstance() looks up the providers every time, so reuse
+	// the Cipher instance per thread
+	private static final ThreadLocal<Cipher> ciphers = new ThreadLocal<Cipher>();
+
+	private static Cipher getCipher() throws GeneralSecurityException {
+		Cipher cipher = ciphers.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			ciphers.set(cipher);
+		}
+
+		return cipher;
+	}
+
+	// Encrypt with the key and iv that generated by Aes256cbc.generateKeyAndIv()
+	public static byte[] encrypt(byte[] key, byte[] iv, byte[] plain,
+			int offset, int length) throws GeneralSecurityException {
+		Cipher cipher = getCipher();
+		cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"),
+				new IvParameterSpec(iv));
+		return cipher.doFinal(plain, offset, length);
+	}
+
+	// Decrypt with the key and iv that generated by Aes256cbc.generateKeyAndIv()
+	public static byte[] decrypt(byte[] key, byte[] iv, byte[] secret,
+			int offset, int length) throws GeneralSecurityException {
+		Cipher cipher = getCipher();
+		cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+				new IvParameterSpec(iv));
+		return cipher.doFinal(secret, offset, length);
+	}
+
 	public static byte[] encrypt(String passwd, byte[] plain, int offset,
 			int length) throws GeneralSecurityException {
 		byte[] key = new byte[32];
@@ -61,14 +93,7 @@ public class Aes256cbcJavaBuiltin {
 
 		generatrKeyAndIv(passwd, key, iv);
 
-		SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
-		IvParameterSpec ivSpec = new IvParameterSpec(iv);
-
-		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-		cipher.init(Cipher.ENCRYPT_MODE, keySpec, ivSpec);
-		byte[] secret = cipher.doFinal(plain, offset, length);
-
-		return secret;
+		return encrypt(key, iv, plain, offset, length);
 	}
 
 	public static byte[] encrypt(String passwd, byte[] plain, int offset)
@@ -88,14 +113,7 @@ public class Aes256cbcJavaBuiltin {
 
 		generatrKeyAndIv(passwd, key, iv);
 
-		SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
-		IvParameterSpec ivSpec = new IvParameterSpec(iv);
-
-		Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-		cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
-		byte[] plain = cipher.doFinal(secret, offset, length);
-
-		return plain;
+		return decrypt(key, iv, secret, offset, length);
 	}
 
 	public static byte[] decrypt(String passwd, byte[] secret, int offset)
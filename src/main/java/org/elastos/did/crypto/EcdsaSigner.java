@@ -22,18 +22,138 @@
 
 package org.elastos.did.crypto;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.bitcoinj.core.ECKey.CURVE;
 import static org.bitcoinj.core.ECKey.CURVE_PARAMS;
 
 import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.spongycastle.crypto.digests.SHA256Digest;
 import org.spongycastle.crypto.params.ECPrivateKeyParameters;
 import org.spongycastle.crypto.params.ECPublicKeyParameters;
 import org.spongycastle.crypto.signers.ECDSASigner;
-import org.spongycastle.crypto.signers.RandomDSAKCalculator;
+import org.spongycastle.crypto.signers.HMacDSAKCalculator;
 
 public class EcdsaSigner {
+	// Below this size a batch is verified on the calling thread
+	private static final int BATCH_THRESHOLD = 4;
+
+	private static volatile ForkJoinPool verifyPool = ForkJoinPool.commonPool();
+
+	// Verification state only depends on the key, reuse it per thread
+	private static final ThreadLocal<ECDSASigner> verifiers =
+			ThreadLocal.withInitial(() -> new ECDSASigner());
+
+	/**
+	 * A single signature verification in a batch.
+	 */
+	public static class VerifyTask {
+		private byte[] publicKeyBytes;
+		private ECPublicKeyParameters publicKey;
+		private byte[] signature;
+		private byte[] digest;
+
+		/**
+		 * Create a verify task with the decoded public key.
+		 *
+		 * @param publicKey the decoded public key
+		 * @param signature the signature bytes
+		 * @param digest the digest that signed
+		 */
+		public VerifyTask(ECPublicKeyParameters publicKey, byte[] signature, byte[] digest) {
+			this.publicKey = publicKey;
+			this.signature = signature;
+			this.digest = digest;
+		}
+
+		/**
+		 * Create a verify task with the compressed public key bytes, the
+		 * key will be decoded by the verification thread.
+		 *
+		 * @param publicKey the public key bytes
+		 * @param signature the signature bytes
+		 * @param digest the digest that signed
+		 */
+		public VerifyTask(byte[] publicKey, byte[] signature, byte[] digest) {
+			this.publicKeyBytes = publicKey;
+			this.signature = signature;
+			this.digest = digest;
+		}
+
+		private boolean verify() {
+			if (signature.length != 64)
+				return false;
+
+			ECPublicKeyParameters key = publicKey;
+			if (key == null) {
+				try {
+					key = decodePublicKey(publicKeyBytes);
+				} catch (IllegalArgumentException e) {
+					// Malformed key, only fails this task
+					return false;
+				}
+			}
+
+			return EcdsaSigner.verify(verifiers.get(), key, signature, digest);
+		}
+	}
+
+	private static class VerifyAction extends RecursiveAction {
+		private static final long serialVersionUID = -3476392105829154047L;
+
+		private List<VerifyTask> tasks;
+		private boolean[] results;
+		private int from;
+		private int to;
+
+		public VerifyAction(List<VerifyTask> tasks, boolean[] results, int from, int to) {
+			this.tasks = tasks;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_THRESHOLD) {
+				for (int i = from; i < to; i++)
+					results[i] = tasks.get(i).verify();
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new VerifyAction(tasks, results, from, mid),
+						new VerifyAction(tasks, results, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Set the pool that verifyAll() runs on, default is the common pool.
+	 *
+	 * @param pool the ForkJoinPool for the batch verification
+	 */
+	public static void setVerifyPool(ForkJoinPool pool) {
+		checkArgument(pool != null, "Invalid pool");
+		verifyPool = pool;
+	}
+
+	/**
+	 * Get the pool that verifyAll() runs on.
+	 *
+	 * @return the ForkJoinPool for the batch verification
+	 */
+	public static ForkJoinPool getVerifyPool() {
+		return verifyPool;
+	}
+
+	/*
+	 * Sign with the deterministic nonce(RFC 6979), no SecureRandom is
+	 * created or shared by the signers. The k*G multiplication uses the
+	 * fixed point comb multiplier, its table for G is precomputed once
+	 * per process by ECKey.
+	 */
 	public static byte[] sign(byte[] privateKey, byte[] digest) {
 		BigInteger keyInt = new BigInteger(1, privateKey);
 
@@ -41,7 +161,7 @@ public class EcdsaSigner {
 				keyInt, CURVE);
 
 		ECDSASigner signer = new ECDSASigner(
-				new RandomDSAKCalculator());
+				new HMacDSAKCalculator(new SHA256Digest()));
 		signer.init(true, keyParams);
 
 		BigInteger[] rs = signer.generateSignature(digest);
@@ -60,17 +180,66 @@ public class EcdsaSigner {
 		return sign(privateKey, sha256Digest(data));
 	}
 
+	public static ECPublicKeyParameters decodePublicKey(byte[] publicKey) {
+		return new ECPublicKeyParameters(
+				CURVE_PARAMS.getCurve().decodePoint(publicKey), CURVE);
+	}
+
 	public static boolean verify(byte[] publicKey, byte[] sig, byte[] digest) {
 		if (sig.length != 64) {
 			return false;
 		}
 
-		ECPublicKeyParameters keyParams = new ECPublicKeyParameters(
-				CURVE_PARAMS.getCurve().decodePoint(publicKey), CURVE);
+		return verify(decodePublicKey(publicKey), sig, digest);
+	}
 
-		ECDSASigner signer = new ECDSASigner(
-				new RandomDSAKCalculator());
-		signer.init(false, keyParams);
+	/*
+	 * Verify with the pre-decoded public key. Reusing the same key object
+	 * also reuses the multiplication tables that spongycastle precomputed
+	 * and attached to the key point.
+	 */
+	public static boolean verify(ECPublicKeyParameters publicKey, byte[] sig, byte[] digest) {
+		if (sig.length != 64) {
+			return false;
+		}
+
+		return verify(verifiers.get(), publicKey, sig, digest);
+	}
+
+	/**
+	 * Verify the signatures in batch on the verify pool.
+	 *
+	 * @param tasks the signatures to be verified
+	 * @return the results in the same order of the tasks
+	 */
+	public static boolean[] verifyAll(List<VerifyTask> tasks) {
+		return verifyAll(tasks, verifyPool);
+	}
+
+	/**
+	 * Verify the signatures in batch on the given pool.
+	 *
+	 * @param tasks the signatures to be verified
+	 * @param pool the ForkJoinPool to run the verification
+	 * @return the results in the same order of the tasks
+	 */
+	public static boolean[] verifyAll(List<VerifyTask> tasks, ForkJoinPool pool) {
+		checkArgument(tasks != null, "Invalid tasks");
+		checkArgument(pool != null, "Invalid pool");
+
+		boolean[] results = new boolean[tasks.size()];
+		VerifyAction action = new VerifyAction(tasks, results, 0, tasks.size());
+		if (tasks.size() <= BATCH_THRESHOLD)
+			action.compute();
+		else
+			pool.invoke(action);
+
+		return results;
+	}
+
+	private static boolean verify(ECDSASigner signer, ECPublicKeyParameters publicKey,
+			byte[] sig, byte[] digest) {
+		signer.init(false, publicKey);
 
 		byte rb[] = new byte[sig.length / 2];
 		byte sb[] = new byte[sig.length / 2];
@@ -22,7 +22,6 @@
 
 package org.elastos.did.crypto;
 
-import static org.bitcoinj.core.ECKey.CURVE;
 import static org.bitcoinj.core.ECKey.CURVE_PARAMS;
 
 import java.math.BigInteger;
@@ -185,37 +184,47 @@ public class HDKey {
 		return derive(index, false);
 	}
 
-	public KeyPair getJCEKeyPair() {
-		ECParameterSpec paramSpec = new ECNamedCurveSpec(
+	private static ECParameterSpec getJCEParameterSpec() {
+		return new ECNamedCurveSpec(
 				"secp256r1", CURVE_PARAMS.getCurve(), CURVE_PARAMS.getG(),
 				CURVE_PARAMS.getN(), CURVE_PARAMS.getH());
+	}
 
-		KeyFactory keyFactory = null;
+	private static KeyFactory getJCEKeyFactory() {
 		try {
-			keyFactory = KeyFactory.getInstance("EC");
-		} catch (NoSuchAlgorithmException ignore) {
+			return KeyFactory.getInstance("EC");
+		} catch (NoSuchAlgorithmException e) {
 			// never happen
+			throw new UnknownInternalException(e);
 		}
+	}
 
-		PublicKey pub = null;
-		PrivateKey priv = null;
+	public static PublicKey toJCEPublicKey(ECPublicKeyParameters pubParams) {
+		ECPublicKeySpec pubSpec = new ECPublicKeySpec(new java.security.spec.ECPoint(
+				pubParams.getQ().getXCoord().toBigInteger(),
+				pubParams.getQ().getYCoord().toBigInteger()), getJCEParameterSpec());
 
 		try {
-			ECPublicKeyParameters pubParams = new ECPublicKeyParameters(
-					CURVE_PARAMS.getCurve().decodePoint(getPublicKeyBytes()), CURVE);
-			ECPublicKeySpec pubSpec = new ECPublicKeySpec(new java.security.spec.ECPoint(
-					pubParams.getQ().getXCoord().toBigInteger(),
-					pubParams.getQ().getYCoord().toBigInteger()), paramSpec);
-			pub = keyFactory.generatePublic(pubSpec);
-
-			if (key.hasPrivKey()) {
-				BigInteger keyInt = new BigInteger(1, getPrivateKeyBytes());
-				ECPrivateKeySpec privSpec = new ECPrivateKeySpec(keyInt, paramSpec);
-				priv = keyFactory.generatePrivate(privSpec);
-			}
+			return getJCEKeyFactory().generatePublic(pubSpec);
 		} catch (InvalidKeySpecException e) {
 			throw new UnknownInternalException(e);
 		}
+	}
+
+	public KeyPair getJCEKeyPair() {
+		PublicKey pub = toJCEPublicKey(EcdsaSigner.decodePublicKey(getPublicKeyBytes()));
+		PrivateKey priv = null;
+
+		if (key.hasPrivKey()) {
+			BigInteger keyInt = new BigInteger(1, getPrivateKeyBytes());
+			ECPrivateKeySpec privSpec = new ECPrivateKeySpec(keyInt, getJCEParameterSpec());
+			try {
+				priv = getJCEKeyFactory().generatePrivate(privSpec);
+			} catch (InvalidKeySpecException e) {
+				throw new UnknownInternalException(e);
+			}
+		}
+
 		return new KeyPair(pub, priv);
 	}
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did.metrics;
+
+/**
+ * The metrics SPI of the DID SDK.
+ *
+ * <p>
+ * The DIDBackend and the DIDStore publish the cache and the resolver
+ * events to the DIDMetrics that installed by
+ * {@link org.elastos.did.DIDBackend#setMetrics(DIDMetrics)}. All the
+ * methods have a no-op default, the implementation only overrides the
+ * events that it cares. The methods are called on the hot paths, they
+ * should be thread safe and never block.
+ * </p>
+ */
+public interface DIDMetrics {
+	/**
+	 * The cache of the DIDBackend resolve results.
+	 */
+	public static final String CACHE_RESOLVE = "resolve";
+
+	/**
+	 * The object cache of the DIDStore.
+	 */
+	public static final String CACHE_STORE = "store";
+
+	/**
+	 * The decrypted signing key cache of the DIDStore.
+	 */
+	public static final String CACHE_STORE_KEYS = "store.keys";
+
+	/**
+	 * The resolve outcome that the DID or credential is valid.
+	 */
+	public static final String OUTCOME_VALID = "valid";
+
+	/**
+	 * The resolve outcome that the DID or credential not exists.
+	 */
+	public static final String OUTCOME_NOT_FOUND = "not_found";
+
+	/**
+	 * The resolve outcome that the DID is deactivated or the credential
+	 * is revoked.
+	 */
+	public static final String OUTCOME_TERMINAL = "terminal";
+
+	/**
+	 * The resolve outcome that the resolve failed.
+	 */
+	public static final String OUTCOME_ERROR = "error";
+
+	/**
+	 * The method name that reports the adapter errors of the batch
+	 * requests.
+	 */
+	public static final String METHOD_BATCH = "batch";
+
+	/**
+	 * The no-op metrics, used by default.
+	 */
+	public static final DIDMetrics NOOP = new DIDMetrics() {};
+
+	/**
+	 * A lookup found the value in the cache.
+	 *
+	 * @param cache the cache name
+	 */
+	default void cacheHit(String cache) {
+	}
+
+	/**
+	 * A lookup not found the value in the cache.
+	 *
+	 * @param cache the cache name
+	 */
+	default void cacheMiss(String cache) {
+	}
+
+	/**
+	 * The cache loaded a value.
+	 *
+	 * @param cache the cache name
+	 * @param nanos the load time in nanoseconds
+	 * @param success whether the load succeeded
+	 */
+	default void cacheLoad(String cache, long nanos, boolean success) {
+	}
+
+	/**
+	 * The cache evicted a value, because of the size limit, the expiration
+	 * or the garbage collection.
+	 *
+	 * @param cache the cache name
+	 */
+	default void cacheEviction(String cache) {
+	}
+
+	/**
+	 * A resolve request is sent to the ID chain.
+	 *
+	 * @param method the resolve method of the request
+	 */
+	default void resolveStarted(String method) {
+	}
+
+	/**
+	 * A resolve request completed, each resolveStarted() is followed by a
+	 * resolveCompleted().
+	 *
+	 * @param method the resolve method of the request
+	 * @param outcome one of the OUTCOME_* constants
+	 * @param nanos the resolve latency in nanoseconds
+	 */
+	default void resolveCompleted(String method, String outcome, long nanos) {
+	}
+
+	/**
+	 * The DIDAdapter failed to perform a resolve request.
+	 *
+	 * @param method the resolve method of the request
+	 * @param cause the error
+	 */
+	default void adapterError(String method, Throwable cause) {
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A simple in-memory DIDMetrics implementation, that keeps the counters
+ * and the latency histograms for the monitoring bridges to poll.
+ */
+public class InMemoryMetrics implements DIDMetrics {
+	private ConcurrentMap<String, CacheCounters> caches;
+	private ConcurrentMap<String, Histogram> latencies;
+	private ConcurrentMap<String, LongAdder> adapterErrors;
+	private ConcurrentMap<String, AtomicInteger> inFlight;
+
+	private static class CacheCounters {
+		private LongAdder hits = new LongAdder();
+		private LongAdder misses = new LongAdder();
+		private LongAdder loads = new LongAdder();
+		private LongAdder loadFailures = new LongAdder();
+		private LongAdder loadTime = new LongAdder();
+		private LongAdder evictions = new LongAdder();
+	}
+
+	/**
+	 * The latency histogram with the fixed exponential buckets.
+	 */
+	public static final class Histogram {
+		// The upper bounds of the buckets in microseconds, the last bucket
+		// is unbounded
+		private static final long[] BOUNDS = {
+			100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+			100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000
+		};
+
+		private LongAdder[] buckets;
+		private LongAdder count;
+		private LongAdder sum;
+		private AtomicLong max;
+
+		private Histogram() {
+			buckets = new LongAdder[BOUNDS.length + 1];
+			for (int i = 0; i < buckets.length; i++)
+				buckets[i] = new LongAdder();
+
+			count = new LongAdder();
+			sum = new LongAdder();
+			max = new AtomicLong();
+		}
+
+		private void record(long nanos) {
+			long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+			int i = 0;
+			while (i < BOUNDS.length && micros > BOUNDS[i])
+				i++;
+
+			buckets[i].increment();
+			count.increment();
+			sum.add(micros);
+			max.accumulateAndGet(micros, Math::max);
+		}
+
+		/**
+		 * Get the number of the recorded values.
+		 *
+		 * @return the count
+		 */
+		public long getCount() {
+			return count.sum();
+		}
+
+		/**
+		 * Get the average of the recorded values.
+		 *
+		 * @return the average latency in microseconds
+		 */
+		public long getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : sum.sum() / n;
+		}
+
+		/**
+		 * Get the maximum of the recorded values.
+		 *
+		 * @return the maximum latency in microseconds
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Get the estimated percentile, that is the upper bound of the
+		 * bucket that the percentile falls in.
+		 *
+		 * @param percentile the percentile between 0 and 1
+		 * @return the latency in microseconds
+		 */
+		public long getPercentile(double percentile) {
+			long[] counts = getBucketCounts();
+			long total = 0;
+			for (long c : counts)
+				total += c;
+
+			if (total == 0)
+				return 0;
+
+			long rank = (long)Math.ceil(percentile * total);
+			long seen = 0;
+			for (int i = 0; i < BOUNDS.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return Math.min(BOUNDS[i], getMax());
+			}
+
+			return getMax();
+		}
+
+		/**
+		 * Get the upper bounds of the buckets, the last bucket that not
+		 * included is unbounded.
+		 *
+		 * @return the bucket bounds in microseconds
+		 */
+		public long[] getBucketBounds() {
+			return BOUNDS.clone();
+		}
+
+		/**
+		 * Get the value counts of the buckets.
+		 *
+		 * @return the bucket counts, one more than the bucket bounds
+		 */
+		public long[] getBucketCounts() {
+			long[] counts = new long[buckets.length];
+			for (int i = 0; i < buckets.length; i++)
+				counts[i] = buckets[i].sum();
+
+			return counts;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count:%d, mean:%dus, p50:%dus, p99:%dus, max:%dus",
+					getCount(), getMean(), getPercentile(0.5),
+					getPercentile(0.99), getMax());
+		}
+	}
+
+	/**
+	 * Create an empty InMemoryMetrics.
+	 */
+	public InMemoryMetrics() {
+		caches = new ConcurrentHashMap<String, CacheCounters>();
+		latencies = new ConcurrentHashMap<String, Histogram>();
+		adapterErrors = new ConcurrentHashMap<String, LongAdder>();
+		inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+	}
+
+	private CacheCounters cache(String cache) {
+		return caches.computeIfAbsent(cache, (k) -> new CacheCounters());
+	}
+
+	private static String latencyKey(String method, String outcome) {
+		return method + " " + outcome;
+	}
+
+	@Override
+	public void cacheHit(String cache) {
+		cache(cache).hits.increment();
+	}
+
+	@Override
+	public void cacheMiss(String cache) {
+		cache(cache).misses.increment();
+	}
+
+	@Override
+	public void cacheLoad(String cache, long nanos, boolean success) {
+		CacheCounters counters = cache(cache);
+		counters.loads.increment();
+		counters.loadTime.add(nanos);
+		if (!success)
+			counters.loadFailures.increment();
+	}
+
+	@Override
+	public void cacheEviction(String cache) {
+		cache(cache).evictions.increment();
+	}
+
+	@Override
+	public void resolveStarted(String method) {
+		inFlight.computeIfAbsent(method, (k) -> new AtomicInteger()).incrementAndGet();
+	}
+
+	@Override
+	public void resolveCompleted(String method, String outcome, long nanos) {
+		AtomicInteger n = inFlight.get(method);
+		if (n != null)
+			n.decrementAndGet();
+
+		latencies.computeIfAbsent(latencyKey(method, outcome),
+				(k) -> new Histogram()).record(nanos);
+	}
+
+	@Override
+	public void adapterError(String method, Throwable cause) {
+		adapterErrors.computeIfAbsent(method, (k) -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Get the hit count of the cache.
+	 *
+	 * @param cache the cache name
+	 * @return the hit count
+	 */
+	public long getCacheHitCount(String cache) {
+		CacheCounters counters = caches.get(cache);
+		return counters == null ? 0 : counters.hits.sum();
+	}
+
+	/**
+	 * Get the miss count of the cache.
+	 *
+	 * @param cache the cache name
+	 * @return the miss count
+	 */
+	public long getCacheMissCount(String cache) {
+		CacheCounters counters = caches.get(cache);
+		return counters == null ? 0 : counters.misses.sum();
+	}
+
+	/**
+	 * Get the hit rate of the cache.
+	 *
+	 * @param cache the cache name
+	 * @return the hit rate between 0 and 1, or 1 if no lookup
+	 */
+	public double getCacheHitRate(String cache) {
+		long hits = getCacheHitCount(cache);
+		long total = hits + getCacheMissCount(cache);
+		return total == 0 ? 1.0 : (double)hits / total;
+	}
+
+	/**
+	 * Get the load count of the cache, include the failed loads.
+	 *
+	 * @param cache the cache name
+	 * @return the load count
+	 */
+	public long getCacheLoadCount(String cache) {
+		CacheCounters counters = caches.get(cache);
+		return counters == null ? 0 : counters.loads.sum();
+	}
+
+	/**
+	 * Get the failed load count of the cache.
+	 *
+	 * @param cache the cache name
+	 * @return the failed load count
+	 */
+	public long getCacheLoadFailureCount(String cache) {
+		CacheCounters counters = caches.get(cache);
+		return counters == null ? 0 : counters.loadFailures.sum();
+	}
+
+	/**
+	 * Get the average load time of the cache.
+	 *
+	 * @param cache the cache name
+	 * @return the average load time in microseconds
+	 */
+	public long getCacheAverageLoadTime(String cache) {
+		CacheCounters counters = caches.get(cache);
+		long loads = counters == null ? 0 : counters.loads.sum();
+		return loads == 0 ? 0 :
+			TimeUnit.NANOSECONDS.toMicros(counters.loadTime.sum() / loads);
+	}
+
+	/**
+	 * Get the eviction count of the cache.
+	 *
+	 * @param cache the cache name
+	 * @return the eviction count
+	 */
+	public long getCacheEvictionCount(String cache) {
+		CacheCounters counters = caches.get(cache);
+		return counters == null ? 0 : counters.evictions.sum();
+	}
+
+	/**
+	 * Get the resolve latency histogram of the method and the outcome.
+	 *
+	 * @param method the resolve method
+	 * @param outcome one of the DIDMetrics.OUTCOME_* constants
+	 * @return the Histogram object, or null if no resolve recorded
+	 */
+	public Histogram getResolveLatency(String method, String outcome) {
+		return latencies.get(latencyKey(method, outcome));
+	}
+
+	/**
+	 * Get all the resolve latency histograms.
+	 *
+	 * @return a sorted map from the "method outcome" to the Histogram
+	 */
+	public Map<String, Histogram> getResolveLatencies() {
+		return Collections.unmodifiableMap(new TreeMap<String, Histogram>(latencies));
+	}
+
+	/**
+	 * Get the adapter error count of the resolve method.
+	 *
+	 * @param method the resolve method
+	 * @return the error count
+	 */
+	public long getAdapterErrorCount(String method) {
+		LongAdder n = adapterErrors.get(method);
+		return n == null ? 0 : n.sum();
+	}
+
+	/**
+	 * Get the adapter error count of all the resolve methods.
+	 *
+	 * @return the error count
+	 */
+	public long getAdapterErrorCount() {
+		long total = 0;
+		for (LongAdder n : adapterErrors.values())
+			total += n.sum();
+
+		return total;
+	}
+
+	/**
+	 * Get the number of the resolve requests in flight.
+	 *
+	 * @return the in-flight request count
+	 */
+	public int getInFlightRequests() {
+		int total = 0;
+		for (AtomicInteger n : inFlight.values())
+			total += n.get();
+
+		return total;
+	}
+
+	/**
+	 * Clear all the metrics, except the in-flight requests gauge.
+	 */
+	public void reset() {
+		caches.clear();
+		latencies.clear();
+		adapterErrors.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(1024);
+
+		for (String cache : new TreeMap<String, CacheCounters>(caches).keySet()) {
+			sb.append(String.format("cache %s: hits:%d, misses:%d, hitRate:%.2f, loads:%d, loadFailures:%d, evictions:%d%n",
+					cache, getCacheHitCount(cache), getCacheMissCount(cache),
+					getCacheHitRate(cache), getCacheLoadCount(cache),
+					getCacheLoadFailureCount(cache), getCacheEvictionCount(cache)));
+		}
+
+		for (Map.Entry<String, Histogram> entry : getResolveLatencies().entrySet())
+			sb.append("resolve ").append(entry.getKey()).append(": ")
+				.append(entry.getValue()).append(String.format("%n"));
+
+		sb.append("adapter errors: ").append(getAdapterErrorCount())
+			.append(", in flight: ").append(getInFlightRequests());
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.exception.DIDStoreException;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.TestData;
+import org.elastos.did.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@ExtendWith(DIDTestExtension.class)
+public class BatchTest {
+	private TestData testData;
+
+	@BeforeEach
+	public void beforeEach() throws DIDException {
+		testData = new TestData();
+	}
+
+	@AfterEach
+	public void afterEach() {
+		testData.cleanup();
+		Utils.deleteFile(new File(TestConfig.storeRoot + "-batch"));
+	}
+
+	private DIDStore openStore(String type) throws DIDException {
+		File dir = new File(TestConfig.storeRoot + "-batch");
+		Utils.deleteFile(dir);
+
+		switch (type) {
+		case "filesystem":
+			return DIDStore.open(dir);
+
+		case "log":
+			return DIDStore.openLogStructured(dir);
+
+		default:
+			return DIDStore.openInMemory();
+		}
+	}
+
+	private DIDStore reopenStore(String type, DIDStore store) throws DIDException {
+		if (type.equals("memory"))
+			return store;
+
+		store.close();
+		File dir = new File(TestConfig.storeRoot + "-batch");
+		return type.equals("log") ? DIDStore.openLogStructured(dir) : DIDStore.open(dir);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log", "memory"})
+	public void testCommit(String type) throws Exception {
+		DIDStore store = openStore(type);
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+		DIDDocument existing = identity.newDid(TestConfig.storePass);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		DID staged;
+		try (DIDStore.Batch batch = store.batch()) {
+			DIDDocument doc = null;
+			for (int i = 0; i < 5; i++) {
+				doc = identity.newDid(TestConfig.storePass);
+				doc.getMetadata().setAlias("Alias-" + i);
+			}
+			staged = doc.getSubject();
+			assertTrue(store.deleteDid(existing.getSubject()));
+			assertTrue(batch.size() > 0);
+			assertNull(store.loadDid(existing.getSubject()));
+
+			// The staged writes and cached objects only visible to the batch thread
+			assertEquals(5, store.listDids().size());
+			DIDStore s = store;
+			Future<Integer> others = executor.submit(() -> s.listDids().size());
+			assertEquals(1, others.get());
+			assertNull(executor.submit(() -> s.loadDid(staged)).get());
+			assertNotNull(executor.submit(() -> s.loadDid(existing.getSubject())).get());
+
+			batch.commit();
+			assertEquals(0, batch.size());
+		} finally {
+			executor.shutdown();
+		}
+
+		// The committed objects replace the ones cached by the other threads
+		assertNull(store.loadDid(existing.getSubject()));
+		assertEquals("Alias-4", store.loadDid(staged).getMetadata().getAlias());
+
+		store = reopenStore(type, store);
+		List<DID> dids = store.listDids();
+		assertEquals(5, dids.size());
+		assertNull(store.loadDid(existing.getSubject()));
+		assertEquals(6, store.loadRootIdentity().getIndex());
+
+		for (DID did : dids) {
+			DIDDocument doc = store.loadDid(did);
+			assertTrue(doc.getMetadata().getAlias().startsWith("Alias-"));
+			assertTrue(store.containsPrivateKeys(did));
+
+			byte[] data = "Hello World".getBytes();
+			String sig = doc.sign(TestConfig.storePass, data);
+			assertTrue(doc.verify(sig, data));
+		}
+
+		store.close();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log", "memory"})
+	public void testAbort(String type) throws DIDException {
+		DIDStore store = openStore(type);
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+		DIDDocument existing = identity.newDid(TestConfig.storePass);
+
+		try (DIDStore.Batch batch = store.batch()) {
+			for (int i = 0; i < 3; i++)
+				identity.newDid(TestConfig.storePass);
+
+			store.deleteDid(existing.getSubject());
+			assertEquals(3, store.listDids().size());
+		}
+
+		assertEquals(1, store.listDids().size());
+		assertEquals(existing.getSubject(), store.listDids().get(0));
+		assertTrue(store.containsPrivateKeys(existing.getSubject()));
+		assertEquals(1, store.loadRootIdentity().getIndex());
+		assertEquals(1, identity.getIndex());
+
+		// Next DID derived from the restored index
+		DIDDocument next = identity.newDid(TestConfig.storePass);
+		assertEquals(identity.getDid(1), next.getSubject());
+		assertEquals(2, identity.getIndex());
+
+		// Committed or aborted batch can not be reused
+		DIDStore.Batch batch = store.batch();
+		batch.abort();
+		assertThrows(IllegalStateException.class, () -> {
+			batch.commit();
+		});
+		batch.close();
+
+		store = reopenStore(type, store);
+		assertEquals(2, store.listDids().size());
+		assertEquals(2, store.loadRootIdentity().getIndex());
+		store.close();
+	}
+
+	@Test
+	public void testCommitInvalidatesKeyCache() throws Exception {
+		DIDStore store = DIDStore.openInMemory(16, 128, 8, 60000);
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+		DIDDocument doc = identity.newDid(TestConfig.storePass);
+		DIDDocument other = identity.newDid(TestConfig.storePass);
+
+		DIDURL id = doc.getDefaultPublicKeyId();
+		byte[] digest = new byte[32];
+		doc.signDigest(id, TestConfig.storePass, digest);
+
+		byte[] otherKey = store.loadPrivateKey(other.getDefaultPublicKeyId(),
+				TestConfig.storePass);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (DIDStore.Batch batch = store.batch()) {
+			store.storePrivateKey(id, otherKey, TestConfig.storePass);
+
+			// The other thread caches the committed key again
+			executor.submit(() -> doc.signDigest(id, TestConfig.storePass, digest)).get();
+			batch.commit();
+		} finally {
+			executor.shutdown();
+		}
+
+		// Signed by the replaced key
+		String sig = doc.signDigest(id, TestConfig.storePass, digest);
+		assertFalse(doc.verifyDigest(id, sig, digest));
+		assertTrue(other.verifyDigest(other.getDefaultPublicKeyId(), sig, digest));
+
+		store.close();
+	}
+
+	@Test
+	public void testTransaction() throws DIDException {
+		DIDStore store = testData.getStore();
+		RootIdentity identity = testData.getRootIdentity();
+
+		DID did = store.transaction(() -> {
+			DIDDocument doc = identity.newDid(TestConfig.storePass);
+			doc.getMetadata().setAlias("Committed");
+			return doc.getSubject();
+		});
+		assertEquals("Committed", store.loadDid(did).getMetadata().getAlias());
+
+		assertThrows(DIDStoreException.class, () -> {
+			store.transaction(() -> {
+				identity.newDid(TestConfig.storePass);
+				throw new DIDStoreException("Failed");
+			});
+		});
+		assertEquals(1, store.listDids().size());
+
+		// No nested batch on the same thread
+		try (DIDStore.Batch batch = store.batch()) {
+			assertThrows(IllegalStateException.class, () -> {
+				store.batch();
+			});
+		}
+
+		DIDStore reopened = testData.reOpenStore();
+		assertEquals(1, reopened.listDids().size());
+		assertEquals("Committed", reopened.loadDid(did).getMetadata().getAlias());
+	}
+
+	@Test
+	public void testConcurrentBatches() throws Exception {
+		DIDStore store = testData.getStore();
+		RootIdentity identity = testData.getRootIdentity();
+
+		List<DID> dids = new ArrayList<DID>();
+		for (int i = 0; i < 8; i++)
+			dids.add(identity.newDid(TestConfig.storePass).getSubject());
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (DID did : dids) {
+				results.add(executor.submit(() -> {
+					for (int i = 0; i < 10; i++) {
+						int n = i;
+						store.transaction(() -> {
+							DIDMetadata metadata = store.loadDidMetadata(did);
+							metadata.setAlias("Alias-" + n);
+							metadata.setExtra("round", n);
+							return null;
+						});
+					}
+
+					return null;
+				}));
+			}
+
+			for (Future<?> result : results)
+				result.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		DIDStore reopened = testData.reOpenStore();
+		for (DID did : dids) {
+			DIDMetadata metadata = reopened.loadDidMetadata(did);
+			assertEquals("Alias-9", metadata.getAlias());
+			assertEquals(9, metadata.getExtraInteger("round", -1));
+		}
+	}
+
+	private static void writeJournal(File file, String path, String content)
+			throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeByte(1);
+		out.writeUTF(path);
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(data.length);
+		out.write(data);
+
+		byte[] bytes = payload.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+
+		try (DataOutputStream journal = new DataOutputStream(new FileOutputStream(file))) {
+			journal.writeInt(0x42544348);
+			journal.writeInt(bytes.length);
+			journal.writeInt((int)crc.getValue());
+			journal.write(bytes);
+		}
+	}
+
+	@Test
+	public void testJournalRecovery() throws DIDException, IOException {
+		DIDStore store = testData.getStore();
+		DIDDocument doc = testData.getRootIdentity().newDid(TestConfig.storePass);
+		doc.getMetadata().setAlias("Before");
+
+		// An interrupted commit, the journal is replayed when opening
+		File journal = new File(TestConfig.storeRoot, "batch.journal");
+		String path = "data" + File.separator + "ids" + File.separator +
+				doc.getSubject().getMethodSpecificId() + File.separator + ".metadata";
+		writeJournal(journal, path, "{\"alias\":\"Recovered\"}");
+
+		store = testData.reOpenStore();
+		assertFalse(journal.exists());
+		assertEquals("Recovered", store.loadDidMetadata(doc.getSubject()).getAlias());
+		assertEquals(1, store.listDids().size());
+
+		// A torn journal, the batch was not committed
+		writeJournal(journal, path, "{\"alias\":\"Torn\"}");
+		try (FileOutputStream out = new FileOutputStream(journal, true)) {
+			out.getChannel().truncate(journal.length() - 4);
+		}
+
+		store = testData.reOpenStore();
+		assertFalse(journal.exists());
+		assertEquals("Recovered", store.loadDidMetadata(doc.getSubject()).getAlias());
+	}
+}
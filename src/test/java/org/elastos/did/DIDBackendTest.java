@@ -0,0 +1,819 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elastos.did.backend.DIDResolveRequest;
+import org.elastos.did.backend.PersistentResolveCache;
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.exception.DIDResolveException;
+import org.elastos.did.exception.DIDTransactionException;
+import org.elastos.did.exception.NetworkException;
+import org.elastos.did.metrics.DIDMetrics;
+import org.elastos.did.metrics.InMemoryMetrics;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.TestData;
+import org.elastos.did.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.base.Ticker;
+import com.google.common.io.CharStreams;
+
+@ExtendWith(DIDTestExtension.class)
+public class DIDBackendTest {
+	private TestData testData;
+
+	// Counts the requests, and supports the batch request optionally
+	private static class CountingAdapter implements BatchDIDAdapter {
+		private DIDAdapter adapter;
+		private boolean batch;
+		private int errorCode = -32600;
+		private AtomicInteger resolves = new AtomicInteger();
+		private AtomicInteger batches = new AtomicInteger();
+
+		public CountingAdapter(DIDAdapter adapter, boolean batch) {
+			this.adapter = adapter;
+			this.batch = batch;
+		}
+
+		@Override
+		public void createIdTransaction(String payload, String memo)
+				throws DIDTransactionException {
+			adapter.createIdTransaction(payload, memo);
+		}
+
+		@Override
+		public InputStream resolve(String request) throws DIDResolveException {
+			resolves.incrementAndGet();
+			return adapter.resolve(request);
+		}
+
+		@Override
+		public InputStream resolveBatch(String requests) throws DIDResolveException {
+			batches.incrementAndGet();
+
+			if (batch) {
+				return ((BatchDIDAdapter)adapter).resolveBatch(requests);
+			} else {
+				// The resolver that not support the JSON-RPC batch
+				String error = "{\"id\":null,\"jsonrpc\":\"2.0\",\"error\":{\"code\":" +
+						errorCode + ",\"message\":\"Invalid request\"}}";
+				return new ByteArrayInputStream(error.getBytes());
+			}
+		}
+	}
+
+	// Holds the responses until the gate opened, counts the blocking calls
+	private static class GatedAsyncAdapter implements AsyncDIDAdapter {
+		private DIDAdapter adapter;
+		private CompletableFuture<Void> gate = new CompletableFuture<Void>();
+		private volatile boolean fail;
+		private AtomicInteger resolves = new AtomicInteger();
+		private AtomicInteger asyncResolves = new AtomicInteger();
+
+		public GatedAsyncAdapter(DIDAdapter adapter) {
+			this.adapter = adapter;
+		}
+
+		@Override
+		public void createIdTransaction(String payload, String memo)
+				throws DIDTransactionException {
+			adapter.createIdTransaction(payload, memo);
+		}
+
+		@Override
+		public InputStream resolve(String request) throws DIDResolveException {
+			resolves.incrementAndGet();
+			return adapter.resolve(request);
+		}
+
+		@Override
+		public CompletableFuture<InputStream> resolveAsync(String request) {
+			asyncResolves.incrementAndGet();
+
+			return gate.thenApplyAsync((v) -> {
+				try {
+					if (fail)
+						throw new DIDResolveException("Simulated network error");
+
+					return adapter.resolve(request);
+				} catch (DIDResolveException e) {
+					throw new CompletionException(e);
+				}
+			});
+		}
+	}
+
+	@BeforeEach
+	public void beforeEach() throws DIDException {
+		testData = new TestData();
+	}
+
+	@AfterEach
+	public void afterEach() {
+		DIDBackend.setMetrics(null);
+		DIDBackend.initialize(DIDTestExtension.getAdapter());
+		testData.cleanup();
+	}
+
+	private List<DIDDocument> createDids(int count) throws DIDException {
+		RootIdentity identity = testData.getRootIdentity();
+
+		List<DIDDocument> docs = new ArrayList<DIDDocument>();
+		for (int i = 0; i < count; i++) {
+			DIDDocument doc = identity.newDid(TestConfig.storePass);
+			doc.publish(TestConfig.storePass);
+			docs.add(doc);
+		}
+
+		return docs;
+	}
+
+	@Test
+	public void testResolveDids() throws DIDException {
+		List<DIDDocument> docs = createDids(5);
+		DID unpublished = testData.getRootIdentity().newDid(TestConfig.storePass).getSubject();
+
+		List<DID> dids = new ArrayList<DID>();
+		for (DIDDocument doc : docs)
+			dids.add(doc.getSubject());
+		dids.add(unpublished);
+		dids.add(docs.get(0).getSubject());
+
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), true);
+		DIDBackend.initialize(adapter);
+
+		Map<DID, DIDDocument> resolved = DIDBackend.getInstance().resolveDids(dids);
+		assertEquals(1, adapter.batches.get());
+		assertEquals(0, adapter.resolves.get());
+
+		assertEquals(6, resolved.size());
+		List<DID> keys = new ArrayList<DID>(resolved.keySet());
+		assertEquals(dids.subList(0, 6), keys);
+		for (DIDDocument doc : docs) {
+			DIDDocument rdoc = resolved.get(doc.getSubject());
+			assertNotNull(rdoc);
+			assertEquals(doc.toString(true), rdoc.toString(true));
+			assertNotNull(rdoc.getMetadata().getTransactionId());
+		}
+		assertNull(resolved.get(unpublished));
+
+		// All from cache
+		resolved = DIDBackend.getInstance().resolveDids(dids);
+		assertEquals(1, adapter.batches.get());
+		assertEquals(0, adapter.resolves.get());
+		assertEquals(6, resolved.size());
+
+		// Share the cache with the single resolve
+		assertNotNull(docs.get(1).getSubject().resolve());
+		assertEquals(1, adapter.batches.get());
+		assertEquals(0, adapter.resolves.get());
+
+		// Only resolve the cache misses
+		DIDBackend.getInstance().clearCache();
+		docs.get(2).getSubject().resolve();
+		assertEquals(1, adapter.resolves.get());
+		resolved = DIDBackend.getInstance().resolveDids(dids);
+		assertEquals(2, adapter.batches.get());
+		assertEquals(1, adapter.resolves.get());
+
+		// Forced
+		resolved = DIDBackend.getInstance().resolveDids(dids, true);
+		assertEquals(3, adapter.batches.get());
+		assertEquals(1, adapter.resolves.get());
+		assertEquals(docs.get(3).toString(true),
+				resolved.get(docs.get(3).getSubject()).toString(true));
+	}
+
+	@Test
+	public void testResolveCredentials() throws DIDException {
+		TestData.InstantData sd = testData.getInstantData();
+
+		VerifiableCredential passport = sd.getUser1PassportCredential();
+		passport.declare(TestConfig.storePass);
+		VerifiableCredential twitter = sd.getUser1TwitterCredential();
+		twitter.declare(TestConfig.storePass);
+		VerifiableCredential json = sd.getUser1JsonCredential();
+
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), true);
+		DIDBackend.initialize(adapter);
+
+		// The owner's document for the transaction verification, single
+		// request will not use the batch
+		DIDBackend.getInstance().resolveDids(Arrays.asList(passport.getSubject().getId()));
+		assertEquals(0, adapter.batches.get());
+		assertEquals(1, adapter.resolves.get());
+
+		List<DIDURL> ids = Arrays.asList(passport.getId(), twitter.getId(), json.getId());
+		Map<DIDURL, VerifiableCredential> resolved =
+				DIDBackend.getInstance().resolveCredentials(ids);
+		assertEquals(1, adapter.batches.get());
+		assertEquals(1, adapter.resolves.get());
+
+		assertEquals(3, resolved.size());
+		assertEquals(passport.toString(true), resolved.get(passport.getId()).toString(true));
+		assertEquals(twitter.toString(true), resolved.get(twitter.getId()).toString(true));
+		assertNull(resolved.get(json.getId()));
+	}
+
+	@Test
+	public void testSequentialFallback() throws DIDException {
+		List<DIDDocument> docs = createDids(4);
+		List<DID> dids = new ArrayList<DID>();
+		for (DIDDocument doc : docs)
+			dids.add(doc.getSubject());
+
+		// Adapter without the batch capability
+		CountingAdapter counter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDAdapter adapter = new DIDAdapter() {
+			@Override
+			public void createIdTransaction(String payload, String memo)
+					throws DIDTransactionException {
+				counter.createIdTransaction(payload, memo);
+			}
+
+			@Override
+			public InputStream resolve(String request) throws DIDResolveException {
+				return counter.resolve(request);
+			}
+		};
+		DIDBackend.initialize(adapter);
+
+		Map<DID, DIDDocument> resolved = DIDBackend.getInstance().resolveDids(dids);
+		assertEquals(0, counter.batches.get());
+		assertEquals(4, counter.resolves.get());
+		for (DIDDocument doc : docs)
+			assertEquals(doc.toString(true), resolved.get(doc.getSubject()).toString(true));
+
+		// The resolver not support the batch request
+		DIDBackend.initialize(counter);
+
+		resolved = DIDBackend.getInstance().resolveDids(dids);
+		assertEquals(1, counter.batches.get());
+		assertEquals(8, counter.resolves.get());
+		for (DIDDocument doc : docs)
+			assertEquals(doc.toString(true), resolved.get(doc.getSubject()).toString(true));
+
+		// Not try the batch request again
+		resolved = DIDBackend.getInstance().resolveDids(dids, true);
+		assertEquals(1, counter.batches.get());
+		assertEquals(12, counter.resolves.get());
+
+		// The other errors are transient, try the batch request again
+		CountingAdapter flaky = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		flaky.errorCode = -32000;
+		DIDBackend.initialize(flaky);
+
+		DIDBackend.getInstance().resolveDids(dids, true);
+		DIDBackend.getInstance().resolveDids(dids, true);
+		assertEquals(2, flaky.batches.get());
+		assertEquals(8, flaky.resolves.get());
+	}
+
+	@Test
+	public void testResolveAsync() throws DIDException {
+		List<DIDDocument> docs = createDids(3);
+		DID unpublished = testData.getRootIdentity().newDid(TestConfig.storePass).getSubject();
+
+		GatedAsyncAdapter adapter = new GatedAsyncAdapter(DIDTestExtension.getAdapter());
+		DIDBackend.initialize(adapter);
+
+		// The same requests in flight share one adapter call
+		List<CompletableFuture<DIDDocument>> futures = new ArrayList<CompletableFuture<DIDDocument>>();
+		for (int i = 0; i < 10; i++) {
+			for (DIDDocument doc : docs)
+				futures.add(doc.getSubject().resolveAsync());
+		}
+		CompletableFuture<DIDDocument> nf = unpublished.resolveAsync();
+
+		assertEquals(4, adapter.asyncResolves.get());
+		for (CompletableFuture<DIDDocument> f : futures)
+			assertFalse(f.isDone());
+
+		adapter.gate.complete(null);
+
+		for (int i = 0; i < futures.size(); i++) {
+			DIDDocument doc = docs.get(i % docs.size());
+			DIDDocument resolved = futures.get(i).join();
+			assertEquals(doc.toString(true), resolved.toString(true));
+			assertNotNull(resolved.getMetadata().getTransactionId());
+		}
+		assertNull(nf.join());
+
+		// From the cache, share with the blocking resolve
+		CompletableFuture<DIDDocument> cf = docs.get(0).getSubject().resolveAsync();
+		assertTrue(cf.isDone());
+		assertNotNull(cf.join());
+		assertNotNull(docs.get(1).getSubject().resolve());
+		assertEquals(4, adapter.asyncResolves.get());
+
+		assertNotNull(docs.get(2).getSubject().resolveAsync(true).join());
+		assertEquals(5, adapter.asyncResolves.get());
+
+		assertEquals(1, docs.get(2).getSubject().resolveBiographyAsync().join().size());
+		assertNull(unpublished.resolveBiographyAsync().join());
+		assertEquals(7, adapter.asyncResolves.get());
+
+		assertEquals(0, adapter.resolves.get());
+	}
+
+	@Test
+	public void testVerifyAsync() throws DIDException {
+		TestData.InstantData sd = testData.getInstantData();
+
+		VerifiableCredential vc = sd.getUser1PassportCredential();
+		vc.declare(TestConfig.storePass);
+
+		GatedAsyncAdapter adapter = new GatedAsyncAdapter(DIDTestExtension.getAdapter());
+		adapter.gate.complete(null);
+		DIDBackend.initialize(adapter);
+
+		assertTrue(vc.isGenuineAsync().join());
+		assertTrue(vc.isValidAsync().join());
+		assertFalse(vc.isExpiredAsync().join());
+		assertTrue(vc.wasDeclaredAsync().join());
+		assertFalse(vc.isRevokedAsync().join());
+
+		VerifiableCredential resolved = VerifiableCredential.resolveAsync(vc.getId()).join();
+		assertEquals(vc.toString(true), resolved.toString(true));
+		assertEquals(1, VerifiableCredential.resolveBiographyAsync(
+				vc.getId().toString()).join().size());
+
+		List<DIDURL> ids = VerifiableCredential.listAsync(vc.getSubject().getId()).join();
+		assertTrue(ids.contains(vc.getId()));
+
+		assertTrue(adapter.asyncResolves.get() > 0);
+		assertEquals(0, adapter.resolves.get());
+	}
+
+	@Test
+	public void testResolveAsyncError() throws DIDException {
+		DIDDocument doc = createDids(1).get(0);
+
+		GatedAsyncAdapter adapter = new GatedAsyncAdapter(DIDTestExtension.getAdapter());
+		adapter.fail = true;
+		adapter.gate.complete(null);
+		DIDBackend.initialize(adapter);
+
+		ExecutionException e = assertThrows(ExecutionException.class, () -> {
+			doc.getSubject().resolveAsync().get();
+		});
+		assertTrue(e.getCause() instanceof DIDResolveException);
+
+		// The failure is not cached
+		adapter.fail = false;
+		assertEquals(doc.toString(true),
+				doc.getSubject().resolveAsync().join().toString(true));
+		assertEquals(2, adapter.asyncResolves.get());
+	}
+
+	@Test
+	public void testCustomExecutor() throws DIDException, InterruptedException {
+		List<DIDDocument> docs = createDids(2);
+
+		AtomicInteger tasks = new AtomicInteger();
+		Executor executor = (r) -> {
+			tasks.incrementAndGet();
+			new Thread(r).start();
+		};
+
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter, executor);
+
+		DIDExecutor de = DIDBackend.getInstance().getExecutor();
+		assertEquals("custom", de.getName());
+
+		// The blocking adapter runs on the custom executor
+		for (DIDDocument doc : docs)
+			assertNotNull(doc.getSubject().resolveAsync().join());
+		assertEquals(2, adapter.resolves.get());
+		assertTrue(tasks.get() >= 2);
+
+		// The statistics updated after the future completed
+		DIDExecutor.Stats stats = de.getStats();
+		for (int i = 0; i < 100 && stats.getCompletedCount() < tasks.get(); i++) {
+			Thread.sleep(10);
+			stats = de.getStats();
+		}
+		assertEquals(tasks.get(), stats.getCompletedCount());
+		assertEquals(0, stats.getQueueDepth());
+		assertEquals(0, stats.getActiveCount());
+
+		// Back to the default IO pool
+		DIDBackend.initialize(adapter);
+		assertEquals("io", DIDBackend.getInstance().getExecutor().getName());
+	}
+
+	@Test
+	public void testVirtualThreadExecutor() {
+		if (!DIDExecutor.isVirtualThreadSupported()) {
+			assertThrows(UnsupportedOperationException.class, () -> {
+				DIDExecutor.newVirtualThreadPerTask();
+			});
+		} else {
+			DIDExecutor de = DIDExecutor.newVirtualThreadPerTask();
+			assertEquals("virtual", de.getName());
+			assertEquals(de, DIDExecutor.wrap(de));
+		}
+	}
+
+	@Test
+	public void testPersistentCache() throws DIDException {
+		List<DIDDocument> docs = createDids(3);
+		DID unpublished = testData.getRootIdentity().newDid(TestConfig.storePass).getSubject();
+
+		File file = new File(TestConfig.tempDir + File.separator + "DIDBackendTest"
+				+ File.separator + "resolve.cache");
+		Utils.deleteFile(file.getParentFile());
+
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter);
+		PersistentResolveCache pc = new PersistentResolveCache(file);
+		DIDBackend.getInstance().setPersistentCache(pc);
+
+		for (DIDDocument doc : docs)
+			assertNotNull(doc.getSubject().resolve());
+		assertNull(unpublished.resolve());
+		assertEquals(4, adapter.resolves.get());
+		pc.close();
+
+		// Restart, the results are loaded from the persistent cache
+		adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter);
+		pc = new PersistentResolveCache(file);
+		DIDBackend.getInstance().setPersistentCache(pc);
+
+		for (DIDDocument doc : docs) {
+			DIDDocument resolved = doc.getSubject().resolve();
+			assertEquals(doc.toString(true), resolved.toString(true));
+			assertNotNull(resolved.getMetadata().getTransactionId());
+		}
+		assertNotNull(docs.get(0).getSubject().resolveAsync().join());
+		assertEquals(0, adapter.resolves.get());
+
+		// The NOT_FOUND results are not persisted
+		assertNull(unpublished.resolve());
+		assertEquals(1, adapter.resolves.get());
+
+		// Force resolve bypasses and refreshes the persistent cache
+		assertNotNull(docs.get(0).getSubject().resolve(true));
+		assertEquals(2, adapter.resolves.get());
+
+		DIDBackend.getInstance().clearCache();
+		assertEquals(0, pc.size());
+		assertNotNull(docs.get(1).getSubject().resolve());
+		assertEquals(3, adapter.resolves.get());
+
+		pc.close();
+		Utils.deleteFile(file.getParentFile());
+	}
+
+	// The manual clock of the cache expiry and refresh, the tests refresh on
+	// the calling thread so the clock never passes an unfinished refresh
+	private static class FakeTicker extends Ticker {
+		private AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		public void advance(long millis) {
+			nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+	}
+
+	// Wait for the background refreshes
+	private static void waitFor(AtomicInteger counter, int expected)
+			throws InterruptedException {
+		for (int i = 0; i < 200 && counter.get() < expected; i++)
+			Thread.sleep(10);
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws DIDException, InterruptedException {
+		DIDDocument doc = createDids(1).get(0);
+
+		FakeTicker ticker = new FakeTicker();
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter, new DIDBackend.CachePolicy()
+				.setTtl(5000).setRefreshAfter(200).setTicker(ticker), Runnable::run);
+
+		assertNotNull(doc.getSubject().resolve());
+		assertNotNull(doc.getSubject().resolve());
+		assertEquals(1, adapter.resolves.get());
+
+		ticker.advance(300);
+
+		// Stale, reloaded once on the refresh executor
+		DIDDocument resolved = doc.getSubject().resolve();
+		assertEquals(doc.toString(true), resolved.toString(true));
+		waitFor(adapter.resolves, 2);
+		assertEquals(2, adapter.resolves.get());
+
+		assertNotNull(doc.getSubject().resolve());
+		assertEquals(2, adapter.resolves.get());
+	}
+
+	@Test
+	public void testRefreshAhead() throws DIDException, InterruptedException {
+		List<DIDDocument> docs = createDids(2);
+		DIDDocument hot = docs.get(0);
+		DIDDocument cold = docs.get(1);
+
+		FakeTicker ticker = new FakeTicker();
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter, new DIDBackend.CachePolicy()
+				.setTtl(400).setRefreshAheadHits(3).setTicker(ticker), Runnable::run);
+
+		assertNotNull(hot.getSubject().resolve());
+		assertNotNull(cold.getSubject().resolve());
+		assertEquals(2, adapter.resolves.get());
+
+		// Past three quarters of the TTL, the hot entry is reloaded ahead
+		ticker.advance(320);
+		for (int i = 0; i < 3; i++)
+			assertNotNull(hot.getSubject().resolve());
+		waitFor(adapter.resolves, 3);
+		assertEquals(3, adapter.resolves.get());
+
+		// The cold one expired, the hot one is still fresh
+		ticker.advance(120);
+		assertNotNull(hot.getSubject().resolve());
+		assertEquals(3, adapter.resolves.get());
+		assertNotNull(cold.getSubject().resolve());
+		assertEquals(4, adapter.resolves.get());
+	}
+
+	@Test
+	public void testCacheByOutcome() throws DIDException {
+		List<DIDDocument> docs = createDids(3);
+		DIDDocument deactivated = docs.get(2);
+		deactivated.deactivate(TestConfig.storePass);
+
+		List<DID> unpublished = new ArrayList<DID>();
+		for (int i = 0; i < 8; i++)
+			unpublished.add(testData.getRootIdentity().newDid(TestConfig.storePass).getSubject());
+
+		FakeTicker ticker = new FakeTicker();
+		CountingAdapter adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter, new DIDBackend.CachePolicy()
+				.setCapacity(2, 2).setNegativeCache(4, 300).setTicker(ticker));
+
+		assertNotNull(docs.get(0).getSubject().resolve());
+		assertNotNull(docs.get(1).getSubject().resolve());
+		assertTrue(deactivated.getSubject().resolve().isDeactivated());
+		assertEquals(3, adapter.resolves.get());
+
+		// The probes of the unpublished DIDs can not evict the valid ones
+		for (DID did : unpublished)
+			assertNull(did.resolve());
+		assertEquals(11, adapter.resolves.get());
+
+		assertNotNull(docs.get(0).getSubject().resolve());
+		assertNotNull(docs.get(1).getSubject().resolve());
+		assertTrue(deactivated.getSubject().resolve().isDeactivated());
+		assertNull(unpublished.get(7).resolve());
+		assertEquals(11, adapter.resolves.get());
+
+		DIDBackend.CacheStats stats = DIDBackend.getInstance().getCacheStats();
+		assertEquals(2, stats.getMissCount(DIDBackend.CacheOutcome.VALID));
+		assertEquals(8, stats.getMissCount(DIDBackend.CacheOutcome.NOT_FOUND));
+		assertEquals(1, stats.getMissCount(DIDBackend.CacheOutcome.TERMINAL));
+		assertEquals(2, stats.getHitCount(DIDBackend.CacheOutcome.VALID));
+		assertEquals(1, stats.getHitCount(DIDBackend.CacheOutcome.NOT_FOUND));
+		assertEquals(1, stats.getHitCount(DIDBackend.CacheOutcome.TERMINAL));
+		assertEquals(4, stats.getSize(DIDBackend.CacheOutcome.NOT_FOUND));
+
+		// The NOT_FOUND results expire earlier
+		ticker.advance(400);
+		assertNull(unpublished.get(7).resolve());
+		assertNotNull(docs.get(0).getSubject().resolve());
+		assertEquals(12, adapter.resolves.get());
+
+		// The legacy arguments that disable the cache disable all the outcomes
+		adapter = new CountingAdapter(DIDTestExtension.getAdapter(), false);
+		DIDBackend.initialize(adapter, 0, 0, 0);
+		for (int i = 0; i < 2; i++) {
+			assertNull(unpublished.get(0).resolve());
+			assertTrue(deactivated.getSubject().resolve().isDeactivated());
+		}
+		assertEquals(4, adapter.resolves.get());
+	}
+
+	@Test
+	public void testValidatedResultCache() throws DIDException {
+		DID did = createDids(1).get(0).getSubject();
+
+		DIDBackend.initialize(DIDTestExtension.getAdapter());
+
+		DIDDocument doc = did.resolve();
+		assertNotNull(doc);
+		assertTrue(doc.isValid());
+
+		// The warm hits share the validated document content, but each
+		// caller gets its own metadata
+		DIDDocument cached = did.resolve();
+		assertNotSame(doc, cached);
+		assertSame(doc.getProof(), cached.getProof());
+		assertEquals(doc.getMetadata().getTransactionId(),
+				cached.getMetadata().getTransactionId());
+
+		doc.getMetadata().setAlias("modified");
+		assertNull(did.resolve().getMetadata().getAlias());
+
+		// The reloaded biography is validated again
+		DIDDocument reloaded = did.resolve(true);
+		assertNotSame(doc.getProof(), reloaded.getProof());
+		assertEquals(doc.getProof().getSignature(), reloaded.getProof().getSignature());
+		assertSame(reloaded.getProof(), did.resolve().getProof());
+	}
+
+	@Test
+	public void testValidatedResultCacheInBatch() throws DIDException {
+		TestData.InstantData sd = testData.getInstantData();
+		VerifiableCredential vc = sd.getUser1PassportCredential();
+
+		// The issuer's ID transaction with a wrong signature
+		String signature = vc.getIssuer().resolveBiography()
+				.getTransaction(0).getRequest().getProof().getSignature();
+		String wrong = sd.getUser2Document().getSubject().resolveBiography()
+				.getTransaction(0).getRequest().getProof().getSignature();
+		DIDAdapter tampered = new DIDAdapter() {
+			@Override
+			public void createIdTransaction(String payload, String memo)
+					throws DIDTransactionException {
+				DIDTestExtension.getAdapter().createIdTransaction(payload, memo);
+			}
+
+			@Override
+			public InputStream resolve(String request) throws DIDResolveException {
+				try (Reader reader = new InputStreamReader(
+						DIDTestExtension.getAdapter().resolve(request), StandardCharsets.UTF_8)) {
+					String response = CharStreams.toString(reader).replace(signature, wrong);
+					return new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+				} catch (IOException e) {
+					throw new DIDResolveException(e);
+				}
+			}
+		};
+		DIDBackend.initialize(tampered);
+
+		// The transaction signature is not deferred by the batch
+		assertThrows(DIDResolveException.class, () -> {
+			VerifiableCredential.isGenuineBatch(Arrays.asList(vc));
+		});
+
+		// And not cached as validated
+		assertThrows(DIDResolveException.class, () -> {
+			vc.getIssuer().resolve();
+		});
+	}
+
+	@Test
+	public void testHttpTransport() throws DIDException {
+		List<DIDDocument> docs = createDids(3);
+
+		List<DID> dids = new ArrayList<DID>();
+		for (DIDDocument doc : docs)
+			dids.add(doc.getSubject());
+
+		// Compress all the requests, the responses are always compressed
+		DefaultHttpTransport transport = new DefaultHttpTransport()
+				.setConnectTimeout(5000).setReadTimeout(5000)
+				.setRequestCompression(true, 0);
+		DIDAdapter adapter = DIDTestExtension.getSimulatedIDChain().getAdapter(transport);
+		assertSame(transport, ((DefaultDIDAdapter)adapter).getTransport());
+		DIDBackend.initialize(adapter);
+
+		for (DIDDocument doc : docs) {
+			DIDDocument resolved = doc.getSubject().resolve(true);
+			assertNotNull(resolved);
+			assertEquals(doc.getSignature(), resolved.getSignature());
+		}
+
+		Map<DID, DIDDocument> resolved = DIDBackend.getInstance().resolveDids(dids, true);
+		for (DIDDocument doc : docs)
+			assertEquals(doc.getSignature(), resolved.get(doc.getSubject()).getSignature());
+
+		// The HTTP error does not break the later requests
+		assertThrows(NetworkException.class, () -> adapter.resolve("{}"));
+		assertNotNull(docs.get(0).getSubject().resolve(true));
+
+		assertThrows(IllegalArgumentException.class, () -> transport.setReadTimeout(-1));
+	}
+
+	@Test
+	public void testMetrics() throws DIDException {
+		List<DIDDocument> docs = createDids(2);
+		DID unpublished = testData.getRootIdentity().newDid(TestConfig.storePass).getSubject();
+
+		InMemoryMetrics metrics = new InMemoryMetrics();
+		DIDBackend.setMetrics(metrics);
+		assertSame(metrics, DIDBackend.getMetrics());
+
+		GatedAsyncAdapter adapter = new GatedAsyncAdapter(DIDTestExtension.getAdapter());
+		adapter.gate.complete(null);
+		DIDBackend.initialize(adapter);
+
+		String method = DIDResolveRequest.METHOD_NAME;
+
+		// Miss, then hit
+		assertNotNull(docs.get(0).getSubject().resolve());
+		assertNotNull(docs.get(0).getSubject().resolve());
+		assertNull(unpublished.resolve());
+
+		assertEquals(1, metrics.getCacheHitCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(2, metrics.getCacheMissCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(2, metrics.getCacheLoadCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(0, metrics.getCacheLoadFailureCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(1.0 / 3, metrics.getCacheHitRate(DIDMetrics.CACHE_RESOLVE), 0.001);
+		assertEquals(1, metrics.getResolveLatency(method, DIDMetrics.OUTCOME_VALID).getCount());
+		assertEquals(1, metrics.getResolveLatency(method, DIDMetrics.OUTCOME_NOT_FOUND).getCount());
+
+		// The adapter errors
+		adapter.fail = true;
+		assertThrows(ExecutionException.class, () -> {
+			docs.get(1).getSubject().resolveAsync().get();
+		});
+		assertEquals(1, metrics.getAdapterErrorCount(method));
+		assertEquals(1, metrics.getResolveLatency(method, DIDMetrics.OUTCOME_ERROR).getCount());
+		assertEquals(0, metrics.getInFlightRequests());
+
+		// The store cache
+		DIDStore store = testData.getStore();
+		assertTrue(store.deleteDid(unpublished));
+		long hits = metrics.getCacheHitCount(DIDMetrics.CACHE_STORE);
+		long misses = metrics.getCacheMissCount(DIDMetrics.CACHE_STORE);
+		assertNull(store.loadDid(unpublished));
+		assertEquals(misses + 1, metrics.getCacheMissCount(DIDMetrics.CACHE_STORE));
+		assertNull(store.loadDid(unpublished));
+		assertEquals(hits + 1, metrics.getCacheHitCount(DIDMetrics.CACHE_STORE));
+		assertTrue(metrics.getCacheLoadCount(DIDMetrics.CACHE_STORE) > 0);
+
+		metrics.reset();
+		assertEquals(0, metrics.getCacheHitCount(DIDMetrics.CACHE_RESOLVE));
+		assertTrue(metrics.getResolveLatencies().isEmpty());
+
+		// The batch not supported, each request completes once
+		DIDBackend.initialize(new CountingAdapter(DIDTestExtension.getAdapter(), false));
+		List<DID> dids = Arrays.asList(docs.get(0).getSubject(),
+				docs.get(1).getSubject(), unpublished);
+		DIDBackend.getInstance().resolveDids(dids);
+		assertEquals(2, metrics.getResolveLatency(method, DIDMetrics.OUTCOME_VALID).getCount());
+		assertEquals(1, metrics.getResolveLatency(method, DIDMetrics.OUTCOME_NOT_FOUND).getCount());
+		assertNull(metrics.getResolveLatency(method, DIDMetrics.OUTCOME_ERROR));
+		assertEquals(0, metrics.getInFlightRequests());
+	}
+}
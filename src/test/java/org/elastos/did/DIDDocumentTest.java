@@ -28,6 +28,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -61,6 +62,10 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.spongycastle.crypto.digests.SHA256Digest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 @ExtendWith(DIDTestExtension.class)
 public class DIDDocumentTest {
@@ -4366,4 +4371,84 @@ public class DIDDocumentTest {
     	doc = doc.getSubject().resolve();
     	assertFalse(doc.isDeactivated());
 	}
+
+    @Test
+	public void testDigestWithoutProof() throws IOException, DIDException {
+		TestData.InstantData sd = testData.getInstantData();
+
+		DIDDocument doc = sd.getUser1Document();
+		VerifiableCredential vc = sd.getUser1PassportCredential();
+		VerifiablePresentation vp = sd.getFooBarNonemptyPresentation();
+
+		// The streamed digest must match the digest of the legacy
+		// proof-less normalized JSON.
+		ObjectMapper mapper = new ObjectMapper();
+		for (DIDEntity<?> entity : Arrays.asList(doc, vc, vp)) {
+			ObjectNode node = (ObjectNode)mapper.readTree(entity.serialize(true));
+			node.remove("proof");
+			byte[] json = mapper.writeValueAsBytes(node);
+
+			SHA256Digest sha256 = new SHA256Digest();
+			sha256.update(json, 0, json.length);
+			byte[] expected = new byte[sha256.getDigestSize()];
+			sha256.doFinal(expected, 0);
+
+			assertArrayEquals(expected, entity.digestWithoutProof());
+		}
+	}
+
+    @Test
+	public void testDigestCache() throws DIDException {
+		DIDDocument doc = testData.getInstantData().getUser1Document();
+
+		byte[] digest = doc.getDigest();
+		assertSame(digest, doc.getDigest());
+		assertArrayEquals(doc.digestWithoutProof(), digest);
+
+		// Clone shares the cached digest
+		DIDDocument clone = doc.clone();
+		assertSame(digest, clone.getDigest());
+		assertTrue(clone.isValid());
+
+		// Builder edits produce a new digest
+		DIDDocument.Builder db = doc.edit();
+		db.addService("#cache", "TestCache", "https://example.com/cache");
+		DIDDocument modified = db.seal(TestConfig.storePass);
+		assertFalse(Arrays.equals(digest, modified.getDigest()));
+		assertArrayEquals(modified.digestWithoutProof(), modified.getDigest());
+		assertTrue(modified.isValid());
+
+		// The original document is not affected
+		assertSame(digest, doc.getDigest());
+		assertTrue(doc.isValid());
+	}
+
+    @Test
+	public void testIsGenuineBatch() throws DIDException {
+		TestData.InstantData sd = testData.getInstantData();
+
+		DIDDocument user1 = sd.getUser1Document();
+		DIDDocument user2 = sd.getUser2Document();
+		DIDDocument issuer = sd.getIssuerDocument();
+
+		// Same signature with a different document
+		DIDDocument tampered = DIDDocument.parse(user1.toString(true).replace(
+				user1.getProof().getSignature(), user2.getProof().getSignature()));
+		assertFalse(tampered.isGenuine());
+
+		List<DIDDocument> docs = new ArrayList<DIDDocument>();
+		for (int i = 0; i < 4; i++) {
+			docs.add(user1);
+			docs.add(user2);
+			docs.add(issuer);
+		}
+		docs.add(tampered);
+
+		boolean[] results = DIDDocument.isGenuineBatch(docs);
+		assertEquals(docs.size(), results.length);
+		for (int i = 0; i < docs.size(); i++)
+			assertEquals(docs.get(i).isGenuine(), results[i]);
+
+		assertFalse(results[results.length - 1]);
+	}
 }
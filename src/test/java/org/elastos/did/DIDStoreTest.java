@@ -33,6 +33,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -40,7 +41,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.elastos.did.exception.DIDException;
+import org.elastos.did.crypto.HDKey;
 import org.elastos.did.exception.DIDStoreException;
+import org.elastos.did.exception.DIDStoreLockedException;
 import org.elastos.did.exception.WrongPasswordException;
 import org.elastos.did.utils.DIDTestExtension;
 import org.elastos.did.utils.TestConfig;
@@ -88,47 +91,60 @@ public class DIDStoreTest {
 		return new File(relPath.toString());
 	}
 
-	@Test
-	public void testLoadRootIdentityFromEmptyStore() throws DIDException {
-		File file = getFile(".metadata");;
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+	// Run the case against the given storage, the layout independent cases
+	// run against both the file system and the log-structured storage
+	private void openStore(String type) throws DIDException {
+		testData.cleanup();
+		testData = new TestData(type.equals("log"));
+		store = testData.getStore();
+	}
+
+	// The on-disk layout is checked for the file system storage only
+	private void assertFile(String type, String ... path) {
+		if (type.equals("filesystem")) {
+			File file = getFile(path);
+			assertTrue(file.exists());
+			assertTrue(file.isFile());
+		}
+	}
+
+	private void assertNotExists(String type, String ... path) {
+		if (type.equals("filesystem"))
+			assertFalse(getFile(path).exists());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testLoadRootIdentityFromEmptyStore(String type) throws DIDException {
+		openStore(type);
+
+		assertFile(type, ".metadata");
 
 		RootIdentity identity = store.loadRootIdentity();
     	assertNull(identity);
 	}
 
-	@Test
-	public void testBulkCreate() throws DIDException {
-		File file = getFile(".metadata");;
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testBulkCreate(String type) throws DIDException {
+		openStore(type);
+
+		assertFile(type, ".metadata");
 
 		RootIdentity identity = testData.getRootIdentity();
 
-    	file = getFile("roots", identity.getId(), "mnemonic");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+    	assertFile(type, "roots", identity.getId(), "mnemonic");
 
-    	file = getFile("roots", identity.getId(), "private");;
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+    	assertFile(type, "roots", identity.getId(), "private");
 
-    	file = getFile("roots", identity.getId(), "public");;
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+    	assertFile(type, "roots", identity.getId(), "public");
 
-    	file = getFile("roots", identity.getId(), "index");;
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+    	assertFile(type, "roots", identity.getId(), "index");
 
-    	file = getFile("roots", identity.getId(), ".metadata");;
-    	assertFalse(file.exists());
+    	assertNotExists(type, "roots", identity.getId(), ".metadata");
 
     	identity.setAlias("default");
-    	file = getFile("roots", identity.getId(), ".metadata");;
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
+    	assertFile(type, "roots", identity.getId(), ".metadata");
 
     	for (int i = 0; i < 100; i++) {
     		String alias = "my did " + i;
@@ -141,13 +157,9 @@ public class DIDStoreTest {
 
         	doc.publish(TestConfig.storePass);
 
-        	file = getFile("ids", doc.getSubject().getMethodSpecificId(), "document");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", doc.getSubject().getMethodSpecificId(), "document");
 
-        	file = getFile("ids", doc.getSubject().getMethodSpecificId(), ".metadata");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", doc.getSubject().getMethodSpecificId(), ".metadata");
 
         	resolved = doc.getSubject().resolve();
         	assertNotNull(resolved);
@@ -164,8 +176,11 @@ public class DIDStoreTest {
 		assertEquals(100, dids.size());
 	}
 
-	@Test
-	public void testDeleteDID() throws DIDException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testDeleteDID(String type) throws DIDException {
+		openStore(type);
+
 		RootIdentity identity = testData.getRootIdentity();
 
     	// Create test DIDs
@@ -187,8 +202,7 @@ public class DIDStoreTest {
     		boolean deleted = store.deleteDid(did);
     		assertTrue(deleted);
 
-	    	File file = getFile("ids", did.getMethodSpecificId());
-	    	assertFalse(file.exists());
+	    	assertNotExists(type, "ids", did.getMethodSpecificId());
 
     		deleted = store.deleteDid(did);
     		assertFalse(deleted);
@@ -198,32 +212,27 @@ public class DIDStoreTest {
 		assertEquals(80, remains.size());
 	}
 
-	@Test
-	public void testStoreAndLoadDID() throws DIDException, IOException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testStoreAndLoadDID(String type) throws DIDException, IOException {
+		openStore(type);
+
     	// Store test data into current store
     	DIDDocument issuer = testData.getInstantData().getIssuerDocument();
 
-    	File file = getFile("ids", issuer.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", issuer.getSubject().getMethodSpecificId(),
     			"document");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", issuer.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", issuer.getSubject().getMethodSpecificId(),
     			".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	DIDDocument test = testData.getInstantData().getUser1Document();
 
-    	file = getFile("ids", test.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", test.getSubject().getMethodSpecificId(),
     			"document");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", test.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", test.getSubject().getMethodSpecificId(),
     			".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	DIDDocument doc = store.loadDid(issuer.getSubject());
     	assertEquals(issuer.getSubject(), doc.getSubject());
@@ -239,8 +248,11 @@ public class DIDStoreTest {
 		assertEquals(2, dids.size());
 	}
 
-	@Test
-	public void testLoadCredentials() throws DIDException, IOException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testLoadCredentials(String type) throws DIDException, IOException {
+		openStore(type);
+
     	// Store test data into current store
     	testData.getInstantData().getIssuerDocument();
     	DIDDocument user = testData.getInstantData().getUser1Document();
@@ -248,54 +260,38 @@ public class DIDStoreTest {
     	VerifiableCredential vc = user.getCredential("#profile");
     	vc.getMetadata().setAlias("MyProfile");
 
-    	File file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), "credential");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), ".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	vc = user.getCredential("#email");
       	vc.getMetadata().setAlias("Email");
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), "credential");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), ".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	vc = testData.getInstantData().getUser1TwitterCredential();
     	vc.getMetadata().setAlias("Twitter");
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), "credential");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), ".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	vc = testData.getInstantData().getUser1PassportCredential();
     	vc.getMetadata().setAlias("Passport");
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), "credential");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", vc.getId().getDid().getMethodSpecificId(),
+    	assertFile(type, "ids", vc.getId().getDid().getMethodSpecificId(),
     			"credentials", "#" + vc.getId().getFragment(), ".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	DIDURL id = new DIDURL(user.getSubject(), "#profile");
     	vc = store.loadCredential(id);
@@ -329,8 +325,11 @@ public class DIDStoreTest {
 		assertFalse(store.containsCredential(new DIDURL(user.getSubject(), "#notExists")));
 	}
 
-	@Test
-	public void testListCredentials() throws DIDException, IOException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testListCredentials(String type) throws DIDException, IOException {
+		openStore(type);
+
     	testData.getRootIdentity();
 
     	// Store test data into current store
@@ -361,8 +360,11 @@ public class DIDStoreTest {
 		}
 	}
 
-	@Test
-	public void testDeleteCredential() throws DIDException, IOException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testDeleteCredential(String type) throws DIDException, IOException {
+		openStore(type);
+
     	// Store test data into current store
 		testData.getInstantData().getIssuerDocument();
 		DIDDocument user = testData.getInstantData().getUser1Document();
@@ -376,25 +378,17 @@ public class DIDStoreTest {
     	vc.getMetadata().setAlias("Passport");
 
 
-    	File file = getFile("ids", user.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", user.getSubject().getMethodSpecificId(),
     			"credentials", "#twitter", "credential");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", user.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", user.getSubject().getMethodSpecificId(),
     			"credentials", "#twitter", ".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", user.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", user.getSubject().getMethodSpecificId(),
     			"credentials", "#passport", "credential");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
-    	file = getFile("ids", user.getSubject().getMethodSpecificId(),
+    	assertFile(type, "ids", user.getSubject().getMethodSpecificId(),
     			"credentials", "#passport", ".metadata");
-    	assertTrue(file.exists());
-    	assertTrue(file.isFile());
 
     	boolean deleted = store.deleteCredential(new DIDURL(user.getSubject(), "#twitter"));
 		assertTrue(deleted);
@@ -405,13 +399,11 @@ public class DIDStoreTest {
 		deleted = store.deleteCredential(user.getSubject().toString() + "#notExist");
 		assertFalse(deleted);
 
-    	file = getFile("ids", user.getSubject().getMethodSpecificId(),
+    	assertNotExists(type, "ids", user.getSubject().getMethodSpecificId(),
     			"credentials", "#twitter");
-    	assertFalse(file.exists());
 
-    	file = getFile("ids", user.getSubject().getMethodSpecificId(),
+    	assertNotExists(type, "ids", user.getSubject().getMethodSpecificId(),
     			"credentials", "#passport");
-    	assertFalse(file.exists());
 
 		assertTrue(store.containsCredential(new DIDURL(user.getSubject(), "#email")));
 		assertTrue(store.containsCredential(user.getSubject().toString() + "#profile"));
@@ -420,8 +412,11 @@ public class DIDStoreTest {
 		assertFalse(store.containsCredential(user.getSubject().toString() + "#passport"));
 	}
 
-	@Test
-	public void testSynchronizeStore() throws DIDException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testSynchronizeStore(String type) throws DIDException {
+		openStore(type);
+
 		RootIdentity identity = testData.getRootIdentity();
 
 		for (int i = 0; i < 5; i++) {
@@ -541,8 +536,11 @@ public class DIDStoreTest {
 	// NOTICE:
 	// This case try to reproduce the errors from Elastos Essential.
 	// Caused by resolved metadata will overwrite the local metadata.
-	@Test
-	public void testSyncThenResolveThenUpdate3() throws DIDException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testSyncThenResolveThenUpdate3(String type) throws DIDException {
+		openStore(type);
+
 		RootIdentity identity = testData.getRootIdentity();
 
 		// Create DID
@@ -582,8 +580,11 @@ public class DIDStoreTest {
 		assertNotNull(doc.getService("#test"));
 	}
 
-	@Test
-	public void testChangePassword() throws DIDException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testChangePassword(String type) throws DIDException {
+		openStore(type);
+
     	RootIdentity identity = testData.getRootIdentity();
 
 		for (int i = 0; i < 10; i++) {
@@ -597,17 +598,11 @@ public class DIDStoreTest {
 
         	doc.publish(TestConfig.storePass);
 
-        	File file = getFile("ids", doc.getSubject().getMethodSpecificId(), "document");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", doc.getSubject().getMethodSpecificId(), "document");
 
-        	file = getFile("ids", doc.getSubject().getMethodSpecificId(), ".metadata");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", doc.getSubject().getMethodSpecificId(), ".metadata");
 
-        	file = getFile("ids", doc.getSubject().getMethodSpecificId(), "privatekeys", "#primary");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", doc.getSubject().getMethodSpecificId(), "privatekeys", "#primary");
 
         	resolved = doc.getSubject().resolve();
         	assertNotNull(resolved);
@@ -635,17 +630,11 @@ public class DIDStoreTest {
         	assertNotNull(doc);
         	assertTrue(doc.isValid());
 
-        	File file = getFile("ids", did.getMethodSpecificId(), "document");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", did.getMethodSpecificId(), "document");
 
-        	file = getFile("ids", did.getMethodSpecificId(), ".metadata");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", did.getMethodSpecificId(), ".metadata");
 
-        	file = getFile("ids", did.getMethodSpecificId(), "privatekeys", "#primary");
-        	assertTrue(file.exists());
-        	assertTrue(file.isFile());
+        	assertFile(type, "ids", did.getMethodSpecificId(), "privatekeys", "#primary");
 
         	assertEquals(alias, doc.getMetadata().getAlias());
     	}
@@ -654,8 +643,11 @@ public class DIDStoreTest {
 		assertNotNull(doc);
 	}
 
-	@Test
-	public void testChangePasswordWithWrongPassword() throws DIDException {
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testChangePasswordWithWrongPassword(String type) throws DIDException {
+		openStore(type);
+
 		RootIdentity identity = testData.getRootIdentity();
 
 		for (int i = 0; i < 10; i++) {
@@ -673,6 +665,137 @@ public class DIDStoreTest {
 		});
 	}
 
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testUnlockSession(String type) throws DIDException, InterruptedException {
+		openStore(type);
+
+		RootIdentity identity = testData.getRootIdentity();
+		DIDDocument doc = identity.newDid(TestConfig.storePass);
+
+		assertThrows(WrongPasswordException.class, () -> {
+			store.unlock("wrongpasswd", 0);
+		});
+
+		byte[] digest = new byte[32];
+		Arrays.fill(digest, (byte)1);
+
+		try (DIDStore.Session session = store.unlock(TestConfig.storePass, 0)) {
+			assertTrue(session.isUnlocked());
+
+			String sig = doc.signDigest(session, digest);
+			assertTrue(doc.verifyDigest(sig, digest));
+			assertEquals(doc.signDigest(TestConfig.storePass, digest), sig);
+
+			sig = doc.sign(session, "hello".getBytes());
+			assertTrue(doc.verify(sig, "hello".getBytes()));
+
+			// Seal the documents, credentials and presentations by session
+			DIDDocument.Builder db = doc.edit();
+			db.addService("#session", "SessionService", "https://example.com/session");
+			DIDDocument sealed = db.seal(session);
+			assertTrue(sealed.isValid());
+			store.storeDid(sealed);
+			sealed.publish(TestConfig.storePass);
+
+			Issuer issuer = new Issuer(sealed);
+			VerifiableCredential vc = issuer.issueFor(sealed.getSubject())
+					.id("#session")
+					.type("SelfProclaimedCredential")
+					.property("name", "Session")
+					.seal(session);
+			assertTrue(vc.isValid());
+
+			VerifiablePresentation vp = VerifiablePresentation.createFor(
+					sealed.getSubject(), store)
+					.credentials(vc)
+					.realm("https://example.com/")
+					.nonce("session")
+					.seal(session);
+			assertTrue(vp.isValid());
+
+			// Private key stored by session, loaded by password
+			HDKey key = TestData.generateKeypair();
+			DIDURL id = new DIDURL(doc.getSubject(), "#session");
+			store.storePrivateKey(id, key.serialize(), session);
+			assertArrayEquals(key.serialize(),
+					store.loadPrivateKey(id, TestConfig.storePass));
+
+			session.close();
+			assertFalse(session.isUnlocked());
+			assertThrows(DIDStoreLockedException.class, () -> {
+				doc.signDigest(session, digest);
+			});
+		}
+
+		DIDStore.Session session = store.unlock(TestConfig.storePass, 200);
+		assertTrue(session.isUnlocked());
+		doc.signDigest(session, digest);
+		Thread.sleep(400);
+		assertFalse(session.isUnlocked());
+		assertThrows(DIDStoreLockedException.class, () -> {
+			doc.signDigest(session, digest);
+		});
+
+		// Changing the password locks all sessions
+		DIDStore.Session s = store.unlock(TestConfig.storePass, 0);
+		store.changePassword(TestConfig.storePass, "newpasswd");
+		assertFalse(s.isUnlocked());
+	}
+
+	@Test
+	public void testKeyCache() throws DIDException, InterruptedException {
+		RootIdentity identity = testData.getRootIdentity();
+		DID did = identity.newDid(TestConfig.storePass).getSubject();
+
+		byte[] digest = new byte[32];
+		Arrays.fill(digest, (byte)1);
+
+		DIDStore keyStore = DIDStore.open(TestConfig.storeRoot, 16, 128, 8, 300);
+		try {
+			DIDDocument doc = keyStore.loadDid(did);
+
+			String sig = doc.signDigest(TestConfig.storePass, digest);
+			assertTrue(doc.verifyDigest(sig, digest));
+			assertEquals(0, keyStore.getKeyCacheHitCount());
+			assertEquals(1, keyStore.getKeyCacheMissCount());
+
+			for (int i = 0; i < 10; i++) {
+				sig = doc.signDigest(TestConfig.storePass, digest);
+				assertTrue(doc.verifyDigest(sig, digest));
+			}
+			assertEquals(10, keyStore.getKeyCacheHitCount());
+			assertEquals(1, keyStore.getKeyCacheMissCount());
+
+			// The cached key still requires the correct password
+			assertThrows(WrongPasswordException.class, () -> {
+				doc.signDigest("wrongpasswd", digest);
+			});
+
+			try (DIDStore.Session session = keyStore.unlock(TestConfig.storePass, 0)) {
+				sig = doc.signDigest(session, digest);
+				assertTrue(doc.verifyDigest(sig, digest));
+				assertEquals(11, keyStore.getKeyCacheHitCount());
+			}
+
+			// Expired
+			Thread.sleep(500);
+			sig = doc.signDigest(TestConfig.storePass, digest);
+			assertTrue(doc.verifyDigest(sig, digest));
+			assertEquals(11, keyStore.getKeyCacheHitCount());
+			assertEquals(2, keyStore.getKeyCacheMissCount());
+
+			// Changing the password wipes the cached keys
+			keyStore.changePassword(TestConfig.storePass, "newpasswd");
+			sig = doc.signDigest("newpasswd", digest);
+			assertTrue(doc.verifyDigest(sig, digest));
+			assertEquals(11, keyStore.getKeyCacheHitCount());
+			assertEquals(3, keyStore.getKeyCacheMissCount());
+		} finally {
+			keyStore.close();
+		}
+	}
+
     @ParameterizedTest
     @ValueSource(ints = {1, 2})
 	public void testCompatibility(int version) throws DIDException, IOException {
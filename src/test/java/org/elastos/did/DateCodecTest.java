@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+public class DateCodecTest {
+	// 1583-01-01 to 9999-12-31
+	private static final long MIN_TIME = -12212553600000L;
+	private static final long MAX_TIME = 253402300799000L;
+
+	private static SimpleDateFormat getFormat(String pattern) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(Constants.UTC);
+		return format;
+	}
+
+	private static long randomTime(Random rnd) {
+		return MIN_TIME + (long)(rnd.nextDouble() * (MAX_TIME - MIN_TIME));
+	}
+
+	@Test
+	public void testFormat() {
+		SimpleDateFormat format = getFormat(Constants.DATE_FORMAT);
+		Random rnd = new Random(20201017);
+
+		long[] times = { 0, -1, 1, 999, 1000, MIN_TIME, MAX_TIME,
+				951782400000L, 4107542399999L, 1609459199999L };
+		for (long time : times) {
+			Date date = new Date(time);
+			assertEquals(format.format(date), DateCodec.format(date));
+		}
+
+		for (int i = 0; i < 100000; i++) {
+			Date date = new Date(randomTime(rnd));
+			assertEquals(format.format(date), DateCodec.format(date));
+		}
+	}
+
+	@Test
+	public void testFormatOutOfRange() {
+		SimpleDateFormat format = getFormat(Constants.DATE_FORMAT);
+
+		long[] times = { MIN_TIME - 1, MAX_TIME + 1000, -62135596800000L,
+				-100000000000000L, 300000000000000L };
+		for (long time : times) {
+			Date date = new Date(time);
+			assertEquals(format.format(date), DateCodec.format(date));
+		}
+	}
+
+	@Test
+	public void testParse() throws ParseException {
+		SimpleDateFormat format = getFormat(Constants.DATE_FORMAT);
+		SimpleDateFormat isoFormat = getFormat(Constants.DATE_FORMAT_ISO_8601);
+		Random rnd = new Random(20201017);
+
+		for (int i = 0; i < 100000; i++) {
+			Date date = new Date(randomTime(rnd));
+
+			String str = format.format(date);
+			assertEquals(format.parse(str), DateCodec.parse(str));
+
+			str = isoFormat.format(date);
+			assertEquals(date, DateCodec.parse(str));
+		}
+	}
+
+	@Test
+	public void testParseLenient() throws ParseException {
+		SimpleDateFormat format = getFormat(Constants.DATE_FORMAT);
+
+		// Not in the strict form, same results as SimpleDateFormat
+		String[] strs = { "2021-1-2T3:4:5Z", "2021-02-30T00:00:00Z",
+				"2021-12-31T24:00:00Z", "1000-06-01T00:00:00Z",
+				"10000-01-01T00:00:00Z", "2021-01-01T00:00:00Zfoo" };
+		for (String str : strs)
+			assertEquals(format.parse(str), DateCodec.parse(str));
+
+		assertEquals(new Date(1609459200123L),
+				DateCodec.parse("2021-01-01T00:00:00.123Z"));
+	}
+
+	@Test
+	public void testParseError() {
+		String[] strs = { "", "abc", "2021-01-01 00:00:00", "2021/01/01T00:00:00Z",
+				"2021-01-01T00:00:00.12xZ" };
+		for (String str : strs) {
+			assertThrows(ParseException.class, () -> {
+				DateCodec.parse(str);
+			});
+		}
+	}
+
+	@Test
+	public void testConcurrency() throws Exception {
+		final int THREADS = 8;
+		final int ROUNDS = 20000;
+
+		JsonFactory factory = new JsonFactory();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < THREADS; t++) {
+				long seed = t;
+				results.add(executor.submit(() -> {
+					SimpleDateFormat format = getFormat(Constants.DATE_FORMAT);
+					Random rnd = new Random(seed);
+
+					for (int i = 0; i < ROUNDS; i++) {
+						Date date = new Date(randomTime(rnd) / 1000 * 1000);
+						String expected = format.format(date);
+
+						assertEquals(expected, DateCodec.format(date));
+						assertEquals(date, DateCodec.parse(expected));
+
+						StringWriter out = new StringWriter();
+						JsonGenerator gen = factory.createGenerator(out);
+						DateCodec.write(date, gen);
+						gen.close();
+						assertEquals("\"" + expected + "\"", out.toString());
+					}
+
+					return ROUNDS;
+				}));
+			}
+
+			for (Future<Integer> result : results)
+				assertEquals(ROUNDS, result.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.exception.DIDStoreException;
+import org.elastos.did.exception.WrongPasswordException;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(DIDTestExtension.class)
+public class InMemoryStorageTest {
+	private static Map<String, String> snapshot(DIDStore store) throws DIDException {
+		Map<String, String> objects = new HashMap<String, String>();
+
+		for (DID did : store.listDids()) {
+			DIDDocument doc = store.loadDid(did);
+			objects.put(did.toString(), doc.toString(true));
+			objects.put(did.toString() + "#metadata",
+					store.loadDidMetadata(did).serialize());
+
+			for (DIDDocument.PublicKey pk : doc.getPublicKeys())
+				objects.put(pk.getId().toString() + "#sk",
+						String.valueOf(store.containsPrivateKey(pk.getId())));
+		}
+
+		return objects;
+	}
+
+	@Test
+	public void testStoreOperations() throws DIDException {
+		DIDStore store = DIDStore.openInMemory();
+		assertFalse(store.containsRootIdentities());
+
+		String mnemonic = Mnemonic.getInstance().generate();
+		RootIdentity identity = RootIdentity.create(mnemonic, TestConfig.passphrase,
+				true, store, TestConfig.storePass);
+		assertTrue(store.containsRootIdentities());
+		assertEquals(1, store.listRootIdentities().size());
+		assertEquals(mnemonic, identity.exportMnemonic(TestConfig.storePass));
+
+		List<DID> dids = new ArrayList<DID>();
+		for (int i = 0; i < 10; i++) {
+			DIDDocument doc = identity.newDid(TestConfig.storePass);
+			doc.getMetadata().setAlias("Alias-" + i);
+			dids.add(doc.getSubject());
+		}
+
+		assertEquals(10, store.listDids().size());
+		assertTrue(store.containsPrivateKeys(dids.get(0)));
+		assertTrue(store.deleteDid(dids.get(9)));
+		assertFalse(store.deleteDid(dids.get(9)));
+		assertEquals(9, store.listDids().size());
+		assertNull(store.loadDid(dids.get(9)));
+		assertEquals("Alias-3", store.loadDid(dids.get(3)).getMetadata().getAlias());
+
+		store.changePassword(TestConfig.storePass, "newpasswd");
+		DIDDocument doc = store.loadDid(dids.get(0));
+		byte[] data = "Hello World".getBytes();
+		String sig = doc.sign("newpasswd", data);
+		assertTrue(doc.verify(sig, data));
+
+		DIDDocument d = doc;
+		assertThrows(WrongPasswordException.class, () -> {
+			d.sign(TestConfig.storePass, data);
+		});
+
+		store.close();
+	}
+
+	@Test
+	public void testSnapshot() throws DIDException {
+		DIDStore store = DIDStore.openInMemory();
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+		for (int i = 0; i < 5; i++) {
+			DIDDocument doc = identity.newDid(TestConfig.storePass);
+			doc.getMetadata().setAlias("Alias-" + i);
+		}
+
+		Map<String, String> objects = snapshot(store);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		store.writeSnapshot(out);
+		store.close();
+
+		store = DIDStore.openInMemory(new ByteArrayInputStream(out.toByteArray()));
+		assertEquals(objects, snapshot(store));
+
+		// The restored store works as the original one
+		DIDDocument doc = store.loadRootIdentity().newDid(TestConfig.storePass);
+		byte[] data = "Hello World".getBytes();
+		String sig = doc.sign(TestConfig.storePass, data);
+		assertTrue(doc.verify(sig, data));
+		assertEquals(6, store.listDids().size());
+		store.close();
+
+		assertThrows(DIDStoreException.class, () -> {
+			DIDStore.openInMemory(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+		});
+
+		// The entry length is checked before allocating
+		ByteBuffer header = ByteBuffer.allocate(16);
+		header.putInt(0x44494D53).putInt(1).putInt(1).putInt(Integer.MAX_VALUE);
+		assertThrows(DIDStoreException.class, () -> {
+			DIDStore.openInMemory(new ByteArrayInputStream(header.array()));
+		});
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception {
+		DIDStore store = DIDStore.openInMemory();
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+
+		int threads = 8;
+		int perThread = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				int base = t * perThread;
+				futures.add(executor.submit(() -> {
+					for (int i = base; i < base + perThread; i++) {
+						DIDDocument doc = identity.newDid(i, TestConfig.storePass);
+						doc.getMetadata().setAlias("Alias-" + i);
+						store.listDids();
+					}
+
+					return null;
+				}));
+			}
+
+			for (Future<?> f : futures)
+				f.get();
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(threads * perThread, store.listDids().size());
+		for (int i = 0; i < threads * perThread; i++) {
+			DID did = identity.getDid(i);
+			assertEquals("Alias-" + i, store.loadDid(did).getMetadata().getAlias());
+			assertTrue(store.containsPrivateKeys(did));
+		}
+
+		store.close();
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.exception.WrongPasswordException;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.TestData;
+import org.elastos.did.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@ExtendWith(DIDTestExtension.class)
+public class LogStructuredStorageTest {
+	private TestData testData;
+	private File storeDir;
+
+	@BeforeEach
+	public void beforeEach() throws DIDException {
+		testData = new TestData();
+		storeDir = new File(TestConfig.tempDir, "DIDStoreLog");
+		Utils.deleteFile(storeDir);
+	}
+
+	@AfterEach
+	public void afterEach() {
+		testData.cleanup();
+		Utils.deleteFile(storeDir);
+	}
+
+	private static Map<String, String> snapshot(DIDStore store) throws DIDException {
+		Map<String, String> objects = new HashMap<String, String>();
+
+		for (DID did : store.listDids()) {
+			DIDDocument doc = store.loadDid(did);
+			objects.put(did.toString(), doc != null ? doc.toString(true) : null);
+			objects.put(did.toString() + "#metadata",
+					store.loadDidMetadata(did).serialize());
+
+			List<DIDURL> vcs = store.listCredentials(did);
+			for (DIDURL id : vcs)
+				objects.put(id.toString(), store.loadCredential(id).toString(true));
+
+			if (doc != null) {
+				for (DIDDocument.PublicKey pk : doc.getPublicKeys())
+					objects.put(pk.getId().toString() + "#sk",
+							String.valueOf(store.containsPrivateKey(pk.getId())));
+			}
+		}
+
+		return objects;
+	}
+
+	@Test
+	public void testStoreOperations() throws DIDException {
+		DIDStore store = DIDStore.openLogStructured(storeDir);
+		assertTrue(new File(storeDir, LogStructuredStorage.LOG_FILE).isFile());
+		assertFalse(store.containsRootIdentities());
+
+		String mnemonic = Mnemonic.getInstance().generate();
+		RootIdentity identity = RootIdentity.create(mnemonic, TestConfig.passphrase,
+				true, store, TestConfig.storePass);
+		assertTrue(store.containsRootIdentities());
+		assertEquals(1, store.listRootIdentities().size());
+		assertEquals(mnemonic, identity.exportMnemonic(TestConfig.storePass));
+
+		List<DID> dids = new ArrayList<DID>();
+		for (int i = 0; i < 10; i++) {
+			DIDDocument doc = identity.newDid(TestConfig.storePass);
+			doc.getMetadata().setAlias("Alias-" + i);
+			dids.add(doc.getSubject());
+		}
+
+		assertEquals(10, store.listDids().size());
+		assertTrue(store.containsPrivateKeys(dids.get(0)));
+		assertTrue(store.deleteDid(dids.get(9)));
+		assertFalse(store.deleteDid(dids.get(9)));
+		assertEquals(9, store.listDids().size());
+		assertNull(store.loadDid(dids.get(9)));
+
+		Map<String, String> objects = snapshot(store);
+		store.close();
+
+		// Reopen by the default open method
+		store = DIDStore.open(storeDir);
+		assertEquals(objects, snapshot(store));
+		assertEquals("Alias-3", store.loadDid(dids.get(3)).getMetadata().getAlias());
+
+		store.changePassword(TestConfig.storePass, "newpasswd");
+		DIDDocument doc = store.loadDid(dids.get(0));
+		byte[] data = "Hello World".getBytes();
+		String sig = doc.sign("newpasswd", data);
+		assertTrue(doc.verify(sig, data));
+
+		DIDDocument d = doc;
+		assertThrows(WrongPasswordException.class, () -> {
+			d.sign(TestConfig.storePass, data);
+		});
+
+		store.close();
+	}
+
+	@Test
+	public void testMigration() throws DIDException, IOException {
+		TestData.InstantData sd = testData.getInstantData();
+		sd.getUser1PassportCredential();
+		sd.getUser1TwitterCredential();
+		sd.getUser1JsonCredential();
+		sd.getUser2Document();
+
+		Map<String, String> objects = snapshot(testData.getStore());
+
+		File storeRoot = new File(TestConfig.storeRoot);
+		DIDStore store = DIDStore.openLogStructured(storeRoot);
+		assertTrue(new File(storeRoot, LogStructuredStorage.LOG_FILE).isFile());
+		assertFalse(new File(storeRoot, "data").exists());
+		assertEquals(objects, snapshot(store));
+
+		DIDDocument doc = store.loadDid(sd.getUser1Document().getSubject());
+		byte[] data = "Hello World".getBytes();
+		String sig = doc.sign(TestConfig.storePass, data);
+		assertTrue(doc.verify(sig, data));
+		store.close();
+
+		// The migrated store opens as log-structured
+		store = DIDStore.open(storeRoot);
+		assertEquals(objects, snapshot(store));
+		store.close();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 2})
+	public void testMigrateCompatibleStore(int version) throws DIDException, IOException {
+		Path src = testData.getCompatibleData(version).getStoreDir().toPath();
+		try (Stream<Path> files = Files.walk(src)) {
+			for (Path file : (Iterable<Path>)files::iterator)
+				Files.copy(file, storeDir.toPath().resolve(src.relativize(file)));
+		}
+
+		DIDStore store = DIDStore.open(storeDir);
+		Map<String, String> objects = snapshot(store);
+		store.close();
+
+		store = DIDStore.openLogStructured(storeDir);
+		assertEquals(version == 2 ? 10 : 4, store.listDids().size());
+		assertEquals(objects, snapshot(store));
+
+		DIDDocument doc = store.loadRootIdentity().newDid(TestConfig.storePass);
+		byte[] data = "Hello World".getBytes();
+		String sig = doc.sign(TestConfig.storePass, data);
+		assertTrue(doc.verify(sig, data));
+		store.close();
+	}
+
+	@Test
+	public void testCompaction() throws DIDException, IOException {
+		DIDDocument doc = testData.getRootIdentity().newDid(TestConfig.storePass);
+
+		LogStructuredStorage storage = new LogStructuredStorage(storeDir);
+		storage.storeDid(doc);
+		for (int i = 0; i < 2000; i++) {
+			DIDMetadata metadata = new DIDMetadata();
+			metadata.setAlias("Alias-" + i);
+			storage.storeDidMetadata(doc.getSubject(), metadata);
+		}
+
+		long size = storage.getLogSize();
+		storage.compact();
+		assertTrue(storage.getLogSize() < size / 10);
+		assertEquals(doc.toString(true), storage.loadDid(doc.getSubject()).toString(true));
+		assertEquals("Alias-1999", storage.loadDidMetadata(doc.getSubject()).getAlias());
+		assertEquals(Collections.singletonList(doc.getSubject()), storage.listDids());
+		storage.close();
+
+		storage = new LogStructuredStorage(storeDir);
+		assertEquals("Alias-1999", storage.loadDidMetadata(doc.getSubject()).getAlias());
+		storage.close();
+	}
+
+	@Test
+	public void testIncompleteWrite() throws DIDException, IOException {
+		DIDDocument doc = testData.getRootIdentity().newDid(TestConfig.storePass);
+
+		LogStructuredStorage storage = new LogStructuredStorage(storeDir);
+		storage.storeDid(doc);
+		storage.close();
+
+		// A torn frame at the end of the log
+		File log = new File(storeDir, LogStructuredStorage.LOG_FILE);
+		long length = log.length();
+		try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+			file.seek(length);
+			file.write(new byte[] { 0x4C, 0x4F, 0x47, 0x46, 0, 0, 0x10, 0, 1, 2, 3 });
+		}
+
+		storage = new LogStructuredStorage(storeDir);
+		assertEquals(length, log.length());
+		assertEquals(doc.toString(true), storage.loadDid(doc.getSubject()).toString(true));
+
+		DIDMetadata metadata = new DIDMetadata();
+		metadata.setAlias("Alias");
+		storage.storeDidMetadata(doc.getSubject(), metadata);
+		assertEquals("Alias", storage.loadDidMetadata(doc.getSubject()).getAlias());
+		storage.close();
+	}
+}
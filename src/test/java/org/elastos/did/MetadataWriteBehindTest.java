@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.exception.UncheckedDIDStoreException;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.TestData;
+import org.elastos.did.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@ExtendWith(DIDTestExtension.class)
+public class MetadataWriteBehindTest {
+	private TestData testData;
+	private File dir;
+
+	@BeforeEach
+	public void beforeEach() throws DIDException {
+		testData = new TestData();
+		dir = new File(TestConfig.storeRoot + "-writebehind");
+		Utils.deleteFile(dir);
+	}
+
+	@AfterEach
+	public void afterEach() {
+		testData.cleanup();
+		Utils.deleteFile(dir);
+	}
+
+	private DIDStore openStore(String type) throws DIDException {
+		return type.equals("log") ? DIDStore.openLogStructured(dir) : DIDStore.open(dir);
+	}
+
+	private DIDDocument newDid(DIDStore store) throws DIDException {
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+		return identity.newDid(TestConfig.storePass);
+	}
+
+	private long logSize() {
+		return new File(dir, LogStructuredStorage.LOG_FILE).length();
+	}
+
+	@Test
+	public void testCoalescedWrites() throws DIDException {
+		DIDStore store = openStore("log");
+		DIDDocument doc = newDid(store);
+
+		store.enableMetadataWriteBehind(0);
+		assertTrue(store.isMetadataWriteBehind());
+
+		long size = logSize();
+		for (int i = 0; i < 10; i++) {
+			doc.getMetadata().setAlias("Alias-" + i);
+			doc.getMetadata().setExtra("round", i);
+		}
+
+		// Nothing written, but visible to the store
+		assertEquals(size, logSize());
+		assertEquals("Alias-9", store.loadDid(doc.getSubject()).getMetadata().getAlias());
+		assertEquals("Alias-9", store.listDids().get(0).getMetadata().getAlias());
+
+		store.flush();
+		long flushed = logSize();
+		assertTrue(flushed > size);
+
+		// Flush again writes nothing
+		store.flush();
+		assertEquals(flushed, logSize());
+
+		store.close();
+		store = openStore("log");
+		DIDMetadata metadata = store.loadDid(doc.getSubject()).getMetadata();
+		assertEquals("Alias-9", metadata.getAlias());
+		assertEquals(9, metadata.getExtraInteger("round", -1));
+		assertFalse(store.isMetadataWriteBehind());
+		store.close();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"filesystem", "log"})
+	public void testCloseFlushes(String type) throws DIDException {
+		DIDStore store = openStore(type);
+		DIDDocument doc = newDid(store);
+
+		store.enableMetadataWriteBehind(0);
+		doc.getMetadata().setAlias("Alias");
+
+		store.close();
+		store = openStore(type);
+		assertEquals("Alias", store.loadDid(doc.getSubject()).getMetadata().getAlias());
+		store.close();
+	}
+
+	@Test
+	public void testCloseFlushFailure() throws DIDException, IOException {
+		DIDStore store = openStore("filesystem");
+		DIDDocument doc = newDid(store);
+
+		store.enableMetadataWriteBehind(0);
+		doc.getMetadata().setAlias("Alias");
+
+		// The store root is replaced by a file, the flush fails
+		File moved = new File(dir.getPath() + ".moved");
+		Utils.deleteFile(moved);
+		assertTrue(dir.renameTo(moved));
+		assertTrue(dir.createNewFile());
+
+		UncheckedDIDStoreException e = assertThrows(UncheckedDIDStoreException.class, () -> {
+			store.close();
+		});
+		assertNotNull(e.getCause());
+
+		// Still open with the update pending, the retry succeeds
+		assertTrue(dir.delete());
+		assertTrue(moved.renameTo(dir));
+		store.close();
+
+		DIDStore reopened = openStore("filesystem");
+		assertEquals("Alias", reopened.loadDidMetadata(doc.getSubject()).getAlias());
+		reopened.close();
+	}
+
+	@Test
+	public void testBackgroundFlusher() throws Exception {
+		DIDStore store = openStore("log");
+		DIDDocument doc = newDid(store);
+
+		store.enableMetadataWriteBehind(50);
+		long size = logSize();
+		doc.getMetadata().setAlias("Alias");
+
+		for (int i = 0; i < 100 && logSize() == size; i++)
+			Thread.sleep(50);
+		assertTrue(logSize() > size);
+
+		store.close();
+	}
+
+	@Test
+	public void testDisableFlushes() throws DIDException {
+		DIDStore store = openStore("log");
+		DIDDocument doc = newDid(store);
+
+		store.enableMetadataWriteBehind(0);
+		long size = logSize();
+		doc.getMetadata().setAlias("Alias");
+		assertEquals(size, logSize());
+
+		store.disableMetadataWriteBehind();
+		assertFalse(store.isMetadataWriteBehind());
+		assertTrue(logSize() > size);
+
+		// Written through again
+		size = logSize();
+		doc.getMetadata().setAlias("Alias-2");
+		assertTrue(logSize() > size);
+
+		store.close();
+	}
+
+	@Test
+	public void testDeleteDropsPending() throws DIDException {
+		DIDStore store = openStore("filesystem");
+		DIDDocument doc = newDid(store);
+
+		store.enableMetadataWriteBehind(0);
+		doc.getMetadata().setAlias("Alias");
+		assertTrue(store.deleteDid(doc.getSubject()));
+
+		store.close();
+		store = openStore("filesystem");
+		assertNull(store.loadDid(doc.getSubject()));
+		assertEquals(0, store.listDids().size());
+		store.close();
+	}
+
+	@Test
+	public void testFlushRacesDelete() throws Exception {
+		DIDStore store = openStore("filesystem");
+		RootIdentity identity = RootIdentity.create(Mnemonic.getInstance().generate(),
+				TestConfig.passphrase, true, store, TestConfig.storePass);
+		List<DIDDocument> docs = new ArrayList<DIDDocument>();
+		for (int i = 0; i < 20; i++)
+			docs.add(identity.newDid(TestConfig.storePass));
+
+		store.enableMetadataWriteBehind(0);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			for (DIDDocument doc : docs) {
+				doc.getMetadata().setAlias("Alias");
+
+				DIDStore s = store;
+				Future<?> flush = executor.submit(() -> {
+					s.flush();
+					return null;
+				});
+				assertTrue(store.deleteDid(doc.getSubject()));
+				flush.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// The flush never recreates the metadata of a deleted DID
+		store.close();
+		store = openStore("filesystem");
+		assertEquals(0, store.listDids().size());
+		store.close();
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.exception.DIDResolveException;
+import org.elastos.did.exception.DIDTransactionException;
+import org.elastos.did.exception.NetworkException;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.TestData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(DIDTestExtension.class)
+public class MultiEndpointDIDAdapterTest {
+	private TestData testData;
+
+	// Simulates a resolver endpoint with the injected latency and failures
+	private static class EndpointAdapter implements DIDAdapter {
+		private DIDAdapter adapter;
+		private volatile long delay;
+		private volatile boolean fail;
+		private AtomicBoolean stall;
+		private AtomicInteger resolves = new AtomicInteger();
+
+		public EndpointAdapter(long delay, AtomicBoolean stall) {
+			this.adapter = DIDTestExtension.getAdapter();
+			this.delay = delay;
+			this.stall = stall;
+		}
+
+		public EndpointAdapter(long delay) {
+			this(delay, new AtomicBoolean());
+		}
+
+		@Override
+		public void createIdTransaction(String payload, String memo)
+				throws DIDTransactionException {
+			adapter.createIdTransaction(payload, memo);
+		}
+
+		@Override
+		public InputStream resolve(String request) throws DIDResolveException {
+			resolves.incrementAndGet();
+
+			try {
+				if (stall.compareAndSet(true, false))
+					Thread.sleep(2000);
+
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new NetworkException("Interrupted", e);
+			}
+
+			if (fail)
+				throw new NetworkException("Endpoint down");
+
+			return adapter.resolve(request);
+		}
+	}
+
+	@BeforeEach
+	public void beforeEach() throws DIDException {
+		testData = new TestData();
+	}
+
+	@AfterEach
+	public void afterEach() {
+		DIDBackend.initialize(DIDTestExtension.getAdapter());
+		testData.cleanup();
+	}
+
+	private List<DID> createDids(int count) throws DIDException {
+		RootIdentity identity = testData.getRootIdentity();
+
+		List<DID> dids = new ArrayList<DID>();
+		for (int i = 0; i < count; i++) {
+			DIDDocument doc = identity.newDid(TestConfig.storePass);
+			doc.publish(TestConfig.storePass);
+			dids.add(doc.getSubject());
+		}
+
+		return dids;
+	}
+
+	@Test
+	public void testLatencyRouting() throws DIDException {
+		List<DID> dids = createDids(2);
+
+		EndpointAdapter slow = new EndpointAdapter(100);
+		EndpointAdapter fast = new EndpointAdapter(0);
+		MultiEndpointDIDAdapter adapter = new MultiEndpointDIDAdapter(Arrays.asList(slow, fast))
+				.setHedging(false, 0.95, 20);
+		DIDBackend.initialize(adapter);
+
+		for (int i = 0; i < 20; i++)
+			assertNotNull(dids.get(i % 2).resolve(true));
+
+		assertTrue(slow.resolves.get() <= 2);
+		assertTrue(fast.resolves.get() >= 18);
+
+		List<MultiEndpointDIDAdapter.EndpointStats> stats = adapter.getEndpointStats();
+		assertTrue(stats.get(0).getLatency() > stats.get(1).getLatency());
+		assertEquals(MultiEndpointDIDAdapter.CircuitState.CLOSED, stats.get(1).getState());
+	}
+
+	@Test
+	public void testHedgedRequest() throws DIDException {
+		DID did = createDids(1).get(0);
+
+		AtomicBoolean stall = new AtomicBoolean();
+		MultiEndpointDIDAdapter adapter = new MultiEndpointDIDAdapter(Arrays.asList(
+				new EndpointAdapter(5, stall), new EndpointAdapter(5, stall)))
+				.setHedging(true, 0.9, 20);
+		DIDBackend.initialize(adapter);
+
+		// Warm up the latency percentiles
+		for (int i = 0; i < 20; i++)
+			assertNotNull(did.resolve(true));
+		long hedges = adapter.getHedgeCount();
+
+		// The endpoint that gets the request stalls, the hedged one answers
+		stall.set(true);
+		long start = System.currentTimeMillis();
+		assertNotNull(did.resolve(true));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(hedges + 1, adapter.getHedgeCount());
+	}
+
+	@Test
+	public void testCircuitBreaker() throws DIDException {
+		DID did = createDids(1).get(0);
+		// Warm up the resolver, the first slow request misleads the routing
+		assertNotNull(did.resolve(true));
+
+		EndpointAdapter flaky = new EndpointAdapter(0);
+		EndpointAdapter backup = new EndpointAdapter(100);
+		MultiEndpointDIDAdapter adapter = new MultiEndpointDIDAdapter(Arrays.asList(flaky, backup))
+				.setHedging(false, 0.95, 20)
+				.setCircuitBreaker(3, 60000);
+		DIDBackend.initialize(adapter);
+
+		for (int i = 0; i < 5; i++)
+			assertNotNull(did.resolve(true));
+		int warmup = flaky.resolves.get();
+		assertTrue(warmup >= 4);
+
+		// Fail over to the backup, then eject the failing endpoint
+		flaky.fail = true;
+		for (int i = 0; i < 10; i++)
+			assertNotNull(did.resolve(true));
+
+		assertEquals(warmup + 3, flaky.resolves.get());
+		List<MultiEndpointDIDAdapter.EndpointStats> stats = adapter.getEndpointStats();
+		assertEquals(MultiEndpointDIDAdapter.CircuitState.OPEN, stats.get(0).getState());
+		assertEquals(3, stats.get(0).getFailureCount());
+		assertEquals(MultiEndpointDIDAdapter.CircuitState.CLOSED, stats.get(1).getState());
+	}
+}
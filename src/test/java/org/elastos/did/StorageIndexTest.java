@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elastos.did.exception.DIDException;
+import org.elastos.did.utils.DIDTestExtension;
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.TestData;
+import org.elastos.did.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(DIDTestExtension.class)
+public class StorageIndexTest {
+	private TestData testData;
+	private DIDStore store;
+	private File indexFile;
+
+	@BeforeEach
+	public void beforeEach() throws DIDException {
+		testData = new TestData();
+		store = testData.getStore();
+		indexFile = new File(TestConfig.storeRoot + File.separator + "data"
+				+ File.separator + StorageIndex.INDEX_FILE);
+	}
+
+	@AfterEach
+	public void afterEach() {
+		testData.cleanup();
+	}
+
+	private static Map<String, String> snapshot(DIDStore store) throws DIDException {
+		Map<String, String> objects = new HashMap<String, String>();
+
+		for (DID did : store.listDids()) {
+			objects.put(did.toString(), did.getMetadata().getAlias());
+			objects.put(did.toString() + "#sk",
+					String.valueOf(store.containsPrivateKeys(did)));
+
+			List<DIDURL> vcs = new ArrayList<DIDURL>(store.listCredentials(did));
+			Collections.sort(vcs);
+			objects.put(did.toString() + "#vcs", vcs.toString());
+		}
+
+		return objects;
+	}
+
+	private void prepareData() throws DIDException {
+		TestData.InstantData data = testData.getInstantData();
+		data.getIssuerDocument().getMetadata().setAlias("Issuer");
+		data.getUser1Document().getMetadata().setAlias("User1");
+		data.getUser1PassportCredential();
+		data.getUser1TwitterCredential();
+		data.getUser2Document();
+	}
+
+	@Test
+	public void testIndexedListing() throws DIDException {
+		prepareData();
+		assertTrue(indexFile.isFile());
+
+		Map<String, String> expected = snapshot(store);
+		assertEquals("User1", expected.get(
+				testData.getInstantData().getUser1Document().getSubject().toString()));
+
+		DID user1 = testData.getInstantData().getUser1Document().getSubject();
+		int vcs = store.listCredentials(user1).size();
+		DIDURL id = store.listCredentials(user1).get(0);
+		assertTrue(store.deleteCredential(id));
+		assertEquals(vcs - 1, store.listCredentials(user1).size());
+
+		DID user2 = testData.getInstantData().getUser2Document().getSubject();
+		assertTrue(store.deleteDid(user2));
+		assertFalse(store.listDids().contains(user2));
+
+		expected = snapshot(store);
+		store = testData.reOpenStore();
+		assertEquals(expected, snapshot(store));
+	}
+
+	@Test
+	public void testRebuildMissingIndex() throws DIDException {
+		prepareData();
+		Map<String, String> expected = snapshot(store);
+
+		assertTrue(indexFile.delete());
+
+		store = testData.reOpenStore();
+		assertEquals(expected, snapshot(store));
+		assertTrue(indexFile.isFile());
+	}
+
+	@Test
+	public void testRebuildCorruptedIndex() throws DIDException, IOException {
+		prepareData();
+		Map<String, String> expected = snapshot(store);
+
+		try (FileOutputStream out = new FileOutputStream(indexFile, true)) {
+			out.write("C\tincomplete".getBytes(StandardCharsets.UTF_8));
+		}
+
+		store = testData.reOpenStore();
+		assertEquals(expected, snapshot(store));
+	}
+
+	@Test
+	public void testRebuildStaleIndex() throws DIDException, InterruptedException {
+		prepareData();
+
+		DID user2 = testData.getInstantData().getUser2Document().getSubject();
+		int dids = store.listDids().size();
+
+		// Make sure the modified time of the ids directory changes
+		Thread.sleep(1000);
+		Utils.deleteFile(new File(TestConfig.storeRoot + File.separator + "data"
+				+ File.separator + "ids" + File.separator + user2.getMethodSpecificId()));
+
+		store = testData.reOpenStore();
+		assertFalse(store.listDids().contains(user2));
+		assertEquals(dids - 1, store.listDids().size());
+	}
+
+	@Test
+	public void testRebuildStaleDidEntry() throws DIDException, InterruptedException {
+		prepareData();
+
+		DID user1 = testData.getInstantData().getUser1Document().getSubject();
+		int vcs = store.listCredentials(user1).size();
+
+		// Make sure the modified time of the credentials directory changes
+		Thread.sleep(1000);
+		File dir = new File(TestConfig.storeRoot + File.separator + "data"
+				+ File.separator + "ids" + File.separator + user1.getMethodSpecificId()
+				+ File.separator + "credentials");
+		Utils.deleteFile(dir.listFiles()[0]);
+
+		assertEquals(vcs - 1, store.listCredentials(user1).size());
+
+		store = testData.reOpenStore();
+		assertEquals(vcs - 1, store.listCredentials(user1).size());
+	}
+}
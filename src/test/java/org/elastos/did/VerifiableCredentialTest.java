@@ -30,6 +30,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
@@ -1141,4 +1142,34 @@ public class VerifiableCredentialTest {
     	}
     	assertEquals(0, index);
     }
+
+    @Test
+	public void testIsGenuineBatch() throws DIDException {
+		TestData.InstantData sd = testData.getInstantData();
+
+		VerifiableCredential passport = sd.getUser1PassportCredential();
+		VerifiableCredential twitter = sd.getUser1TwitterCredential();
+		VerifiableCredential json = sd.getUser1JsonCredential();
+
+		// Same signature with a different credential
+		VerifiableCredential tampered = VerifiableCredential.parse(
+				twitter.toString(true).replace(twitter.getProof().getSignature(),
+						passport.getProof().getSignature()));
+		assertFalse(tampered.isGenuine());
+
+		List<VerifiableCredential> vcs = new ArrayList<VerifiableCredential>();
+		for (int i = 0; i < 4; i++) {
+			vcs.add(passport);
+			vcs.add(twitter);
+			vcs.add(json);
+		}
+		vcs.add(tampered);
+
+		boolean[] results = VerifiableCredential.isGenuineBatch(vcs);
+		assertEquals(vcs.size(), results.length);
+		for (int i = 0; i < vcs.size(); i++)
+			assertEquals(vcs.get(i).isGenuine(), results[i]);
+
+		assertFalse(results[results.length - 1]);
+	}
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did.backend;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.elastos.did.utils.TestConfig;
+import org.elastos.did.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PersistentResolveCacheTest {
+	private File file;
+
+	@BeforeEach
+	public void beforeEach() {
+		file = new File(TestConfig.tempDir + File.separator + "ResolveCacheTest"
+				+ File.separator + "resolve.cache");
+		Utils.deleteFile(file.getParentFile());
+	}
+
+	@AfterEach
+	public void afterEach() {
+		Utils.deleteFile(file.getParentFile());
+	}
+
+	@Test
+	public void testPutAndGet() {
+		PersistentResolveCache cache = new PersistentResolveCache(file);
+
+		assertNull(cache.get("foo"));
+
+		cache.put("foo", "{\"value\":1}");
+		cache.put("bar", "{\"value\":2}");
+		cache.put("foo", "{\"value\":3}");
+		assertEquals("{\"value\":3}", cache.get("foo"));
+		assertEquals("{\"value\":2}", cache.get("bar"));
+		assertEquals(2, cache.size());
+
+		cache.remove("bar");
+		assertNull(cache.get("bar"));
+		cache.close();
+
+		// Reopen, the latest records and the tombstones are restored
+		cache = new PersistentResolveCache(file);
+		assertEquals("{\"value\":3}", cache.get("foo"));
+		assertNull(cache.get("bar"));
+		assertEquals(1, cache.size());
+
+		cache.clear();
+		assertNull(cache.get("foo"));
+		assertEquals(0, file.length());
+		cache.close();
+	}
+
+	@Test
+	public void testTtl() throws InterruptedException {
+		PersistentResolveCache cache = new PersistentResolveCache(file,
+				PersistentResolveCache.DEFAULT_MAX_SIZE, 100);
+
+		cache.put("foo", "{\"value\":1}");
+		assertEquals("{\"value\":1}", cache.get("foo"));
+
+		Thread.sleep(200);
+		assertNull(cache.get("foo"));
+		cache.close();
+	}
+
+	@Test
+	public void testEviction() {
+		PersistentResolveCache cache = new PersistentResolveCache(file,
+				4096, PersistentResolveCache.DEFAULT_TTL);
+
+		String value = "{\"value\":\"" + new String(new char[100]).replace('\0', 'x') + "\"}";
+		for (int i = 0; i < 100; i++)
+			cache.put("key-" + i, value);
+
+		assertTrue(file.length() <= 4096);
+		assertTrue(cache.size() < 100);
+
+		// The newest records survive the compaction
+		assertEquals(value, cache.get("key-99"));
+		assertNull(cache.get("key-0"));
+		cache.close();
+	}
+
+	@Test
+	public void testTruncatedTail() throws IOException {
+		PersistentResolveCache cache = new PersistentResolveCache(file);
+		cache.put("foo", "{\"value\":1}");
+		cache.put("bar", "{\"value\":2}");
+		cache.close();
+
+		// Simulate a crash when appending the last record
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		cache = new PersistentResolveCache(file);
+		assertEquals("{\"value\":1}", cache.get("foo"));
+		assertNull(cache.get("bar"));
+
+		cache.put("bar", "{\"value\":3}");
+		cache.close();
+
+		cache = new PersistentResolveCache(file);
+		assertEquals("{\"value\":3}", cache.get("bar"));
+		cache.close();
+	}
+}
@@ -24,8 +24,15 @@ package org.elastos.did.crypto;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.spongycastle.crypto.CryptoException;
 
 public class Aes256cbcTest {
 	private static final String passwd = "secret";
@@ -76,4 +83,73 @@ public class Aes256cbcTest {
 
 		assertEquals(base64, cipher);
 	}
+
+	private static Aes256cbc.Engine getEngine(String name) {
+		return name.equals("jce") ? Aes256cbc.JCE : Aes256cbc.SPONGYCASTLE;
+	}
+
+	@Test
+	public void testDefaultEngine() {
+		assertSame(Aes256cbc.JCE, Aes256cbc.getEngine());
+
+		Aes256cbc.setEngine(Aes256cbc.SPONGYCASTLE);
+		assertSame(Aes256cbc.SPONGYCASTLE, Aes256cbc.getEngine());
+
+		Aes256cbc.setEngine(null);
+		assertSame(Aes256cbc.JCE, Aes256cbc.getEngine());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"jce", "spongycastle"})
+	public void testEngine(String name) throws Exception {
+		Aes256cbc.Engine engine = getEngine(name);
+
+		byte[] key = new byte[Aes256cbc.KEY_BYTES];
+		byte[] iv = new byte[Aes256cbc.IV_BYTES];
+		Aes256cbc.generateKeyAndIv(passwd, key, iv);
+
+		byte[] data = plain.getBytes();
+		byte[] cipher = engine.encrypt(data, 0, data.length, key, iv);
+		byte[] expected = Base64.decode(cipherBase64,
+				Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+		assertArrayEquals(expected, cipher);
+
+		assertArrayEquals(data, engine.decrypt(cipher, 0, cipher.length, key, iv));
+
+		// Bad padding
+		cipher[cipher.length - 1] ^= 0x55;
+		assertThrows(CryptoException.class, () -> {
+			engine.decrypt(cipher, 0, cipher.length, key, iv);
+		});
+	}
+
+	@Test
+	public void testEnginesCrossCompatibility() throws Exception {
+		Random rnd = new Random(20201017);
+
+		byte[] key = new byte[Aes256cbc.KEY_BYTES];
+		byte[] iv = new byte[Aes256cbc.IV_BYTES];
+
+		int[] sizes = { 0, 1, 15, 16, 17, 31, 32, 33, 64, 78, 82, 255, 4096, 65537 };
+		for (int size : sizes) {
+			Aes256cbc.generateKeyAndIv("passwd-" + size, key, iv);
+
+			// Leading and trailing bytes to test the offset and length
+			byte[] data = new byte[size + 7];
+			rnd.nextBytes(data);
+
+			byte[] jce = Aes256cbc.JCE.encrypt(data, 3, size, key, iv);
+			byte[] sc = Aes256cbc.SPONGYCASTLE.encrypt(data, 3, size, key, iv);
+			assertArrayEquals(sc, jce);
+			assertEquals((size / 16 + 1) * 16, jce.length);
+
+			byte[] expected = new byte[size];
+			System.arraycopy(data, 3, expected, 0, size);
+
+			assertArrayEquals(expected,
+					Aes256cbc.JCE.decrypt(sc, 0, sc.length, key, iv));
+			assertArrayEquals(expected,
+					Aes256cbc.SPONGYCASTLE.decrypt(jce, 0, jce.length, key, iv));
+		}
+	}
 }
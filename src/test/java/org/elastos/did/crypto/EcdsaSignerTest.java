@@ -22,16 +22,23 @@
 
 package org.elastos.did.crypto;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.elastos.did.Mnemonic;
+import org.elastos.did.crypto.EcdsaSigner.VerifyTask;
 import org.elastos.did.exception.DIDException;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.util.encoders.Hex;
 
 public class EcdsaSignerTest {
 	private static final String plain = "The quick brown fox jumps over the lazy dog.";
@@ -96,6 +103,74 @@ public class EcdsaSignerTest {
 		assertFalse(result);
 	}
 
+	@Test
+	public void testVerifyWithDecodedKey() {
+		ECPublicKeyParameters pk = EcdsaSigner.decodePublicKey(key.getPublicKeyBytes());
+		byte[] digest = EcdsaSigner.sha256Digest(plain.getBytes(), nonce.getBytes());
+
+		// Repeat to cover the precomputed tables attached to the key
+		for (int i = 0; i < 3; i++)
+			assertTrue(EcdsaSigner.verify(pk, sig, digest));
+
+		byte[] modSig = Arrays.copyOf(sig, sig.length);
+		modSig[8] +=1;
+		assertFalse(EcdsaSigner.verify(pk, modSig, digest));
+
+		assertFalse(EcdsaSigner.verify(pk, sig,
+				EcdsaSigner.sha256Digest(plain.getBytes())));
+	}
+
+	@Test
+	public void testVerifyAll() {
+		byte[] digest = EcdsaSigner.sha256Digest(plain.getBytes(), nonce.getBytes());
+		byte[] modSig = Arrays.copyOf(sig, sig.length);
+		modSig[8] +=1;
+
+		List<VerifyTask> tasks = new ArrayList<VerifyTask>();
+		for (int i = 0; i < 16; i++) {
+			tasks.add(new VerifyTask(key.getPublicKeyBytes(), sig, digest));
+			tasks.add(new VerifyTask(key.getPublicKeyBytes(), modSig, digest));
+		}
+		tasks.add(new VerifyTask(new byte[33], sig, digest));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			boolean[] results = EcdsaSigner.verifyAll(tasks, pool);
+			assertEquals(tasks.size(), results.length);
+			for (int i = 0; i < results.length - 1; i++)
+				assertEquals(i % 2 == 0, results[i]);
+
+			// Malformed key only fails its own task
+			assertFalse(results[results.length - 1]);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertTrue(EcdsaSigner.verifyAll(tasks.subList(0, 1))[0]);
+		assertEquals(0, EcdsaSigner.verifyAll(new ArrayList<VerifyTask>()).length);
+	}
+
+	@Test
+	public void testDeterministicSign() {
+		byte[] digest = EcdsaSigner.sha256Digest(plain.getBytes(), nonce.getBytes());
+
+		byte[] sig1 = EcdsaSigner.sign(key.getPrivateKeyBytes(), digest);
+		byte[] sig2 = EcdsaSigner.sign(key.getPrivateKeyBytes(), digest);
+		assertArrayEquals(sig1, sig2);
+		assertTrue(EcdsaSigner.verify(key.getPublicKeyBytes(), sig1, digest));
+	}
+
+	@Test
+	public void testRfc6979Vector() {
+		// RFC 6979, A.2.5. ECDSA, 256 Bits (Prime Field), SHA-256, message "sample"
+		byte[] privateKey = Hex.decode("C9AFA9D845BA75166B5C215767B1D6934E50C3DB36E89B127B8A622B120F6721");
+		byte[] expected = Hex.decode("EFD48B2AACB6A8FD1140DD9CD45E81D69D2C877B56AAF991C34D0EA84EAF3716"
+				+ "F7CB1C942D657C41D436C7A1B6E29F65F3E900DBB9AFF4064DC4AB2F843ACDA8");
+
+		byte[] sig = EcdsaSigner.signData(privateKey, "sample".getBytes());
+		assertArrayEquals(expected, sig);
+	}
+
 	@Test
 	public void testCompatibility() {
 		String input = "abcdefghijklmnopqrstuvwxyz";
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Elastos Foundation
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.elastos.did.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class InMemoryMetricsTest {
+	@Test
+	public void testCacheCounters() {
+		InMemoryMetrics metrics = new InMemoryMetrics();
+
+		assertEquals(0, metrics.getCacheHitCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(1.0, metrics.getCacheHitRate(DIDMetrics.CACHE_RESOLVE));
+
+		metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+		metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+		metrics.cacheHit(DIDMetrics.CACHE_RESOLVE);
+		metrics.cacheMiss(DIDMetrics.CACHE_RESOLVE);
+		metrics.cacheLoad(DIDMetrics.CACHE_RESOLVE, TimeUnit.MILLISECONDS.toNanos(2), true);
+		metrics.cacheLoad(DIDMetrics.CACHE_RESOLVE, TimeUnit.MILLISECONDS.toNanos(4), false);
+		metrics.cacheEviction(DIDMetrics.CACHE_RESOLVE);
+		metrics.cacheHit(DIDMetrics.CACHE_STORE);
+
+		assertEquals(3, metrics.getCacheHitCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(1, metrics.getCacheMissCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(0.75, metrics.getCacheHitRate(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(2, metrics.getCacheLoadCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(1, metrics.getCacheLoadFailureCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(3000, metrics.getCacheAverageLoadTime(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(1, metrics.getCacheEvictionCount(DIDMetrics.CACHE_RESOLVE));
+		assertEquals(1, metrics.getCacheHitCount(DIDMetrics.CACHE_STORE));
+		assertEquals(0, metrics.getCacheMissCount(DIDMetrics.CACHE_STORE));
+	}
+
+	@Test
+	public void testResolveLatency() {
+		InMemoryMetrics metrics = new InMemoryMetrics();
+
+		for (int i = 1; i <= 100; i++) {
+			metrics.resolveStarted("did_resolveDID");
+			assertEquals(1, metrics.getInFlightRequests());
+			metrics.resolveCompleted("did_resolveDID", DIDMetrics.OUTCOME_VALID,
+					TimeUnit.MILLISECONDS.toNanos(i));
+		}
+
+		metrics.resolveStarted("did_resolveDID");
+		metrics.adapterError("did_resolveDID", new RuntimeException());
+		metrics.resolveCompleted("did_resolveDID", DIDMetrics.OUTCOME_ERROR,
+				TimeUnit.SECONDS.toNanos(20));
+
+		assertEquals(0, metrics.getInFlightRequests());
+		assertEquals(1, metrics.getAdapterErrorCount("did_resolveDID"));
+		assertEquals(1, metrics.getAdapterErrorCount());
+		assertNull(metrics.getResolveLatency("did_resolveDID", DIDMetrics.OUTCOME_NOT_FOUND));
+		assertEquals(2, metrics.getResolveLatencies().size());
+
+		InMemoryMetrics.Histogram h = metrics.getResolveLatency("did_resolveDID",
+				DIDMetrics.OUTCOME_VALID);
+		assertEquals(100, h.getCount());
+		assertEquals(50500, h.getMean());
+		assertEquals(100000, h.getMax());
+		assertEquals(50000, h.getPercentile(0.5));
+		assertEquals(100000, h.getPercentile(0.99));
+
+		long[] counts = h.getBucketCounts();
+		assertEquals(h.getBucketBounds().length + 1, counts.length);
+		long total = 0;
+		for (long c : counts)
+			total += c;
+		assertEquals(100, total);
+
+		// Beyond the last bound
+		h = metrics.getResolveLatency("did_resolveDID", DIDMetrics.OUTCOME_ERROR);
+		assertEquals(1, h.getBucketCounts()[counts.length - 1]);
+		assertEquals(20000000, h.getPercentile(0.5));
+
+		metrics.reset();
+		assertEquals(0, metrics.getResolveLatencies().size());
+		assertEquals(0, metrics.getAdapterErrorCount());
+	}
+}
@@ -83,4 +83,8 @@ public class DIDTestExtension implements BeforeAllCallback, CloseableResource {
 	public static DIDAdapter getAdapter() {
 		return adapter;
 	}
+
+	public static SimulatedIDChain getSimulatedIDChain() {
+		return simChain;
+	}
 }
@@ -52,6 +52,7 @@ public final class TestData {
 	private static int index;
 
 	private DIDStore store;
+	private boolean logStructured;
 	private String mnemonic;
 	private RootIdentity identity;
 
@@ -60,8 +61,18 @@ public final class TestData {
 	private InstantData instantData;
 
 	public TestData() throws DIDException {
+		this(false);
+	}
+
+	public TestData(boolean logStructured) throws DIDException {
+		this.logStructured = logStructured;
     	Utils.deleteFile(new File(TestConfig.storeRoot));
-		store = DIDStore.open(TestConfig.storeRoot);
+		store = openStore();
+	}
+
+	private DIDStore openStore() throws DIDException {
+		return logStructured ? DIDStore.openLogStructured(TestConfig.storeRoot) :
+				DIDStore.open(TestConfig.storeRoot);
 	}
 
 	public void cleanup() {
@@ -91,7 +102,7 @@ public final class TestData {
 		if (store != null)
 			store.close();
 
-		store = DIDStore.open(TestConfig.storeRoot);
+		store = openStore();
 		return store;
 	}
 
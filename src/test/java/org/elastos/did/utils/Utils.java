@@ -35,6 +35,7 @@ public class Utils {
 	private static String[] removeIgnoredFiles(String[] names) {
 		List<String> lst = new ArrayList<String>(Arrays.asList(names));
 		lst.remove(".DS_Store");
+		lst.remove(".index");
 		return lst.toArray(new String[0]);
 	}
 